@@ -46,4 +46,13 @@ public final class CheckList {
       FunctionLengthCheck.class);
   }
 
+  /**
+   * The checks which only look at the tokens, the comments and the lines of a file, so which can run on a lexical
+   * only analysis, where the files are not parsed.
+   */
+  public static List<Class> getLexicalChecks() {
+    return ImmutableList.of(CommentRegularExpressionCheck.class, IndentionSizeCheck.class, LineLengthCheck.class,
+      NoTabsForIndentionCheck.class, NoTrailingWhitespaceCheck.class, TodoCommentCheck.class, FixmeCommentCheck.class);
+  }
+
 }
@@ -24,6 +24,9 @@ import org.sonar.check.BelongsToProfile;
 import org.sonar.check.Priority;
 import org.sonar.check.Rule;
 import org.sonar.check.RuleProperty;
+import org.sonar.erlang.ErlangScopes;
+import org.sonar.erlang.parser.AstCursor;
+import org.sonar.erlang.parser.CompactAst;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.checks.SquidCheck;
@@ -40,15 +43,22 @@ public class DepthOfCasesCheck extends SquidCheck<LexerlessGrammar> {
     + DEFAULT_MAXIMUM_CASE_DEPTH_THRESHOLD)
   private int maximumCaseDepthThreshold = DEFAULT_MAXIMUM_CASE_DEPTH_THRESHOLD;
 
+  private CompactAst ast;
+
   @Override
   public void init() {
     subscribeTo(ErlangGrammarImpl.caseExpression);
   }
 
+  @Override
+  public void visitFile(AstNode astNode) {
+    ast = astNode == null ? null : CompactAst.of(astNode);
+  }
+
   @Override
   public void visitNode(AstNode astNode) {
-    if (isTopLevelCase(astNode)) {
-      int depth = countChild(astNode);
+    if (isTopLevelCase()) {
+      int depth = countChild(ast.cursor(astNode));
       if (depth > maximumCaseDepthThreshold) {
         getContext().createLineViolation(this,
           "Depth of case: {0} reached the threshold: {1}.", astNode.getTokenLine(),
@@ -58,12 +68,12 @@ public class DepthOfCasesCheck extends SquidCheck<LexerlessGrammar> {
 
   }
 
-  private boolean isTopLevelCase(AstNode astNode) {
-    return !astNode.hasAncestor(ErlangGrammarImpl.caseExpression);
+  private boolean isTopLevelCase() {
+    return ErlangScopes.of(getContext()).caseDepth() == 1;
   }
 
-  private int countChild(AstNode astNode) {
-    return astNode.getDescendants(ErlangGrammarImpl.caseExpression).size();
+  private static int countChild(AstCursor cursor) {
+    return cursor.countDescendants(ErlangGrammarImpl.caseExpression);
   }
 
 }
@@ -24,6 +24,7 @@ import org.sonar.check.BelongsToProfile;
 import org.sonar.check.Priority;
 import org.sonar.check.Rule;
 import org.sonar.check.RuleProperty;
+import org.sonar.erlang.ErlangScopes;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.checks.SquidCheck;
@@ -45,13 +46,13 @@ public class DoNotUseExportAllCheck extends SquidCheck<LexerlessGrammar> {
 
   @Override
   public void visitNode(AstNode node) {
-    if (hasFlowControlParent(node) && "export_all".equalsIgnoreCase(node.getFirstChild(ErlangGrammarImpl.primaryExpression).getTokenOriginalValue())) {
+    if (hasFlowControlParent() && "export_all".equalsIgnoreCase(node.getFirstChild(ErlangGrammarImpl.primaryExpression).getTokenOriginalValue())) {
       getContext().createLineViolation(this, "Do not use export_all", node);
     }
   }
 
-  private boolean hasFlowControlParent(AstNode astNode) {
-    return !astNode.hasAncestor(ErlangGrammarImpl.flowControlAttr) || !skipInFlowControl;
+  private boolean hasFlowControlParent() {
+    return !ErlangScopes.of(getContext()).inFlowControl() || !skipInFlowControl;
   }
 
   public void setsSkipInFlowControl(boolean skipInFlowControl) {
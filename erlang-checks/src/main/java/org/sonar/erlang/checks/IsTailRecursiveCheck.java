@@ -23,6 +23,10 @@ import com.sonar.sslr.api.AstNode;
 import org.sonar.check.BelongsToProfile;
 import org.sonar.check.Priority;
 import org.sonar.check.Rule;
+import org.sonar.erlang.CallSites;
+import org.sonar.erlang.ErlangScopes;
+import org.sonar.erlang.FunctionId;
+import org.sonar.erlang.ModuleSymbols;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.checks.SquidCheck;
@@ -33,13 +37,17 @@ import org.sonar.sslr.parser.LexerlessGrammar;
 @SqaleConstantRemediation("1h")
 public class IsTailRecursiveCheck extends SquidCheck<LexerlessGrammar> {
 
-  private String actualArity;
-  private String actualModule;
+  private FunctionId actualFunction;
+  private ModuleSymbols symbols;
   private int lastClauseLine;
+  private ErlangScopes scopes;
+  private CallSites callSites;
 
   @Override
   public void init() {
     subscribeTo(ErlangGrammarImpl.callExpression, ErlangGrammarImpl.functionDeclaration);
+    scopes = ErlangScopes.of(getContext());
+    callSites = CallSites.of(getContext());
   }
 
   @Override
@@ -48,29 +56,28 @@ public class IsTailRecursiveCheck extends SquidCheck<LexerlessGrammar> {
       // file wasn't parsed
       return;
     }
-    actualArity = "";
-    actualModule = astNode.getFirstDescendant(ErlangGrammarImpl.moduleAttr)
-      .getFirstChild(ErlangGrammarImpl.atom).getTokenOriginalValue();
+    actualFunction = null;
+    symbols = ModuleSymbols.of(getContext());
     lastClauseLine = 0;
   }
 
   @Override
   public void visitNode(AstNode node) {
     if (node.getType().equals(ErlangGrammarImpl.functionDeclaration)) {
-      actualArity = getArity(node.getFirstChild(ErlangGrammarImpl.functionClause));
+      actualFunction = symbols.declared(node);
     } else if (node.getType().equals(ErlangGrammarImpl.callExpression)
       /**
       * Not in a module attribute
       */
-      && node.getFirstAncestor(ErlangGrammarImpl.defineAttr) == null
+      && !scopes.inDefine()
       /**
        * Recursive call
        */
-      && getArityFromCall(node).equals(actualArity)
+      && isRecursive(node)
       /**
        * where we have not record a non tail recursive call so far
        */
-      && node.getFirstAncestor(ErlangGrammarImpl.functionClause).getTokenLine() != lastClauseLine) {
+      && scopes.functionClause().getTokenLine() != lastClauseLine) {
 
       /**
        * Not a standalone statement
@@ -78,72 +85,36 @@ public class IsTailRecursiveCheck extends SquidCheck<LexerlessGrammar> {
       if (!node.getParent().getType().equals(ErlangGrammarImpl.expression)
         || node.getParent().getType().equals(ErlangGrammarImpl.expression) && !node.getParent().getParent().getType().equals(ErlangGrammarImpl.expressionStatement)) {
         getContext().createLineViolation(this, "Function is not tail recursive.", node);
-        lastClauseLine = node.getFirstAncestor(ErlangGrammarImpl.functionClause).getTokenLine();
+        lastClauseLine = scopes.functionClause().getTokenLine();
         return;
       }
 
       /**
        * Not last call
        */
-      if (!checkIsLastStatement(node.getFirstAncestor(ErlangGrammarImpl.statement))) {
+      if (!checkIsLastStatement()) {
         getContext().createLineViolation(this, "Function is not tail recursive.", node);
-        lastClauseLine = node.getFirstAncestor(ErlangGrammarImpl.functionClause).getTokenLine();
+        lastClauseLine = scopes.functionClause().getTokenLine();
         return;
       }
 
     }
   }
 
-  private boolean checkIsLastStatement(AstNode node) {
-    if (node == null) {
-      return true;
-    }
-    AstNode sibling = node.getNextSibling();
-    if (sibling != null) {
-      return false;
-    }
-    return checkIsLastStatement(node.getFirstAncestor(ErlangGrammarImpl.statement));
-  }
-
-  private String getArityFromCall(AstNode ast) {
-    /**
-     * This method exists in squid/BranchesOfRecursion
-     */
-    // It has a colon, so it is a module:function call
-    if (ast.hasDirectChildren(ErlangGrammarImpl.colon)) {
-      AstNode firstCallMemberAstNode = ast.getFirstChild(ErlangGrammarImpl.callExpressionFirstMember);
-      AstNode secondCallMemberAstNode = ast.getLastChild(ErlangGrammarImpl.callExpressionSecondMember);
-
-      if (actualModule.equals(firstCallMemberAstNode.getTokenOriginalValue())) {
-        return secondCallMemberAstNode.getTokenOriginalValue() + "/" + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
-      }
-      // FIXME This seems to use AstNode.toString(), which is likely not intended
-      return firstCallMemberAstNode.getFirstChild() + ":" + secondCallMemberAstNode.getTokenOriginalValue() + "/" + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
-    } else {
-      try {
-        AstNode secondCallMemberAstNode = ast.getLastChild(ErlangGrammarImpl.callExpressionSecondMember);
-
-        return secondCallMemberAstNode.getFirstChild(ErlangGrammarImpl.primaryExpression).getFirstChild(ErlangGrammarImpl.literal).getTokenOriginalValue() + "/"
-          + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
-      } catch (Exception e) {
-        // If we reach this part it means we are in call where the function is a return value of another function:
-        // like: (Fun2())(1)
-        return "*" + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
+  /**
+   * Whether each enclosing statement is the last one of its block.
+   */
+  private boolean checkIsLastStatement() {
+    for (int level = 0; level < scopes.depth(ErlangGrammarImpl.statement); level++) {
+      if (scopes.enclosing(ErlangGrammarImpl.statement, level).getNextSibling() != null) {
+        return false;
       }
     }
+    return true;
   }
 
-  private String getArity(AstNode ast) {
-    AstNode args = ast.getFirstChild(ErlangGrammarImpl.clauseHead)
-      .getFirstChild(ErlangGrammarImpl.funcDecl).getFirstChild(
-        ErlangGrammarImpl.arguments);
-    return ast.getTokenOriginalValue() + "/" + getNumOfArgs(args);
-  }
-
-  private String getNumOfArgs(AstNode args) {
-    int num = args.getNumberOfChildren() > 3 ? args.getChildren(
-      ErlangGrammarImpl.comma).size() + 1 : args.getNumberOfChildren() - 2;
-    return String.valueOf(num);
+  private boolean isRecursive(AstNode callExpression) {
+    return callSites.resolve(callExpression).calls(actualFunction);
   }
 
 }
@@ -31,6 +31,7 @@ import org.sonar.check.BelongsToProfile;
 import org.sonar.check.Priority;
 import org.sonar.check.Rule;
 import org.sonar.check.RuleProperty;
+import org.sonar.erlang.ErlangScopes;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.squidbridge.annotations.NoSqale;
 import org.sonar.squidbridge.checks.SquidCheck;
@@ -70,7 +71,7 @@ public class NoMacrosCheck extends SquidCheck<LexerlessGrammar> {
 
   @Override
   public void visitNode(AstNode astNode) {
-    if (hasFlowControlParent(astNode) && isNotLiteralMacro(astNode) && isNotInIgnoreList(astNode)) {
+    if (hasFlowControlParent() && isNotLiteralMacro(astNode) && isNotInIgnoreList(astNode)) {
       getContext().createLineViolation(this, "Do not use macros.", astNode.getTokenLine());
     }
   }
@@ -83,8 +84,8 @@ public class NoMacrosCheck extends SquidCheck<LexerlessGrammar> {
     return (astNode.hasDescendant(ErlangGrammarImpl.funcDecl) && allowLiteralMacros) || (!allowLiteralMacros);
   }
 
-  private boolean hasFlowControlParent(AstNode astNode) {
-    return !astNode.hasAncestor(ErlangGrammarImpl.flowControlAttr) || !skipDefineInFlowControl;
+  private boolean hasFlowControlParent() {
+    return !ErlangScopes.of(getContext()).inFlowControl() || !skipDefineInFlowControl;
   }
 
   private String getMacroName(AstNode astNode) {
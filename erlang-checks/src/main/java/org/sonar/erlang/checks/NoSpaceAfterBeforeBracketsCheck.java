@@ -25,9 +25,11 @@ import com.sonar.sslr.api.Token;
 
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
 
 import org.sonar.check.Priority;
 import org.sonar.check.Rule;
+import org.sonar.erlang.ErlangScopes;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.checks.SquidCheck;
@@ -48,19 +50,27 @@ public class NoSpaceAfterBeforeBracketsCheck extends SquidCheck<LexerlessGrammar
   List<Integer> failedLines = new ArrayList<Integer>();
 
   private int numOfViolations = 0;
+  private ErlangScopes scopes;
 
   @Override
   public void init() {
     subscribeTo(ErlangGrammarImpl.rbracket, ErlangGrammarImpl.rcurlybrace,
       ErlangGrammarImpl.rparenthesis, ErlangGrammarImpl.lbracket,
       ErlangGrammarImpl.lcurlybrace, ErlangGrammarImpl.lparenthesis);
+    scopes = ErlangScopes.of(getContext());
+  }
+
+  @Override
+  public void visitFile(@Nullable AstNode astNode) {
+    failedLines.clear();
+    numOfViolations = 0;
   }
 
   @Override
   public void visitNode(AstNode ast) {
     Token compTo;
     if (numOfViolations < 100 && !failedLines.contains(ast.getTokenLine())) {
-      if (ast.hasAncestor(ErlangGrammarImpl.clauseBody) && noSpaceAfter.contains(ast.getType())) {
+      if (scopes.inClauseBody() && noSpaceAfter.contains(ast.getType())) {
         compTo = ast.getNextSibling().getToken();
         failedLines.add(check(ast, compTo, false));
       } else if (noSpaceBefore.contains(ast.getType())) {
@@ -21,16 +21,14 @@ package org.sonar.erlang.checks;
 
 import com.sonar.sslr.api.AstNode;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.check.BelongsToProfile;
 import org.sonar.check.Priority;
 import org.sonar.check.Rule;
+import org.sonar.erlang.SourceLines;
 import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.checks.SquidCheck;
 import org.sonar.sslr.parser.LexerlessGrammar;
@@ -44,37 +42,27 @@ public class NoTabsForIndentionCheck extends SquidCheck<LexerlessGrammar> {
 
   @Override
   public void visitFile(AstNode astNode) {
-    File file = getContext().getFile();
     try {
-      checkFileIndention(file);
-    } catch (FileNotFoundException e) {
-      LOG.error("File not found: " + file.getAbsolutePath(), e);
+      checkFileIndention(SourceLines.of(getContext()));
+    } catch (IOException e) {
+      LOG.error("Unable to read " + getContext().getFile().getAbsolutePath(), e);
     }
   }
 
-  private void checkFileIndention(File source) throws FileNotFoundException {
-    Scanner scanner = new Scanner(new FileInputStream(source));
+  private void checkFileIndention(SourceLines lines) {
     int numOfViolations = 0;
-    try {
-      int lineNumber = 1;
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-
-        if (line.matches("^ *\t+.*")) {
-          getContext().createLineViolation(this, "Line has tabs as indention.",
-            lineNumber);
-          numOfViolations++;
-        }
-        if (numOfViolations == 100) {
-          getContext().createLineViolation(this,
-            "File has reached 100 'Line has tabs as indention' violation.",
-            lineNumber);
-          return;
-        }
-        lineNumber++;
+    for (int lineNumber = 1; lineNumber <= lines.count(); lineNumber++) {
+      if (lines.is(lineNumber, SourceLines.LEADING_TAB)) {
+        getContext().createLineViolation(this, "Line has tabs as indention.",
+          lineNumber);
+        numOfViolations++;
+      }
+      if (numOfViolations == 100) {
+        getContext().createLineViolation(this,
+          "File has reached 100 'Line has tabs as indention' violation.",
+          lineNumber);
+        return;
       }
-    } finally {
-      scanner.close();
     }
   }
 
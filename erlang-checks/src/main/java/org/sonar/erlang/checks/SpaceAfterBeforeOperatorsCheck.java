@@ -53,6 +53,7 @@ public class SpaceAfterBeforeOperatorsCheck extends SquidCheck<LexerlessGrammar>
 
   @Override
   public void visitFile(@Nullable AstNode astNode) {
+    failedLines.clear();
     numOfViolations = 0;
   }
 
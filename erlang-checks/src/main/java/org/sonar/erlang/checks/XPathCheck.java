@@ -19,14 +19,21 @@
  */
 package org.sonar.erlang.checks;
 
+import com.sonar.sslr.api.AstNode;
 import org.sonar.check.Priority;
 import org.sonar.check.Rule;
 import org.sonar.check.RuleProperty;
+import org.sonar.erlang.parser.CompactAst;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.squidbridge.annotations.NoSqale;
 import org.sonar.squidbridge.annotations.RuleTemplate;
 import org.sonar.squidbridge.checks.AbstractXPathCheck;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
 @Rule(key = "XPath", priority = Priority.MAJOR)
 @NoSqale
 @RuleTemplate
@@ -34,6 +41,7 @@ public class XPathCheck extends AbstractXPathCheck<LexerlessGrammar> {
 
   private static final String DEFAULT_XPATH_QUERY = "";
   private static final String DEFAULT_MESSAGE = "The XPath expression matches this piece of code";
+  private static final Pattern ALL_OF_A_RULE = Pattern.compile("\\s*//(\\w+)\\s*");
 
   @RuleProperty(key = "xpathQuery", defaultValue = "" + DEFAULT_XPATH_QUERY)
   public String xpathQuery = DEFAULT_XPATH_QUERY;
@@ -51,4 +59,32 @@ public class XPathCheck extends AbstractXPathCheck<LexerlessGrammar> {
     return message;
   }
 
+  /**
+   * A query of all the nodes of a rule, {@code //rule}, is answered by the index of the nodes by rule of the file.
+   */
+  @Override
+  public void visitFile(@Nullable AstNode fileNode) {
+    ErlangGrammarImpl rule = rule(xpathQuery);
+    if (rule == null || fileNode == null) {
+      super.visitFile(fileNode);
+      return;
+    }
+    for (AstNode node : CompactAst.of(fileNode).nodes(rule)) {
+      getContext().createLineViolation(this, getMessage(), node.getTokenLine());
+    }
+  }
+
+  @Nullable
+  private static ErlangGrammarImpl rule(String query) {
+    Matcher matcher = ALL_OF_A_RULE.matcher(query);
+    if (matcher.matches()) {
+      for (ErlangGrammarImpl rule : ErlangGrammarImpl.values()) {
+        if (rule.name().equals(matcher.group(1))) {
+          return rule;
+        }
+      }
+    }
+    return null;
+  }
+
 }
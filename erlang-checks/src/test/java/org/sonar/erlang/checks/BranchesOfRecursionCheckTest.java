@@ -50,4 +50,16 @@ public class BranchesOfRecursionCheckTest {
       .next().atLine(19).withMessage("Function has 3 branches of recursion which is greater than 1 authorized.")
       .noMore();
   }
+
+  @Test
+  public void module_macro_and_imports() {
+    BranchesOfRecursionCheck check = new BranchesOfRecursionCheck();
+    check.setMaximumBORThreshold(0);
+    SourceFile file = TestHelper.scanSingleFile(new File(
+      "src/test/resources/checks/recursivecalls.erl"), check);
+
+    CheckMessagesVerifier.verify(file.getCheckMessages())
+      .next().atLine(9).withMessage("Function has 1 branches of recursion which is greater than 0 authorized.")
+      .noMore();
+  }
 }
@@ -50,6 +50,17 @@ public class IsTailRecursiveCheckTest {
       .noMore();
   }
 
+  @Test
+  public void module_macro_and_imports() {
+    IsTailRecursiveCheck check = new IsTailRecursiveCheck();
+    SourceFile file = TestHelper.scanSingleFile(new File(
+      "src/test/resources/checks/recursivecalls.erl"), check);
+
+    CheckMessagesVerifier.verify(file.getCheckMessages())
+      .next().atLine(10)
+      .noMore();
+  }
+
   @Test
   public void test_bug() {
     IsTailRecursiveCheck check = new IsTailRecursiveCheck();
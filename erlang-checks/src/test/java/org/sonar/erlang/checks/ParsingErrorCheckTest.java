@@ -20,13 +20,22 @@
 package org.sonar.erlang.checks;
 
 
+import com.google.common.collect.ImmutableList;
+import org.sonar.erlang.ErlangAstScanner;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.squidbridge.AstScanner;
 import org.sonar.squidbridge.checks.CheckMessagesVerifier;
 import org.junit.Test;
 
+import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.indexer.QueryByType;
+import org.sonar.sslr.parser.LexerlessGrammar;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.hamcrest.Matchers.containsString;
 
 public class ParsingErrorCheckTest {
@@ -39,4 +48,19 @@ public class ParsingErrorCheckTest {
       .noMore();
   }
 
+  @Test
+  public void parse_budget_exceeded() {
+    AstScanner<LexerlessGrammar> scanner = ErlangAstScanner.create(
+      new ErlangConfiguration(StandardCharsets.UTF_8).setParseBudget(0, 100), new ParsingErrorCheck());
+    scanner.scanFiles(ImmutableList.of(new File("src/test/resources/checks/cowboy_req.erl"),
+      new File("src/test/resources/checks/todo.erl")));
+
+    for (SourceCode file : scanner.getIndex().search(new QueryByType(SourceFile.class))) {
+      CheckMessagesVerifier.verify(file.getCheckMessages()).next()
+        .withMessageThat(containsString("Parsing aborted after 100 grammar rule invocations"))
+        .noMore();
+    }
+    assertThat(scanner.getIndex().search(new QueryByType(SourceFile.class))).hasSize(2);
+  }
+
 }
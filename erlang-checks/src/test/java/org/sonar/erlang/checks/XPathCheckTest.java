@@ -23,9 +23,14 @@ package org.sonar.erlang.checks;
 import org.sonar.squidbridge.checks.CheckMessagesVerifier;
 import org.junit.Test;
 
+import org.sonar.squidbridge.api.CheckMessage;
 import org.sonar.squidbridge.api.SourceFile;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
 
 public class XPathCheckTest {
 
@@ -41,4 +46,24 @@ public class XPathCheckTest {
       "Do not use name: really_retain").noMore();
   }
 
+  @Test
+  public void all_nodes_of_a_rule() {
+    // answered by the index of the nodes by rule, the predicate goes through the XPath engine
+    List<Integer> indexed = lines("//caseExpression");
+    assertThat(indexed).isNotEmpty();
+    assertThat(indexed).isEqualTo(lines("//caseExpression[true()]"));
+  }
+
+  private static List<Integer> lines(String query) {
+    XPathCheck check = new XPathCheck();
+    check.xpathQuery = query;
+    SourceFile file = TestHelper.scanSingleFile(new File("src/test/resources/checks/depthofcases.erl"), check);
+    List<Integer> lines = new ArrayList<>();
+    for (CheckMessage message : file.getCheckMessages()) {
+      lines.add(message.getLine());
+    }
+    lines.sort(null);
+    return lines;
+  }
+
 }
@@ -0,0 +1,17 @@
+-module(recursivecalls).
+-import(lists, [reverse/1]).
+
+count([_|T]) ->
+    1 + ?MODULE:count(T);
+count([]) ->
+    0.
+
+walk([H|T]) ->
+    walk(H),
+    ?MODULE:walk(T);
+walk(_) ->
+    ok.
+
+%% reverse/1 is the one of lists
+reverse(L, Acc) ->
+    [reverse(L) | Acc].
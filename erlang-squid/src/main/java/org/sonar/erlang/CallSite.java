@@ -0,0 +1,155 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * What a call expression, or a {@code fun F/A} or {@code fun M:F/A} expression, refers to: a function of the
+ * module, a function imported with {@code -import}, a function of another module or, when the module or the
+ * function is the value of an expression or a variable, a function only known at run time. See {@link CallSites}
+ * for the ones cached during a walk.
+ */
+public final class CallSite {
+
+  public enum Kind {
+    LOCAL, IMPORTED, REMOTE, DYNAMIC
+  }
+
+  private final Kind kind;
+  @Nullable
+  private final FunctionId function;
+  private final int arity;
+
+  private CallSite(Kind kind, @Nullable FunctionId function, int arity) {
+    this.kind = kind;
+    this.function = function;
+    this.arity = arity;
+  }
+
+  /**
+   * The call of a {@code callExpression} of the module.
+   */
+  public static CallSite calledBy(ModuleSymbols symbols, AstNode callExpression) {
+    int arity = FunctionId.arity(callExpression.getFirstChild(ErlangGrammarImpl.arguments));
+    AstNode name = callExpression.getLastChild(ErlangGrammarImpl.callExpressionSecondMember);
+    if (callExpression.hasDirectChildren(ErlangGrammarImpl.colon)) {
+      String module = moduleName(callExpression.getFirstChild(ErlangGrammarImpl.callExpressionFirstMember));
+      return module != null && isAtom(name)
+        ? new CallSite(Kind.REMOTE, FunctionId.of(module, name.getTokenOriginalValue(), arity), arity)
+        : new CallSite(Kind.DYNAMIC, null, arity);
+    }
+    return isAtom(name) ? local(symbols, name.getTokenOriginalValue(), arity) : new CallSite(Kind.DYNAMIC, null, arity);
+  }
+
+  /**
+   * The function of a {@code funExpression} naming one, or null if the expression defines it.
+   */
+  @Nullable
+  public static CallSite referencedBy(ModuleSymbols symbols, AstNode funExpression) {
+    AstNode funcArity = funExpression.getFirstChild(ErlangGrammarImpl.funcArity);
+    if (funcArity == null) {
+      return null;
+    }
+    List<AstNode> literals = funcArity.getChildren(ErlangGrammarImpl.literal);
+    AstNode colon = funExpression.getFirstChild(ErlangGrammarImpl.colon);
+    AstNode module = colon == null ? null : colon.getPreviousSibling();
+    if (module == null && literals.size() == 3) {
+      module = literals.get(0);
+    }
+    AstNode name = literals.get(literals.size() - 2);
+    String value = literals.get(literals.size() - 1).getTokenOriginalValue();
+    if (!value.chars().allMatch(Character::isDigit)) {
+      return new CallSite(Kind.DYNAMIC, null, -1);
+    }
+    int arity = Integer.parseInt(value);
+    String moduleName = module == null ? null : moduleName(module);
+    if (!isAtom(name) || module != null && moduleName == null) {
+      return new CallSite(Kind.DYNAMIC, null, arity);
+    }
+    return module == null
+      ? local(symbols, name.getTokenOriginalValue(), arity)
+      : new CallSite(Kind.REMOTE, FunctionId.of(moduleName, name.getTokenOriginalValue(), arity), arity);
+  }
+
+  /**
+   * A function of the module, unless it is not declared there but imported from another one.
+   */
+  private static CallSite local(ModuleSymbols symbols, String name, int arity) {
+    FunctionId function = FunctionId.of(symbols.getModule(), name, arity);
+    if (symbols.function(function) == null) {
+      FunctionId imported = symbols.imported(function);
+      if (imported != null) {
+        return new CallSite(Kind.IMPORTED, imported, arity);
+      }
+    }
+    return new CallSite(Kind.LOCAL, function, arity);
+  }
+
+  /**
+   * The atom naming a module, or null if the module is only known at run time. A {@code ?MODULE} not expanded by
+   * the preprocessor is left unresolved too.
+   */
+  @Nullable
+  private static String moduleName(AstNode node) {
+    return isAtom(node) ? node.getTokenOriginalValue() : null;
+  }
+
+  private static boolean isAtom(AstNode node) {
+    if (node.getToken() != node.getLastToken()) {
+      return false;
+    }
+    char first = node.getTokenOriginalValue().charAt(0);
+    return Character.isLowerCase(first) || first == '\'';
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * The function called, null if it is only known at run time.
+   */
+  @Nullable
+  public FunctionId getFunction() {
+    return function;
+  }
+
+  /**
+   * The number of arguments, -1 if it is not known.
+   */
+  public int getArity() {
+    return arity;
+  }
+
+  public boolean calls(@Nullable FunctionId other) {
+    return function != null && function.equals(other);
+  }
+
+  @Override
+  public String toString() {
+    return kind + " " + (function == null ? ("?/" + arity) : function.toString());
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContext;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * The {@link CallSite}s of the call expressions being visited, resolved once when the scanner enters them and kept
+ * on a stack until it leaves them, so that all the visitors of a call share its resolution. The scanner registers
+ * it after the {@link ModuleSymbols} and before the other visitors.
+ */
+public final class CallSites extends SquidAstVisitor<LexerlessGrammar> {
+
+  private AstNode[] calls = new AstNode[8];
+  private CallSite[] sites = new CallSite[8];
+  private int depth;
+  private ModuleSymbols symbols;
+
+  /**
+   * The call sites of the visit of the {@link ErlangAstScanner}.
+   *
+   * @throws IllegalStateException if the context is not the one of the scanner
+   */
+  public static CallSites of(SquidAstVisitorContext<?> context) {
+    if (!(context instanceof ErlangVisitorContext)) {
+      throw new IllegalStateException("The call sites are only known with the context of the Erlang scanner");
+    }
+    return ((ErlangVisitorContext) context).getCallSites();
+  }
+
+  @Override
+  public void init() {
+    subscribeTo(ErlangGrammarImpl.callExpression);
+    symbols = ModuleSymbols.of(getContext());
+  }
+
+  @Override
+  public void visitFile(@Nullable AstNode astNode) {
+    Arrays.fill(calls, 0, depth, null);
+    Arrays.fill(sites, 0, depth, null);
+    depth = 0;
+  }
+
+  @Override
+  public void visitNode(AstNode astNode) {
+    if (depth == calls.length) {
+      calls = Arrays.copyOf(calls, depth * 2);
+      sites = Arrays.copyOf(sites, depth * 2);
+    }
+    calls[depth] = astNode;
+    sites[depth++] = CallSite.calledBy(symbols, astNode);
+  }
+
+  @Override
+  public void leaveNode(AstNode astNode) {
+    depth--;
+    calls[depth] = null;
+    sites[depth] = null;
+  }
+
+  /**
+   * The call site of a call expression of the visited module, from the stack when it is being visited.
+   */
+  public CallSite resolve(AstNode callExpression) {
+    for (int i = depth - 1; i >= 0; i--) {
+      if (calls[i] == callExpression) {
+        return sites[i];
+      }
+    }
+    return CallSite.calledBy(symbols, callExpression);
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.google.common.base.Throwables;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.AstScannerExceptionHandler;
+import org.sonar.squidbridge.CommentAnalyser;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.AnalysisException;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.measures.MetricDef;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The {@link AstScanner} of squidbridge, but visiting the trees with an {@link ErlangAstWalker}. The files, the parse
+ * errors, the cancellation and the decoration of the tree of source code are handled as it does.
+ */
+final class DispatchingAstScanner extends AstScanner<LexerlessGrammar> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DispatchingAstScanner.class);
+
+  private final List<SquidAstVisitor<LexerlessGrammar>> visitors;
+  private final Parser<LexerlessGrammar> parser;
+  private final SquidAstVisitorContextImpl<LexerlessGrammar> context;
+  private final MetricDef filesMetric;
+
+  private DispatchingAstScanner(Builder builder) {
+    super(builder);
+    this.visitors = new ArrayList<>(builder.visitors);
+    this.parser = builder.parser;
+    this.context = builder.context;
+    this.filesMetric = builder.filesMetric;
+  }
+
+  @Override
+  public void scanFiles(Collection<File> files) {
+    for (SquidAstVisitor<LexerlessGrammar> visitor : visitors) {
+      visitor.init();
+    }
+    ErlangAstWalker walker = new ErlangAstWalker(visitors);
+    for (File file : files) {
+      if (Thread.interrupted()) {
+        throw new AnalysisException("Analysis cancelled");
+      }
+      context.setFile(file, filesMetric);
+      Exception parseException = null;
+      AstNode ast = null;
+      try {
+        ast = parser.parse(file);
+      } catch (RecognitionException e) {
+        checkInterrupted(e);
+        parseException = e;
+        LOG.error("Unable to parse file: " + file.getAbsolutePath());
+        LOG.error(e.getMessage());
+      } catch (Exception e) {
+        checkInterrupted(e);
+        parseException = e;
+        LOG.error("Unable to parse file: " + file.getAbsolutePath(), e);
+      } catch (Throwable e) {
+        throw new AnalysisException("Unable to parse file: " + file.getAbsolutePath(), e);
+      }
+
+      try {
+        if (parseException == null) {
+          walker.walkAndVisit(ast);
+        } else {
+          visitError(parseException);
+        }
+        while (!(context.peekSourceCode() instanceof SourceProject)) {
+          context.popSourceCode();
+        }
+      } catch (Throwable e) {
+        throw new AnalysisException("Unable to analyze file: " + file.getAbsolutePath(), e);
+      }
+    }
+    for (SquidAstVisitor<LexerlessGrammar> visitor : visitors) {
+      visitor.destroy();
+    }
+    decorateSquidTree();
+  }
+
+  private void visitError(Exception parseException) {
+    for (SquidAstVisitor<LexerlessGrammar> visitor : visitors) {
+      visitor.visitFile(null);
+    }
+    for (SquidAstVisitor<LexerlessGrammar> visitor : visitors) {
+      if (visitor instanceof AstScannerExceptionHandler) {
+        if (parseException instanceof RecognitionException) {
+          ((AstScannerExceptionHandler) visitor).processRecognitionException((RecognitionException) parseException);
+        } else {
+          ((AstScannerExceptionHandler) visitor).processException(parseException);
+        }
+      }
+    }
+    for (SquidAstVisitor<LexerlessGrammar> visitor : visitors) {
+      visitor.leaveFile(null);
+    }
+  }
+
+  private static void checkInterrupted(Exception e) {
+    Throwable cause = Throwables.getRootCause(e);
+    if (cause instanceof InterruptedException || cause instanceof InterruptedIOException) {
+      throw new AnalysisException("Analysis cancelled", e);
+    }
+  }
+
+  /**
+   * Keeps what the scanner needs, which the builder of squidbridge does not expose.
+   */
+  static final class Builder extends AstScanner.Builder<LexerlessGrammar> {
+
+    private final List<SquidAstVisitor<LexerlessGrammar>> visitors = new ArrayList<>();
+    private final SquidAstVisitorContextImpl<LexerlessGrammar> context;
+    private Parser<LexerlessGrammar> parser;
+    private MetricDef filesMetric;
+    private boolean commentAnalyser;
+
+    Builder(SquidAstVisitorContextImpl<LexerlessGrammar> context) {
+      super(context);
+      this.context = context;
+    }
+
+    @Override
+    public Builder setBaseParser(Parser<LexerlessGrammar> baseParser) {
+      super.setBaseParser(baseParser);
+      this.parser = baseParser;
+      return this;
+    }
+
+    @Override
+    public Builder setCommentAnalyser(CommentAnalyser commentAnalyser) {
+      super.setCommentAnalyser(commentAnalyser);
+      this.commentAnalyser = true;
+      return this;
+    }
+
+    @Override
+    public Builder withSquidAstVisitor(SquidAstVisitor<LexerlessGrammar> visitor) {
+      super.withSquidAstVisitor(visitor);
+      visitors.add(visitor);
+      return this;
+    }
+
+    @Override
+    public Builder setFilesMetric(MetricDef filesMetric) {
+      super.setFilesMetric(filesMetric);
+      this.filesMetric = filesMetric;
+      return this;
+    }
+
+    @Override
+    public AstScanner<LexerlessGrammar> build() {
+      checkState(parser != null, "baseParser must be set");
+      checkState(commentAnalyser, "commentAnalyser must be set");
+      checkState(filesMetric != null, "filesMetric must be set");
+      return new DispatchingAstScanner(this);
+    }
+
+  }
+
+}
@@ -30,8 +30,6 @@ import org.sonar.squidbridge.SourceCodeBuilderVisitor;
 
 import org.sonar.squidbridge.SquidAstVisitor;
 
-import org.sonar.squidbridge.SquidAstVisitorContextImpl;
-
 import org.sonar.squidbridge.metrics.CommentsVisitor;
 
 import org.sonar.squidbridge.metrics.ComplexityVisitor;
@@ -43,11 +41,17 @@ import org.sonar.squidbridge.metrics.LinesOfCodeVisitor;
 import org.sonar.squidbridge.metrics.LinesVisitor;
 import org.sonar.erlang.api.ErlangMetric;
 import org.sonar.erlang.metrics.BranchesOfRecursion;
+import org.sonar.erlang.metrics.CallGraph;
 import org.sonar.erlang.metrics.ErlangComplexityVisitor;
 import org.sonar.erlang.metrics.ErlangStatementVisitor;
+import org.sonar.erlang.metrics.ImportedModules;
+import org.sonar.erlang.metrics.IncludedFiles;
+import org.sonar.erlang.metrics.MaxDepthOfCalling;
 import org.sonar.erlang.metrics.NumberOfFunctionArgument;
 import org.sonar.erlang.metrics.PublicDocumentedApiCounter;
+import org.sonar.erlang.metrics.PublicDocumentedApiTokenCounter;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.erlang.parser.ErlangParser;
 
 import org.sonar.squidbridge.api.SourceClass;
 
@@ -57,9 +61,10 @@ import org.sonar.squidbridge.api.SourceFunction;
 
 import org.sonar.squidbridge.api.SourceProject;
 import org.sonar.sslr.parser.LexerlessGrammar;
-import org.sonar.sslr.parser.ParserAdapter;
 
 import java.nio.charset.Charset;
+import java.util.List;
+import javax.annotation.Nullable;
 
 public final class ErlangAstScanner {
 
@@ -69,12 +74,29 @@ public final class ErlangAstScanner {
   @SafeVarargs
   public static AstScanner<LexerlessGrammar> create(Charset charset,
                                                     SquidAstVisitor<LexerlessGrammar>... visitors) {
-    final SquidAstVisitorContextImpl<LexerlessGrammar> context = new SquidAstVisitorContextImpl<>(
-      new SourceProject("Erlang Project"));
-    final Parser<LexerlessGrammar> parser = new ParserAdapter<>(charset, ErlangGrammarImpl.createGrammar());
+    return create(new ErlangConfiguration(charset), visitors);
+  }
 
-    AstScanner.Builder<LexerlessGrammar> builder = AstScanner.builder(context)
-      .setBaseParser(parser);
+  @SafeVarargs
+  public static AstScanner<LexerlessGrammar> create(ErlangConfiguration conf,
+                                                    SquidAstVisitor<LexerlessGrammar>... visitors) {
+    return create(conf, null, visitors);
+  }
+
+  /**
+   * @param callDepths if not null, gets the {@link MaxDepthOfCalling} visitor of the scanner instead of letting it
+   * measure the functions with the calls of the scanned files only
+   */
+  @SafeVarargs
+  static AstScanner<LexerlessGrammar> create(ErlangConfiguration conf, @Nullable List<MaxDepthOfCalling> callDepths,
+                                             SquidAstVisitor<LexerlessGrammar>... visitors) {
+    final ErlangVisitorContext context = new ErlangVisitorContext(new SourceProject("Erlang Project"), conf.getCharset());
+    final Parser<LexerlessGrammar> parser = ErlangParser.create(conf);
+
+    AstScanner.Builder<LexerlessGrammar> builder = conf.isDispatchWalker()
+      ? new DispatchingAstScanner.Builder(context)
+      : AstScanner.builder(context);
+    builder.setBaseParser(parser);
 
     /* Metrics */
     builder.withMetrics(ErlangMetric.values());
@@ -85,10 +107,49 @@ public final class ErlangAstScanner {
     /* Files */
     builder.setFilesMetric(ErlangMetric.FILES);
 
+    if (conf.isLexicalOnly()) {
+      addLexicalVisitors(builder);
+    } else {
+      builder.withSquidAstVisitor(context.getScopes());
+      builder.withSquidAstVisitor(context.getSymbols());
+      builder.withSquidAstVisitor(context.getCallSites());
+      addVisitors(builder, conf, context.getSymbols(), callDepths);
+    }
+
+    /* External visitors (typically Check ones) */
+    for (SquidAstVisitor<LexerlessGrammar> visitor : visitors) {
+      builder.withSquidAstVisitor(visitor);
+    }
+    return builder.build();
+  }
+
+  /**
+   * The visitors of the lexical only analysis, which need nothing but the tokens.
+   */
+  private static void addLexicalVisitors(AstScanner.Builder<LexerlessGrammar> builder) {
+    addLinesVisitors(builder);
+
+    /* Public API counter */
+    builder.withSquidAstVisitor(new PublicDocumentedApiTokenCounter());
+  }
+
+  private static void addLinesVisitors(AstScanner.Builder<LexerlessGrammar> builder) {
+    builder.withSquidAstVisitor(new LinesVisitor<>(ErlangMetric.LINES));
+    builder.withSquidAstVisitor(new LinesOfCodeVisitor<>(
+      ErlangMetric.LINES_OF_CODE));
+
+    builder.withSquidAstVisitor(CommentsVisitor.<LexerlessGrammar>builder().withCommentMetric(
+      ErlangMetric.COMMENT_LINES)
+      .withNoSonar(true)
+      .withIgnoreHeaderComment(false).build());
+  }
+
+  private static void addVisitors(AstScanner.Builder<LexerlessGrammar> builder, ErlangConfiguration conf,
+                                  ModuleSymbols symbols, @Nullable List<MaxDepthOfCalling> callDepths) {
     /* Classes = modules */
     builder.withSquidAstVisitor(new SourceCodeBuilderVisitor<>(
             (parentSourceCode, astNode) -> {
-              String className = astNode.getFirstDescendant(ErlangGrammarImpl.moduleAttr).getFirstChild(ErlangGrammarImpl.atom).getTokenValue();
+              String className = symbols.getModule();
               SourceClass cls = new SourceClass(className + ":"
                 + astNode.getToken().getLine());
               cls.setStartAtLine(astNode.getTokenLine());
@@ -114,7 +175,7 @@ public final class ErlangAstScanner {
             AstNode funcArity = ast.getFirstChild(ErlangGrammarImpl.funcArity);
             if (funcArity == null) {
               AstNode args = ast.getFirstDescendant(ErlangGrammarImpl.functionDeclarationNoName).getFirstChild(ErlangGrammarImpl.arguments);
-              return "FUN/" + countArgs(args) + ":"
+              return "FUN/" + FunctionId.arity(args) + ":"
                 + ast.getTokenLine() + "," + ast.getToken().getColumn();
             } else {
               return "FUN/" + funcArity.getTokenOriginalValue() + "/"
@@ -129,41 +190,18 @@ public final class ErlangAstScanner {
             } else {
               clause = ast;
             }
-            String functionName = clause.getFirstChild(ErlangGrammarImpl.clauseHead)
-              .getTokenValue();
-            return functionName + "/" + getArity(clause) + ((!isDec) ? "c" : "") + ":"
-              + clause.getTokenLine();
+            FunctionId function = FunctionId.declaredBy("", clause);
+            return function.getName() + "/" + function.getArity() + ((!isDec) ? "c" : "") + ":"
+              + function.getLine();
           }
         }
-
-        private String getArity(AstNode ast) {
-          AstNode args = ast.getFirstChild(ErlangGrammarImpl.clauseHead)
-            .getFirstChild(ErlangGrammarImpl.funcDecl)
-            .getFirstChild(ErlangGrammarImpl.arguments);
-          return countArgs(args);
-        }
-
-        private String countArgs(AstNode args) {
-          int num = args.getNumberOfChildren() > 3
-            ? args.getChildren(ErlangGrammarImpl.comma).size() + 1
-            : args.getNumberOfChildren() - 2;
-          return String.valueOf(num);
-        }
       }, ErlangGrammarImpl.functionDeclaration, ErlangGrammarImpl.functionClause, ErlangGrammarImpl.funExpression));
 
     builder.withSquidAstVisitor(CounterVisitor.<LexerlessGrammar>builder().setMetricDef(
       ErlangMetric.FUNCTIONS).subscribeTo(ErlangGrammarImpl.functionDeclaration).build());
 
     /* Metrics */
-
-    builder.withSquidAstVisitor(new LinesVisitor<>(ErlangMetric.LINES));
-    builder.withSquidAstVisitor(new LinesOfCodeVisitor<>(
-      ErlangMetric.LINES_OF_CODE));
-
-    builder.withSquidAstVisitor(CommentsVisitor.<LexerlessGrammar>builder().withCommentMetric(
-      ErlangMetric.COMMENT_LINES)
-      .withNoSonar(true)
-      .withIgnoreHeaderComment(false).build());
+    addLinesVisitors(builder);
 
     /* Statements */
     builder.withSquidAstVisitor(new ErlangStatementVisitor());
@@ -192,10 +230,16 @@ public final class ErlangAstScanner {
     builder.withSquidAstVisitor(ComplexityVisitor.<LexerlessGrammar>builder().setMetricDef(
       ErlangMetric.NUM_OF_MACROS).subscribeTo(ErlangGrammarImpl.defineAttr).build());
 
-    /* External visitors (typically Check ones) */
-    for (SquidAstVisitor<LexerlessGrammar> visitor : visitors) {
-      builder.withSquidAstVisitor(visitor);
+    /* Calls between the functions of the project */
+    CallGraph callGraph = new CallGraph();
+    MaxDepthOfCalling maxDepthOfCalling = new MaxDepthOfCalling(callGraph, callDepths == null);
+    if (callDepths != null) {
+      callDepths.add(maxDepthOfCalling);
     }
-    return builder.build();
+    builder.withSquidAstVisitor(maxDepthOfCalling);
+    builder.withSquidAstVisitor(new ImportedModules(callGraph));
+
+    /* Included files */
+    builder.withSquidAstVisitor(new IncludedFiles());
   }
 }
@@ -0,0 +1,144 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.AstVisitor;
+import com.sonar.sslr.api.Token;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Visits a tree like the {@link com.sonar.sslr.impl.ast.AstWalker} of SSLR, in the same order, but finds the visitors
+ * of a node in an array indexed by the ordinal of its {@link ErlangGrammarImpl} rule, built once, and walks the tree
+ * with a stack kept from one file to the next instead of recursion. The nodes of other types, such as the tokens of
+ * the lexer based front end, are looked up by identity.
+ */
+public final class ErlangAstWalker {
+
+  private static final AstVisitor[] NONE = new AstVisitor[0];
+  private static final int INITIAL_DEPTH = 64;
+
+  private final AstVisitor[] visitors;
+  private final AstVisitor[][] visitorsByRule = new AstVisitor[ErlangGrammarImpl.values().length][];
+  private final Map<AstNodeType, AstVisitor[]> visitorsByOtherType = new IdentityHashMap<>();
+  private final AstAndTokenVisitor[] tokenVisitors;
+
+  private AstNode[] nodes = new AstNode[INITIAL_DEPTH];
+  private AstVisitor[][] nodeVisitors = new AstVisitor[INITIAL_DEPTH][];
+  private int[] nextChild = new int[INITIAL_DEPTH];
+  private Token lastVisitedToken;
+
+  /**
+   * @param visitors initialized visitors, as their subscriptions are read here
+   */
+  public ErlangAstWalker(List<? extends AstVisitor> visitors) {
+    this.visitors = visitors.toArray(new AstVisitor[visitors.size()]);
+    Map<AstNodeType, List<AstVisitor>> byType = new IdentityHashMap<>();
+    List<AstAndTokenVisitor> tokens = new ArrayList<>();
+    for (AstVisitor visitor : visitors) {
+      for (AstNodeType type : visitor.getAstNodeTypesToVisit()) {
+        byType.computeIfAbsent(type, t -> new ArrayList<>()).add(visitor);
+      }
+      if (visitor instanceof AstAndTokenVisitor) {
+        tokens.add((AstAndTokenVisitor) visitor);
+      }
+    }
+    Arrays.fill(visitorsByRule, NONE);
+    for (Map.Entry<AstNodeType, List<AstVisitor>> entry : byType.entrySet()) {
+      AstVisitor[] subscribed = entry.getValue().toArray(new AstVisitor[entry.getValue().size()]);
+      if (entry.getKey() instanceof ErlangGrammarImpl) {
+        visitorsByRule[((ErlangGrammarImpl) entry.getKey()).ordinal()] = subscribed;
+      } else {
+        visitorsByOtherType.put(entry.getKey(), subscribed);
+      }
+    }
+    this.tokenVisitors = tokens.toArray(new AstAndTokenVisitor[tokens.size()]);
+  }
+
+  public void walkAndVisit(AstNode ast) {
+    for (AstVisitor visitor : visitors) {
+      visitor.visitFile(ast);
+    }
+    walk(ast);
+    for (int i = visitors.length - 1; i >= 0; i--) {
+      visitors[i].leaveFile(ast);
+    }
+  }
+
+  private void walk(AstNode root) {
+    int depth = 0;
+    enter(depth, root);
+    while (depth >= 0) {
+      AstNode node = nodes[depth];
+      int child = nextChild[depth];
+      if (child < node.getNumberOfChildren()) {
+        nextChild[depth] = child + 1;
+        depth++;
+        enter(depth, node.getChildren().get(child));
+      } else {
+        AstVisitor[] subscribed = nodeVisitors[depth];
+        for (int i = subscribed.length - 1; i >= 0; i--) {
+          subscribed[i].leaveNode(node);
+        }
+        nodes[depth] = null;
+        depth--;
+      }
+    }
+  }
+
+  private void enter(int depth, AstNode node) {
+    if (depth == nodes.length) {
+      nodes = Arrays.copyOf(nodes, depth * 2);
+      nodeVisitors = Arrays.copyOf(nodeVisitors, depth * 2);
+      nextChild = Arrays.copyOf(nextChild, depth * 2);
+    }
+    AstVisitor[] subscribed = visitors(node.getType());
+    for (AstVisitor visitor : subscribed) {
+      visitor.visitNode(node);
+    }
+    Token token = node.getToken();
+    if (token != null && token != lastVisitedToken) {
+      lastVisitedToken = token;
+      for (AstAndTokenVisitor visitor : tokenVisitors) {
+        visitor.visitToken(token);
+      }
+    }
+    nodes[depth] = node;
+    nodeVisitors[depth] = subscribed;
+    nextChild[depth] = 0;
+  }
+
+  private AstVisitor[] visitors(AstNodeType type) {
+    if (type instanceof ErlangGrammarImpl) {
+      return visitorsByRule[((ErlangGrammarImpl) type).ordinal()];
+    }
+    AstVisitor[] subscribed = visitorsByOtherType.get(type);
+    return subscribed == null ? NONE : subscribed;
+  }
+
+}
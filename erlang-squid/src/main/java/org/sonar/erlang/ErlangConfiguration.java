@@ -20,14 +20,251 @@
 package org.sonar.erlang;
 
 
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.erlang.parser.ParseProfile;
+import org.sonar.erlang.preprocessor.HeaderCache;
 import org.sonar.squidbridge.api.SquidConfiguration;
 
+import java.io.File;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.annotation.Nullable;
 
 public class ErlangConfiguration extends SquidConfiguration {
 
+  /**
+   * System property selecting the default {@link FrontEnd}, mostly to run the same tests and benchmarks with both.
+   */
+  public static final String FRONT_END_PROPERTY = "sonar.erlang.parser.frontEnd";
+
+  public enum FrontEnd {
+    /**
+     * {@link org.sonar.erlang.parser.ErlangGrammarImpl#createGrammar()} working directly on the characters.
+     */
+    LEXERLESS,
+    /**
+     * {@link org.sonar.erlang.lexer.ErlangLexer} followed by {@link org.sonar.erlang.parser.ErlangGrammarImpl#createLexerfulGrammar()}.
+     */
+    LEXER
+  }
+
+  /**
+   * System property with the default comma separated list of {@link #getMemoizedRules() memoized rules}.
+   */
+  public static final String MEMOIZED_RULES_PROPERTY = "sonar.erlang.parser.memoizedRules";
+
+  /**
+   * System property enabling the {@link #getParseProfile() parse profile}, with the default thresholds.
+   */
+  public static final String PROFILE_PROPERTY = "sonar.erlang.parser.profile";
+
+  /**
+   * System properties with the default {@link #getParseTimeoutMillis() parse timeout} and
+   * {@link #getParseMaxSteps() parse steps}.
+   */
+  public static final String PARSE_TIMEOUT_PROPERTY = "sonar.erlang.parser.timeoutMillis";
+  public static final String PARSE_MAX_STEPS_PROPERTY = "sonar.erlang.parser.maxSteps";
+
+  /**
+   * System property disabling the {@link #isPreprocessorEnabled() preprocessor} when set to false.
+   */
+  public static final String PREPROCESSOR_PROPERTY = "sonar.erlang.preprocessor";
+
+  /**
+   * System property setting the {@link #getSplitThreshold() split threshold}.
+   */
+  public static final String SPLIT_THRESHOLD_PROPERTY = "sonar.erlang.parser.splitThreshold";
+  public static final long DEFAULT_SPLIT_THRESHOLD = 256 * 1024L;
+
+  /**
+   * System property enabling the {@link #isLexicalOnly() lexical only analysis} when set to true.
+   */
+  public static final String LEXICAL_ONLY_PROPERTY = "sonar.erlang.parser.lexicalOnly";
+
+  /**
+   * System property selecting the walker of SSLR instead of the {@link #isDispatchWalker() dispatching one} when set
+   * to false.
+   */
+  public static final String DISPATCH_WALKER_PROPERTY = "sonar.erlang.scanner.dispatchWalker";
+
+  private FrontEnd frontEnd;
+  private final Set<ErlangGrammarImpl> memoizedRules = EnumSet.noneOf(ErlangGrammarImpl.class);
+  @Nullable
+  private ParseProfile parseProfile;
+  private long parseTimeoutMillis;
+  private long parseMaxSteps;
+  private boolean preprocessorEnabled;
+  private long splitThreshold;
+  private boolean lexicalOnly;
+  private boolean dispatchWalker;
+  private final List<File> includePaths = new ArrayList<>();
+  @Nullable
+  private HeaderCache headerCache;
+
   public ErlangConfiguration(Charset charset) {
     super(charset);
+    String property = System.getProperty(FRONT_END_PROPERTY);
+    this.frontEnd = property == null ? FrontEnd.LEXERLESS : FrontEnd.valueOf(property.trim().toUpperCase(Locale.ENGLISH));
+    String rules = System.getProperty(MEMOIZED_RULES_PROPERTY);
+    if (rules != null) {
+      setMemoizedRules(Arrays.asList(rules.split(",")));
+    }
+    if (Boolean.getBoolean(PROFILE_PROPERTY)) {
+      this.parseProfile = new ParseProfile(ParseProfile.DEFAULT_SLOW_FILE_MILLIS, ParseProfile.DEFAULT_TOP_RULES);
+    }
+    this.parseTimeoutMillis = Long.getLong(PARSE_TIMEOUT_PROPERTY, 0);
+    this.parseMaxSteps = Long.getLong(PARSE_MAX_STEPS_PROPERTY, 0);
+    this.preprocessorEnabled = !"false".equals(System.getProperty(PREPROCESSOR_PROPERTY));
+    this.splitThreshold = Long.getLong(SPLIT_THRESHOLD_PROPERTY, DEFAULT_SPLIT_THRESHOLD);
+    this.lexicalOnly = Boolean.getBoolean(LEXICAL_ONLY_PROPERTY);
+    this.dispatchWalker = !"false".equals(System.getProperty(DISPATCH_WALKER_PROPERTY));
+  }
+
+  public FrontEnd getFrontEnd() {
+    return frontEnd;
+  }
+
+  public ErlangConfiguration setFrontEnd(FrontEnd frontEnd) {
+    this.frontEnd = frontEnd;
+    return this;
+  }
+
+  /**
+   * Rules parsed at most once per input position, see {@link org.sonar.erlang.parser.ParseMemo}. None by default.
+   */
+  public Set<ErlangGrammarImpl> getMemoizedRules() {
+    return memoizedRules;
+  }
+
+  /**
+   * @param ruleNames names of {@link ErlangGrammarImpl} rules, blank ones are ignored
+   */
+  public ErlangConfiguration setMemoizedRules(Collection<String> ruleNames) {
+    memoizedRules.clear();
+    for (String name : ruleNames) {
+      if (!name.trim().isEmpty()) {
+        memoizedRules.add(ErlangGrammarImpl.valueOf(name.trim()));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Collects the per rule statistics of every parse when not null.
+   */
+  @Nullable
+  public ParseProfile getParseProfile() {
+    return parseProfile;
+  }
+
+  public ErlangConfiguration setParseProfile(@Nullable ParseProfile parseProfile) {
+    this.parseProfile = parseProfile;
+    return this;
+  }
+
+  /**
+   * Time after which the parsing of a file is abandoned, with a
+   * {@link org.sonar.erlang.parser.ParseBudgetExceededException}. 0, the default, for no limit.
+   */
+  public long getParseTimeoutMillis() {
+    return parseTimeoutMillis;
+  }
+
+  /**
+   * Grammar rule invocations after which the parsing of a file is abandoned, with a
+   * {@link org.sonar.erlang.parser.ParseBudgetExceededException}. 0, the default, for no limit.
+   */
+  public long getParseMaxSteps() {
+    return parseMaxSteps;
+  }
+
+  public ErlangConfiguration setParseBudget(long timeoutMillis, long maxSteps) {
+    this.parseTimeoutMillis = timeoutMillis;
+    this.parseMaxSteps = maxSteps;
+    return this;
+  }
+
+  /**
+   * Whether the files which cannot be parsed are parsed again once their macros are expanded by the
+   * {@link org.sonar.erlang.preprocessor.Preprocessor}. True by default.
+   */
+  public boolean isPreprocessorEnabled() {
+    return preprocessorEnabled;
+  }
+
+  public ErlangConfiguration setPreprocessorEnabled(boolean preprocessorEnabled) {
+    this.preprocessorEnabled = preprocessorEnabled;
+    return this;
+  }
+
+  /**
+   * Size, in bytes, from which the top level forms of a file are parsed in parallel on the common fork join pool,
+   * and then put together into one module tree. 0 for never. Not used while {@link #getParseProfile() profiling}.
+   */
+  public long getSplitThreshold() {
+    return splitThreshold;
+  }
+
+  public ErlangConfiguration setSplitThreshold(long splitThreshold) {
+    this.splitThreshold = splitThreshold;
+    return this;
+  }
+
+  /**
+   * Whether the files are only lexed, for the visitors which need nothing but their tokens, comments and lines.
+   * The tree of a file is then its {@link ErlangGrammarImpl#module} node with the tokens as children, and the
+   * scanner measures nothing which needs the syntax, such as the functions, the statements or the complexity.
+   * False by default.
+   */
+  public boolean isLexicalOnly() {
+    return lexicalOnly;
+  }
+
+  public ErlangConfiguration setLexicalOnly(boolean lexicalOnly) {
+    this.lexicalOnly = lexicalOnly;
+    return this;
+  }
+
+  /**
+   * Whether the scanner visits the trees with an {@link ErlangAstWalker}, which finds the visitors of a node by the
+   * ordinal of its rule, rather than with the walker of SSLR. True by default.
+   */
+  public boolean isDispatchWalker() {
+    return dispatchWalker;
+  }
+
+  public ErlangConfiguration setDispatchWalker(boolean dispatchWalker) {
+    this.dispatchWalker = dispatchWalker;
+    return this;
+  }
+
+  /**
+   * The directories where the included files are looked for, after the directory of the including file.
+   */
+  public List<File> getIncludePaths() {
+    return includePaths;
+  }
+
+  public ErlangConfiguration setIncludePaths(Collection<File> includePaths) {
+    this.includePaths.clear();
+    this.includePaths.addAll(includePaths);
+    return this;
+  }
+
+  /**
+   * The included files parsed so far, shared by all the scanners created with this configuration.
+   */
+  public synchronized HeaderCache getHeaderCache() {
+    if (headerCache == null) {
+      headerCache = new HeaderCache(this);
+    }
+    return headerCache;
   }
 
 }
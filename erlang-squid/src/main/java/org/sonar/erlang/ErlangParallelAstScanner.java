@@ -0,0 +1,210 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.erlang.metrics.CallGraph;
+import org.sonar.erlang.metrics.MaxDepthOfCalling;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.AnalysisException;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeSearchEngine;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.indexer.QueryByType;
+import org.sonar.squidbridge.indexer.SquidIndex;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Scans files with several independent {@link AstScanner} instances in parallel.
+ * Every worker gets its own parser and its own set of visitors (checks included),
+ * so no parsing or visiting state is shared between threads. Once all workers are
+ * done, the per-file results are merged into a single project and index, in the
+ * order the files were given, so the outcome is the same as a sequential scan.
+ */
+public class ErlangParallelAstScanner {
+
+  private final ErlangConfiguration conf;
+  private final int threads;
+  private final Supplier<List<SquidAstVisitor<LexerlessGrammar>>> visitorsSupplier;
+
+  private final SourceProject project = new SourceProject("Erlang Project");
+  private final SquidIndex index = new SquidIndex();
+  private final List<MaxDepthOfCalling> callDepths = new ArrayList<>();
+  private CallGraph knownCalls;
+
+  /**
+   * @param threads number of workers, values below 1 mean one worker per available processor
+   * @param visitorsSupplier called once per worker, must return fresh visitor instances on every call
+   */
+  public ErlangParallelAstScanner(Charset charset, int threads, Supplier<List<SquidAstVisitor<LexerlessGrammar>>> visitorsSupplier) {
+    this(new ErlangConfiguration(charset), threads, visitorsSupplier);
+  }
+
+  public ErlangParallelAstScanner(ErlangConfiguration conf, int threads, Supplier<List<SquidAstVisitor<LexerlessGrammar>>> visitorsSupplier) {
+    this.conf = conf;
+    this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    this.visitorsSupplier = visitorsSupplier;
+    index.index(project);
+  }
+
+  /**
+   * The calls of the files of the project which are not scanned, like the ones restored from a cache, so that
+   * the {@link ErlangMetric#MAX_DEPTH_OF_CALLING depth of calling} of the scanned functions goes through them.
+   */
+  public void setKnownCalls(@Nullable CallGraph knownCalls) {
+    this.knownCalls = knownCalls;
+  }
+
+  public void scanFiles(Collection<File> files) {
+    List<List<File>> buckets = partition(files, Math.max(1, Math.min(threads, files.size())));
+    List<AstScanner<LexerlessGrammar>> scanners = new ArrayList<>(buckets.size());
+    for (int i = 0; i < buckets.size(); i++) {
+      scanners.add(createScanner());
+    }
+
+    if (buckets.size() == 1) {
+      scanners.get(0).scanFiles(buckets.get(0));
+    } else {
+      runInParallel(scanners, buckets);
+    }
+    // the calls go from a worker to another
+    MaxDepthOfCalling.measure(knownCalls, callDepths);
+    callDepths.clear();
+
+    Map<String, SourceCode> scannedFiles = new HashMap<>();
+    for (AstScanner<LexerlessGrammar> scanner : scanners) {
+      for (SourceCode file : scanner.getIndex().search(new QueryByType(SourceFile.class))) {
+        scannedFiles.put(file.getKey(), file);
+      }
+    }
+    for (File file : files) {
+      SourceCode sourceFile = scannedFiles.get(file.getAbsolutePath());
+      if (sourceFile != null) {
+        merge(sourceFile);
+      }
+    }
+  }
+
+  public SourceCodeSearchEngine getIndex() {
+    return index;
+  }
+
+  public SourceProject getProject() {
+    return project;
+  }
+
+  @SuppressWarnings("unchecked")
+  private AstScanner<LexerlessGrammar> createScanner() {
+    List<SquidAstVisitor<LexerlessGrammar>> visitors = visitorsSupplier.get();
+    return ErlangAstScanner.create(conf, callDepths, visitors.toArray(new SquidAstVisitor[visitors.size()]));
+  }
+
+  private static void runInParallel(List<AstScanner<LexerlessGrammar>> scanners, List<List<File>> buckets) {
+    ExecutorService executor = Executors.newFixedThreadPool(scanners.size());
+    try {
+      List<Future<?>> futures = new ArrayList<>(scanners.size());
+      for (int i = 0; i < scanners.size(); i++) {
+        AstScanner<LexerlessGrammar> scanner = scanners.get(i);
+        List<File> bucket = buckets.get(i);
+        futures.add(executor.submit(() -> scanner.scanFiles(bucket)));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AnalysisException("Analysis interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AnalysisException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Distributes the files between the workers, biggest files first, always to the
+   * least loaded worker, using the file size as an estimate of the parsing cost.
+   */
+  static List<List<File>> partition(Collection<File> files, int count) {
+    List<File> sorted = new ArrayList<>(files);
+    sorted.sort(Comparator.comparingLong(File::length).reversed());
+    List<List<File>> buckets = new ArrayList<>(count);
+    long[] loads = new long[count];
+    for (int i = 0; i < count; i++) {
+      buckets.add(new ArrayList<>());
+    }
+    for (File file : sorted) {
+      int target = 0;
+      for (int i = 1; i < count; i++) {
+        if (loads[i] < loads[target]) {
+          target = i;
+        }
+      }
+      buckets.get(target).add(file);
+      loads[target] += Math.max(1, file.length());
+    }
+    return buckets;
+  }
+
+  private void merge(SourceCode sourceFile) {
+    project.addChild(sourceFile);
+    indexChildren(sourceFile);
+    for (ErlangMetric metric : ErlangMetric.values()) {
+      if (!metric.isCalculatedMetric() && metric.isThereAggregationFormula()) {
+        project.add(metric, sourceFile);
+      }
+    }
+    // the deepest value, not a sum
+    int depth = sourceFile.getInt(ErlangMetric.MAX_DEPTH_OF_CALLING);
+    if (project.getInt(ErlangMetric.MAX_DEPTH_OF_CALLING) < depth) {
+      project.setMeasure(ErlangMetric.MAX_DEPTH_OF_CALLING, depth);
+    }
+  }
+
+  private void indexChildren(SourceCode sourceCode) {
+    if (sourceCode.hasChildren()) {
+      for (SourceCode child : sourceCode.getChildren()) {
+        index.index(child);
+        indexChildren(child);
+      }
+    }
+  }
+
+}
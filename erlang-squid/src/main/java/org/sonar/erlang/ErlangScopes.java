@@ -0,0 +1,135 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContext;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * The enclosing functions, clauses, statements, case expressions, define and flow control attributes of the node
+ * being visited, kept on a stack per rule as the nodes are entered and left, so that the visitors do not climb the
+ * tree for them. The scanner registers it before all the other visitors: while they visit or leave a node, the
+ * stacks include that node.
+ */
+public final class ErlangScopes extends SquidAstVisitor<LexerlessGrammar> {
+
+  private static final ErlangGrammarImpl[] RULES = {
+    ErlangGrammarImpl.functionDeclaration, ErlangGrammarImpl.functionClause, ErlangGrammarImpl.clauseBody,
+    ErlangGrammarImpl.statement, ErlangGrammarImpl.caseExpression, ErlangGrammarImpl.defineAttr,
+    ErlangGrammarImpl.flowControlAttr};
+
+  private final AstNode[][] stacks = new AstNode[ErlangGrammarImpl.values().length][];
+  private final int[] depths = new int[ErlangGrammarImpl.values().length];
+
+  public ErlangScopes() {
+    for (ErlangGrammarImpl rule : RULES) {
+      stacks[rule.ordinal()] = new AstNode[8];
+    }
+  }
+
+  /**
+   * The scopes of the visit of the {@link ErlangAstScanner}.
+   *
+   * @throws IllegalStateException if the context is not the one of the scanner
+   */
+  public static ErlangScopes of(SquidAstVisitorContext<?> context) {
+    if (!(context instanceof ErlangVisitorContext)) {
+      throw new IllegalStateException("The scopes are only known with the context of the Erlang scanner");
+    }
+    return ((ErlangVisitorContext) context).getScopes();
+  }
+
+  @Override
+  public void init() {
+    subscribeTo(RULES);
+  }
+
+  @Override
+  public void visitFile(@Nullable AstNode astNode) {
+    Arrays.fill(depths, 0);
+  }
+
+  @Override
+  public void visitNode(AstNode astNode) {
+    int rule = ((ErlangGrammarImpl) astNode.getType()).ordinal();
+    AstNode[] stack = stacks[rule];
+    if (depths[rule] == stack.length) {
+      stack = Arrays.copyOf(stack, stack.length * 2);
+      stacks[rule] = stack;
+    }
+    stack[depths[rule]++] = astNode;
+  }
+
+  @Override
+  public void leaveNode(AstNode astNode) {
+    int rule = ((ErlangGrammarImpl) astNode.getType()).ordinal();
+    depths[rule]--;
+    stacks[rule][depths[rule]] = null;
+  }
+
+  /**
+   * How many nodes of the rule enclose the visited node, itself included.
+   */
+  public int depth(ErlangGrammarImpl rule) {
+    return depths[rule.ordinal()];
+  }
+
+  /**
+   * The enclosing node of the rule, 0 being the innermost one, or null if there are not that many.
+   */
+  @Nullable
+  public AstNode enclosing(ErlangGrammarImpl rule, int level) {
+    int depth = depths[rule.ordinal()];
+    return level < depth ? stacks[rule.ordinal()][depth - 1 - level] : null;
+  }
+
+  @Nullable
+  public AstNode function() {
+    return enclosing(ErlangGrammarImpl.functionDeclaration, 0);
+  }
+
+  @Nullable
+  public AstNode functionClause() {
+    return enclosing(ErlangGrammarImpl.functionClause, 0);
+  }
+
+  public int caseDepth() {
+    return depth(ErlangGrammarImpl.caseExpression);
+  }
+
+  public boolean inClauseBody() {
+    return depth(ErlangGrammarImpl.clauseBody) > 0;
+  }
+
+  public boolean inDefine() {
+    return depth(ErlangGrammarImpl.defineAttr) > 0;
+  }
+
+  public boolean inFlowControl() {
+    return depth(ErlangGrammarImpl.flowControlAttr) > 0;
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.nio.charset.Charset;
+
+/**
+ * The context of the visitors of the {@link ErlangAstScanner}, which also knows the {@link ErlangScopes} of the
+ * visited node, the {@link ModuleSymbols} of the visited file, the {@link CallSites} of its calls and its
+ * {@link SourceLines}.
+ */
+public class ErlangVisitorContext extends SquidAstVisitorContextImpl<LexerlessGrammar> {
+
+  private final ErlangScopes scopes = new ErlangScopes();
+  private final ModuleSymbols symbols = new ModuleSymbols();
+  private final CallSites callSites = new CallSites();
+  private final SourceLines lines;
+
+  /**
+   * @param charset the charset of the visited files
+   */
+  public ErlangVisitorContext(SourceProject project, Charset charset) {
+    super(project);
+    this.lines = new SourceLines(charset);
+  }
+
+  /**
+   * To be registered before the other visitors.
+   */
+  public ErlangScopes getScopes() {
+    return scopes;
+  }
+
+  /**
+   * To be registered before the other visitors.
+   */
+  public ModuleSymbols getSymbols() {
+    return symbols;
+  }
+
+  /**
+   * To be registered after the symbols, before the other visitors.
+   */
+  public CallSites getCallSites() {
+    return callSites;
+  }
+
+  /**
+   * See {@link SourceLines#of(org.sonar.squidbridge.SquidAstVisitorContext)}.
+   */
+  SourceLines getLines() {
+    return lines;
+  }
+
+}
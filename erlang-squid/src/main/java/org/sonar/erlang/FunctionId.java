@@ -0,0 +1,114 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+
+/**
+ * A function, by module, name and arity, for the lookups of the scanner, the metrics and the checks. The names are
+ * {@link StringInterner interned}, so comparing two ids compares references and an int, and the hash is computed
+ * once. The line where the function is declared, if known, is not part of the identity.
+ */
+public final class FunctionId {
+
+  private final String module;
+  private final String name;
+  private final int arity;
+  private final int line;
+  private final int hash;
+
+  private FunctionId(String module, String name, int arity, int line) {
+    this.module = module;
+    this.name = name;
+    this.arity = arity;
+    this.line = line;
+    this.hash = 31 * (31 * module.hashCode() + name.hashCode()) + arity;
+  }
+
+  public static FunctionId of(String module, String name, int arity) {
+    return new FunctionId(StringInterner.intern(module), StringInterner.intern(name), arity, 0);
+  }
+
+  /**
+   * The function a clause of a declaration belongs to, declared on the line of the clause.
+   */
+  public static FunctionId declaredBy(String module, AstNode functionClause) {
+    AstNode arguments = functionClause.getFirstChild(ErlangGrammarImpl.clauseHead)
+      .getFirstChild(ErlangGrammarImpl.funcDecl)
+      .getFirstChild(ErlangGrammarImpl.arguments);
+    return of(module, functionClause.getTokenOriginalValue(), arity(arguments)).atLine(functionClause.getTokenLine());
+  }
+
+  /**
+   * The number of expressions of an {@code arguments} node.
+   */
+  public static int arity(AstNode arguments) {
+    return arguments.getNumberOfChildren() > 3
+      ? (arguments.getNumberOfChildren() - 1) / 2
+      : (arguments.getNumberOfChildren() - 2);
+  }
+
+  public FunctionId atLine(int line) {
+    return new FunctionId(module, name, arity, line);
+  }
+
+  public String getModule() {
+    return module;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getArity() {
+    return arity;
+  }
+
+  /**
+   * The line of the declaration, 0 if unknown.
+   */
+  public int getLine() {
+    return line;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof FunctionId)) {
+      return false;
+    }
+    FunctionId other = (FunctionId) obj;
+    return hash == other.hash && arity == other.arity && name == other.name && module == other.module;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return module.isEmpty() ? (name + "/" + arity) : (module + ":" + name + "/" + arity);
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.parser.CompactAst;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContext;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * The symbols of the visited module: its exports, function declarations and imports, collected once per file from
+ * the {@link CompactAst} index of its tree, so that the visitors look them up instead of searching the tree for them.
+ * The scanner registers it before all the other visitors.
+ * <p>
+ * The functions are identified by {@link FunctionId}s of the module. Only the declarations and exports at the top
+ * level of the module are known, not the ones inside flow control attributes, and the first declaration of a name
+ * and arity wins.
+ */
+public final class ModuleSymbols extends SquidAstVisitor<LexerlessGrammar> {
+
+  private String module = "";
+  private final Set<FunctionId> exports = new LinkedHashSet<>();
+  private final Map<FunctionId, AstNode> functions = new HashMap<>();
+  private final Map<AstNode, FunctionId> declarations = new IdentityHashMap<>();
+  private final Map<FunctionId, FunctionId> imports = new HashMap<>();
+
+  /**
+   * The symbols of the module visited by the {@link ErlangAstScanner}.
+   *
+   * @throws IllegalStateException if the context is not the one of the scanner
+   */
+  public static ModuleSymbols of(SquidAstVisitorContext<?> context) {
+    if (!(context instanceof ErlangVisitorContext)) {
+      throw new IllegalStateException("The module symbols are only known with the context of the Erlang scanner");
+    }
+    return ((ErlangVisitorContext) context).getSymbols();
+  }
+
+  @Override
+  public void visitFile(@Nullable AstNode astNode) {
+    module = "";
+    exports.clear();
+    functions.clear();
+    declarations.clear();
+    imports.clear();
+    CompactAst ast = astNode == null ? null : CompactAst.of(astNode);
+    if (ast == null) {
+      // file wasn't parsed
+      return;
+    }
+    AstNode moduleAttr = ast.first(ErlangGrammarImpl.moduleAttr);
+    if (moduleAttr != null) {
+      module = StringInterner.intern(moduleAttr.getFirstChild(ErlangGrammarImpl.atom).getTokenOriginalValue());
+    }
+    for (AstNode declaration : ast.nodes(ErlangGrammarImpl.functionDeclaration)) {
+      FunctionId function = FunctionId.declaredBy(module, declaration.getFirstChild(ErlangGrammarImpl.functionClause));
+      declarations.put(declaration, function);
+      if (declaration.getParent().is(ErlangGrammarImpl.moduleElements) && !functions.containsKey(function)) {
+        functions.put(function, declaration);
+      }
+    }
+    for (AstNode export : ast.nodes(ErlangGrammarImpl.exportAttr)) {
+      if (export.getParent().is(ErlangGrammarImpl.moduleElements)) {
+        for (AstNode funcArity : export.getFirstChild(ErlangGrammarImpl.funcExport).getChildren(ErlangGrammarImpl.funcArity)) {
+          FunctionId function = exported(funcArity);
+          if (function != null) {
+            exports.add(function);
+          }
+        }
+      }
+    }
+    for (AstNode importAttr : ast.nodes(ErlangGrammarImpl.importAttr)) {
+      String from = StringInterner.intern(importAttr.getFirstChild(ErlangGrammarImpl.atom, ErlangGrammarImpl.macroLiteral)
+        .getTokenOriginalValue());
+      for (AstNode funcArity : importAttr.getChildren(ErlangGrammarImpl.funcArity)) {
+        FunctionId function = exported(funcArity);
+        if (function != null) {
+          imports.putIfAbsent(function, FunctionId.of(from, function.getName(), function.getArity()));
+        }
+      }
+    }
+  }
+
+  /**
+   * The function of this module named by a {@code name/arity} of an export or import list, or null if it is
+   * qualified by a module or its arity is not a number.
+   */
+  @Nullable
+  public FunctionId exported(AstNode funcArity) {
+    List<AstNode> literals = funcArity.getChildren(ErlangGrammarImpl.literal);
+    if (literals.size() != 2) {
+      return null;
+    }
+    String arity = literals.get(1).getTokenOriginalValue();
+    for (int i = 0; i < arity.length(); i++) {
+      if (!Character.isDigit(arity.charAt(i))) {
+        return null;
+      }
+    }
+    return FunctionId.of(module, literals.get(0).getTokenOriginalValue(), Integer.parseInt(arity));
+  }
+
+  /**
+   * The name of the module, or an empty string if it has no {@code -module} attribute.
+   */
+  public String getModule() {
+    return module;
+  }
+
+  public Set<FunctionId> getExports() {
+    return Collections.unmodifiableSet(exports);
+  }
+
+  public boolean isExported(FunctionId function) {
+    return exports.contains(function);
+  }
+
+  /**
+   * The declaration of the function of this module, or null if it is not declared at the top level.
+   */
+  @Nullable
+  public AstNode function(FunctionId function) {
+    return functions.get(function);
+  }
+
+  /**
+   * The function declared by a {@code functionDeclaration} of this module, wherever it is.
+   */
+  public FunctionId declared(AstNode functionDeclaration) {
+    FunctionId function = declarations.get(functionDeclaration);
+    if (function == null) {
+      throw new IllegalArgumentException("Not a function declaration of " + module + ": " + functionDeclaration);
+    }
+    return function;
+  }
+
+  /**
+   * The remote function imported as this one by a {@code -import} attribute, or null if it is not imported.
+   */
+  @Nullable
+  public FunctionId imported(FunctionId function) {
+    return imports.get(function);
+  }
+
+}
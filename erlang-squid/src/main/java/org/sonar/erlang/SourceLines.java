@@ -0,0 +1,139 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import org.sonar.squidbridge.SquidAstVisitorContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Facts about each line of the visited file, for the line based checks: whether it has a tab in its indention or
+ * trailing white space. They are computed in a single pass over the text of the {@link SourceLoader},
+ * the first time a visitor asks for them, and shared by all the visitors of the file.
+ * <p>
+ * The lines are cut the way {@link java.util.Scanner#nextLine()} does, and numbered from 1.
+ */
+public final class SourceLines {
+
+  /**
+   * Spaces, if any, then a tab.
+   */
+  public static final int LEADING_TAB = 1;
+  public static final int TRAILING_WHITESPACE = 2;
+
+  private final Charset charset;
+  @Nullable
+  private File file;
+  private long lastModified;
+  private int count;
+  private byte[] facts = new byte[256];
+
+  /**
+   * @param charset the charset of the files, the one they are parsed with
+   */
+  SourceLines(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * The lines of the file visited by the {@link ErlangAstScanner}.
+   *
+   * @throws IllegalStateException if the context is not the one of the scanner
+   * @throws IOException if the file cannot be read
+   */
+  public static SourceLines of(SquidAstVisitorContext<?> context) throws IOException {
+    if (!(context instanceof ErlangVisitorContext)) {
+      throw new IllegalStateException("The source lines are only known with the context of the Erlang scanner");
+    }
+    return ((ErlangVisitorContext) context).getLines().of(context.getFile());
+  }
+
+  private SourceLines of(File file) throws IOException {
+    if (!file.equals(this.file) || file.lastModified() != lastModified) {
+      this.file = null;
+      analyse(SourceLoader.get().load(file, charset));
+      this.lastModified = file.lastModified();
+      this.file = file;
+    }
+    return this;
+  }
+
+  void analyse(CharSequence text) {
+    int length = text.length();
+    int start = 0;
+    count = 0;
+    while (start < length) {
+      // the indention
+      int i = start;
+      while (i < length && text.charAt(i) == ' ') {
+        i++;
+      }
+      int lineFacts = i < length && text.charAt(i) == '\t' ? LEADING_TAB : 0;
+      // the rest of the line, up to its terminator
+      int end = i;
+      while (end < length && !isLineTerminator(text.charAt(end))) {
+        end++;
+      }
+      if (end > start && isWhitespace(text.charAt(end - 1))) {
+        lineFacts |= TRAILING_WHITESPACE;
+      }
+      add(lineFacts);
+      start = end + (end + 1 < length && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n' ? 2 : 1);
+    }
+  }
+
+  private void add(int lineFacts) {
+    if (count == facts.length) {
+      facts = Arrays.copyOf(facts, count * 2);
+    }
+    facts[count] = (byte) lineFacts;
+    count++;
+  }
+
+  /**
+   * The number of lines, a line terminator at the end of the text not starting another one.
+   */
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Whether the line has the fact, like {@link #LEADING_TAB}.
+   */
+  public boolean is(int line, int fact) {
+    return (facts[line - 1] & fact) != 0;
+  }
+
+  /**
+   * The characters of {@code \s} in a regular expression, but the line terminators.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\u000B' || c == '\f';
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
+  }
+
+}
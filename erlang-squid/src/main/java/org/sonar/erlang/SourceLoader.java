@@ -0,0 +1,142 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import java.io.File;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the source files for the parser and the checks: a file is read and decoded once, into buffers reused from
+ * file to file, and the parser and the line based checks of the file all get this same text. The bytes are read
+ * into the heap rather than mapped, as a mapped file stays open, and cannot be deleted on Windows, until the
+ * garbage collector releases its buffer.
+ * <p>
+ * There is one loader per thread, as a file is parsed and visited by the thread which scans it. It holds the text
+ * of the last file it loaded only.
+ */
+public final class SourceLoader {
+
+  private static final ThreadLocal<SourceLoader> LOADERS = ThreadLocal.withInitial(SourceLoader::new);
+
+  private ByteBuffer bytes = ByteBuffer.allocate(0);
+  private CharBuffer buffer = CharBuffer.allocate(0);
+  @Nullable
+  private Charset charset;
+  @Nullable
+  private CharsetDecoder decoder;
+  @Nullable
+  private File file;
+  private long lastModified;
+  private long length;
+
+  private SourceLoader() {
+  }
+
+  /**
+   * The loader of the current thread.
+   */
+  public static SourceLoader get() {
+    return LOADERS.get();
+  }
+
+  /**
+   * The text of a file, read unless it is the file loaded last with the same charset and not modified since. The
+   * returned buffer is a read-only view of the text, valid until another file is loaded by this thread.
+   */
+  public CharBuffer load(File file, Charset charset) throws IOException {
+    if (!isLoaded(file, charset)) {
+      read(file, charset);
+    }
+    return buffer.asReadOnlyBuffer();
+  }
+
+  /**
+   * A copy of the text of a file, for the parsers which need an array of its exact length.
+   */
+  public char[] chars(File file, Charset charset) throws IOException {
+    CharBuffer text = load(file, charset);
+    char[] chars = new char[text.remaining()];
+    text.get(chars);
+    return chars;
+  }
+
+  private boolean isLoaded(File file, Charset charset) {
+    return file.equals(this.file) && charset.equals(this.charset)
+      && file.lastModified() == lastModified && file.length() == length;
+  }
+
+  private void read(File file, Charset charset) throws IOException {
+    this.file = null;
+    if (decoder == null || !charset.equals(this.charset)) {
+      decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      this.charset = charset;
+    }
+    long modified = file.lastModified();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File too large: " + file);
+      }
+      if (bytes.capacity() < size) {
+        bytes = ByteBuffer.allocate((int) size);
+      }
+      bytes.clear();
+      bytes.limit((int) size);
+      while (bytes.hasRemaining()) {
+        if (channel.read(bytes) < 0) {
+          throw new EOFException("File truncated while read: " + file);
+        }
+      }
+      bytes.flip();
+      int capacity = (int) Math.ceil(size * (double) decoder.maxCharsPerByte());
+      if (buffer.capacity() < capacity) {
+        buffer = CharBuffer.allocate(capacity);
+      }
+      buffer.clear();
+      decoder.reset();
+      check(decoder.decode(bytes, buffer, true));
+      check(decoder.flush(buffer));
+      buffer.flip();
+      this.length = size;
+    }
+    this.lastModified = modified;
+    this.file = file;
+  }
+
+  private static void check(CoderResult result) throws CharacterCodingException {
+    if (result.isError() || result.isOverflow()) {
+      result.throwException();
+    }
+  }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * One instance of each of the strings which repeat all over a project, such as the atoms, the variables, the module
+ * names or the duplication tokens, shared by the lexer and the visitors for the whole analysis. The strings nothing
+ * refers to any more are garbage collected.
+ */
+public final class StringInterner {
+
+  private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+  private StringInterner() {
+  }
+
+  public static String intern(String value) {
+    return STRINGS.intern(value);
+  }
+
+}
@@ -28,7 +28,16 @@ public enum ErlangMetric implements MetricDef {
   FILES, LINES, LINES_OF_CODE, COMMENT_LINES, COMMENT_BLANK_LINES, STATEMENTS, COMPLEXITY, FUNCTIONS, MODULES, PUBLIC_API, PUBLIC_DOC_API, PUBLIC_DOCUMENTED_API_DENSITY,
 
   // Erlang specific metrics
-  NUM_OF_FUN_EXRP, NUM_OF_FUN_CLAUSES, NUM_OF_MACROS, NUM_OF_RECORDS, INCLUDED_FILES, IMPORTED_MODULES, NUM_OF_FUNC_ARGS, DEPTH_OF_CASES, BRANCHES_OF_RECURSION;
+  NUM_OF_FUN_EXRP, NUM_OF_FUN_CLAUSES, NUM_OF_MACROS, NUM_OF_RECORDS, INCLUDED_FILES, IMPORTED_MODULES, NUM_OF_FUNC_ARGS, DEPTH_OF_CASES, BRANCHES_OF_RECURSION,
+
+  // Set on the functions, their modules and files and the project once the whole project is scanned: the deepest
+  // value, not a sum
+  MAX_DEPTH_OF_CALLING {
+    @Override
+    public boolean isThereAggregationFormula() {
+      return false;
+    }
+  };
 
   @Override
   public boolean aggregateIfThereIsAlreadyAValue() {
@@ -28,7 +28,8 @@ public enum ErlangPunctuator implements TokenType {
     ":"), MATCHOP("="), PLUS("+"), MINUS("-"), STAR("*"), DIV("/"), LT("<"), GT(">"), LE(
     "=<"), GE(">="), EQUAL("=="), NOTEQUAL("/="), EQUAL2("=:="), NOTEQUAL2("=/="), BINSTART(
     "<<"), BINEND(">>"), LISTCOMP("||"), PIPE("|"), DOLLAR("$"), APOSTROPHE("'"), PLUSPLUS(
-    "++"), MINUSMINUS("--"), NUMBERSIGN("#"), EXCLAMATION("!"), QUESTIONMARK("?");
+    "++"), MINUSMINUS("--"), NUMBERSIGN("#"), EXCLAMATION("!"), QUESTIONMARK("?"), MAPA(
+    "=>"), MAPU(":=");
 
   private final String value;
 
@@ -0,0 +1,51 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.api;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.TokenType;
+
+/**
+ * Token types produced by {@link org.sonar.erlang.lexer.ErlangLexer} besides
+ * keywords and punctuators.
+ */
+public enum ErlangTokenType implements TokenType {
+  ATOM, VARIABLE, NUMERIC_LITERAL, STRING_LITERAL,
+  /**
+   * A dot followed by whitespace, a comment or the end of the file, which terminates a form.
+   */
+  END_OF_FORM;
+
+  @Override
+  public String getName() {
+    return name();
+  }
+
+  @Override
+  public String getValue() {
+    return name();
+  }
+
+  @Override
+  public boolean hasToBeSkippedFromAst(AstNode node) {
+    return false;
+  }
+
+}
@@ -0,0 +1,456 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.lexer;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.impl.LexerException;
+import org.sonar.erlang.SourceLoader;
+import org.sonar.erlang.StringInterner;
+import org.sonar.erlang.api.ErlangKeyword;
+import org.sonar.erlang.api.ErlangPunctuator;
+import org.sonar.erlang.api.ErlangTokenType;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tokenizer of the token based front end, see {@link org.sonar.erlang.parser.ErlangGrammarImpl#createLexerfulGrammar()}.
+ * <p>
+ * The source is read in a single pass: the first character of a token selects its
+ * kind from a lookup table, the rest of the token is scanned by hand. Tokens are cut
+ * the same way as the regular expressions of the lexerless grammar cut them. Comments
+ * are attached as trivia to the following token, whitespace is dropped.
+ */
+public class ErlangLexer {
+
+  private static final int EOF = -1;
+
+  private static final byte OTHER = 0;
+  private static final byte WHITESPACE = 1;
+  private static final byte COMMENT = 2;
+  private static final byte LOWERCASE = 3;
+  private static final byte UPPERCASE = 4;
+  private static final byte DIGIT = 5;
+  private static final byte QUOTE = 6;
+  private static final byte DOUBLE_QUOTE = 7;
+  private static final byte DOLLAR = 8;
+  private static final byte DOT = 9;
+  private static final byte PUNCTUATOR = 10;
+
+  private static final byte[] CHAR_CLASSES = new byte[128];
+  private static final boolean[] NAME_PARTS = new boolean[128];
+  private static final ErlangPunctuator[][] PUNCTUATORS = new ErlangPunctuator[128][];
+  private static final Map<String, ErlangKeyword> KEYWORDS = new HashMap<>();
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      CHAR_CLASSES[c] = LOWERCASE;
+      CHAR_CLASSES[Character.toUpperCase(c)] = UPPERCASE;
+      NAME_PARTS[c] = true;
+      NAME_PARTS[Character.toUpperCase(c)] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      CHAR_CLASSES[c] = DIGIT;
+      NAME_PARTS[c] = true;
+    }
+    CHAR_CLASSES['_'] = UPPERCASE;
+    NAME_PARTS['_'] = true;
+    NAME_PARTS['@'] = true;
+    for (char c : new char[] {'\n', '\r', '\t', '\u000B', '\f', ' '}) {
+      CHAR_CLASSES[c] = WHITESPACE;
+    }
+    CHAR_CLASSES['%'] = COMMENT;
+    CHAR_CLASSES['\''] = QUOTE;
+    CHAR_CLASSES['"'] = DOUBLE_QUOTE;
+    CHAR_CLASSES['$'] = DOLLAR;
+    CHAR_CLASSES['.'] = DOT;
+
+    Map<Character, List<ErlangPunctuator>> byFirstChar = new HashMap<>();
+    for (ErlangPunctuator punctuator : ErlangPunctuator.values()) {
+      char first = punctuator.getValue().charAt(0);
+      if (CHAR_CLASSES[first] == OTHER) {
+        byFirstChar.computeIfAbsent(first, c -> new ArrayList<>()).add(punctuator);
+      }
+    }
+    for (Map.Entry<Character, List<ErlangPunctuator>> entry : byFirstChar.entrySet()) {
+      List<ErlangPunctuator> candidates = entry.getValue();
+      candidates.sort(Comparator.comparingInt((ErlangPunctuator p) -> p.getValue().length()).reversed());
+      CHAR_CLASSES[entry.getKey()] = PUNCTUATOR;
+      PUNCTUATORS[entry.getKey()] = candidates.toArray(new ErlangPunctuator[candidates.size()]);
+    }
+
+    for (ErlangKeyword keyword : ErlangKeyword.values()) {
+      // "query" is not reserved by the grammar, it is parsed as an atom
+      if (keyword != ErlangKeyword.QUERY) {
+        KEYWORDS.put(keyword.getValue(), keyword);
+      }
+    }
+  }
+
+  private final Charset charset;
+
+  public ErlangLexer(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Lexes the text of the file given by the {@link SourceLoader} of the thread.
+   */
+  public List<Token> lex(File file) {
+    try {
+      return new Tokenizer(SourceLoader.get().load(file, charset), file.toURI()).tokenize();
+    } catch (IOException e) {
+      throw new LexerException("Unable to lex file: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  public List<Token> lex(String source) {
+    try {
+      return lex(source, new URI("tests://unittest"));
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public List<Token> lex(String source, URI uri) {
+    return new Tokenizer(source, uri).tokenize();
+  }
+
+  private static class Tokenizer {
+
+    private final CharSequence source;
+    private final int length;
+    private final URI uri;
+    private final List<Token> tokens = new ArrayList<>();
+    private List<Trivia> trivia = new ArrayList<>();
+
+    private int position = 0;
+    private int line = 1;
+    private int column = 0;
+
+    Tokenizer(CharSequence source, URI uri) {
+      this.source = source;
+      this.length = source.length();
+      this.uri = uri;
+    }
+
+    List<Token> tokenize() {
+      while (position < length) {
+        next();
+      }
+      tokens.add(token(GenericTokenType.EOF, "EOF"));
+      return tokens;
+    }
+
+    private void next() {
+      int c = source.charAt(position);
+      switch (charClass(c)) {
+        case WHITESPACE:
+          pop(1);
+          break;
+        case COMMENT:
+          trivia.add(Trivia.createComment(token(GenericTokenType.COMMENT, commentLength())));
+          break;
+        case LOWERCASE:
+          int nameLength = nameLength();
+          ErlangKeyword keyword = KEYWORDS.get(source.subSequence(position, position + nameLength).toString());
+          add(keyword == null ? ErlangTokenType.ATOM : keyword, nameLength);
+          break;
+        case UPPERCASE:
+          add(ErlangTokenType.VARIABLE, nameLength());
+          break;
+        case DIGIT:
+          add(ErlangTokenType.NUMERIC_LITERAL, numberLength());
+          break;
+        case QUOTE:
+          int quotedAtom = quotedAtomLength();
+          if (quotedAtom > 0) {
+            add(ErlangTokenType.ATOM, quotedAtom);
+          } else {
+            add(ErlangPunctuator.APOSTROPHE, 1);
+          }
+          break;
+        case DOUBLE_QUOTE:
+          int string = stringLength();
+          if (string > 0) {
+            add(ErlangTokenType.STRING_LITERAL, string);
+          } else {
+            add(GenericTokenType.UNKNOWN_CHAR, 1);
+          }
+          break;
+        case DOLLAR:
+          int character = characterLength();
+          if (character > 0) {
+            add(ErlangTokenType.NUMERIC_LITERAL, character);
+          } else {
+            add(ErlangPunctuator.DOLLAR, 1);
+          }
+          break;
+        case DOT:
+          int next = at(1);
+          boolean endOfForm = next == EOF || charClass(next) == WHITESPACE || charClass(next) == COMMENT;
+          add(endOfForm ? ErlangTokenType.END_OF_FORM : ErlangPunctuator.DOT, 1);
+          break;
+        case PUNCTUATOR:
+          ErlangPunctuator punctuator = punctuator(PUNCTUATORS[c]);
+          add(punctuator, punctuator.getValue().length());
+          break;
+        default:
+          add(GenericTokenType.UNKNOWN_CHAR, 1);
+          break;
+      }
+    }
+
+    private int commentLength() {
+      int i = 1;
+      for (int c = at(i); c != EOF && c != '\n' && c != '\r'; c = at(++i)) {
+        // scanning till the end of the line
+      }
+      return i;
+    }
+
+    private int nameLength() {
+      int i = 1;
+      while (isNamePart(at(i))) {
+        i++;
+      }
+      return i;
+    }
+
+    /**
+     * Integers, floats ({@code 1.5e-3}), based integers ({@code 16#ff}).
+     */
+    private int numberLength() {
+      int i = digits(0);
+      if (at(i) == '.' && isDigit(at(i + 1))) {
+        i = digits(i + 1);
+        int e = at(i);
+        if (e == 'e' || e == 'E') {
+          int start = at(i + 1) == '-' ? (i + 2) : (i + 1);
+          int end = start;
+          while (isDigit(at(end)) || at(end) == '_') {
+            end++;
+          }
+          if (end > start) {
+            i = end;
+          }
+        }
+      } else if (at(i) == '#') {
+        i++;
+        while (isHexDigit(at(i))) {
+          i++;
+        }
+      }
+      return i;
+    }
+
+    /**
+     * Character literals ({@code $a}, {@code $\n}, {@code $\x{1F}}, {@code $\101}),
+     * returns 0 when the dollar sign does not start one.
+     */
+    private int characterLength() {
+      int c = at(1);
+      if (c != '\\') {
+        return c != EOF && c < 128 ? 2 : 0;
+      }
+      int escaped = at(2);
+      if (escaped == '^' && isLetter(at(3))) {
+        return 4;
+      }
+      if (escaped == 'x') {
+        if (at(3) == '{') {
+          int hexLength = 0;
+          while (isUpperHexDigit(at(4 + hexLength))) {
+            hexLength++;
+          }
+          if (hexLength > 0 && at(4 + hexLength) == '}') {
+            return 5 + hexLength;
+          }
+        } else if (isUpperHexDigit(at(3))) {
+          return isUpperHexDigit(at(4)) ? 5 : 4;
+        }
+      }
+      if (isOctalDigit(escaped)) {
+        int i = 3;
+        while (i < 5 && isOctalDigit(at(i))) {
+          i++;
+        }
+        return i;
+      }
+      return escaped != EOF && escaped < 128 ? 3 : 2;
+    }
+
+    /**
+     * Returns 0 when the quote is not closed on the same line.
+     */
+    private int quotedAtomLength() {
+      int i = 1;
+      for (int c = at(i); c != '\''; c = at(++i)) {
+        if (c == EOF || c == '\n' || c == '\r') {
+          return 0;
+        }
+      }
+      return i + 1;
+    }
+
+    /**
+     * Returns 0 for unterminated strings.
+     */
+    private int stringLength() {
+      int i = 1;
+      for (int c = at(i); c != '"'; c = at(i)) {
+        if (c == EOF) {
+          return 0;
+        }
+        i += c == '\\' ? 2 : 1;
+      }
+      return i + 1;
+    }
+
+    private ErlangPunctuator punctuator(ErlangPunctuator[] candidates) {
+      for (ErlangPunctuator candidate : candidates) {
+        if (startsWith(candidate.getValue())) {
+          return candidate;
+        }
+      }
+      throw new IllegalStateException("No punctuator at " + line + ":" + column);
+    }
+
+    private boolean startsWith(String value) {
+      if (position + value.length() > length) {
+        return false;
+      }
+      for (int i = 0; i < value.length(); i++) {
+        if (source.charAt(position + i) != value.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int digits(int from) {
+      int i = from;
+      while (isDigit(at(i))) {
+        i++;
+      }
+      return i;
+    }
+
+    private int at(int offset) {
+      int index = position + offset;
+      return index < length ? source.charAt(index) : EOF;
+    }
+
+    private void add(TokenType type, int tokenLength) {
+      tokens.add(token(type, tokenLength));
+    }
+
+    private Token token(TokenType type, int tokenLength) {
+      Token token = token(type, value(type, tokenLength));
+      pop(tokenLength);
+      return token;
+    }
+
+    /**
+     * The keywords and the punctuators take the value of their type, the names and the numbers, which repeat all
+     * over a project, are interned.
+     */
+    private String value(TokenType type, int tokenLength) {
+      if (type instanceof ErlangKeyword || type instanceof ErlangPunctuator) {
+        return type.getValue();
+      }
+      String value = source.subSequence(position, position + tokenLength).toString();
+      if (type == ErlangTokenType.ATOM || type == ErlangTokenType.VARIABLE || type == ErlangTokenType.NUMERIC_LITERAL
+        || type == ErlangTokenType.END_OF_FORM) {
+        return StringInterner.intern(value);
+      }
+      return value;
+    }
+
+    private Token token(TokenType type, String value) {
+      Token.Builder builder = Token.builder()
+        .setType(type)
+        .setValueAndOriginalValue(value)
+        .setURI(uri)
+        .setLine(line)
+        .setColumn(column);
+      if (type != GenericTokenType.COMMENT && !trivia.isEmpty()) {
+        builder.setTrivia(trivia);
+        trivia = new ArrayList<>();
+      }
+      return builder.build();
+    }
+
+    private void pop(int count) {
+      for (int i = 0; i < count; i++) {
+        char c = source.charAt(position++);
+        if (c == '\n' || (c == '\r' && (position >= length || source.charAt(position) != '\n'))) {
+          line++;
+          column = 0;
+        } else {
+          column++;
+        }
+      }
+    }
+  }
+
+  private static byte charClass(int c) {
+    if (c < 128) {
+      return CHAR_CLASSES[c];
+    }
+    return c == 0x00A0 || c == 0xFEFF || Character.getType(c) == Character.SPACE_SEPARATOR ? WHITESPACE : OTHER;
+  }
+
+  private static boolean isNamePart(int c) {
+    return c >= 0 && c < 128 && NAME_PARTS[c];
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isOctalDigit(int c) {
+    return c >= '0' && c <= '7';
+  }
+
+  private static boolean isHexDigit(int c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  private static boolean isUpperHexDigit(int c) {
+    return isDigit(c) || (c >= 'A' && c <= 'F');
+  }
+
+  private static boolean isLetter(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+}
@@ -20,6 +20,9 @@
 package org.sonar.erlang.metrics;
 
 import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.CallSites;
+import org.sonar.erlang.FunctionId;
+import org.sonar.erlang.ModuleSymbols;
 import org.sonar.erlang.api.ErlangMetric;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.squidbridge.checks.SquidCheck;
@@ -27,12 +30,14 @@ import org.sonar.sslr.parser.LexerlessGrammar;
 
 public class BranchesOfRecursion extends SquidCheck<LexerlessGrammar> {
 
-  private String actualArity;
-  private String actualModule;
+  private FunctionId actualFunction;
+  private ModuleSymbols symbols;
+  private CallSites callSites;
 
   @Override
   public void init() {
     subscribeTo(ErlangGrammarImpl.functionDeclaration, ErlangGrammarImpl.callExpression);
+    callSites = CallSites.of(getContext());
 
   }
 
@@ -42,57 +47,22 @@ public class BranchesOfRecursion extends SquidCheck<LexerlessGrammar> {
       // file wasn't parsed
       return;
     }
-    actualArity = "";
-    actualModule = astNode.getFirstDescendant(ErlangGrammarImpl.moduleAttr)
-      .getFirstChild(ErlangGrammarImpl.atom).getTokenOriginalValue();
+    actualFunction = null;
+    symbols = ModuleSymbols.of(getContext());
   }
 
   @Override
   public void visitNode(AstNode ast) {
     if (ast.getType().equals(ErlangGrammarImpl.functionDeclaration)) {
-      actualArity = getArity(ast.getFirstChild(ErlangGrammarImpl.functionClause));
+      actualFunction = symbols.declared(ast);
     }
-    if (ast.getType().equals(ErlangGrammarImpl.callExpression) && getArityFromCall(ast).equals(actualArity)) {
+    if (ast.getType().equals(ErlangGrammarImpl.callExpression) && isRecursive(ast)) {
       getContext().peekSourceCode().add(ErlangMetric.BRANCHES_OF_RECURSION, 1);
     }
   }
 
-  private String getArityFromCall(AstNode ast) {
-    // It has a colon, so it is a module:function call
-    if (ast.hasDirectChildren(ErlangGrammarImpl.colon)) {
-      AstNode firstCallMemberAstNode = ast.getFirstChild(ErlangGrammarImpl.callExpressionFirstMember);
-      AstNode secondCallMemberAstNode = ast.getLastChild(ErlangGrammarImpl.callExpressionSecondMember);
-
-      if (actualModule.equals(firstCallMemberAstNode.getTokenOriginalValue())) {
-        return secondCallMemberAstNode.getTokenOriginalValue() + "/" + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
-      }
-      // FIXME This seems to use AstNode.toString(), which is likely not intended
-      return firstCallMemberAstNode.getFirstChild() + ":" + secondCallMemberAstNode.getTokenOriginalValue() + "/" + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
-    } else {
-      try {
-        AstNode secondCallMemberAstNode = ast.getLastChild(ErlangGrammarImpl.callExpressionSecondMember);
-
-        return secondCallMemberAstNode.getFirstChild(ErlangGrammarImpl.primaryExpression).getFirstChild(ErlangGrammarImpl.literal).getTokenOriginalValue() + "/"
-          + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
-      } catch (Exception e) {
-        // If we reach this part it means we are in call where the function is a return value of another function:
-        // like: (Fun2())(1)
-        return "*" + getNumOfArgs(ast.getFirstChild(ErlangGrammarImpl.arguments));
-      }
-    }
-  }
-
-  private String getArity(AstNode ast) {
-    AstNode args = ast.getFirstChild(ErlangGrammarImpl.clauseHead)
-      .getFirstChild(ErlangGrammarImpl.funcDecl).getFirstChild(
-        ErlangGrammarImpl.arguments);
-    return ast.getTokenOriginalValue() + "/" + getNumOfArgs(args);
-  }
-
-  private String getNumOfArgs(AstNode args) {
-    int num = args.getNumberOfChildren() > 3 ? args.getChildren(
-      ErlangGrammarImpl.comma).size() + 1 : args.getNumberOfChildren() - 2;
-    return String.valueOf(num);
+  private boolean isRecursive(AstNode callExpression) {
+    return callSites.resolve(callExpression).calls(actualFunction);
   }
 
 }
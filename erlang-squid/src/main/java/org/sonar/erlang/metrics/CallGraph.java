@@ -0,0 +1,281 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.metrics;
+
+import org.sonar.erlang.FunctionId;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The calls between the functions of the project, filled by {@link MaxDepthOfCalling} during the scan.
+ * <p>
+ * The functions and their modules are numbered in the order they are met, and a call is a pair of function numbers
+ * appended to two int arrays, so that a project with millions of calls takes a few tens of megabytes. The calls are
+ * only grouped by caller, into adjacency arrays, when the graph is walked.
+ */
+public final class CallGraph {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final Map<FunctionId, Integer> functionNumbers = new HashMap<>();
+  private final Map<String, Integer> moduleNumbers = new HashMap<>();
+  private FunctionId[] functions = new FunctionId[INITIAL_CAPACITY];
+  private int[] modules = new int[INITIAL_CAPACITY];
+  private final BitSet declared = new BitSet();
+  private int functionCount;
+
+  private int[] callers = new int[INITIAL_CAPACITY];
+  private int[] callees = new int[INITIAL_CAPACITY];
+  private int callCount;
+
+  /**
+   * The number of the function, numbering it if it is met for the first time.
+   */
+  public int function(FunctionId function) {
+    Integer number = functionNumbers.get(function);
+    if (number != null) {
+      return number;
+    }
+    if (functionCount == functions.length) {
+      functions = Arrays.copyOf(functions, functionCount * 2);
+      modules = Arrays.copyOf(modules, functionCount * 2);
+    }
+    Integer module = moduleNumbers.get(function.getModule());
+    if (module == null) {
+      module = moduleNumbers.size();
+      moduleNumbers.put(function.getModule(), module);
+    }
+    functions[functionCount] = function;
+    modules[functionCount] = module;
+    functionNumbers.put(function, functionCount);
+    return functionCount++;
+  }
+
+  public FunctionId function(int function) {
+    return functions[function];
+  }
+
+  /**
+   * The number of the module of the function.
+   */
+  public int module(int function) {
+    return modules[function];
+  }
+
+  public int functionCount() {
+    return functionCount;
+  }
+
+  public int moduleCount() {
+    return moduleNumbers.size();
+  }
+
+  /**
+   * Marks the function as declared in the scanned files: the other ones are only known to be called.
+   */
+  public void declare(int function) {
+    declared.set(function);
+  }
+
+  public boolean isDeclared(int function) {
+    return declared.get(function);
+  }
+
+  public void addCall(int caller, int callee) {
+    if (callCount == callers.length) {
+      callers = Arrays.copyOf(callers, callCount * 2);
+      callees = Arrays.copyOf(callees, callCount * 2);
+    }
+    callers[callCount] = caller;
+    callees[callCount] = callee;
+    callCount++;
+  }
+
+  /**
+   * The number of calls added so far, each call site counting once.
+   */
+  public int callCount() {
+    return callCount;
+  }
+
+  public int caller(int call) {
+    return callers[call];
+  }
+
+  public int callee(int call) {
+    return callees[call];
+  }
+
+  /**
+   * Adds the functions and the calls of another graph, like the one of another worker of the
+   * {@link org.sonar.erlang.ErlangParallelAstScanner}.
+   *
+   * @return the numbers, in this graph, of the functions of the other one
+   */
+  public int[] addAll(CallGraph other) {
+    int[] numbers = new int[other.functionCount];
+    for (int function = 0; function < other.functionCount; function++) {
+      numbers[function] = function(other.functions[function]);
+      if (other.isDeclared(function)) {
+        declare(numbers[function]);
+      }
+    }
+    for (int call = 0; call < other.callCount; call++) {
+      addCall(numbers[other.callers[call]], numbers[other.callees[call]]);
+    }
+    return numbers;
+  }
+
+  /**
+   * For each function, the number of calls of the longest chain of calls starting from it, a call to a function
+   * which is not declared ending the chain. The calls between the functions of a cycle, like the recursive ones,
+   * do not count, so that the depth is the one of the graph of the strongly connected components, which are found
+   * with an iterative Tarjan's algorithm: as a component is completed after all the ones it calls, its depth is
+   * computed right away.
+   */
+  public int[] depthsOfCalling() {
+    int n = functionCount;
+    int[] start = new int[n + 1];
+    for (int call = 0; call < callCount; call++) {
+      start[callers[call] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] targets = new int[callCount];
+    int[] fill = Arrays.copyOf(start, n);
+    for (int call = 0; call < callCount; call++) {
+      targets[fill[callers[call]]++] = callees[call];
+    }
+
+    int[] index = new int[n];
+    Arrays.fill(index, -1);
+    int[] low = new int[n];
+    int[] component = new int[n];
+    Arrays.fill(component, -1);
+    int[] componentDepth = new int[n];
+    int[] stack = new int[n];
+    int[] path = new int[n];
+    int[] nextTarget = new int[n];
+    int visited = 0;
+    int components = 0;
+    int stackSize = 0;
+
+    for (int root = 0; root < n; root++) {
+      if (index[root] != -1) {
+        continue;
+      }
+      int pathSize = 0;
+      index[root] = visited;
+      low[root] = visited++;
+      stack[stackSize++] = root;
+      path[pathSize] = root;
+      nextTarget[pathSize++] = start[root];
+      while (pathSize > 0) {
+        int function = path[pathSize - 1];
+        if (nextTarget[pathSize - 1] < start[function + 1]) {
+          int target = targets[nextTarget[pathSize - 1]++];
+          if (index[target] == -1) {
+            index[target] = visited;
+            low[target] = visited++;
+            stack[stackSize++] = target;
+            path[pathSize] = target;
+            nextTarget[pathSize++] = start[target];
+          } else if (component[target] == -1) {
+            // still on the stack
+            low[function] = Math.min(low[function], index[target]);
+          }
+          continue;
+        }
+        pathSize--;
+        if (pathSize > 0) {
+          int caller = path[pathSize - 1];
+          low[caller] = Math.min(low[caller], low[function]);
+        }
+        if (low[function] == index[function]) {
+          int member;
+          int end = stackSize;
+          do {
+            member = stack[--stackSize];
+            component[member] = components;
+          } while (member != function);
+          int depth = 0;
+          for (int i = stackSize; i < end; i++) {
+            for (int t = start[stack[i]]; t < start[stack[i] + 1]; t++) {
+              if (component[targets[t]] != components) {
+                depth = Math.max(depth, componentDepth[component[targets[t]]] + 1);
+              }
+            }
+          }
+          componentDepth[components++] = depth;
+        }
+      }
+    }
+
+    int[] depths = new int[n];
+    for (int function = 0; function < n; function++) {
+      depths[function] = componentDepth[component[function]];
+    }
+    return depths;
+  }
+
+  /**
+   * The functions declared in a file and the calls they make, in the graph of the project.
+   */
+  public static final class Part {
+
+    private final CallGraph graph;
+    private final int[] functions;
+    private final int fromCall;
+    private final int toCall;
+
+    Part(CallGraph graph, int[] functions, int fromCall, int toCall) {
+      this.graph = graph;
+      this.functions = functions;
+      this.fromCall = fromCall;
+      this.toCall = toCall;
+    }
+
+    public int functionCount() {
+      return functions.length;
+    }
+
+    public FunctionId function(int function) {
+      return graph.function(functions[function]);
+    }
+
+    public int callCount() {
+      return toCall - fromCall;
+    }
+
+    public FunctionId caller(int call) {
+      return graph.function(graph.caller(fromCall + call));
+    }
+
+    public FunctionId callee(int call) {
+      return graph.function(graph.callee(fromCall + call));
+    }
+
+  }
+
+}
@@ -22,20 +22,24 @@ package org.sonar.erlang.metrics;
 import com.sonar.sslr.api.AstNode;
 
 import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.erlang.ErlangScopes;
 import org.sonar.erlang.api.ErlangMetric;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
 public class ErlangStatementVisitor extends SquidAstVisitor<LexerlessGrammar> {
 
+  private ErlangScopes scopes;
+
   @Override
   public void init() {
     subscribeTo(ErlangGrammarImpl.statement);
+    scopes = ErlangScopes.of(getContext());
   }
 
   @Override
   public void visitNode(AstNode astNode) {
-    if (astNode.getFirstAncestor(ErlangGrammarImpl.functionDeclaration) != null) {
+    if (scopes.function() != null) {
       getContext().peekSourceCode().add(ErlangMetric.STATEMENTS, 1);
     }
 
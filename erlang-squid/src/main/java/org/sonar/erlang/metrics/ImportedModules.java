@@ -19,11 +19,49 @@
  */
 package org.sonar.erlang.metrics;
 
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.util.BitSet;
+import javax.annotation.Nullable;
+
 /**
- * simple counter metric, need threshold first
+ * Counts the other modules whose functions a file calls, directly or through {@code -import}, from the calls
+ * {@link MaxDepthOfCalling} adds to the {@link CallGraph} while the file is visited.
  *
  * @author tkende
  */
-public class ImportedModules {
+public class ImportedModules extends SquidAstVisitor<LexerlessGrammar> {
+
+  private final CallGraph callGraph;
+  private final BitSet modules = new BitSet();
+  private int firstCall;
+
+  public ImportedModules(CallGraph callGraph) {
+    this.callGraph = callGraph;
+  }
+
+  @Override
+  public void visitFile(@Nullable AstNode astNode) {
+    firstCall = callGraph.callCount();
+  }
+
+  @Override
+  public void leaveFile(@Nullable AstNode astNode) {
+    if (astNode == null) {
+      // file wasn't parsed
+      return;
+    }
+    modules.clear();
+    for (int call = firstCall; call < callGraph.callCount(); call++) {
+      int callee = callGraph.module(callGraph.callee(call));
+      if (callee != callGraph.module(callGraph.caller(call))) {
+        modules.set(callee);
+      }
+    }
+    getContext().peekSourceCode().add(ErlangMetric.IMPORTED_MODULES, modules.cardinality());
+  }
 
 }
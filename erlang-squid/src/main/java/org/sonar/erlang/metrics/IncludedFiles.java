@@ -19,11 +19,49 @@
  */
 package org.sonar.erlang.metrics;
 
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.erlang.preprocessor.Include;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * simple counter metric, needs a threshold first
+ * Counts the {@code -include} and {@code -include_lib} directives of a file, without parsing the included files.
+ * The directives are kept on the file as the data of {@link ErlangMetric#INCLUDED_FILES}.
  *
  * @author tkende
  */
-public class IncludedFiles {
+public class IncludedFiles extends SquidAstVisitor<LexerlessGrammar> {
+
+  private List<Include> includes = new ArrayList<>();
+
+  @Override
+  public void init() {
+    subscribeTo(ErlangGrammarImpl.genericAttr);
+  }
+
+  @Override
+  public void visitFile(AstNode astNode) {
+    includes = new ArrayList<>();
+    getContext().peekSourceCode().addData(ErlangMetric.INCLUDED_FILES, Collections.unmodifiableList(includes));
+  }
+
+  @Override
+  public void visitNode(AstNode astNode) {
+    Include include = Include.of(astNode);
+    if (include != null) {
+      includes.add(include);
+      getContext().peekSourceCode().add(ErlangMetric.INCLUDED_FILES, 1);
+    }
+  }
+
+  public List<Include> getIncludes() {
+    return Collections.unmodifiableList(includes);
+  }
 
 }
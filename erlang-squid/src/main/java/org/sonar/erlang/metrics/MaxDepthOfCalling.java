@@ -19,12 +19,187 @@
  */
 package org.sonar.erlang.metrics;
 
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.CallSite;
+import org.sonar.erlang.CallSites;
+import org.sonar.erlang.ModuleSymbols;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
 /**
- * Needs a proper implementation to avoid using findChildren... maybe
- * subscribing to callExpressions and build up a call tree upward
+ * Fills the {@link CallGraph} of the project with the calls of the functions: local and remote calls, calls of
+ * imported functions and {@code fun F/A} or {@code fun M:F/A} references. The calls whose module or function is only
+ * known at run time are left out. Once all the files are scanned, each function gets the depth of its longest chain
+ * of calls, and each file the deepest one of its functions. The calls of each file are also kept on it, as the
+ * {@link CallGraph.Part} data of {@link ErlangMetric#MAX_DEPTH_OF_CALLING}, so that they can be given back to a
+ * later scan of the other files with {@link #measure(CallGraph, List)}.
  *
  * @author tkende
  */
-public class MaxDepthOfCalling {
+public class MaxDepthOfCalling extends SquidAstVisitor<LexerlessGrammar> {
+
+  private final CallGraph callGraph;
+  private final List<SourceCode> sources = new ArrayList<>();
+  private int[] sourceFunctions = new int[64];
+  private final List<SourceFile> files = new ArrayList<>();
+  // for each file: its first function in the sources, the end of them, its first call and the end of them
+  private int[] fileRanges = new int[64];
+  private int fileSources;
+  private int fileCalls;
+  private ModuleSymbols symbols;
+  private CallSites callSites;
+  private final boolean measureOnDestroy;
+  private int caller = -1;
+
+  public MaxDepthOfCalling(CallGraph callGraph) {
+    this(callGraph, true);
+  }
+
+  /**
+   * @param measureOnDestroy false when the scanned files are only a part of the project: the functions are then
+   * measured by {@link #measure(List)}, with the visitors of the other parts
+   */
+  public MaxDepthOfCalling(CallGraph callGraph, boolean measureOnDestroy) {
+    this.callGraph = callGraph;
+    this.measureOnDestroy = measureOnDestroy;
+  }
+
+  @Override
+  public void init() {
+    subscribeTo(ErlangGrammarImpl.functionDeclaration, ErlangGrammarImpl.callExpression, ErlangGrammarImpl.funExpression);
+    symbols = ModuleSymbols.of(getContext());
+    callSites = CallSites.of(getContext());
+  }
+
+  @Override
+  public void visitFile(@Nullable AstNode astNode) {
+    caller = -1;
+    fileSources = sources.size();
+    fileCalls = callGraph.callCount();
+  }
+
+  @Override
+  public void leaveFile(@Nullable AstNode astNode) {
+    if (sources.size() == fileSources) {
+      return;
+    }
+    if (files.size() * 4 == fileRanges.length) {
+      fileRanges = Arrays.copyOf(fileRanges, fileRanges.length * 2);
+    }
+    int range = files.size() * 4;
+    fileRanges[range] = fileSources;
+    fileRanges[range + 1] = sources.size();
+    fileRanges[range + 2] = fileCalls;
+    fileRanges[range + 3] = callGraph.callCount();
+    files.add(sources.get(fileSources).getParent(SourceFile.class));
+  }
+
+  @Override
+  public void visitNode(AstNode astNode) {
+    if (astNode.is(ErlangGrammarImpl.functionDeclaration)) {
+      caller = callGraph.function(symbols.declared(astNode));
+      callGraph.declare(caller);
+      if (sources.size() == sourceFunctions.length) {
+        sourceFunctions = Arrays.copyOf(sourceFunctions, sources.size() * 2);
+      }
+      sourceFunctions[sources.size()] = caller;
+      sources.add(getContext().peekSourceCode());
+    } else if (caller != -1) {
+      CallSite site = astNode.is(ErlangGrammarImpl.callExpression)
+        ? callSites.resolve(astNode)
+        : CallSite.referencedBy(symbols, astNode);
+      if (site != null && site.getFunction() != null) {
+        callGraph.addCall(caller, callGraph.function(site.getFunction()));
+      }
+    }
+  }
+
+  @Override
+  public void leaveNode(AstNode astNode) {
+    if (astNode.is(ErlangGrammarImpl.functionDeclaration)) {
+      caller = -1;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (measureOnDestroy) {
+      measure(Collections.singletonList(this));
+    }
+  }
+
+  /**
+   * Measures the functions and the files scanned by the visitors, with the calls of all of them.
+   */
+  public static void measure(List<MaxDepthOfCalling> visitors) {
+    measure(null, visitors);
+  }
+
+  /**
+   * Measures the functions and the files scanned by the visitors, with the calls of all of them and the ones of the
+   * files which were not scanned.
+   *
+   * @param known the calls of the files which were not scanned, null when there are none
+   * @return the graph of all the calls
+   */
+  public static CallGraph measure(@Nullable CallGraph known, List<MaxDepthOfCalling> visitors) {
+    boolean own = known == null && visitors.size() == 1;
+    CallGraph project = own ? visitors.get(0).callGraph : known;
+    if (project == null) {
+      project = new CallGraph();
+    }
+    int[][] numbers = new int[visitors.size()][];
+    int[] firstCalls = new int[visitors.size()];
+    if (!own) {
+      for (int i = 0; i < visitors.size(); i++) {
+        firstCalls[i] = project.callCount();
+        numbers[i] = project.addAll(visitors.get(i).callGraph);
+      }
+    }
+    int[] depths = project.depthsOfCalling();
+    for (int i = 0; i < visitors.size(); i++) {
+      MaxDepthOfCalling visitor = visitors.get(i);
+      for (int j = 0; j < visitor.sources.size(); j++) {
+        setDepth(visitor.sources.get(j), depths[number(numbers[i], visitor.sourceFunctions[j])]);
+      }
+      for (int j = 0; j < visitor.files.size(); j++) {
+        int[] functions = new int[visitor.fileRanges[j * 4 + 1] - visitor.fileRanges[j * 4]];
+        for (int k = 0; k < functions.length; k++) {
+          functions[k] = number(numbers[i], visitor.sourceFunctions[visitor.fileRanges[j * 4] + k]);
+        }
+        visitor.files.get(j).addData(ErlangMetric.MAX_DEPTH_OF_CALLING, new CallGraph.Part(project, functions,
+          firstCalls[i] + visitor.fileRanges[j * 4 + 2], firstCalls[i] + visitor.fileRanges[j * 4 + 3]));
+      }
+      visitor.sources.clear();
+      visitor.files.clear();
+    }
+    return project;
+  }
+
+  private static int number(@Nullable int[] numbers, int function) {
+    return numbers == null ? function : numbers[function];
+  }
+
+  /**
+   * The depth of a module, a file or the project is the deepest one of its functions.
+   */
+  private static void setDepth(SourceCode function, int depth) {
+    function.setMeasure(ErlangMetric.MAX_DEPTH_OF_CALLING, depth);
+    for (SourceCode parent = function.getParent(); parent != null; parent = parent.getParent()) {
+      if (parent.getInt(ErlangMetric.MAX_DEPTH_OF_CALLING) < depth) {
+        parent.setMeasure(ErlangMetric.MAX_DEPTH_OF_CALLING, depth);
+      }
+    }
+  }
 
 }
@@ -24,6 +24,8 @@ import com.sonar.sslr.api.AstNode;
 
 import org.sonar.squidbridge.checks.SquidCheck;
 import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.erlang.parser.AstCursor;
+import org.sonar.erlang.parser.CompactAst;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
@@ -34,6 +36,8 @@ public class NumberOfFunctionArgument extends SquidCheck<LexerlessGrammar> {
   List<ErlangGrammarImpl> nonArg = ImmutableList.of(ErlangGrammarImpl.lparenthesis,
     ErlangGrammarImpl.rparenthesis, ErlangGrammarImpl.comma);
 
+  private CompactAst ast;
+
   @Override
   public void init() {
 
@@ -42,12 +46,18 @@ public class NumberOfFunctionArgument extends SquidCheck<LexerlessGrammar> {
   }
 
   @Override
-  public void visitNode(AstNode ast) {
-    AstNode args = ast.getFirstChild(ErlangGrammarImpl.funcDecl).getFirstChild(
-      ErlangGrammarImpl.arguments);
+  public void visitFile(AstNode astNode) {
+    ast = astNode == null ? null : CompactAst.of(astNode);
+  }
+
+  @Override
+  public void visitNode(AstNode astNode) {
+    AstCursor args = ast.cursor(astNode);
+    args.toFirstChild(ErlangGrammarImpl.funcDecl);
+    args.toFirstChild(ErlangGrammarImpl.arguments);
     int numOfArgs = 0;
-    for (AstNode arg : args.getChildren()) {
-      if (!nonArg.contains(arg.getType())) {
+    for (boolean arg = args.toFirstChild(); arg; arg = args.toNextSibling()) {
+      if (!nonArg.contains(args.type())) {
         numOfArgs++;
       }
     }
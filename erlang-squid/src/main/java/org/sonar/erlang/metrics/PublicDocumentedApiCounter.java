@@ -20,20 +20,25 @@
 package org.sonar.erlang.metrics;
 
 import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
 import com.sonar.sslr.api.Trivia;
 
 import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.erlang.ErlangScopes;
+import org.sonar.erlang.FunctionId;
+import org.sonar.erlang.ModuleSymbols;
 import org.sonar.erlang.api.ErlangMetric;
 import org.sonar.erlang.parser.ErlangGrammarImpl;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
 import java.util.List;
+import javax.annotation.Nullable;
 
 public class PublicDocumentedApiCounter extends SquidAstVisitor<LexerlessGrammar> {
 
   private double numOfPublicAPIs;
   private double numOfPublicDocAPIs;
-  private List<AstNode> functions;
+  private ModuleSymbols symbols;
 
   public PublicDocumentedApiCounter() {
     this.numOfPublicAPIs = 0;
@@ -51,12 +56,13 @@ public class PublicDocumentedApiCounter extends SquidAstVisitor<LexerlessGrammar
      * Ignore all exports in flow control (we cannot decide what to do TODO:
      * analyse common export related flow controls
      */
-    if (astNode.getFirstAncestor(ErlangGrammarImpl.flowControlAttr) == null) {
+    if (!ErlangScopes.of(getContext()).inFlowControl()) {
       List<AstNode> exports = astNode.getFirstChild(ErlangGrammarImpl.funcExport).getChildren(
         ErlangGrammarImpl.funcArity);
       numOfPublicAPIs += exports.size();
       for (AstNode export : exports) {
-        AstNode func = findFunctionByArity(getArity(export));
+        FunctionId function = symbols.exported(export);
+        AstNode func = function == null ? null : findFunction(function);
         if (func != null) {
           List<Trivia> comments = func.getFirstDescendant(ErlangGrammarImpl.atom)
             .getToken().getTrivia();
@@ -82,11 +88,13 @@ public class PublicDocumentedApiCounter extends SquidAstVisitor<LexerlessGrammar
 
   @Override
   public void visitFile(AstNode astNode) {
+    numOfPublicAPIs = 0;
+    numOfPublicDocAPIs = 0;
     if (astNode == null) {
       // file wasn't parsed
       return;
     }
-    functions = astNode.getFirstChild(ErlangGrammarImpl.moduleElements).getChildren(ErlangGrammarImpl.functionDeclaration);
+    symbols = ModuleSymbols.of(getContext());
   }
 
   @Override
@@ -99,31 +107,33 @@ public class PublicDocumentedApiCounter extends SquidAstVisitor<LexerlessGrammar
     getContext().peekSourceCode().add(ErlangMetric.PUBLIC_DOC_API, numOfPublicDocAPIs);
     double density = (numOfPublicAPIs > 0) ? numOfPublicDocAPIs / numOfPublicAPIs : 0;
     getContext().peekSourceCode().add(ErlangMetric.PUBLIC_DOCUMENTED_API_DENSITY, density);
-    functions = null;
+    symbols = null;
   }
 
-  private AstNode findFunctionByArity(String arity) {
-    for (AstNode function : functions) {
-      if (getArity(function).equals(arity)) {
-        return function;
+  /**
+   * A declaration without arguments is counted as one with an argument: {@code f/1} documents {@code f()} when it
+   * comes first, and {@code f/0} documents nothing.
+   */
+  @Nullable
+  private AstNode findFunction(FunctionId export) {
+    if (export.getArity() == 0) {
+      return null;
+    }
+    AstNode function = symbols.function(export);
+    if (export.getArity() == 1) {
+      AstNode withoutArguments = symbols.function(FunctionId.of(export.getModule(), export.getName(), 0));
+      if (function == null || withoutArguments != null && isBefore(withoutArguments, function)) {
+        return withoutArguments;
       }
     }
-    return null;
+    return function;
   }
 
-  private String getArity(AstNode node) {
-    StringBuilder ret = new StringBuilder();
-    if ("funcArity".equalsIgnoreCase(node.getName())) {
-      for (AstNode arity : node.getChildren()) {
-        ret.append(arity.getTokenOriginalValue());
-      }
-    } else if ("functionDeclaration".equalsIgnoreCase(node.getName())) {
-      ret.append(node.getFirstDescendant(ErlangGrammarImpl.funcDecl).getTokenOriginalValue());
-      ret.append("/");
-      ret.append(node.getFirstDescendant(ErlangGrammarImpl.arguments).getChildren(ErlangGrammarImpl.comma)
-        .size() + 1);
-    }
-    return ret.toString();
+  private static boolean isBefore(AstNode node, AstNode other) {
+    Token token = node.getToken();
+    Token otherToken = other.getToken();
+    return token.getLine() < otherToken.getLine()
+      || token.getLine() == otherToken.getLine() && token.getColumn() < otherToken.getColumn();
   }
 
 }
@@ -0,0 +1,154 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.metrics;
+
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.erlang.api.ErlangTokenType;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link PublicDocumentedApiCounter} of the lexical only analysis, which reads the exports and the function
+ * heads from the tokens of the top level forms. The exports and the functions between conditional directives are
+ * ignored, as the parsed ones are.
+ */
+public class PublicDocumentedApiTokenCounter extends SquidAstVisitor<LexerlessGrammar> implements AstAndTokenVisitor {
+
+  private static final List<String> OPENING_DIRECTIVES = Arrays.asList("ifdef", "ifndef", "if");
+  private static final List<String> OPENING_BRACKETS = Arrays.asList("(", "[", "{", "<<");
+  private static final List<String> CLOSING_BRACKETS = Arrays.asList(")", "]", "}", ">>");
+
+  private final List<Token> form = new ArrayList<>();
+  private final List<String> exports = new ArrayList<>();
+  /**
+   * Whether the first function of each name and arity is documented.
+   */
+  private final Map<String, Boolean> functions = new HashMap<>();
+  private int depth;
+
+  @Override
+  public void visitFile(AstNode astNode) {
+    form.clear();
+    exports.clear();
+    functions.clear();
+    depth = 0;
+  }
+
+  @Override
+  public void visitToken(Token token) {
+    if (token.getType() != GenericTokenType.EOF) {
+      form.add(token);
+    }
+    if (token.getType() == ErlangTokenType.END_OF_FORM || token.getType() == GenericTokenType.EOF) {
+      visitForm();
+      form.clear();
+    }
+  }
+
+  @Override
+  public void leaveFile(AstNode astNode) {
+    if (astNode == null) {
+      // file wasn't lexed
+      return;
+    }
+    double numOfPublicAPIs = exports.size();
+    double numOfPublicDocAPIs = 0;
+    for (String export : exports) {
+      if (Boolean.TRUE.equals(functions.get(export))) {
+        numOfPublicDocAPIs++;
+      }
+    }
+    getContext().peekSourceCode().add(ErlangMetric.PUBLIC_API, numOfPublicAPIs);
+    getContext().peekSourceCode().add(ErlangMetric.PUBLIC_DOC_API, numOfPublicDocAPIs);
+    double density = (numOfPublicAPIs > 0) ? numOfPublicDocAPIs / numOfPublicAPIs : 0;
+    getContext().peekSourceCode().add(ErlangMetric.PUBLIC_DOCUMENTED_API_DENSITY, density);
+  }
+
+  private void visitForm() {
+    if (form.size() < 2) {
+      return;
+    }
+    Token first = form.get(0);
+    if ("-".equals(first.getValue())) {
+      String directive = form.get(1).getValue();
+      if (OPENING_DIRECTIVES.contains(directive)) {
+        depth++;
+      } else if ("endif".equals(directive)) {
+        depth = Math.max(0, depth - 1);
+      } else if ("export".equals(directive) && depth == 0) {
+        visitExports();
+      }
+    } else if (first.getType() == ErlangTokenType.ATOM && "(".equals(form.get(1).getValue()) && depth == 0) {
+      functions.putIfAbsent(first.getOriginalValue() + "/" + arity(), isDocumented(first));
+    }
+  }
+
+  private void visitExports() {
+    for (int i = 3; i < form.size() - 1; i++) {
+      if ("/".equals(form.get(i).getValue())) {
+        exports.add(form.get(i - 1).getOriginalValue() + "/" + form.get(i + 1).getOriginalValue());
+      }
+    }
+  }
+
+  /**
+   * The arity the way {@link PublicDocumentedApiCounter} counts it, the number of commas between the arguments
+   * plus one.
+   */
+  private int arity() {
+    int commas = 0;
+    int brackets = 0;
+    for (Token token : form.subList(1, form.size())) {
+      String value = token.getValue();
+      if (OPENING_BRACKETS.contains(value)) {
+        brackets++;
+      } else if (CLOSING_BRACKETS.contains(value)) {
+        brackets--;
+        if (brackets == 0) {
+          break;
+        }
+      } else if (",".equals(value) && brackets == 1) {
+        commas++;
+      }
+    }
+    return commas + 1;
+  }
+
+  private static boolean isDocumented(Token name) {
+    for (Trivia trivia : name.getTrivia()) {
+      if (trivia.isComment() && !trivia.getToken().getOriginalValue().matches("^%%+ *(.)\\1+ *$")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A position in a {@link CompactAst}. The {@code to*} methods move it, and return {@code false} without
+ * moving it when there is no such node.
+ */
+public final class AstCursor {
+
+  private final CompactAst ast;
+  private int node;
+
+  AstCursor(CompactAst ast, int node) {
+    this.ast = ast;
+    this.node = node;
+  }
+
+  public CompactAst ast() {
+    return ast;
+  }
+
+  public int node() {
+    return node;
+  }
+
+  public AstNode astNode() {
+    return ast.node(node);
+  }
+
+  public ErlangGrammarImpl type() {
+    return ast.type(node);
+  }
+
+  public boolean is(ErlangGrammarImpl... types) {
+    return ast.is(node, types);
+  }
+
+  public boolean toParent() {
+    return moveTo(ast.parent(node));
+  }
+
+  public boolean toFirstChild() {
+    return moveTo(ast.firstChild(node));
+  }
+
+  public boolean toFirstChild(ErlangGrammarImpl childType) {
+    return moveTo(ast.firstChild(node, childType));
+  }
+
+  public boolean toNextSibling() {
+    return moveTo(ast.nextSibling(node));
+  }
+
+  public boolean toFirstAncestor(ErlangGrammarImpl ancestorType) {
+    return moveTo(ast.firstAncestor(node, ancestorType));
+  }
+
+  public boolean toFirstDescendant(ErlangGrammarImpl descendantType) {
+    return moveTo(ast.firstDescendant(node, descendantType));
+  }
+
+  public boolean hasAncestor(ErlangGrammarImpl ancestorType) {
+    return ast.firstAncestor(node, ancestorType) != CompactAst.NONE;
+  }
+
+  public int numberOfChildren() {
+    return ast.numberOfChildren(node);
+  }
+
+  public int countDescendants(ErlangGrammarImpl descendantType) {
+    return ast.countDescendants(node, descendantType);
+  }
+
+  public List<AstNode> descendants(ErlangGrammarImpl descendantType) {
+    return ast.descendants(node, descendantType);
+  }
+
+  /**
+   * The first token of the node, {@code null} if it is empty.
+   */
+  @Nullable
+  public Token token() {
+    return isEmpty() ? null : ast.token(ast.firstToken(node));
+  }
+
+  @Nullable
+  public Token lastToken() {
+    return isEmpty() ? null : ast.token(ast.lastToken(node));
+  }
+
+  public int tokenLine() {
+    Token token = token();
+    return token == null ? -1 : token.getLine();
+  }
+
+  @Nullable
+  public String tokenOriginalValue() {
+    Token token = token();
+    return token == null ? null : token.getOriginalValue();
+  }
+
+  public boolean isEmpty() {
+    return ast.lastToken(node) < ast.firstToken(node);
+  }
+
+  public AstCursor copy() {
+    return new AstCursor(ast, node);
+  }
+
+  private boolean moveTo(int target) {
+    if (target == CompactAst.NONE) {
+      return false;
+    }
+    node = target;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return type() + "@" + node;
+  }
+
+}
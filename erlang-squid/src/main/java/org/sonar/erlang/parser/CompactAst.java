@@ -0,0 +1,443 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.google.common.collect.MapMaker;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable copy of a parsed tree keeping only its {@link ErlangGrammarImpl} rule nodes, in parallel int
+ * arrays indexed by the preorder position of the node: the first node is the root, and the descendants of
+ * a node directly follow it. The token nodes are not kept, a node only knows the index of its first and last
+ * token in {@link #token(int)}. The nodes of each rule are also indexed in document order, so that finding the
+ * descendants of a given rule is a binary search in them rather than a walk of the subtree.
+ * <p>
+ * The copy of a tree is built once, at the first {@link #of(AstNode)} call, and shared by the visitors of the
+ * file until the tree is not referenced anymore. They walk it with an {@link AstCursor}.
+ */
+public final class CompactAst {
+
+  public static final int NONE = -1;
+
+  private static final ErlangGrammarImpl[] TYPES = ErlangGrammarImpl.values();
+  private static final ConcurrentMap<AstNode, CompactAst> CACHE = new MapMaker().weakKeys().makeMap();
+
+  private final Token[] tokens;
+  private final int[] type;
+  private final int[] firstToken;
+  private final int[] lastToken;
+  private final int[] parent;
+  private final int[] firstChild;
+  private final int[] nextSibling;
+  /**
+   * The first node starting with the token, to find back the index of an {@link AstNode}.
+   */
+  private final int[] tokenNode;
+  private final AstNode[] nodes;
+  /**
+   * The nodes of the rule of ordinal {@code o}, in preorder, are {@code typeNodes[typeStart[o]]} to
+   * {@code typeNodes[typeStart[o + 1] - 1]}.
+   */
+  private final int[] typeStart;
+  private final int[] typeNodes;
+  private final int size;
+
+  private CompactAst(AstNode root) {
+    List<Token> rootTokens = root.getTokens();
+    tokens = rootTokens.toArray(new Token[rootTokens.size()]);
+    Builder builder = new Builder(tokens.length);
+    builder.add(root, NONE);
+    size = builder.size;
+    type = Arrays.copyOf(builder.type, size);
+    firstToken = Arrays.copyOf(builder.firstToken, size);
+    lastToken = Arrays.copyOf(builder.lastToken, size);
+    parent = Arrays.copyOf(builder.parent, size);
+    firstChild = Arrays.copyOf(builder.firstChild, size);
+    nextSibling = Arrays.copyOf(builder.nextSibling, size);
+    tokenNode = builder.tokenNode;
+    nodes = Arrays.copyOf(builder.nodes, size);
+    typeStart = new int[TYPES.length + 1];
+    for (int i = 0; i < size; i++) {
+      typeStart[type[i] + 1]++;
+    }
+    for (int t = 0; t < TYPES.length; t++) {
+      typeStart[t + 1] += typeStart[t];
+    }
+    typeNodes = new int[size];
+    int[] next = Arrays.copyOf(typeStart, TYPES.length);
+    for (int i = 0; i < size; i++) {
+      typeNodes[next[type[i]]++] = i;
+    }
+  }
+
+  /**
+   * The compact copy of the tree, built at the first call for a given root.
+   */
+  public static CompactAst of(AstNode root) {
+    return CACHE.computeIfAbsent(root, CompactAst::new);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int tokenCount() {
+    return tokens.length;
+  }
+
+  public Token token(int tokenIndex) {
+    return tokens[tokenIndex];
+  }
+
+  /**
+   * The rule node of the tree this copy was built from.
+   */
+  public AstNode node(int node) {
+    return nodes[node];
+  }
+
+  /**
+   * All the nodes of the rule, in document order.
+   */
+  public List<AstNode> nodes(ErlangGrammarImpl nodeType) {
+    return new Nodes(typeStart[nodeType.ordinal()], typeStart[nodeType.ordinal() + 1]);
+  }
+
+  /**
+   * The first node of the rule, null if there is none.
+   */
+  @Nullable
+  public AstNode first(ErlangGrammarImpl nodeType) {
+    int start = typeStart[nodeType.ordinal()];
+    return start < typeStart[nodeType.ordinal() + 1] ? nodes[typeNodes[start]] : null;
+  }
+
+  public ErlangGrammarImpl type(int node) {
+    return TYPES[type[node]];
+  }
+
+  public boolean is(int node, ErlangGrammarImpl... types) {
+    int ordinal = type[node];
+    for (ErlangGrammarImpl t : types) {
+      if (t.ordinal() == ordinal) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int parent(int node) {
+    return parent[node];
+  }
+
+  public int firstChild(int node) {
+    return firstChild[node];
+  }
+
+  public int nextSibling(int node) {
+    return nextSibling[node];
+  }
+
+  /**
+   * The index of the first token of the node, which is the index of the next token if the node is empty.
+   */
+  public int firstToken(int node) {
+    return firstToken[node];
+  }
+
+  /**
+   * The index of the last token of the node, which is {@code firstToken(node) - 1} if the node is empty.
+   */
+  public int lastToken(int node) {
+    return lastToken[node];
+  }
+
+  /**
+   * The index after the last descendant of the node.
+   */
+  public int end(int node) {
+    int n = node;
+    while (n != NONE && nextSibling[n] == NONE) {
+      n = parent[n];
+    }
+    return n == NONE ? size : nextSibling[n];
+  }
+
+  public int firstChild(int node, ErlangGrammarImpl childType) {
+    int child = firstChild[node];
+    while (child != NONE && type[child] != childType.ordinal()) {
+      child = nextSibling[child];
+    }
+    return child;
+  }
+
+  public int numberOfChildren(int node) {
+    int count = 0;
+    for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+      count++;
+    }
+    return count;
+  }
+
+  public int firstAncestor(int node, ErlangGrammarImpl ancestorType) {
+    int ancestor = parent[node];
+    while (ancestor != NONE && type[ancestor] != ancestorType.ordinal()) {
+      ancestor = parent[ancestor];
+    }
+    return ancestor;
+  }
+
+  public int firstDescendant(int node, ErlangGrammarImpl descendantType) {
+    int first = typeIndex(descendantType, node + 1);
+    return first < typeStart[descendantType.ordinal() + 1] && typeNodes[first] < end(node) ? typeNodes[first] : NONE;
+  }
+
+  public int countDescendants(int node, ErlangGrammarImpl descendantType) {
+    return typeIndex(descendantType, end(node)) - typeIndex(descendantType, node + 1);
+  }
+
+  /**
+   * The descendants of the node of the given rule, in document order.
+   */
+  public List<AstNode> descendants(int node, ErlangGrammarImpl descendantType) {
+    return new Nodes(typeIndex(descendantType, node + 1), typeIndex(descendantType, end(node)));
+  }
+
+  /**
+   * The position in {@link #typeNodes} of the first node of the rule at or after the given node.
+   */
+  private int typeIndex(ErlangGrammarImpl nodeType, int node) {
+    int low = typeStart[nodeType.ordinal()];
+    int high = typeStart[nodeType.ordinal() + 1];
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (typeNodes[middle] < node) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * The index of a rule node of the tree this copy was built from.
+   *
+   * @throws IllegalArgumentException if the node is not a non empty rule node of that tree
+   */
+  public int indexOf(AstNode node) {
+    Token token = node.getToken();
+    int tokenIndex = token == null ? NONE : tokenIndex(token);
+    if (tokenIndex == NONE || !(node.getType() instanceof ErlangGrammarImpl)) {
+      throw new IllegalArgumentException("Not a rule node of the tree: " + node);
+    }
+    // the nested nodes of the same type starting with the same token, outermost first
+    int depth = 0;
+    for (AstNode ancestor = node.getParent(); ancestor != null && ancestor.getToken() == token; ancestor = ancestor.getParent()) {
+      if (ancestor.getType() == node.getType()) {
+        depth++;
+      }
+    }
+    int ordinal = ((ErlangGrammarImpl) node.getType()).ordinal();
+    for (int i = tokenNode[tokenIndex]; i != NONE && i < size && firstToken[i] == tokenIndex; i++) {
+      if (type[i] == ordinal && depth-- == 0) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Not a rule node of the tree: " + node);
+  }
+
+  public AstCursor cursor() {
+    return new AstCursor(this, 0);
+  }
+
+  /**
+   * A cursor on the copy of the given rule node.
+   */
+  public AstCursor cursor(AstNode node) {
+    return new AstCursor(this, indexOf(node));
+  }
+
+  private int tokenIndex(Token token) {
+    int low = 0;
+    int high = tokens.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      Token candidate = tokens[middle];
+      int compare = compare(candidate, token);
+      if (compare < 0) {
+        low = middle + 1;
+      } else if (compare > 0) {
+        high = middle - 1;
+      } else {
+        return sameToken(middle, token);
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * The index of the token among the ones at the same position as the given index: the tokens of a macro
+   * expansion all are at the position of the macro.
+   */
+  private int sameToken(int index, Token token) {
+    for (int i = index; i >= 0 && compare(tokens[i], token) == 0; i--) {
+      if (tokens[i] == token) {
+        return i;
+      }
+    }
+    for (int i = index + 1; i < tokens.length && compare(tokens[i], token) == 0; i++) {
+      if (tokens[i] == token) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+
+  private static int compare(Token a, Token b) {
+    return a.getLine() != b.getLine() ? Integer.compare(a.getLine(), b.getLine()) : Integer.compare(a.getColumn(), b.getColumn());
+  }
+
+  /**
+   * The nodes at positions {@code from} to {@code to - 1} of {@link #typeNodes}.
+   */
+  private final class Nodes extends AbstractList<AstNode> {
+
+    private final int from;
+    private final int to;
+
+    Nodes(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public AstNode get(int index) {
+      if (index < 0 || index >= to - from) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (to - from));
+      }
+      return nodes[typeNodes[from + index]];
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+
+  }
+
+  /**
+   * Numbers the nodes in preorder, and the tokens in the order of the leaves, like {@link AstNode#getTokens()}.
+   */
+  private static final class Builder {
+
+    private int[] type;
+    private int[] firstToken;
+    private int[] lastToken;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private AstNode[] nodes;
+    private final int[] tokenNode;
+    private int size;
+    private int nextToken;
+
+    Builder(int tokenCount) {
+      // there are about two rule nodes per token
+      int capacity = Math.max(16, tokenCount * 3);
+      type = new int[capacity];
+      firstToken = new int[capacity];
+      lastToken = new int[capacity];
+      parent = new int[capacity];
+      firstChild = new int[capacity];
+      nextSibling = new int[capacity];
+      nodes = new AstNode[capacity];
+      tokenNode = new int[tokenCount];
+      Arrays.fill(tokenNode, NONE);
+    }
+
+    void add(AstNode node, int parentIndex) {
+      boolean rule = node.getType() instanceof ErlangGrammarImpl;
+      if (!node.hasChildren() && node.hasToken()) {
+        nextToken++;
+      }
+      if (!rule) {
+        for (AstNode child : node.getChildren()) {
+          add(child, parentIndex);
+        }
+        return;
+      }
+      int index = newNode(((ErlangGrammarImpl) node.getType()).ordinal(), parentIndex);
+      nodes[index] = node;
+      int start = !node.hasChildren() && node.hasToken() ? (nextToken - 1) : nextToken;
+      firstToken[index] = start;
+      if (start < tokenNode.length && tokenNode[start] == NONE) {
+        tokenNode[start] = index;
+      }
+      for (AstNode child : node.getChildren()) {
+        add(child, index);
+      }
+      lastToken[index] = nextToken - 1;
+    }
+
+    private int newNode(int ordinal, int parentIndex) {
+      if (size == type.length) {
+        grow();
+      }
+      int index = size++;
+      type[index] = ordinal;
+      parent[index] = parentIndex;
+      firstChild[index] = NONE;
+      nextSibling[index] = NONE;
+      if (parentIndex != NONE) {
+        if (firstChild[parentIndex] == NONE) {
+          firstChild[parentIndex] = index;
+        } else {
+          // the node before in preorder is the previous sibling or one of its descendants
+          int previous = index - 1;
+          while (parent[previous] != parentIndex) {
+            previous = parent[previous];
+          }
+          nextSibling[previous] = index;
+        }
+      }
+      return index;
+    }
+
+    private void grow() {
+      int capacity = type.length * 2;
+      type = Arrays.copyOf(type, capacity);
+      firstToken = Arrays.copyOf(firstToken, capacity);
+      lastToken = Arrays.copyOf(lastToken, capacity);
+      parent = Arrays.copyOf(parent, capacity);
+      firstChild = Arrays.copyOf(firstChild, capacity);
+      nextSibling = Arrays.copyOf(nextSibling, capacity);
+      nodes = Arrays.copyOf(nodes, capacity);
+    }
+  }
+
+}
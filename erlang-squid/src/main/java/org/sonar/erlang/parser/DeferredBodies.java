@@ -0,0 +1,124 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.google.common.base.CharMatcher;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import org.sonar.erlang.lexer.ErlangLexer;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bodies of {@code -record}, {@code -define}, {@code -spec}, {@code -callback}, {@code -type} and
+ * {@code -opaque} are not parsed with the rest of the module: the grammar only captures them in an
+ * {@link ErlangGrammarImpl#attributeBody} or {@link ErlangGrammarImpl#formBody} node. With the lexerless
+ * front end, this node has one token per run of characters between spaces and comments.
+ * <p>
+ * The visitors needing the content of such a body get its Erlang tokens here. They are lexed again at
+ * each call, with their original lines and columns.
+ */
+public final class DeferredBodies {
+
+  private static final ErlangLexer LEXER = new ErlangLexer(StandardCharsets.UTF_8);
+
+  private DeferredBodies() {
+  }
+
+  public static boolean isDeferredBody(AstNode node) {
+    return node.is(ErlangGrammarImpl.attributeBody, ErlangGrammarImpl.formBody);
+  }
+
+  /**
+   * The tokens of the body, with the comments inside it as trivia.
+   */
+  public static List<Token> tokens(AstNode body) {
+    if (!isDeferredBody(body)) {
+      throw new IllegalArgumentException("Not a deferred body: " + body);
+    }
+    List<Token> parsed = body.getTokens();
+    Token first = parsed.get(0);
+    Source source = new Source(first.getLine());
+    for (Token token : parsed) {
+      for (Trivia trivia : token.getTrivia()) {
+        if (trivia.isComment() && token != first) {
+          source.append(trivia.getToken());
+        }
+      }
+      source.append(token);
+    }
+    List<Token> tokens = LEXER.lex(source.toString(), first.getURI());
+    // the last one is the end of input
+    return new ArrayList<>(tokens.subList(0, tokens.size() - 1));
+  }
+
+  /**
+   * Rebuilds the text of the tokens, each at its line and column, so that the lexer gives them back their positions.
+   */
+  private static final class Source {
+
+    private final StringBuilder text = new StringBuilder();
+    private int line = 1;
+    private int column;
+
+    Source(int firstLine) {
+      // the lines before the body are kept empty
+      while (line < firstLine) {
+        newLine();
+      }
+    }
+
+    void append(Token token) {
+      while (line < token.getLine()) {
+        newLine();
+      }
+      while (column < token.getColumn()) {
+        text.append(' ');
+        column++;
+      }
+      String value = token.getOriginalValue();
+      text.append(value);
+      int lastBreak = value.lastIndexOf('\n');
+      if (lastBreak < 0) {
+        column += value.length();
+      } else {
+        // multi-line string literal of the lexer front end
+        line += CharMatcher.is('\n').countIn(value);
+        column = value.length() - lastBreak - 1;
+      }
+    }
+
+    private void newLine() {
+      text.append('\n');
+      line++;
+      column = 0;
+    }
+
+    @Override
+    public String toString() {
+      return text.toString();
+    }
+  }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.GenericTokenType;
+import org.sonar.erlang.api.ErlangTokenType;
+import org.sonar.sslr.grammar.GrammarRuleBuilder;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+import org.sonar.sslr.grammar.LexerfulGrammarBuilder;
+import org.sonar.sslr.grammar.LexerlessGrammarBuilder;
+
+import static org.sonar.erlang.parser.ErlangGrammarImpl.dot;
+import static org.sonar.erlang.parser.ErlangGrammarImpl.rparenthesis;
+import static org.sonar.erlang.parser.ErlangGrammarImpl.spacing;
+
+/**
+ * Common view of the lexerless and lexerful SSLR grammar builders, so the structural
+ * rules of {@link ErlangGrammarImpl} are written once for both front ends. The few
+ * rules which depend on how the input is cut into tokens have a method of their own.
+ */
+abstract class ErlangGrammarBuilder {
+
+  abstract GrammarRuleBuilder rule(GrammarRuleKey ruleKey);
+
+  abstract Object sequence(Object e1, Object e2, Object... rest);
+
+  abstract Object firstOf(Object e1, Object e2, Object... rest);
+
+  abstract Object optional(Object e, Object... rest);
+
+  abstract Object zeroOrMore(Object e, Object... rest);
+
+  abstract Object oneOrMore(Object e, Object... rest);
+
+  abstract Object nextNot(Object e, Object... rest);
+
+  /**
+   * A word with a special meaning in some attributes only, like {@code record} in {@code -record(...)}.
+   */
+  abstract Object semiKeyword(String value);
+
+  /**
+   * Unparsed, non empty, content of {@code -record} and {@code -define}, up to the closing {@code ).}
+   * See {@link DeferredBodies}.
+   */
+  abstract Object attributeBody();
+
+  /**
+   * Unparsed, non empty, content of {@code -spec}, {@code -callback}, {@code -type} and {@code -opaque},
+   * up to the dot ending the form. See {@link DeferredBodies}.
+   */
+  abstract Object formBody();
+
+  static class Lexerless extends ErlangGrammarBuilder {
+
+    /**
+     * White spaces, start of comments and line breaks.
+     */
+    private static final String SEPARATORS = "\\n\\r\\t\\u000B\\f\\u0020\\u00A0\\uFEFF\\p{Zs}%\\u0085\\u2028\\u2029";
+
+    /**
+     * Run of other characters, up to a {@code )} followed by the {@code .} ending the form.
+     */
+    private static final String ATTRIBUTE_BODY = "(?:[^)" + SEPARATORS + "]|\\)(?!(?:" + ErlangGrammarImpl.WHITESPACE + "|"
+      + ErlangGrammarImpl.COMMENT + ")*+\\.))++";
+
+    /**
+     * Run of other characters, up to a {@code .} followed by a line break or the end of the input.
+     */
+    private static final String FORM_BODY = "(?:\\.(?:\\.++|[^\\n\\r\\u0085\\u2028\\u2029])|[^." + SEPARATORS + "])++";
+
+    private final LexerlessGrammarBuilder b;
+
+    Lexerless(LexerlessGrammarBuilder b) {
+      this.b = b;
+    }
+
+    @Override
+    GrammarRuleBuilder rule(GrammarRuleKey ruleKey) {
+      return b.rule(ruleKey);
+    }
+
+    @Override
+    Object sequence(Object e1, Object e2, Object... rest) {
+      return b.sequence(e1, e2, rest);
+    }
+
+    @Override
+    Object firstOf(Object e1, Object e2, Object... rest) {
+      return b.firstOf(e1, e2, rest);
+    }
+
+    @Override
+    Object optional(Object e, Object... rest) {
+      return b.optional(e, rest);
+    }
+
+    @Override
+    Object zeroOrMore(Object e, Object... rest) {
+      return b.zeroOrMore(e, rest);
+    }
+
+    @Override
+    Object oneOrMore(Object e, Object... rest) {
+      return b.oneOrMore(e, rest);
+    }
+
+    @Override
+    Object nextNot(Object e, Object... rest) {
+      return b.nextNot(e, rest);
+    }
+
+    @Override
+    Object semiKeyword(String value) {
+      return b.sequence(value, b.nextNot(ErlangGrammarImpl.letterOrDigit), spacing);
+    }
+
+    /**
+     * One token per run of characters between spaces and comments, so that the comments remain trivia
+     * and every token stays on one line.
+     */
+    @Override
+    Object attributeBody() {
+      return b.oneOrMore(b.regexp(ATTRIBUTE_BODY), spacing);
+    }
+
+    @Override
+    Object formBody() {
+      return b.oneOrMore(b.regexp(FORM_BODY), spacing);
+    }
+  }
+
+  static class Lexerful extends ErlangGrammarBuilder {
+
+    private final LexerfulGrammarBuilder b;
+
+    Lexerful(LexerfulGrammarBuilder b) {
+      this.b = b;
+    }
+
+    @Override
+    GrammarRuleBuilder rule(GrammarRuleKey ruleKey) {
+      return b.rule(ruleKey);
+    }
+
+    @Override
+    Object sequence(Object e1, Object e2, Object... rest) {
+      return b.sequence(e1, e2, rest);
+    }
+
+    @Override
+    Object firstOf(Object e1, Object e2, Object... rest) {
+      return b.firstOf(e1, e2, rest);
+    }
+
+    @Override
+    Object optional(Object e, Object... rest) {
+      return b.optional(e, rest);
+    }
+
+    @Override
+    Object zeroOrMore(Object e, Object... rest) {
+      return b.zeroOrMore(e, rest);
+    }
+
+    @Override
+    Object oneOrMore(Object e, Object... rest) {
+      return b.oneOrMore(e, rest);
+    }
+
+    @Override
+    Object nextNot(Object e, Object... rest) {
+      return b.nextNot(e, rest);
+    }
+
+    @Override
+    Object semiKeyword(String value) {
+      return value;
+    }
+
+    @Override
+    Object attributeBody() {
+      return b.oneOrMore(b.nextNot(rparenthesis, dot), b.anyTokenButNot(GenericTokenType.EOF));
+    }
+
+    @Override
+    Object formBody() {
+      return b.oneOrMore(b.anyTokenButNot(b.firstOf(ErlangTokenType.END_OF_FORM, GenericTokenType.EOF)));
+    }
+  }
+
+}
@@ -20,10 +20,18 @@
 package org.sonar.erlang.parser;
 
 import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.impl.matcher.RuleDefinition;
+import org.sonar.erlang.api.ErlangKeyword;
+import org.sonar.erlang.api.ErlangPunctuator;
+import org.sonar.erlang.api.ErlangTokenType;
 import org.sonar.sslr.grammar.GrammarRuleKey;
+import org.sonar.sslr.grammar.LexerfulGrammarBuilder;
 import org.sonar.sslr.grammar.LexerlessGrammarBuilder;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
+import java.util.Locale;
+
 public enum ErlangGrammarImpl implements GrammarRuleKey {
 
   eof,
@@ -183,6 +191,7 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
   blockExpression,
   macroLiteral,
   otherArithmeticExpression,
+  operatorExpression,
   ifdefAttr,
   ifndefAttr,
   elseAttr,
@@ -190,6 +199,8 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
   flowControlAttr,
   recordAttr,
   spec,
+  attributeBody,
+  formBody,
   moduleHeadAttr,
   importAttr,
   recordField,
@@ -239,6 +250,12 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
   // public static final String IDENTIFIER = "('[^'\n\r]*')"
   // + "|^(?!\\$)(\\p{javaJavaIdentifierStart}++[\\p{javaJavaIdentifierPart}@]*+)";
 
+  /**
+   * The lexerless grammar. Its trees have a flat {@link #operatorExpression} node for each chain of binary operators,
+   * without the nodes of the precedence levels like {@link #additiveExpression}: the parsers of
+   * {@link ErlangParser#create(org.sonar.erlang.ErlangConfiguration)} build them with {@link OperatorPrecedence#fold}
+   * once the input is parsed, and so must other users of the grammar which need them.
+   */
   public static LexerlessGrammar createGrammar() {
     return createGrammarBuilder().build();
   }
@@ -248,15 +265,46 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
     lexical(b);
     punctuators(b);
     keywords(b);
+    structure(new ErlangGrammarBuilder.Lexerless(b));
+
+    b.setRootRule(module);
+
+    return b;
+  }
+
+  /**
+   * Grammar of the token based front end, to be used with {@link org.sonar.erlang.lexer.ErlangLexer}.
+   * It shares all the structural rules with the lexerless grammar, so it produces the same rule nodes, with the
+   * binary operator chains left to {@link OperatorPrecedence#fold} as well.
+   */
+  public static Grammar createLexerfulGrammar() {
+    Grammar grammar = createLexerfulGrammarBuilder().build();
+    // lexerless rules are always memoized, lexerful ones only on demand
+    for (ErlangGrammarImpl key : values()) {
+      RuleDefinition rule = (RuleDefinition) grammar.rule(key);
+      if (rule != null) {
+        rule.enableMemoization();
+      }
+    }
+    return grammar;
+  }
+
+  public static LexerfulGrammarBuilder createLexerfulGrammarBuilder() {
+    LexerfulGrammarBuilder b = LexerfulGrammarBuilder.create();
+    lexerfulTokens(b);
+    structure(new ErlangGrammarBuilder.Lexerful(b));
+
+    b.setRootRule(module);
+
+    return b;
+  }
+
+  private static void structure(ErlangGrammarBuilder b) {
     expressions(b);
     branchAndGuardExpressions(b);
     statements(b);
     module(b);
     functions(b);
-
-    b.setRootRule(module);
-
-    return b;
   }
 
   /**
@@ -349,6 +397,34 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
       ).skip();
   }
 
+  private static void lexerfulTokens(LexerfulGrammarBuilder b) {
+    b.rule(eof).is(GenericTokenType.EOF).skip();
+    b.rule(identifier).is(ErlangTokenType.VARIABLE);
+    b.rule(atom).is(ErlangTokenType.ATOM,
+      b.zeroOrMore(b.adjacent("."), b.adjacent(ErlangTokenType.ATOM)));
+    b.rule(numericLiteral).is(ErlangTokenType.NUMERIC_LITERAL);
+    b.rule(stringLiteral).is(ErlangTokenType.STRING_LITERAL);
+    b.rule(spacing).is(b.optional(b.nothing())).skip();
+
+    ErlangKeyword[] keywordTypes = ErlangKeyword.values();
+    b.rule(keyword).is(b.isOneOfThem(keywordTypes[0], keywordTypes));
+    b.rule(moduleAttrTags).is(b.firstOf(
+      "ifdef", "ifndef", "else", "endif", "module", "export", "compile", "define", "import", "file", "behaviour",
+      "on_load", "include", "ignore_xref", "author", "include_lib", "export_type", "deprecated", "asn1_info"));
+
+    for (ErlangGrammarImpl punctuator : new ErlangGrammarImpl[] {arrow, arrowback, doublearrowback, lcurlybrace,
+      rcurlybrace, lparenthesis, rparenthesis, lbracket, rbracket, semi, comma, colon, matchop, plus, minus, star, div,
+      lt, gt, le, ge, equal, notequal, equal2, notequal2, binstart, binend, listcomp, pipe, dollar, apostrophe, plusplus,
+      minusminus, numbersign, exclamation, questionmark, mapA, mapU}) {
+      b.rule(punctuator).is(ErlangPunctuator.valueOf(punctuator.name().toUpperCase(Locale.ENGLISH)));
+    }
+    b.rule(dot).is(b.firstOf(ErlangPunctuator.DOT, ErlangTokenType.END_OF_FORM));
+
+    for (ErlangKeyword keywordType : keywordTypes) {
+      b.rule(valueOf(keywordType.getValue() + "Keyword")).is(keywordType);
+    }
+  }
+
   private static void punctuators(LexerlessGrammarBuilder b) {
     b.rule(arrow).is(punctuator("->", b));
     b.rule(arrowback).is(punctuator("<-", b));
@@ -368,7 +444,7 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
     b.rule(minus).is(punctuator("-", b.nextNot(b.firstOf(">", "-")), b));
     b.rule(star).is(punctuator("*", b));
     b.rule(div).is(punctuator("/", b.nextNot("="), b));
-    b.rule(lt).is(punctuator("<", b.nextNot(b.firstOf("=", "<")), b));
+    b.rule(lt).is(punctuator("<", b.nextNot(b.firstOf("=", "<", "-")), b));
     b.rule(gt).is(punctuator(">", b.nextNot(b.firstOf("=", ">")), b));
     b.rule(le).is(punctuator("=<", b));
     b.rule(ge).is(punctuator(">=", b));
@@ -422,7 +498,7 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
     b.rule(xorKeyword).is(keyword("xor", b));
   }
 
-  private static void module(LexerlessGrammarBuilder b) {
+  private static void module(ErlangGrammarBuilder b) {
     b.rule(module).is(spacing, b.optional(moduleElements), eof);
     b.rule(moduleElements).is(b.oneOrMore(
       moduleElement
@@ -433,11 +509,9 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
     b.rule(moduleHeadAttr).is(b.firstOf(moduleAttr, fileAttr, exportAttr, compileAttr, defineAttr,
       importAttr, typeSpec, spec, recordAttr, flowControlAttr, behaviourAttr, genericAttr, anyAttr)).skipIfOneChild();
 
-    b.rule(recordAttr).is(minus, semiKeyword("record", b),
+    b.rule(recordAttr).is(minus, b.semiKeyword("record"),
       lparenthesis,
-      b.zeroOrMore(
-        b.nextNot(b.sequence(rparenthesis, spacing, dot)),
-        b.regexp("."), spacing),
+      b.optional(attributeBody),
       rparenthesis, dot);
 
     b.rule(flowControlAttr).is(
@@ -447,19 +521,19 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
         b.zeroOrMore(b.firstOf(moduleHeadAttr, functionDeclaration))),
       endifAttr);
 
-    b.rule(ifdefAttr).is(minus, semiKeyword("ifdef", b), lparenthesis, atomOrIdentifier, rparenthesis, dot);
+    b.rule(ifdefAttr).is(minus, b.semiKeyword("ifdef"), lparenthesis, atomOrIdentifier, rparenthesis, dot);
 
-    b.rule(ifndefAttr).is(minus, semiKeyword("ifndef", b), lparenthesis, atomOrIdentifier, rparenthesis, dot);
+    b.rule(ifndefAttr).is(minus, b.semiKeyword("ifndef"), lparenthesis, atomOrIdentifier, rparenthesis, dot);
 
-    b.rule(elseAttr).is(minus, semiKeyword("else", b), dot);
+    b.rule(elseAttr).is(minus, b.semiKeyword("else"), dot);
 
-    b.rule(endifAttr).is(minus, semiKeyword("endif", b), dot);
+    b.rule(endifAttr).is(minus, b.semiKeyword("endif"), dot);
 
-    b.rule(moduleAttr).is(minus, semiKeyword("module", b), lparenthesis, atom, rparenthesis, dot);
-    b.rule(exportAttr).is(minus, semiKeyword("export", b), lparenthesis, funcExport, rparenthesis, dot);
-    b.rule(compileAttr).is(minus, semiKeyword("compile", b), lparenthesis, primaryExpression, rparenthesis, dot);
+    b.rule(moduleAttr).is(minus, b.semiKeyword("module"), lparenthesis, atom, rparenthesis, dot);
+    b.rule(exportAttr).is(minus, b.semiKeyword("export"), lparenthesis, funcExport, rparenthesis, dot);
+    b.rule(compileAttr).is(minus, b.semiKeyword("compile"), lparenthesis, primaryExpression, rparenthesis, dot);
 
-    b.rule(defineAttr).is(minus, semiKeyword("define", b),
+    b.rule(defineAttr).is(minus, b.semiKeyword("define"),
       lparenthesis,
       b.sequence(
         b.firstOf(
@@ -467,33 +541,33 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
           primaryExpression
         ),
         comma,
-        b.zeroOrMore(
-          b.nextNot(b.sequence(rparenthesis, spacing, dot)),
-          b.regexp("."), spacing)),
+        b.optional(attributeBody)),
       rparenthesis, dot);
 
-    b.rule(importAttr).is(minus, semiKeyword("import", b), lparenthesis, b.firstOf(macroLiteral, atom), comma,
+    b.rule(attributeBody).is(b.attributeBody());
+
+    b.rule(importAttr).is(minus, b.semiKeyword("import"), lparenthesis, b.firstOf(macroLiteral, atom), comma,
       lbracket, funcArity, b.zeroOrMore(comma, funcArity), rbracket, rparenthesis, dot);
 
-    b.rule(fileAttr).is(minus, semiKeyword("file", b), lparenthesis, primaryExpression, comma, primaryExpression,
+    b.rule(fileAttr).is(minus, b.semiKeyword("file"), lparenthesis, primaryExpression, comma, primaryExpression,
       rparenthesis, dot);
 
-    b.rule(behaviourAttr).is(minus, semiKeyword("behaviour", b), lparenthesis, b.firstOf(macroLiteral, atom), rparenthesis, dot);
+    b.rule(behaviourAttr).is(minus, b.semiKeyword("behaviour"), lparenthesis, b.firstOf(macroLiteral, atom), rparenthesis, dot);
 
     b.rule(genericAttr).is(
       minus,
       b.firstOf(
-        semiKeyword("vsn", b),
-        semiKeyword("on_load", b),
-        semiKeyword("include", b),
-        semiKeyword("file", b),
-        semiKeyword("ignore_xref", b),
-        semiKeyword("include_lib", b),
-        semiKeyword("author", b),
-        semiKeyword("export_type", b),
-        semiKeyword("deprecated", b),
-        semiKeyword("asn1_info", b),
-        semiKeyword("export_types", b)),
+        b.semiKeyword("vsn"),
+        b.semiKeyword("on_load"),
+        b.semiKeyword("include"),
+        b.semiKeyword("file"),
+        b.semiKeyword("ignore_xref"),
+        b.semiKeyword("include_lib"),
+        b.semiKeyword("author"),
+        b.semiKeyword("export_type"),
+        b.semiKeyword("deprecated"),
+        b.semiKeyword("asn1_info"),
+        b.semiKeyword("export_types")),
       lparenthesis, b.firstOf(funcArity, primaryExpression), rparenthesis, dot);
 
     b.rule(anyAttr).is(minus, b.sequence(b.nextNot(moduleAttrTags), atom), lparenthesis, primaryExpression, rparenthesis, dot);
@@ -502,12 +576,14 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
     b.rule(funcExport).is(lbracket, b.zeroOrMore(funcArity, b.zeroOrMore(comma, funcArity)), rbracket);
   }
 
-  private static void functions(LexerlessGrammarBuilder b) {
-    b.rule(spec).is(minus, b.firstOf(semiKeyword("spec", b), semiKeyword("callback", b)),
-      b.zeroOrMore(b.firstOf(b.regexp("\\.(\\.+|.)"), b.regexp("[^\\.]")), spacing), dot);
+  private static void functions(ErlangGrammarBuilder b) {
+    b.rule(spec).is(minus, b.firstOf(b.semiKeyword("spec"), b.semiKeyword("callback")),
+      b.optional(formBody), dot);
+
+    b.rule(typeSpec).is(minus, b.firstOf(b.semiKeyword("type"), b.semiKeyword("opaque")),
+      b.optional(formBody), dot);
 
-    b.rule(typeSpec).is(minus, b.firstOf(semiKeyword("type", b), semiKeyword("opaque", b)),
-      b.zeroOrMore(b.firstOf(b.regexp("\\.(\\.+|.)"), b.regexp("[^\\.]")), spacing), dot);
+    b.rule(formBody).is(b.formBody());
 
     b.rule(functionDeclaration).is(functionClause, b.zeroOrMore(semi, functionClause), dot);
     b.rule(functionClause).is(clauseHead, arrow, clauseBody);
@@ -519,7 +595,7 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
     b.rule(funcDecl).is(literal, arguments);
   }
 
-  private static void expressions(LexerlessGrammarBuilder b) {
+  private static void expressions(ErlangGrammarBuilder b) {
     b.rule(literal).is(b.firstOf(numericLiteral, atomOrIdentifier, macroLiteral));
     b.rule(atomOrIdentifier).is(b.firstOf(identifier, atom)).skip();
 
@@ -608,7 +684,6 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
         b.sequence(expression, listcomp, qualifier, b.zeroOrMore(comma, qualifier)),
         b.sequence(expression, b.zeroOrMore(b.firstOf(comma, expression)), b.optional(pipe, expression)))),
       rbracket);
-    // this does not work
     b.rule(qualifier).is(b.firstOf(b.sequence(expression, arrowback, expression), expression));
 
     b.rule(macroLiteral).is(
@@ -675,49 +750,20 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
       // TODO why do we have notKeyword and minus here??
       b.sequence(b.optional(b.firstOf(bnotKeyword, minus)), callExpression),
       b.sequence(notKeyword, callExpression))).skipIfOneChild();
-    b.rule(otherArithmeticExpression).is(unaryExpression,
-      b.zeroOrMore(b.firstOf(divKeyword, remKeyword), unaryExpression)).skipIfOneChild();
-    b.rule(multiplicativeExpression).is(otherArithmeticExpression,
-      b.zeroOrMore(b.firstOf(star, div), otherArithmeticExpression)).skipIfOneChild();
-    b.rule(additiveExpression).is(multiplicativeExpression,
-      b.zeroOrMore(b.firstOf(plus, minus), multiplicativeExpression)).skipIfOneChild();
-
-    b.rule(shiftExpression).is(additiveExpression, b.zeroOrMore(b.firstOf(bslKeyword, bsrKeyword), additiveExpression))
-      .skipIfOneChild();
-    b.rule(relationalExpression).is(shiftExpression, b.zeroOrMore(b.firstOf(lt, gt, le, ge), shiftExpression))
-      .skipIfOneChild();
-
-    b.rule(equalityExpression).is(relationalExpression,
-      b.zeroOrMore(b.firstOf(equal, notequal, equal2, notequal2), relationalExpression))
-      .skipIfOneChild();
-
-    b.rule(bitwiseAndExpression).is(equalityExpression, b.zeroOrMore(bandKeyword, equalityExpression)).skipIfOneChild();
-
-    b.rule(bitwiseXorExpression).is(bitwiseAndExpression, b.zeroOrMore(bxorKeyword, bitwiseAndExpression))
-      .skipIfOneChild();
-
-    b.rule(bitwiseOrExpression).is(bitwiseXorExpression, b.zeroOrMore(borKeyword, bitwiseXorExpression))
-      .skipIfOneChild();
-
-    b.rule(logicalAndExpression).is(bitwiseOrExpression, b.zeroOrMore(andKeyword, bitwiseOrExpression))
-      .skipIfOneChild();
-
-    b.rule(logicalOrExpression).is(logicalAndExpression, b.zeroOrMore(orKeyword, logicalAndExpression))
-      .skipIfOneChild();
-
-    b.rule(logicalXorExpression).is(logicalOrExpression, b.zeroOrMore(xorKeyword, logicalOrExpression))
-      .skipIfOneChild();
-
-    b.rule(shortCircuitOrElseExpression).is(logicalXorExpression, b.zeroOrMore(orelseKeyword, logicalXorExpression))
-      .skipIfOneChild();
-
-    b.rule(shortCircuitAndAlsoExpression).is(shortCircuitOrElseExpression,
-      b.zeroOrMore(andalsoKeyword, shortCircuitOrElseExpression)).skipIfOneChild();
-
-    b.rule(listOperationExpression).is(shortCircuitAndAlsoExpression,
-      b.zeroOrMore(b.firstOf(plusplus, minusminus), shortCircuitAndAlsoExpression)).skipIfOneChild();
-
-    b.rule(assignmentExpression).is(listOperationExpression, b.optional(matchop, expression)).skipIfOneChild();
+    // binary operators of all precedence levels, from the tightest binding one, see OperatorPrecedence
+    b.rule(operatorExpression).is(unaryExpression, b.zeroOrMore(
+      b.firstOf(
+        divKeyword, remKeyword,
+        star, div,
+        plus, minus,
+        bslKeyword, bsrKeyword,
+        lt, gt, le, ge,
+        equal, notequal, equal2, notequal2,
+        bandKeyword, bxorKeyword, borKeyword, andKeyword, orKeyword, xorKeyword, orelseKeyword, andalsoKeyword,
+        plusplus, minusminus),
+      unaryExpression)).skipIfOneChild();
+
+    b.rule(assignmentExpression).is(operatorExpression, b.optional(matchop, expression)).skipIfOneChild();
 
     b.rule(funExpression).is(funKeyword, b.firstOf(b.sequence(b.optional(memberExpression, colon), funcArity),
       b.sequence(functionDeclarationsNoName, endKeyword)), b.optional(arguments));
@@ -749,14 +795,14 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
   /**
    * A.4 Statement
    */
-  private static void statements(LexerlessGrammarBuilder b) {
+  private static void statements(ErlangGrammarBuilder b) {
     b.rule(expressionStatement).is(expression);
     b.rule(statement).is(expressionStatement);
     b.rule(statements).is(statement, b.zeroOrMore(comma, statement));
 
   }
 
-  public static void branchAndGuardExpressions(LexerlessGrammarBuilder b) {
+  private static void branchAndGuardExpressions(ErlangGrammarBuilder b) {
     b.rule(branchExps).is(branchExp, b.zeroOrMore(semi, branchExp));
     b.rule(branchExp).is(guardSequence, arrow, statements);
 
@@ -787,8 +833,4 @@ public enum ErlangGrammarImpl implements GrammarRuleKey {
     return b.sequence(value, b.nextNot(letterOrDigit), spacing);
   }
 
-  private static Object semiKeyword(String value, LexerlessGrammarBuilder b) {
-    return b.sequence(value, b.nextNot(letterOrDigit), spacing);
-  }
-
 }
@@ -0,0 +1,503 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.LexerException;
+import com.sonar.sslr.impl.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.SourceLoader;
+import org.sonar.erlang.api.ErlangTokenType;
+import org.sonar.erlang.lexer.ErlangLexer;
+import org.sonar.erlang.preprocessor.Preprocessor;
+import org.sonar.sslr.internal.matchers.AstCreator;
+import org.sonar.sslr.internal.text.LocatedText;
+import org.sonar.sslr.parser.LexerlessGrammar;
+import org.sonar.sslr.parser.ParseError;
+import org.sonar.sslr.parser.ParseErrorFormatter;
+import org.sonar.sslr.parser.ParseRunner;
+import org.sonar.sslr.parser.ParsingResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+public final class ErlangParser {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ErlangParser.class);
+
+  private ErlangParser() {
+  }
+
+  /**
+   * Creates the parser of the configured front end. The lexer based one is returned
+   * with the lexerless type as well: the scanner and the visitors only rely on the
+   * rule keys of {@link ErlangGrammarImpl}, which are the same for both. Both build the binary
+   * expression nodes with {@link OperatorPrecedence} once the input is parsed. With the
+   * {@link ErlangConfiguration#isLexicalOnly() lexical only analysis}, the files are only lexed.
+   */
+  public static Parser<LexerlessGrammar> create(ErlangConfiguration conf) {
+    return create(conf, conf.isPreprocessorEnabled());
+  }
+
+  /**
+   * @param preprocess whether the files which cannot be parsed are parsed again, with the lexer based front end,
+   *                   once their macros are expanded by the {@link Preprocessor}
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static Parser<LexerlessGrammar> create(ErlangConfiguration conf, boolean preprocess) {
+    if (conf.isLexicalOnly()) {
+      return (Parser) new LexicalParser(conf.getCharset());
+    }
+    if (conf.getFrontEnd() == ErlangConfiguration.FrontEnd.LEXER) {
+      TokenParser parser = tokenParser(conf);
+      if (preprocess) {
+        parser.expansion = new MacroExpansion(conf, () -> parser);
+      }
+      if (isSplit(conf)) {
+        parser.splitting = new FormSplitting<>(conf.getSplitThreshold(), () -> tokenParser(conf));
+      }
+      return (Parser) parser;
+    }
+    LexerlessParser parser = lexerlessParser(conf);
+    if (isSplit(conf)) {
+      parser.splitting = new FormSplitting<>(conf.getSplitThreshold(), () -> lexerlessParser(conf));
+    }
+    if (preprocess) {
+      parser.expansion = new MacroExpansion(conf, () -> tokenParser(conf));
+    }
+    return parser;
+  }
+
+  /**
+   * The profile measures the rules per file, so the files are not split while profiling.
+   */
+  private static boolean isSplit(ErlangConfiguration conf) {
+    return conf.getSplitThreshold() > 0 && conf.getParseProfile() == null;
+  }
+
+  /**
+   * The text of a file, as the {@link SourceLoader} of the thread reads it.
+   */
+  private static char[] text(File file, Charset charset) {
+    try {
+      return SourceLoader.get().chars(file, charset);
+    } catch (IOException e) {
+      throw new RecognitionException(0, e.getMessage(), e);
+    }
+  }
+
+  private static TokenParser tokenParser(ErlangConfiguration conf) {
+    Grammar grammar = ErlangGrammarImpl.createLexerfulGrammar();
+    return new TokenParser(conf.getCharset(), grammar, new Instrumentation(grammar, conf, true));
+  }
+
+  private static LexerlessParser lexerlessParser(ErlangConfiguration conf) {
+    LexerlessGrammar grammar = ErlangGrammarImpl.createGrammar();
+    return new LexerlessParser(conf.getCharset(), grammar, new Instrumentation(grammar, conf, false));
+  }
+
+  /**
+   * Parses the top level forms of the files above the split threshold in parallel, on the common fork join pool. The
+   * segments are cut by {@link FormSplitter}. A segment is parsed with a parser borrowed from a pool of at most one per
+   * thread of the common pool, which is owned by the splitting, so the parsers go away with the parser of the files.
+   */
+  private static final class FormSplitting<P> {
+
+    private final long threshold;
+    private final Supplier<P> parserFactory;
+    private final BlockingQueue<P> parsers = new ArrayBlockingQueue<>(ForkJoinPool.getCommonPoolParallelism() + 1);
+
+    FormSplitting(long threshold, Supplier<P> parserFactory) {
+      this.threshold = threshold;
+      this.parserFactory = parserFactory;
+    }
+
+    boolean accepts(File file) {
+      return file.length() >= threshold;
+    }
+
+    static int segmentCount() {
+      return 2 * (ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    /**
+     * @param parse parses the segment of the given index
+     * @return the module, or null when one of the segments cannot be parsed, for the whole file to be parsed
+     * instead, with its usual error
+     */
+    @Nullable
+    AstNode parse(int segments, BiFunction<P, Integer, AstNode> parse, File file) {
+      if (segments < 2) {
+        return null;
+      }
+      List<Callable<AstNode>> tasks = new ArrayList<>(segments);
+      for (int i = 0; i < segments; i++) {
+        int segment = i;
+        tasks.add(() -> {
+          P parser = parsers.poll();
+          if (parser == null) {
+            parser = parserFactory.get();
+          }
+          try {
+            return parse.apply(parser, segment);
+          } finally {
+            parsers.offer(parser);
+          }
+        });
+      }
+      List<AstNode> modules = new ArrayList<>(segments);
+      try {
+        for (Future<AstNode> module : ForkJoinPool.commonPool().invokeAll(tasks)) {
+          modules.add(module.get());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof ParseBudgetExceededException) {
+          throw (ParseBudgetExceededException) e.getCause();
+        }
+        LOG.debug("Unable to parse {} form by form: {}", file, e.getCause().getMessage());
+        return null;
+      }
+      LOG.debug("Parsed {} in {} segments", file, segments);
+      return FormSplitter.merge(modules);
+    }
+
+  }
+
+  /**
+   * Parses again, with the lexer based front end, the files whose parsing failed, once their macros are expanded.
+   * The parse error of the original file is kept when the expanded one cannot be parsed either. The second parse
+   * spends what is left of the budget of the first one.
+   */
+  private static final class MacroExpansion {
+
+    private final Preprocessor preprocessor;
+    private final ErlangLexer lexer;
+    private final Supplier<TokenParser> parserFactory;
+    @Nullable
+    private TokenParser parser;
+
+    /**
+     * @param parserFactory called at the first expanded file, as most files do not need one
+     */
+    MacroExpansion(ErlangConfiguration conf, Supplier<TokenParser> parserFactory) {
+      this.preprocessor = new Preprocessor(conf.getHeaderCache());
+      this.lexer = new ErlangLexer(conf.getCharset());
+      this.parserFactory = parserFactory;
+    }
+
+    AstNode parse(File file, RecognitionException failure, Instrumentation whole) {
+      if (failure instanceof ParseBudgetExceededException) {
+        throw failure;
+      }
+      try {
+        if (parser == null) {
+          parser = parserFactory.get();
+        }
+        AstNode tree = OperatorPrecedence.fold(parser.parse(preprocessor.preprocess(file, lexer.lex(file)), whole));
+        LOG.debug("Parsed {} once its macros expanded", file);
+        return tree;
+      } catch (RuntimeException e) {
+        LOG.debug("Unable to parse {} once its macros expanded: {}", file, e.getMessage());
+        throw failure;
+      }
+    }
+
+  }
+
+  /**
+   * The optional {@link ParseMemo}, {@link ParseProfiler} and {@link ParseBudget} of a parser,
+   * installed on its grammar before the compilation, and the post-processing of the parsed trees: the ones of the
+   * parts of an input are left to the parser of the whole input.
+   */
+  private static final class Instrumentation {
+
+    @Nullable
+    private final ParseMemo memo;
+    @Nullable
+    private final ParseProfiler profiler;
+    @Nullable
+    private final ParseProfile profile;
+    @Nullable
+    private final ParseBudget budget;
+
+    Instrumentation(Grammar grammar, ErlangConfiguration conf, boolean tokens) {
+      this.memo = conf.getMemoizedRules().isEmpty() ? null : ParseMemo.install(grammar, conf.getMemoizedRules());
+      this.profile = conf.getParseProfile();
+      this.profiler = profile == null ? null : ParseProfiler.install(grammar);
+      boolean limited = conf.getParseTimeoutMillis() > 0 || conf.getParseMaxSteps() > 0;
+      this.budget = limited ? ParseBudget.install(grammar, conf.getParseMaxSteps(), conf.getParseTimeoutMillis(), tokens) : null;
+    }
+
+    AstNode parse(Supplier<AstNode> parse, Object source) {
+      if (budget != null) {
+        budget.start();
+      }
+      return OperatorPrecedence.fold(run(parse, source));
+    }
+
+    /**
+     * Parses a part, or a rewriting, of the input of another parser, within the budget of that parser. The tree is
+     * not folded.
+     */
+    AstNode parse(Supplier<AstNode> parse, Object source, Instrumentation whole) {
+      if (budget != null) {
+        budget.join(whole.budget);
+      }
+      return run(parse, source);
+    }
+
+    private AstNode run(Supplier<AstNode> parse, Object source) {
+      if (profiler != null) {
+        profiler.reset();
+      }
+      long start = System.nanoTime();
+      try {
+        return parse.get();
+      } finally {
+        if (memo != null) {
+          LOG.debug("Parsed {}: {}", source, memo);
+          memo.release();
+        }
+        if (profile != null) {
+          profile.add(source.toString(), System.nanoTime() - start, profiler.getRules());
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Parses with the lexerless grammar, as {@link org.sonar.sslr.parser.ParserAdapter} does, but the text of a file is
+   * the one of the {@link SourceLoader}, shared with the checks.
+   */
+  private static class LexerlessParser extends Parser<LexerlessGrammar> {
+
+    private final Charset charset;
+    private final ParseRunner parseRunner;
+    private final Instrumentation instrumentation;
+    @Nullable
+    private MacroExpansion expansion;
+    @Nullable
+    private FormSplitting<LexerlessParser> splitting;
+
+    LexerlessParser(Charset charset, LexerlessGrammar grammar, Instrumentation instrumentation) {
+      super(grammar);
+      this.charset = charset;
+      this.parseRunner = new ParseRunner(grammar.getRootRule());
+      this.instrumentation = instrumentation;
+    }
+
+    @Override
+    public AstNode parse(File file) {
+      try {
+        return instrumentation.parse(() -> {
+          char[] text = text(file, charset);
+          AstNode module = splitting != null && splitting.accepts(file) ? parseSegments(file, text) : null;
+          return module == null ? parse(file, text) : module;
+        }, file);
+      } catch (RecognitionException e) {
+        if (expansion == null) {
+          throw e;
+        }
+        return expansion.parse(file, e, instrumentation);
+      }
+    }
+
+    @Nullable
+    private AstNode parseSegments(File file, char[] text) {
+      List<FormSplitter.Segment> segments = FormSplitter.split(text, FormSplitting.segmentCount());
+      return splitting.parse(segments.size(), (parser, i) -> parser.parse(file, text, segments.get(i), instrumentation), file);
+    }
+
+    /**
+     * Parses the text of a segment alone, then moves its nodes and tokens to their place in the file.
+     */
+    private AstNode parse(File file, char[] text, FormSplitter.Segment segment, Instrumentation whole) {
+      try {
+        return instrumentation.parse(() -> segment.place(parse(null, segment.text(text)), file.toURI()), file, whole);
+      } catch (ParseBudgetExceededException e) {
+        throw new ParseBudgetExceededException(e.getLine() + segment.line - 1, e.getMessage());
+      }
+    }
+
+    @Override
+    public AstNode parse(String source) {
+      return instrumentation.parse(() -> parse(null, source.toCharArray()), "source");
+    }
+
+    private AstNode parse(@Nullable File file, char[] text) {
+      ParsingResult result = parseRunner.parse(text);
+      if (result.isMatched()) {
+        return AstCreator.create(result, new LocatedText(file, text));
+      }
+      ParseError error = result.getParseError();
+      int line = error.getInputBuffer().getPosition(error.getErrorIndex()).getLine();
+      throw new RecognitionException(line, new ParseErrorFormatter().format(error));
+    }
+
+  }
+
+  /**
+   * Only lexes the input: the tree is a {@link ErlangGrammarImpl#module} node with a node per token, the
+   * {@link ErlangGrammarImpl#numericLiteral} and {@link ErlangGrammarImpl#stringLiteral} ones wrapped into a node of
+   * their rule, for the highlighter. There is no grammar.
+   */
+  private static final class LexicalParser extends Parser<Grammar> {
+
+    private final ErlangLexer lexer;
+
+    LexicalParser(Charset charset) {
+      super(null);
+      this.lexer = new ErlangLexer(charset);
+    }
+
+    @Override
+    public AstNode parse(File file) {
+      try {
+        return parse(lexer.lex(file));
+      } catch (LexerException e) {
+        throw new RecognitionException(e);
+      }
+    }
+
+    @Override
+    public AstNode parse(String source) {
+      return parse(lexer.lex(source));
+    }
+
+    @Override
+    public AstNode parse(List<Token> tokens) {
+      AstNode module = new AstNode(ErlangGrammarImpl.module, ErlangGrammarImpl.module.name(), tokens.get(0));
+      module.setFromIndex(0);
+      module.setToIndex(tokens.size());
+      for (int i = 0; i < tokens.size(); i++) {
+        Token token = tokens.get(i);
+        AstNode node = new AstNode(token);
+        node.setFromIndex(i);
+        node.setToIndex(i + 1);
+        if (token.getType() == ErlangTokenType.NUMERIC_LITERAL) {
+          module.addChild(literal(ErlangGrammarImpl.numericLiteral, node));
+        } else if (token.getType() == ErlangTokenType.STRING_LITERAL) {
+          module.addChild(literal(ErlangGrammarImpl.stringLiteral, node));
+        } else {
+          module.addChild(node);
+        }
+      }
+      return module;
+    }
+
+    private static AstNode literal(ErlangGrammarImpl rule, AstNode token) {
+      AstNode literal = new AstNode(rule, rule.name(), token.getToken());
+      literal.setFromIndex(token.getFromIndex());
+      literal.setToIndex(token.getToIndex());
+      literal.addChild(token);
+      return literal;
+    }
+
+  }
+
+  /**
+   * Feeds the tokens of {@link ErlangLexer} to the lexerful grammar.
+   */
+  private static class TokenParser extends Parser<Grammar> {
+
+    private final ErlangLexer lexer;
+    private final Instrumentation instrumentation;
+    @Nullable
+    private MacroExpansion expansion;
+    @Nullable
+    private FormSplitting<TokenParser> splitting;
+
+    TokenParser(Charset charset, Grammar grammar, Instrumentation instrumentation) {
+      super(grammar);
+      setRootRule(grammar.getRootRule());
+      this.lexer = new ErlangLexer(charset);
+      this.instrumentation = instrumentation;
+    }
+
+    @Override
+    public AstNode parse(File file) {
+      try {
+        return instrumentation.parse(() -> {
+          List<Token> tokens = lexer.lex(file);
+          AstNode module = null;
+          if (splitting != null && splitting.accepts(file)) {
+            module = parseSegments(tokens, file);
+          }
+          return module == null ? super.parse(tokens) : module;
+        }, file);
+      } catch (RecognitionException e) {
+        if (expansion == null) {
+          throw e;
+        }
+        return expansion.parse(file, e, instrumentation);
+      }
+    }
+
+    /**
+     * The indexes of the nodes are the ones of their tokens, so the ones of a segment are shifted by its start.
+     */
+    @Nullable
+    private AstNode parseSegments(List<Token> tokens, File file) {
+      List<List<Token>> segments = FormSplitter.split(tokens, FormSplitting.segmentCount());
+      int[] starts = new int[segments.size()];
+      for (int i = 1; i < starts.length; i++) {
+        starts[i] = starts[i - 1] + segments.get(i - 1).size() - 1;
+      }
+      return splitting.parse(segments.size(), (parser, i) -> FormSplitter.shift(parser.parse(segments.get(i), instrumentation), starts[i]), file);
+    }
+
+    @Override
+    public AstNode parse(String source) {
+      return parse(lexer.lex(source));
+    }
+
+    @Override
+    public AstNode parse(List<Token> tokens) {
+      return instrumentation.parse(() -> super.parse(tokens), "source");
+    }
+
+    AstNode parse(List<Token> tokens, Instrumentation whole) {
+      return instrumentation.parse(() -> super.parse(tokens), "source", whole);
+    }
+
+  }
+
+}
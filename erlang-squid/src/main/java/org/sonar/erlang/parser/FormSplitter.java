@@ -0,0 +1,347 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import org.sonar.erlang.api.ErlangTokenType;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Cuts a module into segments of consecutive top level forms, which are parsed independently and put
+ * together with {@link #merge(List)}.
+ * <p>
+ * A form ends with a dot followed by a space, a comment or the end of the file, outside of strings, quoted
+ * atoms, character literals and comments. The forms between an {@code -ifdef}, {@code -ifndef} or {@code -if}
+ * and its {@code -endif} stay in the same segment, as the grammar matches them as one element. A segment
+ * which is not made of whole forms simply fails to parse.
+ */
+final class FormSplitter {
+
+  private static final String[] OPENING_DIRECTIVES = {"ifdef", "ifndef", "if"};
+  private static final String CLOSING_DIRECTIVE = "endif";
+
+  private FormSplitter() {
+  }
+
+  /**
+   * Where each segment starts and ends in the text. A segment also keeps the spaces and comments following its last
+   * form, which are the trivia of the first token of the next one.
+   */
+  static List<Segment> split(char[] text, int count) {
+    List<Segment> segments = new ArrayList<>();
+    Position position = new Position(text);
+    int start = 0;
+    for (int[] cut : cuts(text, count)) {
+      segments.add(position.segment(start, cut[1]));
+      start = cut[0];
+    }
+    segments.add(position.segment(start, text.length));
+    return segments;
+  }
+
+  /**
+   * The tokens of each segment, followed by the end of input token.
+   */
+  static List<List<Token>> split(List<Token> tokens, int count) {
+    List<List<Token>> segments = new ArrayList<>();
+    Token eof = tokens.get(tokens.size() - 1);
+    int target = Math.max(1, tokens.size() / count);
+    int start = 0;
+    int formStart = 0;
+    int depth = 0;
+    for (int i = 0; i < tokens.size() - 1; i++) {
+      if (tokens.get(i).getType() != ErlangTokenType.END_OF_FORM) {
+        continue;
+      }
+      depth = depth(depth, tokens.get(formStart).getValue(), formStart + 1 < i ? tokens.get(formStart + 1).getValue() : "");
+      formStart = i + 1;
+      if (depth == 0 && formStart - start >= target && tokens.get(formStart).getType() != GenericTokenType.EOF) {
+        segments.add(segment(tokens, start, formStart, eof));
+        start = formStart;
+      }
+    }
+    segments.add(segment(tokens, start, tokens.size() - 1, eof));
+    return segments;
+  }
+
+  /**
+   * The first module, with the elements and the end of the other ones.
+   */
+  static AstNode merge(List<AstNode> modules) {
+    AstNode module = modules.get(0);
+    AstNode last = modules.get(modules.size() - 1);
+    AstNode elements = module.getFirstChild(ErlangGrammarImpl.moduleElements);
+    for (AstNode other : modules.subList(1, modules.size())) {
+      for (AstNode element : other.getFirstChild(ErlangGrammarImpl.moduleElements).getChildren()) {
+        elements.addChild(element);
+      }
+    }
+    elements.setToIndex(last.getFirstChild(ErlangGrammarImpl.moduleElements).getToIndex());
+
+    List<AstNode> children = new ArrayList<>(module.getChildren());
+    module.getChildren().clear();
+    for (AstNode child : children.subList(0, children.indexOf(elements) + 1)) {
+      module.addChild(child);
+    }
+    List<AstNode> end = new ArrayList<>(last.getChildren());
+    for (AstNode child : end.subList(end.indexOf(last.getFirstChild(ErlangGrammarImpl.moduleElements)) + 1, end.size())) {
+      module.addChild(child);
+    }
+    module.setToIndex(last.getToIndex());
+    return module;
+  }
+
+  /**
+   * Shifts the indexes of the nodes of a tree.
+   */
+  static AstNode shift(AstNode node, int offset) {
+    if (offset != 0) {
+      node.setFromIndex(node.getFromIndex() + offset);
+      node.setToIndex(node.getToIndex() + offset);
+      for (AstNode child : node.getChildren()) {
+        shift(child, offset);
+      }
+    }
+    return node;
+  }
+
+  /**
+   * For each cut between two segments, the end of the dot of the last form of the first one, and the start of the
+   * first form of the second one.
+   */
+  private static List<int[]> cuts(char[] text, int count) {
+    List<int[]> cuts = new ArrayList<>();
+    int target = Math.max(1, text.length / count);
+    int start = 0;
+    int formStart = skipSpaces(text, 0);
+    int depth = 0;
+    int i = formStart;
+    while (i < text.length) {
+      char c = text[i];
+      if (c == '%') {
+        i = endOfLine(text, i);
+      } else if (c == '"' || c == '\'') {
+        i = endOfQuoted(text, i);
+      } else if (c == '$') {
+        i += i + 1 < text.length && text[i + 1] == '\\' ? 3 : 2;
+      } else if (c == '.' && (i + 1 == text.length || Character.isWhitespace(text[i + 1]) || text[i + 1] == '%')) {
+        depth = depth(depth, text, formStart);
+        int end = i + 1;
+        formStart = skipSpaces(text, end);
+        if (depth == 0 && formStart - start >= target && formStart < text.length) {
+          cuts.add(new int[] {end, formStart});
+          start = end;
+        }
+        i = formStart;
+      } else {
+        i++;
+      }
+    }
+    return cuts;
+  }
+
+  private static int depth(int depth, char[] text, int formStart) {
+    int i = formStart;
+    if (i >= text.length || text[i] != '-') {
+      return depth;
+    }
+    i = skipSpaces(text, i + 1);
+    int end = i;
+    while (end < text.length && (Character.isLetterOrDigit(text[end]) || text[end] == '_' || text[end] == '@')) {
+      end++;
+    }
+    return depth(depth, "-", new String(text, i, end - i));
+  }
+
+  private static int depth(int depth, String first, String second) {
+    if (!"-".equals(first)) {
+      return depth;
+    }
+    for (String directive : OPENING_DIRECTIVES) {
+      if (directive.equals(second)) {
+        return depth + 1;
+      }
+    }
+    return CLOSING_DIRECTIVE.equals(second) ? Math.max(0, depth - 1) : depth;
+  }
+
+  private static int skipSpaces(char[] text, int from) {
+    int i = from;
+    while (i < text.length) {
+      if (text[i] == '%') {
+        i = endOfLine(text, i);
+      } else if (Character.isWhitespace(text[i])) {
+        i++;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  private static int endOfLine(char[] text, int from) {
+    int i = from;
+    while (i < text.length && text[i] != '\n' && text[i] != '\r') {
+      i++;
+    }
+    return i;
+  }
+
+  private static int endOfQuoted(char[] text, int from) {
+    char quote = text[from];
+    int i = from + 1;
+    while (i < text.length && text[i] != quote) {
+      i += text[i] == '\\' ? 2 : 1;
+    }
+    return i + 1;
+  }
+
+  private static List<Token> segment(List<Token> tokens, int start, int end, Token eof) {
+    List<Token> segment = new ArrayList<>(tokens.subList(start, end));
+    segment.add(eof);
+    return segment;
+  }
+
+  /**
+   * A part of a text, parsed as if it was a whole one, and the character index, line and column where it starts.
+   */
+  static final class Segment {
+
+    final int start;
+    final int end;
+    final int line;
+    final int column;
+
+    Segment(int start, int end, int line, int column) {
+      this.start = start;
+      this.end = end;
+      this.line = line;
+      this.column = column;
+    }
+
+    char[] text(char[] text) {
+      return Arrays.copyOfRange(text, start, end);
+    }
+
+    /**
+     * The tree of the segment, parsed alone, with its nodes and tokens moved to their place in the whole text.
+     */
+    AstNode place(AstNode tree, @Nullable URI uri) {
+      return new Move(line - 1, column, start, uri).node(tree);
+    }
+
+  }
+
+  /**
+   * Counts the lines and columns up to the start of each segment, as the parsers do.
+   */
+  private static final class Position {
+
+    private final char[] text;
+    private int index;
+    private int line = 1;
+    private int column;
+
+    Position(char[] text) {
+      this.text = text;
+    }
+
+    Segment segment(int start, int end) {
+      while (index < start) {
+        char c = text[index];
+        if (c == '\n' || (c == '\r' && (index + 1 == text.length || text[index + 1] != '\n'))) {
+          line++;
+          column = 0;
+        } else {
+          column++;
+        }
+        index++;
+      }
+      return new Segment(start, end, line, column);
+    }
+
+  }
+
+  /**
+   * Copies a tree, as the tokens cannot be moved, keeping a single copy of the tokens shared by several nodes.
+   */
+  private static final class Move {
+
+    private final int lines;
+    private final int columns;
+    private final int index;
+    @Nullable
+    private final URI uri;
+    private final Map<Token, Token> tokens = new IdentityHashMap<>();
+
+    /**
+     * @param uri the URI of the tokens, null to keep theirs
+     */
+    Move(int lines, int columns, int index, @Nullable URI uri) {
+      this.lines = lines;
+      this.columns = columns;
+      this.index = index;
+      this.uri = uri;
+    }
+
+    AstNode node(AstNode node) {
+      AstNode copy = new AstNode(node.getType(), node.getName(), node.getToken() == null ? null : token(node.getToken()));
+      copy.setFromIndex(node.getFromIndex() + index);
+      copy.setToIndex(node.getToIndex() + index);
+      for (AstNode child : node.getChildren()) {
+        copy.addChild(node(child));
+      }
+      return copy;
+    }
+
+    /**
+     * Only the tokens of the first line of the segment, which may not start a line, move to another column.
+     */
+    private Token token(Token token) {
+      Token copy = tokens.get(token);
+      if (copy == null) {
+        List<Trivia> trivia = new ArrayList<>(token.getTrivia().size());
+        for (Trivia t : token.getTrivia()) {
+          trivia.add(t.isComment() ? Trivia.createComment(token(t.getToken())) : t);
+        }
+        copy = Token.builder(token)
+          .setLine(token.getLine() + lines)
+          .setColumn(token.getLine() == 1 ? token.getColumn() + columns : token.getColumn())
+          .setURI(uri == null ? token.getURI() : uri)
+          .setTrivia(trivia)
+          .build();
+        tokens.put(token, copy);
+      }
+      return copy;
+    }
+
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the binary expression nodes out of the flat {@link ErlangGrammarImpl#operatorExpression}
+ * chains by precedence climbing.
+ * <p>
+ * The grammar matches {@code operand (operator operand)*} with a single rule instead of descending
+ * through one rule per precedence level for every operand. The resulting tree is the one the
+ * cascade of levels used to build: a level gets a node only when it has at least one operator of
+ * its own, and its operands are the chains of tighter binding operators between them.
+ */
+public final class OperatorPrecedence {
+
+  /**
+   * From the loosest to the tightest binding level, with the operators of each.
+   */
+  private static final ErlangGrammarImpl[][] LEVELS = {
+    {ErlangGrammarImpl.listOperationExpression, ErlangGrammarImpl.plusplus, ErlangGrammarImpl.minusminus},
+    {ErlangGrammarImpl.shortCircuitAndAlsoExpression, ErlangGrammarImpl.andalsoKeyword},
+    {ErlangGrammarImpl.shortCircuitOrElseExpression, ErlangGrammarImpl.orelseKeyword},
+    {ErlangGrammarImpl.logicalXorExpression, ErlangGrammarImpl.xorKeyword},
+    {ErlangGrammarImpl.logicalOrExpression, ErlangGrammarImpl.orKeyword},
+    {ErlangGrammarImpl.logicalAndExpression, ErlangGrammarImpl.andKeyword},
+    {ErlangGrammarImpl.bitwiseOrExpression, ErlangGrammarImpl.borKeyword},
+    {ErlangGrammarImpl.bitwiseXorExpression, ErlangGrammarImpl.bxorKeyword},
+    {ErlangGrammarImpl.bitwiseAndExpression, ErlangGrammarImpl.bandKeyword},
+    {ErlangGrammarImpl.equalityExpression, ErlangGrammarImpl.equal, ErlangGrammarImpl.notequal, ErlangGrammarImpl.equal2,
+      ErlangGrammarImpl.notequal2},
+    {ErlangGrammarImpl.relationalExpression, ErlangGrammarImpl.lt, ErlangGrammarImpl.gt, ErlangGrammarImpl.le,
+      ErlangGrammarImpl.ge},
+    {ErlangGrammarImpl.shiftExpression, ErlangGrammarImpl.bslKeyword, ErlangGrammarImpl.bsrKeyword},
+    {ErlangGrammarImpl.additiveExpression, ErlangGrammarImpl.plus, ErlangGrammarImpl.minus},
+    {ErlangGrammarImpl.multiplicativeExpression, ErlangGrammarImpl.star, ErlangGrammarImpl.div},
+    {ErlangGrammarImpl.otherArithmeticExpression, ErlangGrammarImpl.divKeyword, ErlangGrammarImpl.remKeyword}
+  };
+
+  private static final Map<AstNodeType, Integer> LEVEL_OF_OPERATOR = new HashMap<>();
+
+  static {
+    for (int level = 0; level < LEVELS.length; level++) {
+      for (int i = 1; i < LEVELS[level].length; i++) {
+        LEVEL_OF_OPERATOR.put(LEVELS[level][i], level);
+      }
+    }
+  }
+
+  private OperatorPrecedence() {
+  }
+
+  /**
+   * Replaces every {@link ErlangGrammarImpl#operatorExpression} node below the given one.
+   */
+  public static AstNode fold(AstNode root) {
+    if (!root.hasChildren()) {
+      return root;
+    }
+    boolean hasOperatorExpression = false;
+    for (AstNode child : root.getChildren()) {
+      fold(child);
+      hasOperatorExpression |= child.is(ErlangGrammarImpl.operatorExpression);
+    }
+    if (hasOperatorExpression) {
+      List<AstNode> children = new ArrayList<>(root.getChildren());
+      root.getChildren().clear();
+      for (AstNode child : children) {
+        root.addChild(child.is(ErlangGrammarImpl.operatorExpression) ? climb(child.getChildren(), 0, child.getNumberOfChildren()) : child);
+      }
+    }
+    return root;
+  }
+
+  /**
+   * @param chain operands at even and operators at odd indexes
+   */
+  private static AstNode climb(List<AstNode> chain, int from, int to) {
+    if (to - from == 1) {
+      return chain.get(from);
+    }
+    int level = LEVELS.length;
+    for (int i = from + 1; i < to; i += 2) {
+      level = Math.min(level, LEVEL_OF_OPERATOR.get(chain.get(i).getType()));
+    }
+    AstNode first = chain.get(from);
+    AstNode node = new AstNode(LEVELS[level][0], LEVELS[level][0].name(), first.getToken());
+    node.setFromIndex(first.getFromIndex());
+    node.setToIndex(chain.get(to - 1).getToIndex());
+    int operandStart = from;
+    for (int i = from + 1; i < to; i += 2) {
+      AstNode operator = chain.get(i);
+      if (LEVEL_OF_OPERATOR.get(operator.getType()) == level) {
+        node.addChild(climb(chain, operandStart, i));
+        node.addChild(operator);
+        operandStart = i + 1;
+      }
+    }
+    node.addChild(climb(chain, operandStart, to));
+    return node;
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.Rule;
+import org.sonar.sslr.internal.vm.CompilableGrammarRule;
+import org.sonar.sslr.internal.vm.CompilationHandler;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.Machine;
+import org.sonar.sslr.internal.vm.ParsingExpression;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rule invocations and the time spent to parse one input, so that a pathological
+ * file fails with a {@link ParseBudgetExceededException} instead of stalling the analysis.
+ * It is installed by wrapping the rule bodies, before the grammar is compiled, and every
+ * {@link #start()} opens a new budget. The parsers of the segments of a file, and the one of its expanded
+ * macros, {@link #join(ParseBudget) join} the budget of the file instead.
+ */
+final class ParseBudget {
+
+  /**
+   * Reading the clock, or counting the steps of a budget shared between threads, at every rule invocation would
+   * cost more than most rules.
+   */
+  private static final int CLOCK_PERIOD = 1024;
+
+  private final long maxSteps;
+  private final long timeoutMillis;
+  private final boolean tokens;
+  private Allowance allowance;
+  /**
+   * The steps of this parser not counted in the allowance yet, which is done once they reach the batch.
+   */
+  private long pending;
+  private long batch;
+
+  private ParseBudget(long maxSteps, long timeoutMillis, boolean tokens) {
+    this.maxSteps = maxSteps > 0 ? maxSteps : Long.MAX_VALUE;
+    this.timeoutMillis = timeoutMillis;
+    this.tokens = tokens;
+  }
+
+  /**
+   * @param maxSteps maximum rule invocations, 0 for no limit
+   * @param timeoutMillis maximum parse time, 0 for no limit
+   * @param tokens whether the grammar is a lexerful one, whose input positions are token indexes
+   */
+  static ParseBudget install(Grammar grammar, long maxSteps, long timeoutMillis, boolean tokens) {
+    ParseBudget budget = new ParseBudget(maxSteps, timeoutMillis, tokens);
+    for (ErlangGrammarImpl key : ErlangGrammarImpl.values()) {
+      Rule rule = grammar.rule(key);
+      if (rule instanceof CompilableGrammarRule) {
+        CompilableGrammarRule compilable = (CompilableGrammarRule) rule;
+        compilable.setExpression(budget.new BudgetedExpression(compilable.getExpression()));
+      }
+    }
+    return budget;
+  }
+
+  void start() {
+    long deadline = timeoutMillis > 0 ? (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) : Long.MAX_VALUE;
+    use(new Allowance(deadline));
+  }
+
+  /**
+   * Spends the budget opened by the last {@link #start()} of another parser of the same configuration.
+   */
+  void join(ParseBudget other) {
+    use(other.allowance);
+  }
+
+  private void use(Allowance allowance) {
+    this.allowance = allowance;
+    pending = 0;
+    batch = batch(allowance.steps.get());
+  }
+
+  private void step(Machine machine) {
+    pending++;
+    if (pending < batch) {
+      return;
+    }
+    long steps = allowance.steps.addAndGet(pending);
+    pending = 0;
+    if (steps > maxSteps) {
+      throw new ParseBudgetExceededException(line(machine), "Parsing aborted after " + maxSteps + " grammar rule invocations");
+    }
+    if (System.nanoTime() > allowance.deadline) {
+      throw new ParseBudgetExceededException(line(machine), "Parsing aborted after " + timeoutMillis + " ms");
+    }
+    batch = batch(steps);
+  }
+
+  /**
+   * Stops at the exact step which exceeds the limit, when a single parser spends the budget.
+   */
+  private long batch(long steps) {
+    long remaining = maxSteps - steps;
+    return remaining < CLOCK_PERIOD ? Math.max(1, remaining + 1) : CLOCK_PERIOD;
+  }
+
+  private int line(Machine machine) {
+    int index = machine.getIndex();
+    if (tokens) {
+      return machine.tokenAt(Math.min(index, machine.length() - 1)).getLine();
+    }
+    int line = 1;
+    // the characters of the machine are relative to its current index
+    for (int i = -index; i < 0; i++) {
+      if (machine.charAt(i) == '\n') {
+        line++;
+      }
+    }
+    return line;
+  }
+
+  /**
+   * The steps spent and the deadline of the parse of one input.
+   */
+  private static final class Allowance {
+
+    private final AtomicLong steps = new AtomicLong();
+    private final long deadline;
+
+    Allowance(long deadline) {
+      this.deadline = deadline;
+    }
+
+  }
+
+  private final class BudgetedExpression implements ParsingExpression {
+
+    private final ParsingExpression body;
+
+    BudgetedExpression(ParsingExpression body) {
+      this.body = body;
+    }
+
+    @Override
+    public Instruction[] compile(CompilationHandler compiler) {
+      Instruction[] instructions = compiler.compile(body);
+      Instruction[] result = new Instruction[instructions.length + 1];
+      result[0] = new StepInstruction();
+      System.arraycopy(instructions, 0, result, 1, instructions.length);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return body.toString();
+    }
+  }
+
+  private final class StepInstruction extends Instruction {
+    @Override
+    public void execute(Machine machine) {
+      step(machine);
+      machine.jump(1);
+    }
+  }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.RecognitionException;
+
+/**
+ * Thrown when the parse budget of a file, see {@link org.sonar.erlang.ErlangConfiguration#getParseTimeoutMillis()}
+ * and {@link org.sonar.erlang.ErlangConfiguration#getParseMaxSteps()}, is exhausted. The scanner reports it like
+ * any other parse error, at the line the parser had reached.
+ */
+public class ParseBudgetExceededException extends RecognitionException {
+
+  private static final long serialVersionUID = 1L;
+
+  public ParseBudgetExceededException(int line, String message) {
+    super(line, message);
+  }
+
+}
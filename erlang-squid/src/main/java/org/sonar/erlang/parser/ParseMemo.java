@@ -0,0 +1,310 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.Rule;
+import org.sonar.sslr.internal.matchers.ParseNode;
+import org.sonar.sslr.internal.vm.CompilableGrammarRule;
+import org.sonar.sslr.internal.vm.CompilationHandler;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.Machine;
+import org.sonar.sslr.internal.vm.MachineStack;
+import org.sonar.sslr.internal.vm.ParsingExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Packrat memoization of selected {@link ErlangGrammarImpl} rules: the result of a rule at an
+ * input position, either the matched nodes or the failure, is computed once per parse.
+ * <p>
+ * SSLR only keeps the last successful rule match per position, so a rule re-attempted after
+ * another one matched at the same position, or a rule which failed there before, is parsed
+ * again. This layer keeps every (rule, position) result of the chosen rules instead. It is
+ * installed by wrapping the rule bodies, before the grammar is compiled.
+ * <p>
+ * The statistics are those of the last parse. Parse steps are rule invocations: every rule of
+ * the grammar is counted, and a hit saves the invocations done to compute the cached result.
+ */
+public final class ParseMemo {
+
+  private final List<MemoizedExpression> memoized = new ArrayList<>();
+
+  @Nullable
+  private Machine machine;
+  private int[] stepsAtEntry = new int[64];
+  private int depth;
+  private int steps;
+  private int lookups;
+  private int hits;
+  private int stepsSaved;
+
+  private ParseMemo() {
+  }
+
+  /**
+   * Wraps the given rules of the grammar, which must not have been compiled yet.
+   */
+  static ParseMemo install(Grammar grammar, Collection<ErlangGrammarImpl> rules) {
+    ParseMemo memo = new ParseMemo();
+    for (ErlangGrammarImpl key : ErlangGrammarImpl.values()) {
+      Rule rule = grammar.rule(key);
+      if (rule instanceof CompilableGrammarRule) {
+        CompilableGrammarRule compilable = (CompilableGrammarRule) rule;
+        if (rules.contains(key)) {
+          MemoizedExpression expression = memo.new MemoizedExpression(compilable.getExpression());
+          memo.memoized.add(expression);
+          compilable.setExpression(expression);
+        } else {
+          compilable.setExpression(memo.new CountedExpression(compilable.getExpression()));
+        }
+      }
+    }
+    return memo;
+  }
+
+  /**
+   * Rule invocations of the last parse.
+   */
+  public int getSteps() {
+    return steps;
+  }
+
+  /**
+   * Attempts of memoized rules in the last parse.
+   */
+  public int getLookups() {
+    return lookups;
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public double getHitRate() {
+    return lookups == 0 ? 0 : ((double) hits / lookups);
+  }
+
+  /**
+   * Rule invocations which were not done thanks to the cached results.
+   */
+  public int getStepsSaved() {
+    return stepsSaved;
+  }
+
+  /**
+   * Drops the cached results of the last parse, its statistics are kept.
+   */
+  void release() {
+    machine = null;
+    for (MemoizedExpression expression : memoized) {
+      expression.results.clear();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH, "%d/%d memo hits (%.1f%%), %d of %d parse steps saved",
+      hits, lookups, getHitRate() * 100, stepsSaved, steps + stepsSaved);
+  }
+
+  private void enter(Machine current) {
+    if (current != machine) {
+      // new parse: the positions of the previous one are meaningless
+      release();
+      machine = current;
+      depth = 0;
+      steps = 0;
+      lookups = 0;
+      hits = 0;
+      stepsSaved = 0;
+    }
+    steps++;
+  }
+
+  private void push() {
+    if (depth == stepsAtEntry.length) {
+      stepsAtEntry = Arrays.copyOf(stepsAtEntry, depth * 2);
+    }
+    stepsAtEntry[depth++] = steps;
+  }
+
+  private int pop() {
+    depth--;
+    return steps - stepsAtEntry[depth];
+  }
+
+  private static final class Result {
+    private final int end;
+    @Nullable
+    private final List<ParseNode> nodes;
+    private final int cost;
+
+    Result(int end, @Nullable List<ParseNode> nodes, int cost) {
+      this.end = end;
+      this.nodes = nodes;
+      this.cost = cost;
+    }
+  }
+
+  private final class CountedExpression implements ParsingExpression {
+
+    private final ParsingExpression body;
+
+    CountedExpression(ParsingExpression body) {
+      this.body = body;
+    }
+
+    @Override
+    public Instruction[] compile(CompilationHandler compiler) {
+      Instruction[] instructions = compiler.compile(body);
+      Instruction[] result = new Instruction[instructions.length + 1];
+      result[0] = new CountInstruction();
+      System.arraycopy(instructions, 0, result, 1, instructions.length);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return body.toString();
+    }
+  }
+
+  /**
+   * Compiles to:
+   * <pre>
+   *   lookup        hit: push the cached nodes and go to end, cached failure: fail
+   *   choice FAIL
+   *   body
+   *   store         commit of the choice, go to end
+   *   FAIL: store the failure and fail
+   *   end:
+   * </pre>
+   */
+  private final class MemoizedExpression implements ParsingExpression {
+
+    private final ParsingExpression body;
+    private final Map<Integer, Result> results = new HashMap<>();
+
+    MemoizedExpression(ParsingExpression body) {
+      this.body = body;
+    }
+
+    @Override
+    public Instruction[] compile(CompilationHandler compiler) {
+      Instruction[] instructions = compiler.compile(body);
+      int n = instructions.length;
+      Instruction[] result = new Instruction[n + 4];
+      result[0] = new LookupInstruction(results, n + 4);
+      result[1] = Instruction.choice(n + 2);
+      System.arraycopy(instructions, 0, result, 2, n);
+      result[n + 2] = new StoreInstruction(results);
+      result[n + 3] = new StoreFailureInstruction(results);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return body.toString();
+    }
+  }
+
+  private final class CountInstruction extends Instruction {
+    @Override
+    public void execute(Machine machine) {
+      enter(machine);
+      machine.jump(1);
+    }
+  }
+
+  private final class LookupInstruction extends Instruction {
+
+    private final Map<Integer, Result> results;
+    private final int endOffset;
+
+    LookupInstruction(Map<Integer, Result> results, int endOffset) {
+      this.results = results;
+      this.endOffset = endOffset;
+    }
+
+    @Override
+    public void execute(Machine machine) {
+      enter(machine);
+      lookups++;
+      Result result = results.get(machine.getIndex());
+      if (result == null) {
+        push();
+        machine.jump(1);
+        return;
+      }
+      hits++;
+      stepsSaved += result.cost;
+      if (result.nodes == null) {
+        machine.backtrack();
+      } else {
+        machine.peek().subNodes().addAll(result.nodes);
+        machine.setIndex(result.end);
+        machine.jump(endOffset);
+      }
+    }
+  }
+
+  private final class StoreInstruction extends Instruction {
+
+    private final Map<Integer, Result> results;
+
+    StoreInstruction(Map<Integer, Result> results) {
+      this.results = results;
+    }
+
+    @Override
+    public void execute(Machine machine) {
+      MachineStack choice = machine.peek();
+      List<ParseNode> nodes = new ArrayList<>(choice.subNodes());
+      results.put(choice.index(), new Result(machine.getIndex(), nodes, pop()));
+      choice.parent().subNodes().addAll(nodes);
+      machine.pop();
+      machine.jump(2);
+    }
+  }
+
+  private final class StoreFailureInstruction extends Instruction {
+
+    private final Map<Integer, Result> results;
+
+    StoreFailureInstruction(Map<Integer, Result> results) {
+      this.results = results;
+    }
+
+    @Override
+    public void execute(Machine machine) {
+      results.put(machine.getIndex(), new Result(-1, null, pop()));
+      machine.backtrack();
+    }
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.text.JsonWriter;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Per rule parse statistics of an analysis, collected when profiling is enabled in the
+ * {@link org.sonar.erlang.ErlangConfiguration}. The parsers of all the scanner threads report
+ * to the same instance.
+ * <p>
+ * Files whose parsing takes longer than the slow file threshold get their top rules, by self
+ * time, logged and kept for the {@link #writeJson(Writer) JSON dump}.
+ */
+public final class ParseProfile {
+
+  public static final long DEFAULT_SLOW_FILE_MILLIS = 1000;
+  public static final int DEFAULT_TOP_RULES = 10;
+
+  private static final Logger LOG = LoggerFactory.getLogger(ParseProfile.class);
+
+  private final long slowFileNanos;
+  private final int topRules;
+  private final Map<ErlangGrammarImpl, RuleProfile> totals = new EnumMap<>(ErlangGrammarImpl.class);
+  private final List<SlowFile> slowFiles = new ArrayList<>();
+  private int files;
+  private long nanos;
+
+  public ParseProfile(long slowFileMillis, int topRules) {
+    this.slowFileNanos = TimeUnit.MILLISECONDS.toNanos(slowFileMillis);
+    this.topRules = topRules;
+  }
+
+  synchronized void add(String file, long fileNanos, List<RuleProfile> rules) {
+    files++;
+    nanos += fileNanos;
+    for (RuleProfile rule : rules) {
+      totals.merge(rule.getRule(), rule, RuleProfile::plus);
+    }
+    if (fileNanos >= slowFileNanos) {
+      List<RuleProfile> top = rules.stream().sorted(RuleProfile.BY_SELF_TIME).limit(topRules).collect(Collectors.toList());
+      slowFiles.add(new SlowFile(file, fileNanos, top));
+      LOG.info("Parsing {} took {} ms, top rules by self time:", file, TimeUnit.NANOSECONDS.toMillis(fileNanos));
+      for (RuleProfile rule : top) {
+        LOG.info("  {}", rule);
+      }
+    }
+  }
+
+  public synchronized int getFiles() {
+    return files;
+  }
+
+  /**
+   * Every rule attempted in the analysis, by decreasing self time.
+   */
+  public synchronized List<RuleProfile> getRules() {
+    return totals.values().stream().sorted(RuleProfile.BY_SELF_TIME).collect(Collectors.toList());
+  }
+
+  /**
+   * Writes the totals of the analysis and the top rules of the slow files.
+   */
+  public synchronized void writeJson(Writer writer) {
+    JsonWriter json = JsonWriter.of(writer);
+    json.beginObject()
+      .prop("files", files)
+      .prop("millis", TimeUnit.NANOSECONDS.toMillis(nanos));
+    json.name("rules");
+    writeRules(json, getRules());
+    json.name("slowFiles").beginArray();
+    for (SlowFile slowFile : slowFiles) {
+      json.beginObject()
+        .prop("file", slowFile.file)
+        .prop("millis", TimeUnit.NANOSECONDS.toMillis(slowFile.nanos));
+      json.name("rules");
+      writeRules(json, slowFile.rules);
+      json.endObject();
+    }
+    json.endArray().endObject();
+  }
+
+  private static void writeRules(JsonWriter json, List<RuleProfile> rules) {
+    json.beginArray();
+    for (RuleProfile rule : rules) {
+      json.beginObject()
+        .prop("rule", rule.getRule().name())
+        .prop("invocations", rule.getInvocations())
+        .prop("matches", rule.getMatches())
+        .prop("backtracked", rule.getBacktracked())
+        .prop("nanos", rule.getNanos())
+        .prop("selfNanos", rule.getSelfNanos())
+        .endObject();
+    }
+    json.endArray();
+  }
+
+  private static final class SlowFile {
+    private final String file;
+    private final long nanos;
+    private final List<RuleProfile> rules;
+
+    SlowFile(String file, long nanos, List<RuleProfile> rules) {
+      this.file = file;
+      this.nanos = nanos;
+      this.rules = rules;
+    }
+  }
+
+}
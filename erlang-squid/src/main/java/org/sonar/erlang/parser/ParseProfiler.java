@@ -0,0 +1,222 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.Rule;
+import org.sonar.sslr.internal.vm.CompilableGrammarRule;
+import org.sonar.sslr.internal.vm.CompilationHandler;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.Machine;
+import org.sonar.sslr.internal.vm.MachineStack;
+import org.sonar.sslr.internal.vm.ParsingExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts, for every {@link ErlangGrammarImpl} rule, the attempts and matches, the input backtracked
+ * after failed attempts and the time spent. It is installed by wrapping the rule bodies, before
+ * the grammar is compiled, and the counters are those since the last {@link #reset()}.
+ * <p>
+ * The input is measured in characters with the lexerless front end and in tokens with the lexer
+ * based one. Attempts answered from the SSLR memoization do not run the rule and are not counted.
+ */
+final class ParseProfiler {
+
+  private static final ErlangGrammarImpl[] RULES = ErlangGrammarImpl.values();
+
+  private final long[] invocations = new long[RULES.length];
+  private final long[] matches = new long[RULES.length];
+  private final long[] backtracked = new long[RULES.length];
+  private final long[] nanos = new long[RULES.length];
+  private final long[] selfNanos = new long[RULES.length];
+  private final int[] active = new int[RULES.length];
+
+  private int depth;
+  private int[] frameStart = new int[64];
+  private int[] frameReached = new int[64];
+  private long[] frameNanos = new long[64];
+  private long[] frameChildNanos = new long[64];
+
+  private ParseProfiler() {
+  }
+
+  static ParseProfiler install(Grammar grammar) {
+    ParseProfiler profiler = new ParseProfiler();
+    for (ErlangGrammarImpl key : RULES) {
+      Rule rule = grammar.rule(key);
+      if (rule instanceof CompilableGrammarRule) {
+        CompilableGrammarRule compilable = (CompilableGrammarRule) rule;
+        compilable.setExpression(profiler.new ProfiledExpression(key.ordinal(), compilable.getExpression()));
+      }
+    }
+    return profiler;
+  }
+
+  void reset() {
+    Arrays.fill(invocations, 0);
+    Arrays.fill(matches, 0);
+    Arrays.fill(backtracked, 0);
+    Arrays.fill(nanos, 0);
+    Arrays.fill(selfNanos, 0);
+    Arrays.fill(active, 0);
+    depth = 0;
+  }
+
+  /**
+   * The rules attempted since the last reset, in grammar order.
+   */
+  List<RuleProfile> getRules() {
+    List<RuleProfile> rules = new ArrayList<>();
+    for (int i = 0; i < RULES.length; i++) {
+      if (invocations[i] > 0) {
+        rules.add(new RuleProfile(RULES[i], invocations[i], matches[i], backtracked[i], nanos[i], selfNanos[i]));
+      }
+    }
+    return rules;
+  }
+
+  private void enter(int rule, int index) {
+    if (depth == frameStart.length) {
+      int length = depth * 2;
+      frameStart = Arrays.copyOf(frameStart, length);
+      frameReached = Arrays.copyOf(frameReached, length);
+      frameNanos = Arrays.copyOf(frameNanos, length);
+      frameChildNanos = Arrays.copyOf(frameChildNanos, length);
+    }
+    invocations[rule]++;
+    active[rule]++;
+    frameStart[depth] = index;
+    frameReached[depth] = index;
+    frameChildNanos[depth] = 0;
+    frameNanos[depth] = System.nanoTime();
+    depth++;
+  }
+
+  private void exit(int rule, int index, boolean matched) {
+    long elapsed = System.nanoTime() - frameNanos[--depth];
+    int reached = Math.max(frameReached[depth], index);
+    if (matched) {
+      matches[rule]++;
+    } else {
+      backtracked[rule] += reached - frameStart[depth];
+    }
+    selfNanos[rule] += elapsed - frameChildNanos[depth];
+    if (--active[rule] == 0) {
+      // recursive attempts are already part of the outermost one
+      nanos[rule] += elapsed;
+    }
+    if (depth > 0) {
+      frameReached[depth - 1] = Math.max(frameReached[depth - 1], reached);
+      frameChildNanos[depth - 1] += elapsed;
+    }
+  }
+
+  /**
+   * Compiles to:
+   * <pre>
+   *   enter
+   *   choice FAIL
+   *   body
+   *   exit          commit of the choice, go to end
+   *   FAIL: count the failure and fail
+   *   end:
+   * </pre>
+   */
+  private final class ProfiledExpression implements ParsingExpression {
+
+    private final int rule;
+    private final ParsingExpression body;
+
+    ProfiledExpression(int rule, ParsingExpression body) {
+      this.rule = rule;
+      this.body = body;
+    }
+
+    @Override
+    public Instruction[] compile(CompilationHandler compiler) {
+      Instruction[] instructions = compiler.compile(body);
+      int n = instructions.length;
+      Instruction[] result = new Instruction[n + 4];
+      result[0] = new EnterInstruction(rule);
+      result[1] = Instruction.choice(n + 2);
+      System.arraycopy(instructions, 0, result, 2, n);
+      result[n + 2] = new MatchInstruction(rule);
+      result[n + 3] = new FailureInstruction(rule);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return body.toString();
+    }
+  }
+
+  private final class EnterInstruction extends Instruction {
+
+    private final int rule;
+
+    EnterInstruction(int rule) {
+      this.rule = rule;
+    }
+
+    @Override
+    public void execute(Machine machine) {
+      enter(rule, machine.getIndex());
+      machine.jump(1);
+    }
+  }
+
+  private final class MatchInstruction extends Instruction {
+
+    private final int rule;
+
+    MatchInstruction(int rule) {
+      this.rule = rule;
+    }
+
+    @Override
+    public void execute(Machine machine) {
+      exit(rule, machine.getIndex(), true);
+      MachineStack choice = machine.peek();
+      choice.parent().subNodes().addAll(choice.subNodes());
+      machine.pop();
+      machine.jump(2);
+    }
+  }
+
+  private final class FailureInstruction extends Instruction {
+
+    private final int rule;
+
+    FailureInstruction(int rule) {
+      this.rule = rule;
+    }
+
+    @Override
+    public void execute(Machine machine) {
+      exit(rule, machine.getIndex(), false);
+      machine.backtrack();
+    }
+  }
+
+}
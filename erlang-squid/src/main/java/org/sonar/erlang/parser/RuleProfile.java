@@ -0,0 +1,94 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Parse statistics of one {@link ErlangGrammarImpl} rule, see {@link ParseProfile}.
+ */
+public final class RuleProfile {
+
+  public static final Comparator<RuleProfile> BY_SELF_TIME = Comparator.comparingLong(RuleProfile::getSelfNanos).reversed()
+    .thenComparing(RuleProfile::getRule);
+
+  private final ErlangGrammarImpl rule;
+  private final long invocations;
+  private final long matches;
+  private final long backtracked;
+  private final long nanos;
+  private final long selfNanos;
+
+  RuleProfile(ErlangGrammarImpl rule, long invocations, long matches, long backtracked, long nanos, long selfNanos) {
+    this.rule = rule;
+    this.invocations = invocations;
+    this.matches = matches;
+    this.backtracked = backtracked;
+    this.nanos = nanos;
+    this.selfNanos = selfNanos;
+  }
+
+  public ErlangGrammarImpl getRule() {
+    return rule;
+  }
+
+  public long getInvocations() {
+    return invocations;
+  }
+
+  public long getMatches() {
+    return matches;
+  }
+
+  /**
+   * Input consumed by the failed attempts of the rule before they failed: characters with the
+   * lexerless front end, tokens with the lexer based one.
+   */
+  public long getBacktracked() {
+    return backtracked;
+  }
+
+  /**
+   * Time spent in the rule, nested rules included.
+   */
+  public long getNanos() {
+    return nanos;
+  }
+
+  /**
+   * Time spent in the rule, nested rules excluded.
+   */
+  public long getSelfNanos() {
+    return selfNanos;
+  }
+
+  RuleProfile plus(RuleProfile other) {
+    return new RuleProfile(rule, invocations + other.invocations, matches + other.matches, backtracked + other.backtracked,
+      nanos + other.nanos, selfNanos + other.selfNanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH, "%s: %d invocations, %d matches, %d backtracked, %.1f ms (%.1f ms self)",
+      rule, invocations, matches, backtracked, nanos / 1e6, selfNanos / 1e6);
+  }
+
+}
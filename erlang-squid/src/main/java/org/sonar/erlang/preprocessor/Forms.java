@@ -0,0 +1,190 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import org.sonar.erlang.api.ErlangKeyword;
+import org.sonar.erlang.api.ErlangTokenType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the forms of a file in the tokens of {@link org.sonar.erlang.lexer.ErlangLexer}, without parsing them.
+ */
+final class Forms {
+
+  private Forms() {
+  }
+
+  /**
+   * The index of the end of form token of the form starting at the given index, or of the end of file.
+   */
+  static int end(List<Token> tokens, int start) {
+    int i = start;
+    while (i < tokens.size() - 1 && !isEnd(tokens.get(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  static boolean isEnd(Token token) {
+    return token.getType() == ErlangTokenType.END_OF_FORM || token.getType() == GenericTokenType.EOF;
+  }
+
+  /**
+   * The name of the attribute of a form, {@code null} if it is not an attribute.
+   */
+  @Nullable
+  static String attribute(List<Token> tokens, int start) {
+    if (start + 1 < tokens.size() && "-".equals(tokens.get(start).getValue())) {
+      Token name = tokens.get(start + 1);
+      if (name.getType() == ErlangTokenType.ATOM || name.getType() instanceof ErlangKeyword) {
+        return name.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The tokens between the parentheses of an attribute ending at the given end of form, empty if there are no
+   * parentheses.
+   */
+  static List<Token> arguments(List<Token> tokens, int start, int end) {
+    if (end - start >= 4 && "(".equals(tokens.get(start + 2).getValue()) && ")".equals(tokens.get(end - 1).getValue())) {
+      return tokens.subList(start + 3, end - 1);
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * The macro of the arguments of a {@code -define}, {@code null} if they are malformed.
+   */
+  @Nullable
+  static Macro define(List<Token> arguments) {
+    if (arguments.isEmpty()) {
+      return null;
+    }
+    Token name = arguments.get(0);
+    int i = 1;
+    List<String> parameters = null;
+    if (i < arguments.size() && "(".equals(arguments.get(i).getValue())) {
+      parameters = new ArrayList<>();
+      i++;
+      while (i < arguments.size() && !")".equals(arguments.get(i).getValue())) {
+        if (arguments.get(i).getType() == ErlangTokenType.VARIABLE) {
+          parameters.add(arguments.get(i).getValue());
+        }
+        i++;
+      }
+      i++;
+    }
+    List<Token> body = Collections.emptyList();
+    if (i < arguments.size() && ",".equals(arguments.get(i).getValue())) {
+      body = arguments.subList(i + 1, arguments.size());
+    } else if (i < arguments.size()) {
+      return null;
+    }
+    return new Macro(name.getValue(), parameters, body, name.getLine());
+  }
+
+  /**
+   * The directive of an {@code -include} or {@code -include_lib} attribute.
+   */
+  static Include include(String attribute, List<Token> arguments, int line) {
+    StringBuilder path = new StringBuilder();
+    for (Token token : arguments) {
+      if (token.getType() == ErlangTokenType.STRING_LITERAL) {
+        path.append(token.getValue(), 1, token.getValue().length() - 1);
+      }
+    }
+    return new Include(path.toString(), "include_lib".equals(attribute), line);
+  }
+
+  /**
+   * Splits the tokens at the commas which are not nested in brackets or blocks.
+   */
+  static List<List<Token>> split(List<Token> tokens) {
+    List<List<Token>> parts = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      depth += nesting(tokens, i);
+      if (depth == 0 && ",".equals(tokens.get(i).getValue())) {
+        parts.add(tokens.subList(start, i));
+        start = i + 1;
+      }
+    }
+    parts.add(tokens.subList(start, tokens.size()));
+    return parts;
+  }
+
+  /**
+   * The index of the token closing the bracket opened at the given index, or the size of the list.
+   */
+  static int closing(List<Token> tokens, int open) {
+    int depth = 0;
+    for (int i = open; i < tokens.size(); i++) {
+      depth += nesting(tokens, i);
+      if (depth == 0) {
+        return i;
+      }
+    }
+    return tokens.size();
+  }
+
+  private static int nesting(List<Token> tokens, int i) {
+    Token token = tokens.get(i);
+    if (token.getType() instanceof ErlangKeyword) {
+      switch ((ErlangKeyword) token.getType()) {
+        case BEGIN:
+        case CASE:
+        case IF:
+        case RECEIVE:
+        case TRY:
+          return 1;
+        case FUN:
+          return i + 1 < tokens.size() && "(".equals(tokens.get(i + 1).getValue()) ? 1 : 0;
+        case END:
+          return -1;
+        default:
+          return 0;
+      }
+    }
+    switch (token.getValue()) {
+      case "(":
+      case "[":
+      case "{":
+      case "<<":
+        return 1;
+      case ")":
+      case "]":
+      case "}":
+      case ">>":
+        return -1;
+      default:
+        return 0;
+    }
+  }
+
+}
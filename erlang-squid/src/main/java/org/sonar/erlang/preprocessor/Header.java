@@ -0,0 +1,166 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+import org.sonar.erlang.parser.DeferredBodies;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The definitions of a parsed file which are visible from the files including it: its includes, records and
+ * macros. It keeps no reference to the tree it was read from.
+ */
+public final class Header {
+
+  private final File file;
+  private final boolean parsed;
+  private final List<Include> includes;
+  private final Map<String, List<Token>> records;
+  private final Map<String, Macro> macros;
+
+  private Header(File file, boolean parsed, List<Include> includes, Map<String, List<Token>> records, Map<String, Macro> macros) {
+    this.file = file;
+    this.parsed = parsed;
+    this.includes = ImmutableList.copyOf(includes);
+    this.records = ImmutableMap.copyOf(records);
+    this.macros = ImmutableMap.copyOf(macros);
+  }
+
+  public static Header of(File file, AstNode root) {
+    List<Include> includes = new ArrayList<>();
+    for (AstNode attribute : root.getDescendants(ErlangGrammarImpl.genericAttr)) {
+      Include include = Include.of(attribute);
+      if (include != null) {
+        includes.add(include);
+      }
+    }
+    Map<String, List<Token>> records = new LinkedHashMap<>();
+    for (AstNode record : root.getDescendants(ErlangGrammarImpl.recordAttr)) {
+      AstNode body = record.getFirstChild(ErlangGrammarImpl.attributeBody);
+      if (body != null) {
+        List<Token> tokens = DeferredBodies.tokens(body);
+        records.put(tokens.get(0).getOriginalValue(), tokens);
+      }
+    }
+    Map<String, Macro> macros = new LinkedHashMap<>();
+    for (AstNode define : root.getDescendants(ErlangGrammarImpl.defineAttr)) {
+      Macro macro = macro(define);
+      macros.put(macro.getKey(), macro);
+    }
+    return new Header(file, true, includes, records, macros);
+  }
+
+  /**
+   * A header which could not be parsed, with the definitions read from its tokens only.
+   */
+  public static Header lexed(File file, List<Token> tokens) {
+    List<Include> includes = new ArrayList<>();
+    Map<String, List<Token>> records = new LinkedHashMap<>();
+    Map<String, Macro> macros = new LinkedHashMap<>();
+    for (int start = 0; start < tokens.size() - 1; start = Forms.end(tokens, start) + 1) {
+      String attribute = Forms.attribute(tokens, start);
+      List<Token> arguments = Forms.arguments(tokens, start, Forms.end(tokens, start));
+      if ("include".equals(attribute) || "include_lib".equals(attribute)) {
+        includes.add(Forms.include(attribute, arguments, tokens.get(start).getLine()));
+      } else if ("record".equals(attribute) && !arguments.isEmpty()) {
+        records.put(arguments.get(0).getOriginalValue(), new ArrayList<>(arguments));
+      } else if ("define".equals(attribute)) {
+        Macro macro = Forms.define(arguments);
+        if (macro != null) {
+          macros.put(macro.getKey(), macro);
+        }
+      }
+    }
+    return new Header(file, false, includes, records, macros);
+  }
+
+  /**
+   * A header which could not be read, without any definition.
+   */
+  public static Header unparsed(File file) {
+    return new Header(file, false, Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+  }
+
+  private static Macro macro(AstNode define) {
+    AstNode funcDecl = define.getFirstChild(ErlangGrammarImpl.funcDecl);
+    String name;
+    List<String> parameters = null;
+    if (funcDecl == null) {
+      name = define.getFirstChild(ErlangGrammarImpl.primaryExpression).getTokenOriginalValue();
+    } else {
+      name = funcDecl.getFirstChild(ErlangGrammarImpl.literal).getTokenOriginalValue();
+      parameters = new ArrayList<>();
+      for (AstNode argument : funcDecl.getFirstChild(ErlangGrammarImpl.arguments).getChildren()) {
+        if (!argument.is(ErlangGrammarImpl.lparenthesis, ErlangGrammarImpl.rparenthesis, ErlangGrammarImpl.comma)) {
+          parameters.add(argument.getTokenOriginalValue());
+        }
+      }
+    }
+    AstNode body = define.getFirstChild(ErlangGrammarImpl.attributeBody);
+    List<Token> tokens = body == null ? Collections.emptyList() : DeferredBodies.tokens(body);
+    return new Macro(name, parameters, tokens, define.getTokenLine());
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * False when the file could not be parsed, in which case its definitions were only read from its tokens,
+   * if it could be read at all.
+   */
+  public boolean isParsed() {
+    return parsed;
+  }
+
+  public List<Include> getIncludes() {
+    return includes;
+  }
+
+  /**
+   * The tokens of the {@code -record} bodies, the first one being the record name, by record name.
+   */
+  public Map<String, List<Token>> getRecords() {
+    return records;
+  }
+
+  /**
+   * The macros, by {@link Macro#getKey() key}.
+   */
+  public Map<String, Macro> getMacros() {
+    return macros;
+  }
+
+  @Override
+  public String toString() {
+    return file.getPath();
+  }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.lexer.ErlangLexer;
+import org.sonar.erlang.parser.ErlangParser;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Parses each included file once per analysis, and shares its {@link Header} between all the modules including it.
+ * It is thread-safe: the headers are parsed by the thread needing them first, with a parser of that thread, while
+ * the other threads needing the same header wait for it.
+ */
+public final class HeaderCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HeaderCache.class);
+
+  private final ErlangConfiguration conf;
+  private final ThreadLocal<Parser<LexerlessGrammar>> parsers;
+  private final ThreadLocal<ErlangLexer> lexers;
+  private final LoadingCache<File, Header> headers = CacheBuilder.newBuilder()
+    .recordStats()
+    .build(CacheLoader.from(this::parse));
+  private final ConcurrentMap<List<File>, MacroTable> macroTables = new ConcurrentHashMap<>();
+
+  public HeaderCache(ErlangConfiguration conf) {
+    this.conf = conf;
+    // the macros of the headers are read by the preprocessor, so they are not expanded when parsing them
+    this.parsers = ThreadLocal.withInitial(() -> ErlangParser.create(conf, false));
+    this.lexers = ThreadLocal.withInitial(() -> new ErlangLexer(conf.getCharset()));
+  }
+
+  /**
+   * The header of a file, parsed at the first call.
+   */
+  public Header get(File file) {
+    return headers.getUnchecked(canonical(file));
+  }
+
+  /**
+   * The headers of the given directives of a file, followed by the ones they include in turn, each header once.
+   * The directives which cannot be {@link #resolve(File, Include) resolved} are ignored.
+   */
+  public List<Header> headers(File file, List<Include> includes) {
+    List<Header> result = new ArrayList<>();
+    Set<File> seen = new HashSet<>();
+    seen.add(canonical(file));
+    collect(file, includes, seen, result);
+    return result;
+  }
+
+  private void collect(File from, List<Include> includes, Set<File> seen, List<Header> result) {
+    for (Include include : includes) {
+      File resolved = resolve(from, include);
+      if (resolved == null) {
+        LOG.debug("Unable to resolve {} in {}", include, from);
+      } else if (seen.add(canonical(resolved))) {
+        Header header = get(resolved);
+        result.add(header);
+        collect(header.getFile(), header.getIncludes(), seen, result);
+      }
+    }
+  }
+
+  /**
+   * The macros of the given headers, built once for each distinct sequence of headers.
+   */
+  public MacroTable macroTable(List<Header> headerList) {
+    if (headerList.isEmpty()) {
+      return MacroTable.EMPTY;
+    }
+    List<File> key = headerList.stream().map(Header::getFile).collect(Collectors.toList());
+    return macroTables.computeIfAbsent(key, k -> MacroTable.of(headerList));
+  }
+
+  /**
+   * The number of distinct {@link #macroTable(List) macro tables} built so far.
+   */
+  public int macroTableCount() {
+    return macroTables.size();
+  }
+
+  /**
+   * Looks for the file of a directive like the Erlang preprocessor: in the directory of the including file, then
+   * in the {@link ErlangConfiguration#getIncludePaths() include paths}. For an {@code -include_lib}, whose path
+   * starts with an application name, the directories of that application containing the including file are
+   * tried last.
+   */
+  @Nullable
+  public File resolve(File from, Include include) {
+    if (include.getPath().isEmpty()) {
+      return null;
+    }
+    File path = new File(include.getPath());
+    if (path.isAbsolute()) {
+      return path.isFile() ? path : null;
+    }
+    List<File> candidates = new ArrayList<>();
+    candidates.add(new File(from.getAbsoluteFile().getParentFile(), include.getPath()));
+    for (File includePath : conf.getIncludePaths()) {
+      candidates.add(new File(includePath, include.getPath()));
+    }
+    int separator = include.getPath().indexOf('/');
+    if (include.isLib() && separator > 0) {
+      String application = include.getPath().substring(0, separator);
+      String rest = include.getPath().substring(separator + 1);
+      for (File dir = from.getAbsoluteFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+        if (dir.getName().equals(application) || dir.getName().startsWith(application + "-")) {
+          candidates.add(new File(dir, rest));
+        }
+      }
+    }
+    for (File candidate : candidates) {
+      if (candidate.isFile()) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  public long size() {
+    return headers.size();
+  }
+
+  /**
+   * The hits are the headers shared between including files, the loads the parsed ones.
+   */
+  public CacheStats stats() {
+    return headers.stats();
+  }
+
+  public void clear() {
+    headers.invalidateAll();
+    macroTables.clear();
+  }
+
+  private Header parse(File file) {
+    try {
+      return Header.of(file, parsers.get().parse(file));
+    } catch (RecognitionException e) {
+      LOG.debug("Unable to parse the included file {}, reading its tokens only: {}", file, e.getMessage());
+      return lex(file);
+    } catch (RuntimeException e) {
+      LOG.warn("Unable to read the included file {}: {}", file, e.getMessage());
+      LOG.debug("Read error", e);
+      return Header.unparsed(file);
+    }
+  }
+
+  private Header lex(File file) {
+    try {
+      return Header.lexed(file, lexers.get().lex(file));
+    } catch (RuntimeException e) {
+      LOG.warn("Unable to read the included file {}: {}", file, e.getMessage());
+      LOG.debug("Read error", e);
+      return Header.unparsed(file);
+    }
+  }
+
+  private static File canonical(File file) {
+    try {
+      return file.getCanonicalFile();
+    } catch (IOException e) {
+      return file.getAbsoluteFile();
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.sonar.sslr.api.AstNode;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+
+import javax.annotation.Nullable;
+
+/**
+ * An {@code -include} or {@code -include_lib} directive.
+ */
+public final class Include {
+
+  private final String path;
+  private final boolean lib;
+  private final int line;
+
+  public Include(String path, boolean lib, int line) {
+    this.path = path;
+    this.lib = lib;
+    this.line = line;
+  }
+
+  /**
+   * The directive of a {@link ErlangGrammarImpl#genericAttr} node, {@code null} for the other attributes.
+   */
+  @Nullable
+  public static Include of(AstNode genericAttr) {
+    String name = genericAttr.getChildren().get(1).getTokenValue();
+    if (!"include".equals(name) && !"include_lib".equals(name)) {
+      return null;
+    }
+    StringBuilder path = new StringBuilder();
+    // adjacent string literals are concatenated
+    for (AstNode string : genericAttr.getDescendants(ErlangGrammarImpl.stringLiteral)) {
+      String value = string.getTokenValue();
+      path.append(value, 1, value.length() - 1);
+    }
+    return new Include(path.toString(), "include_lib".equals(name), genericAttr.getTokenLine());
+  }
+
+  /**
+   * The path as written, empty if it is not a string.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  public boolean isLib() {
+    return lib;
+  }
+
+  public int getLine() {
+    return line;
+  }
+
+  @Override
+  public String toString() {
+    return (lib ? "include_lib(\"" : "include(\"") + path + "\")";
+  }
+
+}
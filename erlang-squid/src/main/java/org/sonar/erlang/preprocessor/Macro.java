@@ -0,0 +1,89 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.google.common.collect.ImmutableList;
+import com.sonar.sslr.api.Token;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A {@code -define}: its name, its parameters if it has some parentheses, and the tokens of its body.
+ */
+public final class Macro {
+
+  private final String name;
+  @Nullable
+  private final List<String> parameters;
+  private final List<Token> body;
+  private final int line;
+
+  public Macro(String name, @Nullable List<String> parameters, List<Token> body, int line) {
+    this.name = name;
+    this.parameters = parameters == null ? null : ImmutableList.copyOf(parameters);
+    this.body = ImmutableList.copyOf(body);
+    this.line = line;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * The parameter names, {@code null} for a macro defined without parentheses.
+   */
+  @Nullable
+  public List<String> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * The number of parameters, -1 for a macro defined without parentheses.
+   */
+  public int getArity() {
+    return parameters == null ? -1 : parameters.size();
+  }
+
+  public List<Token> getBody() {
+    return body;
+  }
+
+  public int getLine() {
+    return line;
+  }
+
+  /**
+   * The name, followed by the arity for a macro with parentheses: macros of different arities can coexist.
+   */
+  public String getKey() {
+    return key(name, getArity());
+  }
+
+  public static String key(String name, int arity) {
+    return arity < 0 ? name : (name + "/" + arity);
+  }
+
+  @Override
+  public String toString() {
+    return getKey();
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * The macros defined by a sequence of headers, the later definitions replacing the former ones. It is immutable,
+ * so that the table of a given set of headers can be shared by all the files including them.
+ */
+public final class MacroTable {
+
+  public static final MacroTable EMPTY = new MacroTable(ImmutableMap.of());
+
+  private final Map<String, Macro> macros;
+  private final Set<String> names;
+
+  private MacroTable(Map<String, Macro> macros) {
+    this.macros = ImmutableMap.copyOf(macros);
+    Set<String> macroNames = new HashSet<>();
+    for (Macro macro : macros.values()) {
+      macroNames.add(macro.getName());
+    }
+    this.names = ImmutableSet.copyOf(macroNames);
+  }
+
+  public static MacroTable of(Iterable<Header> headers) {
+    Map<String, Macro> macros = new HashMap<>();
+    for (Header header : headers) {
+      macros.putAll(header.getMacros());
+    }
+    return new MacroTable(macros);
+  }
+
+  /**
+   * The macro of the given {@link Macro#getArity() arity}, -1 for the one defined without parentheses.
+   */
+  @Nullable
+  public Macro get(String name, int arity) {
+    return macros.get(Macro.key(name, arity));
+  }
+
+  /**
+   * Whether a macro of that name is defined, whatever its arity, as tested by {@code -ifdef}.
+   */
+  public boolean isDefined(String name) {
+    return names.contains(name);
+  }
+
+  public int size() {
+    return macros.size();
+  }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import org.sonar.erlang.api.ErlangTokenType;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Expands the macros in the tokens of a file, like the Erlang preprocessor:
+ * <ul>
+ * <li>the macros are the ones of the included files, see {@link HeaderCache#macroTable(List)}, then the ones defined
+ * by the file itself, from their {@code -define}, and the predefined ones;</li>
+ * <li>the forms of the branches of {@code -ifdef}, {@code -ifndef} and {@code -else} which are not taken are removed,
+ * as well as these directives. The first branch of an {@code -if} is taken, as its condition is not evaluated.</li>
+ * </ul>
+ * The tokens of an expansion, arguments included, are generated code at the position of the {@code ?} of the macro,
+ * so that the tokens stay in the order of their positions. The directives
+ * which are not conditional, such as {@code -define} and {@code -include}, and the comments are kept.
+ * <p>
+ * The macros of the included files are visible from the start of the file, wherever the {@code -include} is.
+ */
+public final class Preprocessor {
+
+  private static final Set<String> CONDITIONALS = new HashSet<>(
+    java.util.Arrays.asList("ifdef", "ifndef", "else", "endif", "if", "elif"));
+  private static final int MAX_DEPTH = 100;
+
+  private final HeaderCache headerCache;
+
+  public Preprocessor(HeaderCache headerCache) {
+    this.headerCache = headerCache;
+  }
+
+  public List<Token> preprocess(File file, List<Token> tokens) {
+    List<Include> includes = new ArrayList<>();
+    for (int start = 0; start < tokens.size() - 1; start = Forms.end(tokens, start) + 1) {
+      String attribute = Forms.attribute(tokens, start);
+      if ("include".equals(attribute) || "include_lib".equals(attribute)) {
+        int end = Forms.end(tokens, start);
+        includes.add(Forms.include(attribute, Forms.arguments(tokens, start, end), tokens.get(start).getLine()));
+      }
+    }
+    MacroTable included = headerCache.macroTable(headerCache.headers(file, includes));
+    return new Expansion(file, included).run(tokens);
+  }
+
+  /**
+   * The state of the preprocessing of a file.
+   */
+  private static final class Expansion {
+
+    private final File file;
+    private final MacroTable included;
+    private final Map<String, Macro> defined = new HashMap<>();
+    private final Set<String> undefined = new HashSet<>();
+    private final Deque<Branch> branches = new ArrayDeque<>();
+    private final List<Token> output = new ArrayList<>();
+    private final List<Trivia> pendingTrivia = new ArrayList<>();
+    private String module = "";
+    private String function = "";
+    private int arity;
+
+    Expansion(File file, MacroTable included) {
+      this.file = file;
+      this.included = included;
+    }
+
+    List<Token> run(List<Token> tokens) {
+      int start = 0;
+      while (start < tokens.size()) {
+        int end = Forms.end(tokens, start);
+        List<Token> form = tokens.subList(start, end + 1);
+        String attribute = Forms.attribute(tokens, start);
+        if (attribute != null && CONDITIONALS.contains(attribute)) {
+          conditional(attribute, Forms.arguments(tokens, start, end));
+          drop(form);
+        } else if (!isActive() && tokens.get(end).getType() != GenericTokenType.EOF) {
+          drop(form);
+        } else {
+          form(attribute, tokens, start, end);
+        }
+        start = end + 1;
+      }
+      return output;
+    }
+
+    private void form(@Nullable String attribute, List<Token> tokens, int start, int end) {
+      List<Token> arguments = Forms.arguments(tokens, start, end);
+      if ("define".equals(attribute)) {
+        Macro macro = Forms.define(arguments);
+        if (macro != null) {
+          defined.put(macro.getKey(), macro);
+          undefined.remove(macro.getName());
+        }
+        emitAll(tokens.subList(start, end + 1));
+        return;
+      }
+      if ("undef".equals(attribute) && !arguments.isEmpty()) {
+        String name = arguments.get(0).getValue();
+        defined.values().removeIf(macro -> macro.getName().equals(name));
+        undefined.add(name);
+      } else if ("module".equals(attribute) && !arguments.isEmpty()) {
+        module = arguments.get(0).getValue();
+      } else if (attribute == null && end - start > 1 && tokens.get(start).getType() == ErlangTokenType.ATOM
+        && "(".equals(tokens.get(start + 1).getValue())) {
+        List<Token> rest = tokens.subList(start + 1, end);
+        List<Token> parameters = rest.subList(1, Math.max(1, Forms.closing(rest, 0)));
+        function = tokens.get(start).getValue();
+        arity = parameters.isEmpty() ? 0 : Forms.split(parameters).size();
+      }
+      expand(tokens.subList(start, end + 1), Collections.emptySet(), 0);
+    }
+
+    /**
+     * Expands the macros of the tokens to the output.
+     */
+    private void expand(List<Token> tokens, Set<String> expanding, int depth) {
+      int i = 0;
+      while (i < tokens.size()) {
+        Token token = tokens.get(i);
+        int next = "?".equals(token.getValue()) ? expandCall(tokens, i, expanding, depth) : i;
+        if (next == i) {
+          emit(token);
+          i++;
+        } else {
+          i = next;
+        }
+      }
+    }
+
+    /**
+     * Expands the macro called at the given index, returning the index after the call, or the given one if it is
+     * not a known macro.
+     */
+    private int expandCall(List<Token> tokens, int question, Set<String> expanding, int depth) {
+      if (question + 1 >= tokens.size() || depth > MAX_DEPTH) {
+        return question;
+      }
+      Token name = tokens.get(question + 1);
+      if (name.getType() != ErlangTokenType.ATOM && name.getType() != ErlangTokenType.VARIABLE
+        || expanding.contains(name.getValue())) {
+        return question;
+      }
+      Token call = tokens.get(question);
+      int after = question + 2;
+      List<List<Token>> arguments = null;
+      if (after < tokens.size() && "(".equals(tokens.get(after).getValue())) {
+        int closing = Forms.closing(tokens, after);
+        if (closing < tokens.size()) {
+          List<Token> inside = tokens.subList(after + 1, closing);
+          arguments = inside.isEmpty() ? Collections.emptyList() : Forms.split(inside);
+          after = closing + 1;
+        }
+      }
+      Macro macro = arguments == null ? null : lookup(name.getValue(), arguments.size());
+      if (macro == null) {
+        // a macro without parentheses followed by some
+        arguments = null;
+        after = question + 2;
+        macro = lookup(name.getValue(), -1);
+      }
+      List<Token> body = macro == null ? predefined(name.getValue(), call) : substitute(macro, arguments, call);
+      if (body == null) {
+        return question;
+      }
+      for (Token dropped : tokens.subList(question, after)) {
+        pendingTrivia.addAll(dropped.getTrivia());
+      }
+      Set<String> inner = new HashSet<>(expanding);
+      inner.add(name.getValue());
+      expand(body, inner, depth + 1);
+      return after;
+    }
+
+    @Nullable
+    private Macro lookup(String name, int arity) {
+      if (undefined.contains(name)) {
+        return defined.get(Macro.key(name, arity));
+      }
+      Macro macro = defined.get(Macro.key(name, arity));
+      return macro == null ? included.get(name, arity) : macro;
+    }
+
+    private boolean isDefined(String name) {
+      if (defined.values().stream().anyMatch(macro -> macro.getName().equals(name))) {
+        return true;
+      }
+      return !undefined.contains(name) && (included.isDefined(name) || isPredefined(name));
+    }
+
+    /**
+     * The body of the macro with its parameters replaced by the arguments, at the position of the call.
+     */
+    private static List<Token> substitute(Macro macro, @Nullable List<List<Token>> arguments, Token call) {
+      Map<String, List<Token>> values = new HashMap<>();
+      if (arguments != null && macro.getParameters() != null) {
+        for (int i = 0; i < arguments.size(); i++) {
+          values.put(macro.getParameters().get(i), arguments.get(i));
+        }
+      }
+      List<Token> body = macro.getBody();
+      List<Token> result = new ArrayList<>();
+      for (int i = 0; i < body.size(); i++) {
+        Token token = body.get(i);
+        boolean stringify = i + 2 < body.size() && "?".equals(token.getValue()) && "?".equals(body.get(i + 1).getValue())
+          && values.containsKey(body.get(i + 2).getValue());
+        if (stringify) {
+          result.add(generated(call, ErlangTokenType.STRING_LITERAL, "\"" + text(values.get(body.get(i + 2).getValue())) + "\""));
+          i += 2;
+        } else if (token.getType() == ErlangTokenType.VARIABLE && values.containsKey(token.getValue())) {
+          for (Token argument : values.get(token.getValue())) {
+            result.add(generated(call, argument.getType(), argument.getOriginalValue()));
+          }
+        } else {
+          result.add(generated(call, token.getType(), token.getOriginalValue()));
+        }
+      }
+      return result;
+    }
+
+    private static boolean isPredefined(String name) {
+      switch (name) {
+        case "MODULE":
+        case "MODULE_STRING":
+        case "FILE":
+        case "LINE":
+        case "MACHINE":
+        case "FUNCTION_NAME":
+        case "FUNCTION_ARITY":
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    @Nullable
+    private List<Token> predefined(String name, Token call) {
+      if (undefined.contains(name)) {
+        return null;
+      }
+      switch (name) {
+        case "MODULE":
+          return module.isEmpty() ? null : Collections.singletonList(generated(call, ErlangTokenType.ATOM, module));
+        case "MODULE_STRING":
+          return module.isEmpty() ? null : Collections.singletonList(generated(call, ErlangTokenType.STRING_LITERAL, "\"" + module + "\""));
+        case "FILE":
+          return Collections.singletonList(generated(call, ErlangTokenType.STRING_LITERAL, "\"" + file.getPath() + "\""));
+        case "LINE":
+          return Collections.singletonList(generated(call, ErlangTokenType.NUMERIC_LITERAL, Integer.toString(call.getLine())));
+        case "MACHINE":
+          return Collections.singletonList(generated(call, ErlangTokenType.ATOM, "'BEAM'"));
+        case "FUNCTION_NAME":
+          return function.isEmpty() ? null : Collections.singletonList(generated(call, ErlangTokenType.ATOM, function));
+        case "FUNCTION_ARITY":
+          return function.isEmpty() ? null : Collections.singletonList(generated(call, ErlangTokenType.NUMERIC_LITERAL, Integer.toString(arity)));
+        default:
+          return null;
+      }
+    }
+
+    private void conditional(String attribute, List<Token> arguments) {
+      boolean parentActive = isActive();
+      switch (attribute) {
+        case "ifdef":
+        case "ifndef":
+          boolean defined = !arguments.isEmpty() && isDefined(arguments.get(0).getValue());
+          branches.push(new Branch(parentActive, defined == "ifdef".equals(attribute)));
+          break;
+        case "if":
+          branches.push(new Branch(parentActive, true));
+          break;
+        case "elif":
+        case "else":
+          if (!branches.isEmpty()) {
+            Branch branch = branches.peek();
+            branch.active = !branch.taken;
+            branch.taken = true;
+          }
+          break;
+        case "endif":
+          if (!branches.isEmpty()) {
+            branches.pop();
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    private boolean isActive() {
+      Branch branch = branches.peek();
+      return branch == null || (branch.parentActive && branch.active);
+    }
+
+    private void drop(List<Token> tokens) {
+      for (Token token : tokens) {
+        if (token.getType() == GenericTokenType.EOF) {
+          emit(token);
+        } else {
+          pendingTrivia.addAll(token.getTrivia());
+        }
+      }
+    }
+
+    private void emitAll(List<Token> tokens) {
+      for (Token token : tokens) {
+        emit(token);
+      }
+    }
+
+    private void emit(Token token) {
+      if (pendingTrivia.isEmpty()) {
+        output.add(token);
+      } else {
+        List<Trivia> trivia = new ArrayList<>(pendingTrivia);
+        trivia.addAll(token.getTrivia());
+        pendingTrivia.clear();
+        output.add(Token.builder(token).setTrivia(trivia).build());
+      }
+    }
+
+    private static Token generated(Token call, com.sonar.sslr.api.TokenType type, String value) {
+      return Token.builder()
+        .setType(type)
+        .setValueAndOriginalValue(value)
+        .setLine(call.getLine())
+        .setColumn(call.getColumn())
+        .setURI(call.getURI())
+        .setGeneratedCode(true)
+        .build();
+    }
+
+    private static String text(List<Token> tokens) {
+      StringBuilder text = new StringBuilder();
+      for (Token token : tokens) {
+        if (text.length() > 0) {
+          text.append(' ');
+        }
+        text.append(token.getOriginalValue().replace("\\", "\\\\").replace("\"", "\\\""));
+      }
+      return text.toString();
+    }
+  }
+
+  private static final class Branch {
+
+    private final boolean parentActive;
+    private boolean active;
+    private boolean taken;
+
+    Branch(boolean parentActive, boolean active) {
+      this.parentActive = parentActive;
+      this.active = active;
+      this.taken = active;
+    }
+  }
+
+}
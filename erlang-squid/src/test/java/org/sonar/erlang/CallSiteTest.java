@@ -0,0 +1,95 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CallSiteTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void resolved_once_per_call() throws IOException {
+    File file = temp.newFile("m.erl");
+    Files.write(file.toPath(), ("-module(m).\n"
+      + "-import(lists, [map/2]).\n"
+      + "f(A, B) -> f(A, B), m:f(A, B), n:f(A, B), f(A), (g())(A, B), M:f(A), 'q':F(), ?MODULE:f(B),\n"
+      + "  map(fun f/2, fun n:g/0), fun ?MODULE:h/1, fun M:h/1.\n").getBytes(StandardCharsets.UTF_8));
+    List<String> sites = new ArrayList<>();
+    SquidAstVisitor<LexerlessGrammar> probe = new SquidAstVisitor<LexerlessGrammar>() {
+      @Override
+      public void init() {
+        subscribeTo(ErlangGrammarImpl.callExpression, ErlangGrammarImpl.funExpression);
+      }
+
+      @Override
+      public void visitNode(AstNode astNode) {
+        if (astNode.is(ErlangGrammarImpl.funExpression)) {
+          sites.add("fun " + CallSite.referencedBy(ModuleSymbols.of(getContext()), astNode));
+        } else {
+          CallSite site = CallSites.of(getContext()).resolve(astNode);
+          assertThat(CallSites.of(getContext()).resolve(astNode)).isSameAs(site);
+          sites.add(site.toString());
+        }
+      }
+    };
+    ErlangAstScanner.create(new ErlangConfiguration(StandardCharsets.UTF_8), probe).scanFile(file);
+
+    assertThat(sites).containsExactly(
+      "LOCAL m:f/2",
+      "REMOTE m:f/2",
+      "REMOTE n:f/2",
+      "LOCAL m:f/1",
+      "DYNAMIC ?/2",
+      "LOCAL m:g/0",
+      "DYNAMIC ?/1",
+      "DYNAMIC ?/0",
+      "DYNAMIC ?/1",
+      "IMPORTED lists:map/2",
+      "fun LOCAL m:f/2",
+      "fun REMOTE n:g/0",
+      "fun DYNAMIC ?/1",
+      "fun DYNAMIC ?/1");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void only_with_the_context_of_the_scanner() {
+    CallSites.of(new SquidAstVisitorContextImpl<LexerlessGrammar>(new SourceProject("p")));
+  }
+
+}
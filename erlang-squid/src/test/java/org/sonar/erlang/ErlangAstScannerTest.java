@@ -20,6 +20,7 @@
 package org.sonar.erlang;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.sonar.squidbridge.AstScanner;
 import org.junit.Test;
@@ -31,12 +32,17 @@ import org.sonar.squidbridge.api.SourceCode;
 
 import org.sonar.squidbridge.api.SourceFile;
 
+import org.sonar.squidbridge.api.SourceFunction;
+
 import org.sonar.squidbridge.api.SourceProject;
 
 import org.sonar.squidbridge.indexer.QueryByType;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -181,6 +187,34 @@ public class ErlangAstScannerTest {
     assertThat(file.getInt(ErlangMetric.NUM_OF_MACROS)).isEqualTo(2);
   }
 
+  @Test
+  public void includedFiles() {
+    SourceFile file = TestHelper.scanSingleFile(new File(
+      "src/test/resources/includes/app-1.0/src/includes.erl"));
+    assertThat(file.getInt(ErlangMetric.INCLUDED_FILES)).isEqualTo(4);
+  }
+
+  @Test
+  public void lexical_only() {
+    ErlangConfiguration conf = new ErlangConfiguration(StandardCharsets.UTF_8).setLexicalOnly(true);
+    for (String name : new String[] {"metrics/functions.erl", "metrics/lines_of_code2.erl", "metrics/funargs.erl",
+      "megaco.erl", "agner_main.erl", "egs_proto.erl", "user_auth_mnesia.erl"}) {
+      File file = new File("src/test/resources/" + name);
+      SourceFile parsed = TestHelper.scanSingleFile(file);
+      AstScanner<LexerlessGrammar> scanner = ErlangAstScanner.create(conf);
+      scanner.scanFiles(ImmutableList.of(file));
+      SourceFile lexed = TestHelper.getSourceFile(scanner);
+
+      for (ErlangMetric metric : new ErlangMetric[] {ErlangMetric.LINES, ErlangMetric.LINES_OF_CODE,
+        ErlangMetric.COMMENT_LINES, ErlangMetric.PUBLIC_API, ErlangMetric.PUBLIC_DOC_API}) {
+        assertThat(lexed.getInt(metric)).as(name + " " + metric).isEqualTo(parsed.getInt(metric));
+      }
+      assertThat(lexed.getNoSonarTagLines()).isEqualTo(parsed.getNoSonarTagLines());
+      assertThat(lexed.getInt(ErlangMetric.FUNCTIONS)).isEqualTo(0);
+      assertThat(scanner.getIndex().search(new QueryByType(SourceClass.class))).isEmpty();
+    }
+  }
+
   @Test
   public void megaco() {
     SourceFile file = TestHelper.scanSingleFile(new File(
@@ -188,4 +222,37 @@ public class ErlangAstScannerTest {
     assertThat(file.getInt(ErlangMetric.FILES)).isEqualTo(1);
   }
 
+  @Test
+  public void maxDepthOfCalling() {
+    AstScanner<LexerlessGrammar> scanner = TestHelper.scanFiles(ImmutableList.of(
+      new File("src/test/resources/metrics/calls_a.erl"),
+      new File("src/test/resources/metrics/calls_b.erl")));
+    Map<String, Integer> depths = new HashMap<>();
+    for (SourceCode function : scanner.getIndex().search(new QueryByType(SourceFunction.class))) {
+      if (!function.getKey().contains("c:") && !function.getKey().startsWith("FUN/")) {
+        depths.put(function.getKey(), function.getInt(ErlangMetric.MAX_DEPTH_OF_CALLING));
+      }
+    }
+    assertThat(depths).isEqualTo(ImmutableMap.<String, Integer>builder()
+      .put("main/0:5", 3).put("loop/1:9", 0).put("ping/1:12", 0).put("leaf/0:14", 0)
+      .put("twice/1:4", 2).put("add/2:6", 1).put("pong/1:8", 0).build());
+    for (SourceCode file : scanner.getIndex().search(new QueryByType(SourceFile.class))) {
+      assertThat(file.getInt(ErlangMetric.MAX_DEPTH_OF_CALLING)).isEqualTo(file.getKey().endsWith("calls_a.erl") ? 3 : 2);
+    }
+    SourceCode project = scanner.getIndex().search(new QueryByType(SourceProject.class)).iterator().next();
+    assertThat(project.getInt(ErlangMetric.MAX_DEPTH_OF_CALLING)).isEqualTo(3);
+  }
+
+  @Test
+  public void importedModules() {
+    AstScanner<LexerlessGrammar> scanner = TestHelper.scanFiles(ImmutableList.of(
+      new File("src/test/resources/metrics/calls_a.erl"),
+      new File("src/test/resources/metrics/calls_b.erl")));
+    for (SourceCode file : scanner.getIndex().search(new QueryByType(SourceFile.class))) {
+      assertThat(file.getInt(ErlangMetric.IMPORTED_MODULES)).isEqualTo(2);
+    }
+    assertThat(TestHelper.scanSingleFile(new File("src/test/resources/metrics/funargs.erl"))
+      .getInt(ErlangMetric.IMPORTED_MODULES)).isEqualTo(0);
+  }
+
 }
@@ -0,0 +1,110 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.AstVisitor;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.ast.AstWalker;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+import org.sonar.erlang.api.ErlangPunctuator;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.erlang.parser.ErlangParser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ErlangAstWalkerTest {
+
+  @Test
+  public void same_visits_as_sslr() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      AstNode tree = ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd))
+        .parse(new File("src/test/resources/megaco.erl"));
+
+      List<String> expected = new ArrayList<>();
+      new AstWalker(visitors(expected)).walkAndVisit(tree);
+      List<String> actual = new ArrayList<>();
+      new ErlangAstWalker(visitors(actual)).walkAndVisit(tree);
+
+      assertThat(actual).as(frontEnd.name()).hasSize(expected.size()).isEqualTo(expected);
+    }
+  }
+
+  private static List<AstVisitor> visitors(List<String> events) {
+    return Arrays.asList(
+      new Recorder("a", events, ErlangGrammarImpl.functionDeclaration, ErlangGrammarImpl.callExpression),
+      new Recorder("b", events),
+      new Recorder("c", events, ErlangGrammarImpl.callExpression, ErlangGrammarImpl.comma, ErlangPunctuator.COMMA));
+  }
+
+  private static final class Recorder implements AstAndTokenVisitor {
+
+    private final String name;
+    private final List<String> events;
+    private final List<AstNodeType> types;
+
+    Recorder(String name, List<String> events, AstNodeType... types) {
+      this.name = name;
+      this.events = events;
+      this.types = Arrays.asList(types);
+    }
+
+    @Override
+    public List<AstNodeType> getAstNodeTypesToVisit() {
+      return types;
+    }
+
+    @Override
+    public void visitFile(AstNode ast) {
+      events.add(name + " file");
+    }
+
+    @Override
+    public void leaveFile(AstNode ast) {
+      events.add(name + " /file");
+    }
+
+    @Override
+    public void visitNode(AstNode ast) {
+      events.add(name + " " + ast.getType() + " " + ast.getFromIndex());
+    }
+
+    @Override
+    public void leaveNode(AstNode ast) {
+      events.add(name + " /" + ast.getType() + " " + ast.getFromIndex());
+    }
+
+    @Override
+    public void visitToken(Token token) {
+      events.add(name + " token " + token.getLine() + ":" + token.getColumn());
+    }
+
+  }
+
+}
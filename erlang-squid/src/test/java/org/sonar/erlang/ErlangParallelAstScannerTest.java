@@ -0,0 +1,120 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import org.junit.Test;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.erlang.metrics.CallGraph;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.indexer.QueryByParent;
+import org.sonar.squidbridge.indexer.QueryByType;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ErlangParallelAstScannerTest {
+
+  private final List<File> files;
+
+  public ErlangParallelAstScannerTest() throws IOException {
+    try (Stream<Path> paths = Files.walk(Paths.get("src/test/resources"))) {
+      files = paths.filter(path -> path.toString().endsWith(".erl")).map(Path::toFile).sorted().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void same_result_as_sequential_scan() {
+    AstScanner<LexerlessGrammar> sequential = ErlangAstScanner.create(StandardCharsets.UTF_8);
+    sequential.scanFiles(files);
+
+    ErlangParallelAstScanner parallel = new ErlangParallelAstScanner(StandardCharsets.UTF_8, 3, ArrayList::new);
+    parallel.scanFiles(files);
+
+    SourceProject sequentialProject = (SourceProject) sequential.getIndex().search(new QueryByType(SourceProject.class)).iterator().next();
+    for (ErlangMetric metric : ErlangMetric.values()) {
+      assertThat(parallel.getProject().getDouble(metric)).as(metric.name()).isEqualTo(sequentialProject.getDouble(metric));
+    }
+
+    Collection<SourceCode> sequentialFiles = sequential.getIndex().search(new QueryByType(SourceFile.class));
+    assertThat(parallel.getIndex().search(new QueryByType(SourceFile.class))).hasSize(files.size());
+    assertThat(sequentialFiles).hasSize(files.size());
+    for (SourceCode sequentialFile : sequentialFiles) {
+      SourceCode parallelFile = parallel.getIndex().search(sequentialFile.getKey());
+      for (ErlangMetric metric : ErlangMetric.values()) {
+        assertThat(parallelFile.getDouble(metric)).as(sequentialFile.getKey() + " " + metric.name()).isEqualTo(sequentialFile.getDouble(metric));
+      }
+      assertThat(parallel.getIndex().search(new QueryByParent(parallelFile), new QueryByType(SourceFunction.class)))
+        .isEqualTo(sequential.getIndex().search(new QueryByParent(sequentialFile), new QueryByType(SourceFunction.class)));
+    }
+  }
+
+  @Test
+  public void known_calls_of_files_which_are_not_scanned() {
+    ErlangParallelAstScanner first = new ErlangParallelAstScanner(StandardCharsets.UTF_8, 1, ArrayList::new);
+    first.scanFiles(Collections.singletonList(new File("src/test/resources/metrics/calls_b.erl")));
+    SourceCode callsB = first.getIndex().search(new QueryByType(SourceFile.class)).iterator().next();
+    CallGraph.Part part = (CallGraph.Part) callsB.getData(ErlangMetric.MAX_DEPTH_OF_CALLING);
+    CallGraph known = new CallGraph();
+    for (int function = 0; function < part.functionCount(); function++) {
+      known.declare(known.function(part.function(function)));
+    }
+    for (int call = 0; call < part.callCount(); call++) {
+      known.addCall(known.function(part.caller(call)), known.function(part.callee(call)));
+    }
+
+    ErlangParallelAstScanner second = new ErlangParallelAstScanner(StandardCharsets.UTF_8, 1, ArrayList::new);
+    second.setKnownCalls(known);
+    second.scanFiles(Collections.singletonList(new File("src/test/resources/metrics/calls_a.erl")));
+    SourceCode main = second.getIndex().search(new QueryByType(SourceFunction.class)).stream()
+      .filter(function -> "main/0:5".equals(function.getKey())).findFirst().get();
+    // main calls calls_b:twice/1, which calls add/2, which calls erlang:'+'/2
+    assertThat(main.getInt(ErlangMetric.MAX_DEPTH_OF_CALLING)).isEqualTo(3);
+  }
+
+  @Test
+  public void partition_balances_by_size() {
+    List<List<File>> buckets = ErlangParallelAstScanner.partition(files, 4);
+    assertThat(buckets).hasSize(4);
+    int total = 0;
+    for (List<File> bucket : buckets) {
+      assertThat(bucket).isNotEmpty();
+      total += bucket.size();
+    }
+    assertThat(total).isEqualTo(files.size());
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ErlangScopesTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void enclosing_nodes() throws IOException {
+    File file = temp.newFile("m.erl");
+    Files.write(file.toPath(), ("-module(m).\n"
+      + "-define(M(X), g(X)).\n"
+      + "-ifdef(TEST).\n"
+      + "-export([f/1]).\n"
+      + "-endif.\n"
+      + "f(X) ->\n"
+      + "  case X of\n"
+      + "    1 -> case X of _ -> g(X) end;\n"
+      + "    _ -> ok\n"
+      + "  end.\n").getBytes(StandardCharsets.UTF_8));
+    List<String> visits = new ArrayList<>();
+    SquidAstVisitor<LexerlessGrammar> probe = new SquidAstVisitor<LexerlessGrammar>() {
+      @Override
+      public void init() {
+        subscribeTo(ErlangGrammarImpl.defineAttr, ErlangGrammarImpl.callExpression, ErlangGrammarImpl.caseExpression,
+          ErlangGrammarImpl.exportAttr);
+      }
+
+      @Override
+      public void visitNode(AstNode astNode) {
+        ErlangScopes scopes = ErlangScopes.of(getContext());
+        AstNode function = scopes.function();
+        visits.add(astNode.getType() + "@" + astNode.getTokenLine()
+          + " function=" + (function == null ? "-" : function.getTokenLine())
+          + " cases=" + scopes.caseDepth()
+          + " define=" + scopes.inDefine()
+          + " flowControl=" + scopes.inFlowControl()
+          + " body=" + scopes.inClauseBody()
+          + " statements=" + scopes.depth(ErlangGrammarImpl.statement));
+      }
+
+      @Override
+      public void leaveNode(AstNode astNode) {
+        if (astNode.getType() == ErlangGrammarImpl.caseExpression) {
+          // still on the stack
+          assertThat(ErlangScopes.of(getContext()).enclosing(ErlangGrammarImpl.caseExpression, 0)).isSameAs(astNode);
+        }
+      }
+    };
+    ErlangAstScanner.create(new ErlangConfiguration(StandardCharsets.UTF_8), probe).scanFile(file);
+
+    assertThat(visits).containsExactly(
+      "defineAttr@2 function=- cases=0 define=true flowControl=false body=false statements=0",
+      "exportAttr@4 function=- cases=0 define=false flowControl=true body=false statements=0",
+      "caseExpression@7 function=6 cases=1 define=false flowControl=false body=true statements=1",
+      "caseExpression@8 function=6 cases=2 define=false flowControl=false body=true statements=2",
+      "callExpression@8 function=6 cases=2 define=false flowControl=false body=true statements=3");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void only_with_the_context_of_the_scanner() {
+    ErlangScopes.of(new SquidAstVisitorContextImpl<LexerlessGrammar>(new SourceProject("p")));
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Test;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.erlang.parser.ErlangParser;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FunctionIdTest {
+
+  @Test
+  public void declarations() {
+    AstNode module = ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8))
+      .parse("-module(m).\nf(A, B) -> f(A, B).\n");
+    FunctionId f = FunctionId.declaredBy("m", module.getFirstDescendant(ErlangGrammarImpl.functionClause));
+    assertThat(f.toString()).isEqualTo("m:f/2");
+    assertThat(f.getLine()).isEqualTo(2);
+    assertThat(FunctionId.arity(module.getFirstDescendant(ErlangGrammarImpl.callExpression)
+      .getFirstChild(ErlangGrammarImpl.arguments))).isEqualTo(2);
+  }
+
+  @Test
+  public void line_not_part_of_the_identity() {
+    FunctionId f = FunctionId.of("m", "f", 0);
+    assertThat(f.atLine(3)).isEqualTo(f);
+    assertThat(f.atLine(3).hashCode()).isEqualTo(f.hashCode());
+    assertThat(FunctionId.of("m", "f", 1)).isNotEqualTo(f);
+    assertThat(FunctionId.of("", "f", 0)).isNotEqualTo(f);
+  }
+
+}
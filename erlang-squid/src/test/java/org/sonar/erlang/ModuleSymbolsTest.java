@@ -0,0 +1,105 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ModuleSymbolsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void symbols_of_the_module() throws IOException {
+    File file = temp.newFile("m.erl");
+    Files.write(file.toPath(), ("-module(m).\n"
+      + "-export([f/1, g/0, m:h/2, i/?A]).\n"
+      + "-import(lists, [map/2]).\n"
+      + "-define(M(X), g(X)).\n"
+      + "-define(N, 1).\n"
+      + "-record(r, {a, b = {1, 2}}).\n"
+      + "-ifdef(TEST).\n"
+      + "-export([t/0]).\n"
+      + "t() -> ok.\n"
+      + "-endif.\n"
+      + "-spec f({A, B}) -> [A | B].\n"
+      + "f({A, B}) -> [A | B].\n"
+      + "-spec(g() -> ok).\n"
+      + "g() -> ok.\n"
+      + "f(A, B) -> f({A, B}).\n"
+      + "f(_) -> duplicate.\n").getBytes(StandardCharsets.UTF_8));
+    List<String> visits = new ArrayList<>();
+    SquidAstVisitor<LexerlessGrammar> probe = new SquidAstVisitor<LexerlessGrammar>() {
+      @Override
+      public void init() {
+        subscribeTo(ErlangGrammarImpl.functionDeclaration);
+      }
+
+      @Override
+      public void visitNode(AstNode astNode) {
+        ModuleSymbols symbols = ModuleSymbols.of(getContext());
+        FunctionId function = symbols.declared(astNode);
+        visits.add(function + "@" + function.getLine()
+          + " top=" + (symbols.function(function) == astNode)
+          + " exported=" + symbols.isExported(function));
+      }
+
+      @Override
+      public void visitFile(AstNode astNode) {
+        ModuleSymbols symbols = ModuleSymbols.of(getContext());
+        assertThat(symbols.getModule()).isEqualTo("m");
+        assertThat(symbols.getExports()).containsOnly(FunctionId.of("m", "f", 1), FunctionId.of("m", "g", 0));
+        assertThat(symbols.imported(FunctionId.of("m", "map", 2))).isEqualTo(FunctionId.of("lists", "map", 2));
+        assertThat(symbols.imported(FunctionId.of("m", "map", 1))).isNull();
+      }
+    };
+    ErlangAstScanner.create(new ErlangConfiguration(StandardCharsets.UTF_8), probe).scanFile(file);
+
+    assertThat(visits).containsExactly(
+      "m:t/0@9 top=false exported=false",
+      "m:f/1@12 top=true exported=true",
+      "m:g/0@14 top=true exported=true",
+      "m:f/2@15 top=true exported=false",
+      "m:f/1@16 top=false exported=true");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void only_with_the_context_of_the_scanner() {
+    ModuleSymbols.of(new SquidAstVisitorContextImpl<LexerlessGrammar>(new SourceProject("p")));
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SourceLinesTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void facts_of_each_line() {
+    SourceLines lines = new SourceLines(StandardCharsets.UTF_8);
+    lines.analyse("-module(m).\r\n"
+      + "  \tf() ->  \n"
+      + "\t%% comment\r"
+      + " \t \n"
+      + "\n"
+      + "    ok.\u2028"
+      + "g() -> \"%\".\n");
+
+    assertThat(lines.count()).isEqualTo(7);
+    assertThat(facts(lines, 1)).isEqualTo("");
+    assertThat(facts(lines, 2)).isEqualTo("tab trailing");
+    assertThat(facts(lines, 3)).isEqualTo("tab");
+    assertThat(facts(lines, 4)).isEqualTo("tab trailing");
+    assertThat(facts(lines, 5)).isEqualTo("");
+    assertThat(facts(lines, 6)).isEqualTo("");
+    assertThat(facts(lines, 7)).isEqualTo("");
+  }
+
+  @Test
+  public void many_lines() {
+    SourceLines lines = new SourceLines(StandardCharsets.UTF_8);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append(i).append(i == 999 ? " \n" : "\n");
+    }
+    lines.analyse(text);
+    assertThat(lines.count()).isEqualTo(1000);
+    assertThat(facts(lines, 999)).isEqualTo("");
+    assertThat(facts(lines, 1000)).isEqualTo("trailing");
+
+    lines.analyse("a");
+    assertThat(lines.count()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void only_with_the_context_of_the_scanner() throws IOException {
+    SourceLines.of(new SquidAstVisitorContextImpl<LexerlessGrammar>(new SourceProject("p")));
+  }
+
+  @Test
+  public void read_with_the_charset_of_the_context() throws IOException {
+    File file = temp.newFile();
+    // the last byte of the character in UTF-8 is a line terminator in ISO-8859-1
+    Files.write(file.toPath(), "% \u0145\n".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(lines(file, StandardCharsets.UTF_8).count()).isEqualTo(1);
+    assertThat(lines(file, StandardCharsets.ISO_8859_1).count()).isEqualTo(2);
+  }
+
+  private static SourceLines lines(File file, Charset charset) throws IOException {
+    ErlangVisitorContext context = new ErlangVisitorContext(new SourceProject("p"), charset);
+    context.setFile(file, ErlangMetric.FILES);
+    return SourceLines.of(context);
+  }
+
+  private static String facts(SourceLines lines, int line) {
+    StringBuilder facts = new StringBuilder();
+    append(facts, lines.is(line, SourceLines.LEADING_TAB), "tab");
+    append(facts, lines.is(line, SourceLines.TRAILING_WHITESPACE), "trailing");
+    return facts.toString();
+  }
+
+  private static void append(StringBuilder facts, boolean fact, String name) {
+    if (fact) {
+      facts.append(facts.length() == 0 ? "" : " ").append(name);
+    }
+  }
+
+}
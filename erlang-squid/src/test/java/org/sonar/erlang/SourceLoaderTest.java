@@ -0,0 +1,83 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SourceLoaderTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void text_of_the_last_file() throws IOException {
+    File big = file("-module(big).\nf() -> \"ő\".\n", StandardCharsets.UTF_8);
+    File small = file("-module(s).\n", StandardCharsets.UTF_8);
+    SourceLoader loader = SourceLoader.get();
+
+    assertThat(loader.load(big, StandardCharsets.UTF_8).toString()).isEqualTo("-module(big).\nf() -> \"ő\".\n");
+    assertThat(loader.load(small, StandardCharsets.UTF_8).toString()).isEqualTo("-module(s).\n");
+    assertThat(new String(loader.chars(big, StandardCharsets.UTF_8))).isEqualTo("-module(big).\nf() -> \"ő\".\n");
+  }
+
+  @Test
+  public void read_again_when_modified() throws IOException {
+    File file = file("-module(a).\n", StandardCharsets.UTF_8);
+    SourceLoader loader = SourceLoader.get();
+    assertThat(loader.load(file, StandardCharsets.UTF_8).toString()).isEqualTo("-module(a).\n");
+
+    Files.write(file.toPath(), "-module(ab).\n".getBytes(StandardCharsets.UTF_8));
+    assertThat(loader.load(file, StandardCharsets.UTF_8).toString()).isEqualTo("-module(ab).\n");
+  }
+
+  @Test
+  public void charset() throws IOException {
+    File file = file("% é\n", StandardCharsets.ISO_8859_1);
+    SourceLoader loader = SourceLoader.get();
+
+    assertThat(loader.load(file, StandardCharsets.ISO_8859_1).toString()).isEqualTo("% é\n");
+    assertThat(loader.load(file, StandardCharsets.UTF_8).toString()).isEqualTo("% �\n");
+  }
+
+  @Test
+  public void read_only_view() throws IOException {
+    CharBuffer text = SourceLoader.get().load(file("a.\n", StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    assertThat(text.isReadOnly()).isTrue();
+    assertThat(text.remaining()).isEqualTo(3);
+  }
+
+  private File file(String text, Charset charset) throws IOException {
+    File file = temp.newFile();
+    Files.write(file.toPath(), text.getBytes(charset));
+    return file;
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.lexer;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import org.junit.Test;
+import org.sonar.erlang.api.ErlangKeyword;
+import org.sonar.erlang.api.ErlangPunctuator;
+import org.sonar.erlang.api.ErlangTokenType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ErlangLexerTest {
+
+  private final ErlangLexer lexer = new ErlangLexer(StandardCharsets.UTF_8);
+
+  @Test
+  public void words() {
+    assertTokens("foo Bar _baz case 'quoted atom' node@host query",
+      ErlangTokenType.ATOM, ErlangTokenType.VARIABLE, ErlangTokenType.VARIABLE, ErlangKeyword.CASE,
+      ErlangTokenType.ATOM, ErlangTokenType.ATOM, ErlangTokenType.ATOM);
+  }
+
+  @Test
+  public void numbers() {
+    assertTokens("1 1.5 1.5e-3 16#ff $a $\\n $\\x{1F} $\\101",
+      ErlangTokenType.NUMERIC_LITERAL, ErlangTokenType.NUMERIC_LITERAL, ErlangTokenType.NUMERIC_LITERAL,
+      ErlangTokenType.NUMERIC_LITERAL, ErlangTokenType.NUMERIC_LITERAL, ErlangTokenType.NUMERIC_LITERAL,
+      ErlangTokenType.NUMERIC_LITERAL, ErlangTokenType.NUMERIC_LITERAL);
+    assertThat(lexer.lex("$\\x{1F}").get(0).getValue()).isEqualTo("$\\x{1F}");
+  }
+
+  @Test
+  public void strings() {
+    List<Token> tokens = lexer.lex("\"a \\\" b\" \"unterminated");
+    assertThat(tokens.get(0).getType()).isEqualTo(ErlangTokenType.STRING_LITERAL);
+    assertThat(tokens.get(0).getValue()).isEqualTo("\"a \\\" b\"");
+    assertThat(tokens.get(1).getType()).isEqualTo(GenericTokenType.UNKNOWN_CHAR);
+  }
+
+  @Test
+  public void punctuators_are_cut_longest_first() {
+    assertTokens("=:= =/= == =< => := <- <= << || ++ --",
+      ErlangPunctuator.EQUAL2, ErlangPunctuator.NOTEQUAL2, ErlangPunctuator.EQUAL, ErlangPunctuator.LE,
+      ErlangPunctuator.MAPA, ErlangPunctuator.MAPU, ErlangPunctuator.ARROWBACK, ErlangPunctuator.DOUBLEARROWBACK,
+      ErlangPunctuator.BINSTART, ErlangPunctuator.LISTCOMP, ErlangPunctuator.PLUSPLUS, ErlangPunctuator.MINUSMINUS);
+  }
+
+  @Test
+  public void end_of_form() {
+    assertTokens("X#r.f.\na.b. %c",
+      ErlangTokenType.VARIABLE, ErlangPunctuator.NUMBERSIGN, ErlangTokenType.ATOM, ErlangPunctuator.DOT,
+      ErlangTokenType.ATOM, ErlangTokenType.END_OF_FORM,
+      ErlangTokenType.ATOM, ErlangPunctuator.DOT, ErlangTokenType.ATOM, ErlangTokenType.END_OF_FORM);
+  }
+
+  @Test
+  public void shared_values() {
+    List<Token> first = lexer.lex("f(X) -> ok.");
+    List<Token> second = lexer.lex("g(X) -> ok.");
+    // the same instance across files
+    assertThat(second.get(2).getValue()).isSameAs(first.get(2).getValue());
+    assertThat(second.get(5).getValue()).isSameAs(first.get(5).getValue());
+  }
+
+  @Test
+  public void positions_and_comments() {
+    List<Token> tokens = lexer.lex("%% header\n-module(m).\r\n  f() -> ok. % tail");
+    Token minus = tokens.get(0);
+    assertThat(minus.getLine()).isEqualTo(2);
+    assertThat(minus.getColumn()).isEqualTo(0);
+    assertThat(minus.getTrivia()).hasSize(1);
+    assertThat(minus.getTrivia().get(0).getToken().getValue()).isEqualTo("%% header");
+
+    Token f = tokens.get(6);
+    assertThat(f.getValue()).isEqualTo("f");
+    assertThat(f.getLine()).isEqualTo(3);
+    assertThat(f.getColumn()).isEqualTo(2);
+
+    Token eof = tokens.get(tokens.size() - 1);
+    assertThat(eof.getType()).isEqualTo(GenericTokenType.EOF);
+    assertThat(eof.getTrivia().get(0).getToken().getValue()).isEqualTo("% tail");
+  }
+
+  private void assertTokens(String source, TokenType... types) {
+    List<Token> tokens = lexer.lex(source);
+    assertThat(tokens).hasSize(types.length + 1);
+    for (int i = 0; i < types.length; i++) {
+      assertThat(tokens.get(i).getType()).as(tokens.get(i).getValue()).isEqualTo(types[i]);
+    }
+  }
+
+}
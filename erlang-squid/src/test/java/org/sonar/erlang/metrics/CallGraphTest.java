@@ -0,0 +1,70 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.metrics;
+
+import org.junit.Test;
+import org.sonar.erlang.FunctionId;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CallGraphTest {
+
+  @Test
+  public void depths_of_calling() {
+    CallGraph graph = new CallGraph();
+    int a = graph.function(FunctionId.of("m", "a", 0));
+    int b = graph.function(FunctionId.of("m", "b", 0));
+    int c = graph.function(FunctionId.of("m", "c", 1));
+    int d = graph.function(FunctionId.of("n", "d", 0));
+    int e = graph.function(FunctionId.of("n", "e", 0));
+    assertThat(graph.function(FunctionId.of("m", "c", 1))).isEqualTo(c);
+    assertThat(graph.function(c)).isEqualTo(FunctionId.of("m", "c", 1));
+    assertThat(graph.module(b)).isEqualTo(graph.module(c));
+    assertThat(graph.module(d)).isNotEqualTo(graph.module(c));
+    assertThat(graph.moduleCount()).isEqualTo(2);
+
+    // a -> b <-> c -> d -> e, a -> a, e undeclared
+    graph.addCall(a, a);
+    graph.addCall(a, b);
+    graph.addCall(b, c);
+    graph.addCall(c, b);
+    graph.addCall(c, d);
+    graph.addCall(d, e);
+    assertThat(graph.callCount()).isEqualTo(6);
+    assertThat(graph.depthsOfCalling()).isEqualTo(new int[] {3, 2, 2, 1, 0});
+  }
+
+  @Test
+  public void long_chain() {
+    CallGraph graph = new CallGraph();
+    int length = 100000;
+    for (int i = 0; i < length; i++) {
+      graph.addCall(graph.function(FunctionId.of("m", "f", i)), graph.function(FunctionId.of("m", "f", i + 1)));
+    }
+    // back to the middle
+    graph.addCall(length, length / 2);
+    int[] depths = graph.depthsOfCalling();
+    assertThat(graph.functionCount()).isEqualTo(length + 1);
+    assertThat(depths[0]).isEqualTo(length / 2);
+    assertThat(depths[length / 2]).isEqualTo(0);
+    assertThat(depths[length]).isEqualTo(0);
+  }
+
+}
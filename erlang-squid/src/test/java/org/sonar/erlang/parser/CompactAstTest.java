@@ -0,0 +1,163 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CompactAstTest {
+
+  @Test
+  public void same_rule_nodes_as_the_tree() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      for (String file : new String[] {"egs_proto.erl", "megaco.erl", "metrics/complexity.erl"}) {
+        AstNode root = ErlangParser.create(conf(frontEnd)).parse(new File("src/test/resources/" + file));
+        CompactAst ast = CompactAst.of(root);
+        List<AstNode> nodes = new ArrayList<>();
+        ruleNodes(root, nodes);
+
+        assertThat(ast.size()).as(file).isEqualTo(nodes.size());
+        assertThat(ast.tokenCount()).isEqualTo(root.getTokens().size());
+        for (int i = 0; i < nodes.size(); i++) {
+          AstNode node = nodes.get(i);
+          assertThat(ast.type(i)).isEqualTo(node.getType());
+          assertThat(ast.token(ast.firstToken(i))).isSameAs(node.getToken());
+          assertThat(ast.token(ast.lastToken(i))).isSameAs(node.getLastToken());
+          assertThat(ast.indexOf(node)).isEqualTo(i);
+          assertThat(ast.parent(i)).isEqualTo(i == 0 ? CompactAst.NONE : nodes.indexOf(node.getParent()));
+          assertThat(ast.numberOfChildren(i)).isEqualTo(node.getNumberOfChildren() - leaves(node));
+          assertThat(ast.end(i) - i - 1).isEqualTo(ruleNodes(node, new ArrayList<>()).size() - 1);
+          assertThat(ast.node(i)).isSameAs(node);
+          if (node.is(ErlangGrammarImpl.module, ErlangGrammarImpl.functionDeclaration)) {
+            for (ErlangGrammarImpl type : new ErlangGrammarImpl[] {ErlangGrammarImpl.caseExpression, ErlangGrammarImpl.callExpression, ErlangGrammarImpl.atom}) {
+              assertThat(ast.descendants(i, type)).isEqualTo(node.getDescendants(type));
+              assertThat(ast.countDescendants(i, type)).isEqualTo(node.getDescendants(type).size());
+              AstNode first = node.getFirstDescendant(type);
+              assertThat(ast.firstDescendant(i, type)).isEqualTo(first == null ? CompactAst.NONE : nodes.indexOf(first));
+            }
+          }
+        }
+        assertThat(ast.nodes(ErlangGrammarImpl.functionDeclaration)).isEqualTo(root.getDescendants(ErlangGrammarImpl.functionDeclaration));
+        assertThat(ast.first(ErlangGrammarImpl.moduleAttr)).isSameAs(root.getFirstDescendant(ErlangGrammarImpl.moduleAttr));
+      }
+    }
+  }
+
+  @Test
+  public void cursor() {
+    AstNode root = parse("-module(m).\n"
+      + "f(A, B) ->\n"
+      + "  case A of\n"
+      + "    1 -> case B of _ -> ok end;\n"
+      + "    _ -> case B of _ -> ok end\n"
+      + "  end.\n");
+    AstCursor cursor = CompactAst.of(root).cursor();
+    assertThat(cursor.is(ErlangGrammarImpl.module)).isTrue();
+    assertThat(cursor.toParent()).isFalse();
+
+    assertThat(cursor.toFirstDescendant(ErlangGrammarImpl.caseExpression)).isTrue();
+    assertThat(cursor.tokenLine()).isEqualTo(3);
+    assertThat(cursor.tokenOriginalValue()).isEqualTo("case");
+    assertThat(cursor.lastToken().getLine()).isEqualTo(6);
+    assertThat(cursor.countDescendants(ErlangGrammarImpl.caseExpression)).isEqualTo(2);
+    assertThat(cursor.hasAncestor(ErlangGrammarImpl.caseExpression)).isFalse();
+    assertThat(cursor.hasAncestor(ErlangGrammarImpl.functionDeclaration)).isTrue();
+
+    AstCursor inner = cursor.copy();
+    assertThat(inner.toFirstDescendant(ErlangGrammarImpl.caseExpression)).isTrue();
+    assertThat(inner.tokenLine()).isEqualTo(4);
+    assertThat(inner.hasAncestor(ErlangGrammarImpl.caseExpression)).isTrue();
+    assertThat(inner.toFirstDescendant(ErlangGrammarImpl.caseExpression)).isFalse();
+    assertThat(inner.tokenLine()).isEqualTo(4);
+    assertThat(inner.toFirstAncestor(ErlangGrammarImpl.caseExpression)).isTrue();
+    assertThat(inner.node()).isEqualTo(cursor.node());
+
+    assertThat(cursor.toParent()).isTrue();
+    assertThat(cursor.toFirstChild()).isTrue();
+    int children = 1;
+    while (cursor.toNextSibling()) {
+      children++;
+    }
+    assertThat(cursor.toParent()).isTrue();
+    assertThat(cursor.numberOfChildren()).isEqualTo(children);
+  }
+
+  @Test
+  public void cursor_on_a_node() {
+    AstNode root = parse("f(A) -> case A of _ -> case A of _ -> ok end end.\n");
+    List<AstNode> cases = root.getDescendants(ErlangGrammarImpl.caseExpression);
+    CompactAst ast = CompactAst.of(root);
+    assertThat(ast.cursor(cases.get(0)).hasAncestor(ErlangGrammarImpl.caseExpression)).isFalse();
+    assertThat(ast.cursor(cases.get(1)).hasAncestor(ErlangGrammarImpl.caseExpression)).isTrue();
+    // nested nodes starting with the same token
+    AstNode expression = root.getFirstDescendant(ErlangGrammarImpl.expression);
+    assertThat(ast.type(ast.indexOf(expression))).isEqualTo(ErlangGrammarImpl.expression);
+  }
+
+  @Test
+  public void built_once_per_tree() {
+    AstNode root = parse("f() -> ok.\n");
+    assertThat(CompactAst.of(root)).isSameAs(CompactAst.of(root));
+    assertThat(CompactAst.of(parse("f() -> ok.\n"))).isNotSameAs(CompactAst.of(root));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void node_of_another_tree() {
+    CompactAst.of(parse("f() -> ok.\n")).indexOf(parse("f() -> ok.\n").getFirstDescendant(ErlangGrammarImpl.functionDeclaration));
+  }
+
+  private static List<AstNode> ruleNodes(AstNode node, List<AstNode> nodes) {
+    if (node.getType() instanceof ErlangGrammarImpl) {
+      nodes.add(node);
+    }
+    for (AstNode child : node.getChildren()) {
+      ruleNodes(child, nodes);
+    }
+    return nodes;
+  }
+
+  private static int leaves(AstNode node) {
+    int leaves = 0;
+    for (AstNode child : node.getChildren()) {
+      if (!(child.getType() instanceof ErlangGrammarImpl)) {
+        leaves++;
+      }
+    }
+    return leaves;
+  }
+
+  private static AstNode parse(String source) {
+    return ErlangParser.create(conf(FrontEnd.LEXERLESS)).parse(source);
+  }
+
+  private static ErlangConfiguration conf(FrontEnd frontEnd) {
+    return new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd);
+  }
+
+}
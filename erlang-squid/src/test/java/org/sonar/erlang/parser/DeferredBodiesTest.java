@@ -0,0 +1,113 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+import org.sonar.erlang.api.ErlangTokenType;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DeferredBodiesTest {
+
+  @Test
+  public void one_token_per_word() {
+    AstNode body = parse(FrontEnd.LEXERLESS, "-spec f(integer(), [atom()]) -> {ok, term()}.\n")
+      .getFirstDescendant(ErlangGrammarImpl.formBody);
+    assertThat(body.getParent().getType()).isEqualTo(ErlangGrammarImpl.spec);
+    assertThat(body.getTokens()).hasSize(5);
+    assertThat(body.getTokenValue()).isEqualTo("f(integer(),");
+  }
+
+  @Test
+  public void tokens() {
+    String source = "-record(state, {\n"
+      + "  a = \"a b\" :: string(), % comment\n"
+      + "  b :: #{atom() => 1..10}\n"
+      + "}).\n";
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      AstNode body = parse(frontEnd, source).getFirstDescendant(ErlangGrammarImpl.attributeBody);
+      List<Token> tokens = DeferredBodies.tokens(body);
+      assertThat(values(tokens)).as(frontEnd.name()).isEqualTo("state , { a = \"a b\" : : string ( ) , b : : # { atom ( ) => 1 . . 10 } }");
+
+      Token string = tokens.get(5);
+      assertThat(string.getType()).isEqualTo(ErlangTokenType.STRING_LITERAL);
+      assertThat(string.getLine()).isEqualTo(2);
+      assertThat(string.getColumn()).isEqualTo(6);
+      Token b = tokens.get(12);
+      assertThat(b.getLine()).isEqualTo(3);
+      assertThat(b.getColumn()).isEqualTo(2);
+      assertThat(b.getTrivia()).hasSize(1);
+      assertThat(b.getTrivia().get(0).getToken().getValue()).isEqualTo("% comment");
+    }
+  }
+
+  @Test
+  public void same_tokens_with_both_front_ends() {
+    String source = "-module(m).\n"
+      + "-define(M(X), {X, \"a. b\"}).\n"
+      + "-type t() :: {a, b} % comment\n"
+      + "  | 'c.d'.\n"
+      + "-spec f(t()) ->\n"
+      + "  ok.\n"
+      + "f(_) -> ?M(ok).\n";
+    List<String> lexerless = allTokens(parse(FrontEnd.LEXERLESS, source));
+    assertThat(lexerless).hasSize(25);
+    assertThat(lexerless).isEqualTo(allTokens(parse(FrontEnd.LEXER, source)));
+
+    File file = new File("src/test/resources/egs_proto.erl");
+    lexerless = allTokens(ErlangParser.create(conf(FrontEnd.LEXERLESS)).parse(file));
+    assertThat(lexerless).isNotEmpty();
+    assertThat(lexerless).isEqualTo(allTokens(ErlangParser.create(conf(FrontEnd.LEXER)).parse(file)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void not_a_body() {
+    DeferredBodies.tokens(parse(FrontEnd.LEXERLESS, "f() -> ok."));
+  }
+
+  private static List<String> allTokens(AstNode root) {
+    return root.getDescendants(ErlangGrammarImpl.attributeBody, ErlangGrammarImpl.formBody).stream()
+      .flatMap(body -> DeferredBodies.tokens(body).stream())
+      .map(token -> token.getValue() + "@" + token.getLine() + ":" + token.getColumn())
+      .collect(Collectors.toList());
+  }
+
+  private static String values(List<Token> tokens) {
+    return tokens.stream().map(Token::getOriginalValue).collect(Collectors.joining(" "));
+  }
+
+  private static AstNode parse(FrontEnd frontEnd, String source) {
+    return ErlangParser.create(conf(frontEnd)).parse(source);
+  }
+
+  private static ErlangConfiguration conf(FrontEnd frontEnd) {
+    return new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd);
+  }
+
+}
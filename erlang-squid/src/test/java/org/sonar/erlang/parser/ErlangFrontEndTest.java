@@ -0,0 +1,99 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.Parser;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Both front ends must build the same rule nodes, at the same positions.
+ */
+public class ErlangFrontEndTest {
+
+  private final Parser<LexerlessGrammar> lexerless = ErlangParser.create(
+    new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(FrontEnd.LEXERLESS));
+  private final Parser<LexerlessGrammar> lexer = ErlangParser.create(
+    new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(FrontEnd.LEXER));
+
+  @Test
+  public void same_tree_on_real_code() throws IOException {
+    List<File> files;
+    try (Stream<Path> paths = Files.walk(Paths.get("src/test/resources"))) {
+      files = paths.filter(path -> path.toString().endsWith(".erl")).map(Path::toFile).sorted().collect(Collectors.toList());
+    }
+    assertThat(files).isNotEmpty();
+    for (File file : files) {
+      assertThat(ruleNodes(lexer.parse(file))).as(file.getName()).isEqualTo(ruleNodes(lexerless.parse(file)));
+    }
+  }
+
+  @Test
+  public void same_tree_on_snippets() {
+    String[] snippets = {
+      "-module(a.b.c).\nf(X) -> X#rec.field.\n",
+      "-spec f(integer()) -> [...].\n-type t() :: {a, b}.\nf(_) -> ok.\n",
+      "-record(r, {a = 1 :: integer(), b}).\n-define(M(X), {X, \"a\"}).\n",
+      "f(M) -> #{a => 1}, M#{a := 2}, <<\"a\", 1:8/little-unit:8>>, $\\n, $\\x{1F}, 16#ff, 1.5e-3, 'quoted atom'.\n",
+      "f(A) when A >= 1, A =< 2; A =:= 3 -> [X || X <- A], A ++ A -- A, A bsl 1, not A, catch A ! ok.\n",
+    };
+    for (String snippet : snippets) {
+      assertThat(ruleNodes(lexer.parse(snippet))).as(snippet).isEqualTo(ruleNodes(lexerless.parse(snippet)));
+    }
+  }
+
+  private static List<String> ruleNodes(AstNode root) {
+    List<String> nodes = new ArrayList<>();
+    collect(root, nodes);
+    return nodes;
+  }
+
+  private static void collect(AstNode node, List<String> nodes) {
+    if (DeferredBodies.isDeferredBody(node)) {
+      // cut into tokens differently by the front ends
+      nodes.add(node.getType() + "@" + node.getTokenLine() + ":" + node.getToken().getColumn() + " "
+        + DeferredBodies.tokens(node).stream().map(Token::getOriginalValue).collect(Collectors.joining(" ")));
+    } else if (node.getType() instanceof GrammarRuleKey) {
+      nodes.add(node.getType() + "@" + node.getTokenLine() + ":" + node.getToken().getColumn() + " " + node.getTokenValue());
+    }
+    for (AstNode child : node.getChildren()) {
+      collect(child, nodes);
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+import org.sonar.erlang.lexer.ErlangLexer;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FormSplitterTest {
+
+  private static final String MODULE = "-module(a).\n"
+    + "% f\n"
+    + "f() -> \"a. b\", 'x. y', $., $\\', ok. % end\n"
+    + "-ifdef(TEST).\n"
+    + "g() -> 1.\n"
+    + "-else.\n"
+    + "g() -> 2.\n"
+    + "-endif.\n"
+    + "h() -> 3.\n";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void split_text() {
+    char[] text = MODULE.toCharArray();
+    List<FormSplitter.Segment> segments = FormSplitter.split(text, 100);
+
+    assertThat(segments).hasSize(4);
+    assertThat(new String(segments.get(0).text(text))).isEqualTo("-module(a).\n% f\n");
+    assertThat(new String(segments.get(1).text(text))).startsWith("\n% f\nf() -> ").endsWith("ok. % end\n");
+    assertThat(new String(segments.get(2).text(text)).trim()).startsWith("% end\n-ifdef(TEST).").endsWith("-endif.");
+    assertThat(segments.get(3).end).isEqualTo(MODULE.length());
+    // a segment starts right after the dot of the previous one
+    assertThat(segments.get(1).start).isEqualTo("-module(a).".length());
+    assertThat(segments.get(1).line).isEqualTo(1);
+    assertThat(segments.get(1).column).isEqualTo("-module(a).".length());
+    assertThat(segments.get(3).line).isEqualTo(8);
+    assertThat(segments.get(3).column).isEqualTo("-endif.".length());
+  }
+
+  @Test
+  public void split_tokens() {
+    List<Token> tokens = new ErlangLexer(StandardCharsets.UTF_8).lex(MODULE);
+    List<List<Token>> segments = FormSplitter.split(tokens, 100);
+
+    assertThat(segments).hasSize(4);
+    assertThat(segments.get(1).get(0).getValue()).isEqualTo("f");
+    assertThat(segments.get(1).get(0).getTrivia()).hasSize(1);
+    assertThat(segments.get(2).get(1).getValue()).isEqualTo("ifdef");
+    assertThat(segments.get(3).get(0).getValue()).isEqualTo("h");
+    for (List<Token> segment : segments) {
+      assertThat(segment.get(segment.size() - 1).getType()).isEqualTo(GenericTokenType.EOF);
+    }
+  }
+
+  @Test
+  public void same_tree_when_split() throws IOException {
+    File file = new File("src/test/resources/megaco.erl");
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      List<String> whole = nodes(ErlangParser.create(conf(frontEnd).setSplitThreshold(0)).parse(file));
+      List<String> split = nodes(ErlangParser.create(conf(frontEnd).setSplitThreshold(1)).parse(file));
+      assertThat(split).as(frontEnd.name()).isEqualTo(whole);
+
+      File module = temp.newFile();
+      Files.write(module.toPath(), MODULE.getBytes(StandardCharsets.UTF_8));
+      AstNode tree = ErlangParser.create(conf(frontEnd).setSplitThreshold(1)).parse(module);
+      assertThat(nodes(tree)).as(frontEnd.name()).isEqualTo(nodes(ErlangParser.create(conf(frontEnd).setSplitThreshold(0)).parse(module)));
+      assertThat(tree.getFirstChild(ErlangGrammarImpl.moduleElements).getNumberOfChildren()).isEqualTo(4);
+    }
+  }
+
+  @Test
+  public void error_of_the_whole_file() throws IOException {
+    File file = temp.newFile();
+    Files.write(file.toPath(), "f() -> ok.\ng( -> ok.\nh() -> ok.\n".getBytes(StandardCharsets.UTF_8));
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      try {
+        ErlangParser.create(conf(frontEnd).setSplitThreshold(1)).parse(file);
+        fail(frontEnd.name());
+      } catch (RecognitionException e) {
+        assertThat(e.getLine()).isEqualTo(2);
+      }
+    }
+  }
+
+  private static ErlangConfiguration conf(FrontEnd frontEnd) {
+    return new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd).setPreprocessorEnabled(false);
+  }
+
+  private static List<String> nodes(AstNode root) {
+    List<String> nodes = new ArrayList<>();
+    collect(root, nodes);
+    return nodes;
+  }
+
+  private static void collect(AstNode node, List<String> nodes) {
+    if (node.getType() instanceof GrammarRuleKey) {
+      Token token = node.getToken();
+      StringBuilder trivia = new StringBuilder();
+      for (Trivia t : token.getTrivia()) {
+        trivia.append(' ').append(t.getToken().getLine()).append(':').append(t.getToken().getColumn());
+      }
+      nodes.add(node.getType() + "@" + token.getLine() + ":" + token.getColumn() + " " + token.getValue()
+        + " [" + node.getFromIndex() + "," + node.getToIndex() + "] " + token.getURI() + trivia);
+    }
+    for (AstNode child : node.getChildren()) {
+      collect(child, nodes);
+    }
+  }
+
+}
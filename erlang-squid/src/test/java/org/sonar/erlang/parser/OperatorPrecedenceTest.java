@@ -0,0 +1,72 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class OperatorPrecedenceTest {
+
+  @Test
+  public void levels_are_nested_by_precedence() {
+    AstNode expression = expression("A + B * C - D < E andalso F").getFirstChild();
+    assertThat(expression.getType()).isEqualTo(ErlangGrammarImpl.shortCircuitAndAlsoExpression);
+
+    AstNode relational = expression.getFirstChild();
+    assertThat(relational.getType()).isEqualTo(ErlangGrammarImpl.relationalExpression);
+
+    AstNode additive = relational.getFirstChild();
+    assertThat(additive.getType()).isEqualTo(ErlangGrammarImpl.additiveExpression);
+    assertThat(additive.getNumberOfChildren()).isEqualTo(5);
+    assertThat(additive.getChild(2).getType()).isEqualTo(ErlangGrammarImpl.multiplicativeExpression);
+    assertThat(additive.getChild(2).getTokenValue()).isEqualTo("B");
+    assertThat(additive.getChild(3).getParent()).isSameAs(additive);
+  }
+
+  @Test
+  public void single_operand_has_no_operator_node() {
+    AstNode expression = expression("-A");
+    assertThat(expression.getFirstChild().getType()).isEqualTo(ErlangGrammarImpl.unaryExpression);
+    assertThat(expression.hasDescendant(ErlangGrammarImpl.operatorExpression)).isFalse();
+  }
+
+  @Test
+  public void both_front_ends() {
+    for (ErlangConfiguration.FrontEnd frontEnd : ErlangConfiguration.FrontEnd.values()) {
+      AstNode module = ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd))
+        .parse("f(A) -> A ++ [1] -- [2] == A rem 2.");
+      assertThat(module.hasDescendant(ErlangGrammarImpl.operatorExpression)).isFalse();
+      AstNode listOperation = module.getFirstDescendant(ErlangGrammarImpl.listOperationExpression);
+      assertThat(listOperation.getNumberOfChildren()).isEqualTo(5);
+      assertThat(listOperation.getLastChild().getType()).isEqualTo(ErlangGrammarImpl.equalityExpression);
+    }
+  }
+
+  private static AstNode expression(String source) {
+    AstNode module = ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8)).parse("f() -> " + source + ".");
+    return module.getFirstDescendant(ErlangGrammarImpl.expression);
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.impl.Parser;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ParseBudgetTest {
+
+  private static final File FILE = new File("src/test/resources/megaco.erl");
+
+  @Test
+  public void steps() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      Parser<LexerlessGrammar> parser = ErlangParser.create(conf(frontEnd).setParseBudget(0, 50_000));
+      try {
+        parser.parse(FILE);
+        fail(frontEnd.name());
+      } catch (ParseBudgetExceededException e) {
+        assertThat(e.getMessage()).isEqualTo("Parsing aborted after 50000 grammar rule invocations");
+        assertThat(e.getLine()).isGreaterThan(1);
+      }
+      // every parse gets a new budget
+      assertThat(parser.parse("f() -> ok.").getFirstDescendant(ErlangGrammarImpl.functionDeclaration)).isNotNull();
+    }
+  }
+
+  @Test
+  public void segments_share_the_budget_of_the_file() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      try {
+        // each segment would fit, the whole file does not
+        ErlangParser.create(conf(frontEnd).setSplitThreshold(1).setParseBudget(0, 400_000)).parse(FILE);
+        fail(frontEnd.name());
+      } catch (ParseBudgetExceededException e) {
+        assertThat(e.getMessage()).isEqualTo("Parsing aborted after 400000 grammar rule invocations");
+        assertThat(e.getLine()).isGreaterThan(1);
+      }
+    }
+  }
+
+  @Test
+  public void time() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      try {
+        ErlangParser.create(conf(frontEnd).setParseBudget(1, 0)).parse(FILE);
+        fail(frontEnd.name());
+      } catch (ParseBudgetExceededException e) {
+        assertThat(e.getMessage()).isEqualTo("Parsing aborted after 1 ms");
+      }
+    }
+  }
+
+  @Test
+  public void large_enough_budget() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      assertThat(ErlangParser.create(conf(frontEnd).setParseBudget(60_000, 100_000_000)).parse(FILE)
+        .hasDescendant(ErlangGrammarImpl.functionDeclaration)).isTrue();
+    }
+  }
+
+  private static ErlangConfiguration conf(FrontEnd frontEnd) {
+    return new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd);
+  }
+
+}
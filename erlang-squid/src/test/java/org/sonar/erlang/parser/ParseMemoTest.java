@@ -0,0 +1,99 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+import org.sonar.sslr.parser.LexerlessGrammar;
+import org.sonar.sslr.parser.ParserAdapter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParseMemoTest {
+
+  private static final File FILE = new File("src/test/resources/agner_main.erl");
+
+  @Test
+  public void same_tree_with_statistics() {
+    LexerlessGrammar grammar = ErlangGrammarImpl.createGrammar();
+    ParseMemo memo = ParseMemo.install(grammar, EnumSet.of(ErlangGrammarImpl.primaryExpression,
+      ErlangGrammarImpl.stringConcatenation, ErlangGrammarImpl.recordAccess, ErlangGrammarImpl.map));
+    AstNode memoized = new ParserAdapter<>(StandardCharsets.UTF_8, grammar).parse(FILE);
+    AstNode plain = new ParserAdapter<>(StandardCharsets.UTF_8, ErlangGrammarImpl.createGrammar()).parse(FILE);
+
+    assertThat(ruleNodes(memoized)).isEqualTo(ruleNodes(plain));
+    assertThat(memo.getLookups()).isGreaterThan(memo.getHits());
+    assertThat(memo.getHits()).isGreaterThan(0);
+    assertThat(memo.getHitRate()).isGreaterThan(0.0);
+    assertThat(memo.getStepsSaved()).isGreaterThan(0);
+    assertThat(memo.getSteps()).isGreaterThan(memo.getLookups());
+    assertThat(memo.toString()).contains("memo hits").contains("parse steps saved");
+  }
+
+  @Test
+  public void statistics_are_reset_for_each_parse() {
+    LexerlessGrammar grammar = ErlangGrammarImpl.createGrammar();
+    ParseMemo memo = ParseMemo.install(grammar, EnumSet.of(ErlangGrammarImpl.primaryExpression));
+    ParserAdapter<LexerlessGrammar> parser = new ParserAdapter<>(StandardCharsets.UTF_8, grammar);
+    parser.parse(FILE);
+    int steps = memo.getSteps();
+    int hits = memo.getHits();
+    parser.parse(FILE);
+    assertThat(memo.getSteps()).isEqualTo(steps);
+    assertThat(memo.getHits()).isEqualTo(hits);
+  }
+
+  @Test
+  public void configured_rules_on_both_front_ends() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      ErlangConfiguration conf = new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd);
+      AstNode plain = ErlangParser.create(conf).parse(FILE);
+      conf.setMemoizedRules(Arrays.asList(" primaryExpression", "recordAccess ", ""));
+      assertThat(conf.getMemoizedRules()).containsOnly(ErlangGrammarImpl.primaryExpression, ErlangGrammarImpl.recordAccess);
+      assertThat(ruleNodes(ErlangParser.create(conf).parse(FILE))).as(frontEnd.name()).isEqualTo(ruleNodes(plain));
+    }
+  }
+
+  private static List<String> ruleNodes(AstNode root) {
+    List<String> nodes = new ArrayList<>();
+    collect(root, nodes);
+    return nodes;
+  }
+
+  private static void collect(AstNode node, List<String> nodes) {
+    if (node.getType() instanceof GrammarRuleKey) {
+      nodes.add(node.getType() + "@" + node.getTokenLine() + ":" + node.getToken().getColumn() + " " + node.getTokenValue());
+    }
+    for (AstNode child : node.getChildren()) {
+      collect(child, nodes);
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.parser;
+
+import com.sonar.sslr.api.AstNode;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParseProfileTest {
+
+  private static final File FILE = new File("src/test/resources/metrics/functions.erl");
+
+  @Test
+  public void rules_of_every_parse() {
+    ParseProfile profile = new ParseProfile(0, 3);
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      ErlangConfiguration conf = new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd);
+      AstNode plain = ErlangParser.create(conf).parse(FILE);
+      AstNode profiled = ErlangParser.create(conf.setParseProfile(profile)).parse(FILE);
+      assertThat(profiled.getNumberOfChildren()).isEqualTo(plain.getNumberOfChildren());
+      assertThat(profiled.getLastToken().getLine()).isEqualTo(plain.getLastToken().getLine());
+    }
+    assertThat(profile.getFiles()).isEqualTo(2);
+
+    List<RuleProfile> rules = profile.getRules();
+    RuleProfile module = rule(rules, ErlangGrammarImpl.module);
+    assertThat(module.getInvocations()).isEqualTo(2);
+    assertThat(module.getMatches()).isEqualTo(2);
+    assertThat(module.getNanos()).isGreaterThanOrEqualTo(module.getSelfNanos());
+    for (RuleProfile rule : rules) {
+      assertThat(rule.getNanos()).as(rule.toString()).isLessThanOrEqualTo(module.getNanos());
+      assertThat(rule.getMatches()).as(rule.toString()).isLessThanOrEqualTo(rule.getInvocations());
+    }
+    assertThat(rules.stream().anyMatch(rule -> rule.getBacktracked() > 0)).isTrue();
+  }
+
+  @Test
+  public void json_dump() {
+    ParseProfile profile = new ParseProfile(0, 3);
+    ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8).setParseProfile(profile)).parse(FILE);
+    StringWriter writer = new StringWriter();
+    profile.writeJson(writer);
+    assertThat(writer.toString())
+      .startsWith("{\"files\":1,")
+      .contains("\"rules\":[{\"rule\":")
+      .contains("\"slowFiles\":[{\"file\":\"" + FILE.toString())
+      .contains("\"backtracked\":")
+      .contains("\"selfNanos\":");
+  }
+
+  @Test
+  public void fast_files_are_not_reported() {
+    ParseProfile profile = new ParseProfile(60_000, 3);
+    ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8).setParseProfile(profile)).parse(FILE);
+    StringWriter writer = new StringWriter();
+    profile.writeJson(writer);
+    assertThat(writer.toString()).endsWith("\"slowFiles\":[]}");
+    assertThat(profile.getRules()).isNotEmpty();
+  }
+
+  private static RuleProfile rule(List<RuleProfile> rules, ErlangGrammarImpl key) {
+    return rules.stream().filter(rule -> rule.getRule() == key).findFirst().get();
+  }
+
+}
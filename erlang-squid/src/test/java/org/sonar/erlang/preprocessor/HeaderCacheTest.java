@@ -0,0 +1,129 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.google.common.collect.ImmutableList;
+import com.sonar.sslr.api.Token;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.parser.ErlangParser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class HeaderCacheTest {
+
+  private static final File APP = new File("src/test/resources/includes/app-1.0");
+  private static final File MODULE = new File(APP, "src/includes.erl");
+  private static final File LIB = new File("src/test/resources/includes/lib");
+
+  private final ErlangConfiguration conf = new ErlangConfiguration(StandardCharsets.UTF_8)
+    .setIncludePaths(ImmutableList.of(LIB));
+  private final HeaderCache cache = conf.getHeaderCache();
+
+  @Test
+  public void includes_of_a_module() {
+    List<Include> includes = module(MODULE).getIncludes();
+    assertThat(includes.stream().map(Include::toString).collect(Collectors.toList())).containsExactly(
+      "include_lib(\"app/include/records.hrl\")", "include(\"../include/macros.hrl\")", "include(\"lib.hrl\")",
+      "include(\"missing.hrl\")");
+    assertThat(includes.get(1).getLine()).isEqualTo(3);
+  }
+
+  @Test
+  public void headers_included_directly_or_not() {
+    List<Header> headers = cache.headers(MODULE, module(MODULE).getIncludes());
+    assertThat(names(headers)).containsExactly("records.hrl", "macros.hrl", "lib.hrl");
+
+    Header records = headers.get(0);
+    assertThat(records.isParsed()).isTrue();
+    assertThat(ImmutableList.copyOf(records.getRecords().keySet())).containsExactly("state", "empty");
+    List<Token> state = records.getRecords().get("state");
+    assertThat(state.get(0).getValue()).isEqualTo("state");
+    assertThat(state.get(0).getLine()).isEqualTo(4);
+
+    Header macros = headers.get(1);
+    assertThat(ImmutableList.copyOf(macros.getMacros().keySet())).containsExactly("DEFAULT_NAME", "MAX/2", "NOW/0");
+    assertThat(macros.getMacros().get("DEFAULT_NAME").getArity()).isEqualTo(-1);
+    assertThat(macros.getMacros().get("DEFAULT_NAME").getBody().get(0).getValue()).isEqualTo("\"app\"");
+    assertThat(macros.getMacros().get("MAX/2").getParameters()).containsExactly("A", "B");
+    assertThat(macros.getMacros().get("NOW/0").getParameters()).isEmpty();
+  }
+
+  @Test
+  public void each_header_parsed_once() {
+    cache.headers(MODULE, module(MODULE).getIncludes());
+    File other = new File(APP, "src/includes2.erl");
+    List<Header> headers = cache.headers(other, module(other).getIncludes());
+    assertThat(names(headers)).containsExactly("records.hrl", "macros.hrl");
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.stats().loadCount()).isEqualTo(3);
+    assertThat(cache.get(new File(APP, "src/../include/records.hrl"))).isSameAs(headers.get(0));
+  }
+
+  @Test
+  public void shared_between_threads() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Header>> futures = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        futures.add(executor.submit(() -> cache.get(new File(APP, "include/records.hrl"))));
+      }
+      for (Future<Header> future : futures) {
+        assertThat(future.get()).isSameAs(futures.get(0).get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(cache.stats().loadCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void resolve() {
+    assertThat(cache.resolve(MODULE, new Include("app/include/records.hrl", true, 1))).isNotNull();
+    assertThat(cache.resolve(MODULE, new Include("app/include/records.hrl", false, 1))).isNull();
+    assertThat(cache.resolve(MODULE, new Include("lib.hrl", false, 1))).isNotNull();
+    assertThat(cache.resolve(MODULE, new Include("", false, 1))).isNull();
+  }
+
+  @Test
+  public void unparsable_header() {
+    Header header = cache.get(new File(LIB, "broken.hrl"));
+    assertThat(header.isParsed()).isFalse();
+    assertThat(header.getMacros()).isEmpty();
+  }
+
+  private Header module(File file) {
+    return Header.of(file, ErlangParser.create(conf).parse(file));
+  }
+
+  private static List<String> names(List<Header> headers) {
+    return headers.stream().map(header -> header.getFile().getName()).collect(Collectors.toList());
+  }
+
+}
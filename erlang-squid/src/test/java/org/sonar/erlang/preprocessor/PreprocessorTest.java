@@ -0,0 +1,146 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.erlang.preprocessor;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+import org.junit.Test;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangConfiguration.FrontEnd;
+import org.sonar.erlang.lexer.ErlangLexer;
+import org.sonar.erlang.parser.ErlangGrammarImpl;
+import org.sonar.erlang.parser.ErlangParser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PreprocessorTest {
+
+  private static final File MODULE = new File("src/test/resources/preprocessor/macros.erl");
+
+  private final ErlangConfiguration conf = new ErlangConfiguration(StandardCharsets.UTF_8);
+  private final Preprocessor preprocessor = new Preprocessor(conf.getHeaderCache());
+
+  @Test
+  public void macros() {
+    assertThat(expand("-define(A, 1).\nf() -> ?A + ?B.\n"))
+      .isEqualTo("- define ( A , 1 ) . f ( ) -> 1 + ? B .");
+    assertThat(expand("-define(SUM(X, Y), X + Y).\nf(A) -> ?SUM(A, [1, 2]).\n"))
+      .endsWith("f ( A ) -> A + [ 1 , 2 ] .");
+    assertThat(expand("-define(F, g).\n-define(F(X), X).\nf() -> {?F, ?F(1), ?F()}.\n"))
+      .endsWith("f ( ) -> { g , 1 , g ( ) } .");
+    assertThat(expand("-define(S(X), ??X).\nf() -> ?S(a + b).\n"))
+      .endsWith("f ( ) -> \"a + b\" .");
+    assertThat(expand("-define(A, ?B).\n-define(B, ?A).\nf() -> ?A.\n"))
+      .endsWith("f ( ) -> ? A .");
+    assertThat(expand("-define(A, 1).\n-undef(A).\nf() -> ?A.\n"))
+      .endsWith("f ( ) -> ? A .");
+  }
+
+  @Test
+  public void predefined_macros() {
+    assertThat(expand("-module(m).\nf(A, B) ->\n {?MODULE, ?MODULE_STRING, ?LINE, ?FUNCTION_NAME, ?FUNCTION_ARITY}.\n"))
+      .endsWith("f ( A , B ) -> { m , \"m\" , 3 , f , 2 } .");
+  }
+
+  @Test
+  public void conditional_forms() {
+    String source = "-ifdef(A).\n"
+      + "a() -> a.\n"
+      + "-else.\n"
+      + "-ifndef(B).\n"
+      + "b() -> b.\n"
+      + "-endif.\n"
+      + "c() -> c.\n"
+      + "-endif.\n"
+      + "-define(A, 1).\n"
+      + "-ifdef(A).\n"
+      + "d() -> d.\n"
+      + "-endif.\n";
+    assertThat(expand(source)).isEqualTo("b ( ) -> b . c ( ) -> c . - define ( A , 1 ) . d ( ) -> d .");
+  }
+
+  @Test
+  public void expansion_at_the_position_of_the_macro() {
+    List<Token> tokens = preprocess("-define(P(X), {X, 2}).\n% comment\nf() -> ?P(1).\n");
+    Token brace = tokens.stream().filter(token -> token.getValue().equals("{") && token.getLine() > 1).findFirst().get();
+    assertThat(brace.getLine()).isEqualTo(3);
+    assertThat(brace.getColumn()).isEqualTo(7);
+    assertThat(brace.isGeneratedCode()).isTrue();
+    Token f = tokens.stream().filter(token -> token.getValue().equals("f")).findFirst().get();
+    assertThat(f.getTrivia()).hasSize(1);
+  }
+
+  @Test
+  public void macros_of_included_files() {
+    List<Token> tokens = preprocessor.preprocess(MODULE, new ErlangLexer(StandardCharsets.UTF_8).lex(MODULE));
+    assertThat(values(tokens)).contains("count ( S ) -> S # state . count .");
+    assertThat(values(tokens)).contains("block ( ) -> begin info end .");
+
+    HeaderCache cache = conf.getHeaderCache();
+    File includes2 = new File("src/test/resources/includes/app-1.0/src/includes2.erl");
+    List<Header> headers = cache.headers(includes2, cache.get(includes2).getIncludes());
+    assertThat(cache.macroTable(headers)).isSameAs(cache.macroTable(cache.headers(includes2, cache.get(includes2).getIncludes())));
+    assertThat(cache.macroTable(headers).get("MAX", 2)).isNotNull();
+    assertThat(cache.macroTable(headers).isDefined("NOW")).isTrue();
+  }
+
+  @Test
+  public void macro_table_per_include_set() {
+    preprocessor.preprocess(MODULE, new ErlangLexer(StandardCharsets.UTF_8).lex(MODULE));
+    preprocessor.preprocess(MODULE, new ErlangLexer(StandardCharsets.UTF_8).lex(MODULE));
+    assertThat(conf.getHeaderCache().macroTableCount()).isEqualTo(1);
+    assertThat(conf.getHeaderCache().stats().loadCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void parse_expanded_file() {
+    for (FrontEnd frontEnd : FrontEnd.values()) {
+      AstNode tree = ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8).setFrontEnd(frontEnd)).parse(MODULE);
+      List<String> functions = tree.getDescendants(ErlangGrammarImpl.functionDeclaration).stream()
+        .map(AstNode::getTokenValue).collect(Collectors.toList());
+      assertThat(functions).as(frontEnd.name()).containsExactly("classify", "block", "head", "count");
+    }
+  }
+
+  @Test(expected = RecognitionException.class)
+  public void parse_error_without_preprocessor() {
+    ErlangParser.create(new ErlangConfiguration(StandardCharsets.UTF_8).setPreprocessorEnabled(false)).parse(MODULE);
+  }
+
+  private String expand(String source) {
+    return values(preprocess(source));
+  }
+
+  private List<Token> preprocess(String source) {
+    return preprocessor.preprocess(new File("m.erl"), new ErlangLexer(StandardCharsets.UTF_8).lex(source));
+  }
+
+  private static String values(List<Token> tokens) {
+    // without the end of file
+    return tokens.subList(0, tokens.size() - 1).stream().map(Token::getOriginalValue).collect(Collectors.joining(" "));
+  }
+
+}
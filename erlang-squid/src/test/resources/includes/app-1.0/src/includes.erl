@@ -0,0 +1,9 @@
+-module(includes).
+-include_lib("app/include/records.hrl").
+-include("../include/macros.hrl").
+-include("lib.hrl").
+-include("missing.hrl").
+
+-export([name/1]).
+
+name(#state{name = Name}) -> Name.
@@ -0,0 +1,6 @@
+-module(includes2).
+-include("../include/records.hrl").
+
+-export([count/1]).
+
+count(#state{count = Count}) -> ?MAX(Count, 0).
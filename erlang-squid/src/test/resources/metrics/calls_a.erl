@@ -0,0 +1,14 @@
+-module(calls_a).
+-export([main/0, loop/1]).
+-import(lists, [map/2]).
+
+main() ->
+    loop(3),
+    map(fun calls_b:twice/1, [1, 2]).
+
+loop(0) -> done;
+loop(N) -> loop(N - 1).
+
+ping(N) -> calls_b:pong(N).
+
+leaf() -> ok.
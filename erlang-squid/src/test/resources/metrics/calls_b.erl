@@ -0,0 +1,9 @@
+-module(calls_b).
+-export([twice/1, pong/1]).
+
+twice(X) -> add(X, X).
+
+add(X, Y) -> erlang:'+'(X, Y).
+
+pong(0) -> ok;
+pong(N) -> M = calls_a, M:ping(N - 1), calls_a:ping(N - 1).
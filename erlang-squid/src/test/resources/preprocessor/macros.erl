@@ -0,0 +1,24 @@
+-module(macros).
+-include("macros.hrl").
+
+-export([classify/1, block/0, head/1, count/1]).
+
+-define(CLAUSES, 1 -> one; _ -> other).
+-define(BEGIN, begin).
+-define(END, end).
+-define(HEAD(Name), Name(X) ->).
+
+-ifdef(TEST).
+-define(LEVEL, debug).
+-else.
+-define(LEVEL, info).
+-endif.
+
+classify(X) -> case X of ?CLAUSES end.
+
+block() -> ?BEGIN ?LEVEL ?END.
+
+% a function head
+?HEAD(head) X + 1.
+
+count(S) -> S#?REC.count.
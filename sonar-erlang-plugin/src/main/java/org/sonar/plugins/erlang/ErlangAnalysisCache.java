@@ -0,0 +1,492 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.FunctionId;
+import org.sonar.erlang.checks.CheckList;
+import org.sonar.erlang.metrics.CallGraph;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the results of {@link ErlangSquidSensor}, one entry per source file.
+ * An entry is only reused when the content of the file, the files it depends on (its headers and
+ * its BEAM file), the active rules of the Erlang repository (with their parameters), the settings
+ * of the parser and the build of the plugin are all the same as when it was written, so replaying
+ * it gives the same result as a new analysis. The calls of the functions of the file are kept too,
+ * for the depth of calling of the functions of the files which are analysed again.
+ */
+public class ErlangAnalysisCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ErlangAnalysisCache.class);
+
+  private static final String FORMAT_VERSION = "2";
+  private static final String DIRECTORY_NAME = "erlang-analysis-cache";
+  private static final String ENTRY_SUFFIX = ".bin";
+
+  @Nullable
+  private final Path directory;
+  private final String configuration;
+  private final Map<String, String> keys = new ConcurrentHashMap<>();
+  // the hashes of the headers and BEAM files, computed once per analysis however many files depend on them
+  private final Map<String, String> hashes = new ConcurrentHashMap<>();
+  private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+  private final Set<String> usedEntries = ConcurrentHashMap.newKeySet();
+  private final Set<String> discarded = ConcurrentHashMap.newKeySet();
+
+  ErlangAnalysisCache(@Nullable Path directory, String configuration) {
+    this.directory = directory;
+    this.configuration = configuration;
+  }
+
+  /**
+   * @param conf the configuration of the analysis, whose settings are part of the key of the entries
+   */
+  public static ErlangAnalysisCache create(SensorContext context, ErlangConfiguration conf) {
+    if (!context.settings().getBoolean(ErlangPlugin.ANALYSIS_CACHE_KEY)) {
+      return new ErlangAnalysisCache(null, "");
+    }
+    String path = context.settings().getString(ErlangPlugin.ANALYSIS_CACHE_PATH_KEY);
+    Path directory;
+    if (path != null && !path.trim().isEmpty()) {
+      directory = Paths.get(path.trim());
+    } else if (context.fileSystem().workDir() != null) {
+      directory = context.fileSystem().workDir().toPath().resolve(DIRECTORY_NAME);
+    } else {
+      return new ErlangAnalysisCache(null, "");
+    }
+    String build = build();
+    if (build == null) {
+      LOG.warn("Unable to identify the build of the plugin, the analysis cache is disabled");
+      return new ErlangAnalysisCache(null, "");
+    }
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      LOG.warn("Unable to create the analysis cache directory {}, the cache is disabled", directory, e);
+      return new ErlangAnalysisCache(null, "");
+    }
+    return new ErlangAnalysisCache(directory, configuration(context, conf, build));
+  }
+
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * Returns the cached result of the given file, or null when the file has to be analysed.
+   *
+   * @param beam the BEAM file compiled from the file, if any: the entry has to be written with the same one
+   */
+  @CheckForNull
+  public Entry get(InputFile inputFile, @Nullable File beam) {
+    if (directory == null) {
+      return null;
+    }
+    String key = key(inputFile);
+    if (key == null) {
+      return null;
+    }
+    Path entryFile = entryFile(inputFile.absolutePath());
+    usedEntries.add(entryFile.getFileName().toString());
+    if (!Files.isRegularFile(entryFile)) {
+      return null;
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+      Entry entry = (Entry) in.readObject();
+      boolean sameBeam = beam == null ? entry.beam == null : beam.getAbsolutePath().equals(entry.beam);
+      return key.equals(entry.key) && sameBeam && isUpToDate(entry) ? entry : null;
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      LOG.debug("Ignoring unreadable analysis cache entry {}", entryFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Entry being filled while the given file is analysed. Visitors running on other
+   * threads may record into it, it is written by {@link #put(InputFile, Entry)}.
+   */
+  public Entry pending(String absolutePath) {
+    return pending.computeIfAbsent(absolutePath, path -> new Entry());
+  }
+
+  public void recordHighlighting(String absolutePath, int startLine, int startLineOffset, int endLine, int endLineOffset, TypeOfText type) {
+    if (directory != null) {
+      pending(absolutePath).highlightings.add(new Highlighting(startLine, startLineOffset, endLine, endLineOffset, type));
+    }
+  }
+
+  public void recordCpdToken(String absolutePath, int startLine, int startLineOffset, int endLine, int endLineOffset, String image) {
+    if (directory != null) {
+      pending(absolutePath).cpdTokens.add(new CpdToken(startLine, startLineOffset, endLine, endLineOffset, image));
+    }
+  }
+
+  /**
+   * Keeps the result of the given file out of the cache, when it may differ at the next analysis of the same file.
+   */
+  public void discard(String absolutePath) {
+    if (directory != null) {
+      discarded.add(absolutePath);
+    }
+  }
+
+  public void put(InputFile inputFile, Entry entry) {
+    pending.remove(inputFile.absolutePath());
+    if (directory == null || discarded.contains(inputFile.absolutePath())) {
+      return;
+    }
+    String key = key(inputFile);
+    if (key == null) {
+      return;
+    }
+    entry.key = key;
+    Path entryFile = entryFile(inputFile.absolutePath());
+    usedEntries.add(entryFile.getFileName().toString());
+    try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(entryFile)))) {
+      out.writeObject(entry);
+    } catch (IOException e) {
+      LOG.warn("Unable to write analysis cache entry {}", entryFile, e);
+    }
+  }
+
+  /**
+   * Removes the entries of files which were not part of this analysis.
+   */
+  public void cleanUp() {
+    if (directory == null) {
+      return;
+    }
+    File[] entries = directory.toFile().listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+    if (entries == null) {
+      return;
+    }
+    for (File entry : entries) {
+      if (!usedEntries.contains(entry.getName()) && !entry.delete()) {
+        LOG.debug("Unable to delete stale analysis cache entry {}", entry);
+      }
+    }
+  }
+
+  @CheckForNull
+  private String key(InputFile inputFile) {
+    return keys.computeIfAbsent(inputFile.absolutePath(), path -> {
+      try {
+        MessageDigest digest = sha1();
+        digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+        update(digest, Paths.get(path));
+        return hex(digest.digest());
+      } catch (IOException e) {
+        LOG.debug("Unable to hash {}", path, e);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Makes the entry of the given file depend on the content of another one, like a header it includes.
+   */
+  public void dependOn(String absolutePath, File dependency) {
+    if (directory == null) {
+      return;
+    }
+    String hash = hash(dependency.getAbsolutePath());
+    if (hash == null) {
+      discard(absolutePath);
+    } else {
+      pending(absolutePath).dependencies.put(dependency.getAbsolutePath(), hash);
+    }
+  }
+
+  private boolean isUpToDate(Entry entry) {
+    for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+      if (!dependency.getValue().equals(hash(dependency.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @CheckForNull
+  private String hash(String absolutePath) {
+    return hashes.computeIfAbsent(absolutePath, path -> {
+      try {
+        MessageDigest digest = sha1();
+        update(digest, Paths.get(path));
+        return hex(digest.digest());
+      } catch (IOException e) {
+        LOG.debug("Unable to hash {}", path, e);
+        return null;
+      }
+    });
+  }
+
+  private static void update(MessageDigest digest, Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+  }
+
+  private Path entryFile(String absolutePath) {
+    return directory.resolve(hex(sha1().digest(absolutePath.getBytes(StandardCharsets.UTF_8))) + ENTRY_SUFFIX);
+  }
+
+  static String configuration(SensorContext context, ErlangConfiguration conf, String build) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(FORMAT_VERSION).append('\n');
+    sb.append(build).append('\n');
+    sb.append(context.fileSystem().encoding()).append('\n');
+    sb.append(conf.getFrontEnd()).append('\n');
+    sb.append(conf.getIncludePaths().stream().map(File::getAbsolutePath).collect(Collectors.toList())).append('\n');
+    sb.append(conf.isPreprocessorEnabled()).append('\n');
+    sb.append(conf.getParseTimeoutMillis()).append(' ').append(conf.getParseMaxSteps()).append(' ')
+      .append(conf.getSplitThreshold()).append('\n');
+    sb.append(conf.isLexicalOnly()).append('\n');
+    sb.append(Arrays.toString(context.settings().getStringArray(ErlangPlugin.BEAM_PATHS_KEY))).append('\n');
+    Map<String, ActiveRule> rules = new TreeMap<>();
+    for (ActiveRule rule : context.activeRules().findByRepository(CheckList.REPOSITORY_KEY)) {
+      rules.put(rule.ruleKey().toString(), rule);
+    }
+    for (ActiveRule rule : rules.values()) {
+      sb.append(rule.ruleKey()).append(new TreeMap<>(rule.params())).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The hash of the code of the plugin and of the Erlang libraries it runs, so that the entries of another build,
+   * even of the same version, are not reused. A jar is hashed whole, a directory of classes by the names, sizes and
+   * modification times of its files. Null when the code cannot be located.
+   */
+  @CheckForNull
+  static String build() {
+    Set<Path> locations = new LinkedHashSet<>();
+    for (Class<?> type : Arrays.asList(ErlangAnalysisCache.class, ErlangConfiguration.class, CheckList.class)) {
+      CodeSource source = type.getProtectionDomain().getCodeSource();
+      if (source == null || source.getLocation() == null) {
+        return null;
+      }
+      try {
+        locations.add(Paths.get(source.getLocation().toURI()));
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        LOG.debug("Unable to locate the code of {}", type, e);
+        return null;
+      }
+    }
+    MessageDigest digest = sha1();
+    try {
+      for (Path location : locations) {
+        if (Files.isDirectory(location)) {
+          try (Stream<Path> files = Files.walk(location)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+              digest.update((location.relativize(file) + " " + Files.size(file) + " " + Files.getLastModifiedTime(file).toMillis() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+            }
+          }
+        } else {
+          update(digest, location);
+        }
+      }
+    } catch (IOException e) {
+      LOG.debug("Unable to hash the code of the plugin", e);
+      return null;
+    }
+    return hex(digest.digest());
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  public static class Entry implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private String key;
+    // the hashes of the headers and of the BEAM file, by absolute path
+    final Map<String, String> dependencies = new TreeMap<>();
+    @Nullable
+    String beam;
+    final Map<String, Serializable> measures = new LinkedHashMap<>();
+    final List<Issue> issues = new ArrayList<>();
+    final List<Highlighting> highlightings = Collections.synchronizedList(new ArrayList<>());
+    final List<CpdToken> cpdTokens = Collections.synchronizedList(new ArrayList<>());
+    // the functions declared in the file first, then the other ones it calls
+    final List<Function> functions = new ArrayList<>();
+    int declaredFunctions;
+    // the pairs of caller and callee, as indexes in the functions
+    int[] calls = new int[0];
+
+    void recordCalls(CallGraph.Part part) {
+      Map<FunctionId, Integer> numbers = new HashMap<>();
+      for (int i = 0; i < part.functionCount(); i++) {
+        number(numbers, part.function(i));
+      }
+      declaredFunctions = functions.size();
+      calls = new int[part.callCount() * 2];
+      for (int call = 0; call < part.callCount(); call++) {
+        calls[call * 2] = number(numbers, part.caller(call));
+        calls[call * 2 + 1] = number(numbers, part.callee(call));
+      }
+    }
+
+    private int number(Map<FunctionId, Integer> numbers, FunctionId function) {
+      return numbers.computeIfAbsent(function, f -> {
+        functions.add(new Function(f.getModule(), f.getName(), f.getArity()));
+        return functions.size() - 1;
+      });
+    }
+
+    /**
+     * Adds the functions and the calls of the file to the graph.
+     */
+    void restoreCalls(CallGraph graph) {
+      int[] numbers = new int[functions.size()];
+      for (int i = 0; i < numbers.length; i++) {
+        Function function = functions.get(i);
+        numbers[i] = graph.function(FunctionId.of(function.module, function.name, function.arity));
+        if (i < declaredFunctions) {
+          graph.declare(numbers[i]);
+        }
+      }
+      for (int call = 0; call < calls.length; call += 2) {
+        graph.addCall(numbers[calls[call]], numbers[calls[call + 1]]);
+      }
+    }
+  }
+
+  static class Function implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String module;
+    final String name;
+    final int arity;
+
+    Function(String module, String name, int arity) {
+      this.module = module;
+      this.name = name;
+      this.arity = arity;
+    }
+  }
+
+  static class Issue implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String ruleKey;
+    final int line;
+    final String message;
+
+    Issue(String ruleKey, int line, String message) {
+      this.ruleKey = ruleKey;
+      this.line = line;
+      this.message = message;
+    }
+  }
+
+  static class Highlighting implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final int startLine;
+    final int startLineOffset;
+    final int endLine;
+    final int endLineOffset;
+    final TypeOfText type;
+
+    Highlighting(int startLine, int startLineOffset, int endLine, int endLineOffset, TypeOfText type) {
+      this.startLine = startLine;
+      this.startLineOffset = startLineOffset;
+      this.endLine = endLine;
+      this.endLineOffset = endLineOffset;
+      this.type = type;
+    }
+  }
+
+  static class CpdToken implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final int startLine;
+    final int startLineOffset;
+    final int endLine;
+    final int endLineOffset;
+    final String image;
+
+    CpdToken(int startLine, int startLineOffset, int endLine, int endLineOffset, String image) {
+      this.startLine = startLine;
+      this.startLineOffset = startLineOffset;
+      this.endLine = endLine;
+      this.endLineOffset = endLineOffset;
+      this.image = image;
+    }
+  }
+
+}
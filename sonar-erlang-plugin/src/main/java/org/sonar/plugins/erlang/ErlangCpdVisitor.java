@@ -29,6 +29,7 @@ import javax.annotation.Nullable;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.cpd.NewCpdTokens;
+import org.sonar.erlang.StringInterner;
 import org.sonar.squidbridge.SquidAstVisitor;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
@@ -38,10 +39,16 @@ import org.sonar.sslr.parser.LexerlessGrammar;
 public class ErlangCpdVisitor extends SquidAstVisitor<LexerlessGrammar> implements AstAndTokenVisitor {
 
     private final SensorContext context;
+    private final ErlangAnalysisCache cache;
     private NewCpdTokens newCpdTokens;
 
     ErlangCpdVisitor(SensorContext context) {
+        this(context, new ErlangAnalysisCache(null, ""));
+    }
+
+    ErlangCpdVisitor(SensorContext context, ErlangAnalysisCache cache) {
         this.context = context;
+        this.cache = cache;
     }
 
     @Override
@@ -50,25 +57,40 @@ public class ErlangCpdVisitor extends SquidAstVisitor<LexerlessGrammar> implemen
             return;
         }
         ErlangHighlighter.TokenLocation tokenLocation = new ErlangHighlighter.TokenLocation(token);
+        // the cache keeps the images of every file until the end of the analysis
+        String image = StringInterner.intern(token.getValue());
         newCpdTokens.addToken(
                 tokenLocation.startLine(),
                 tokenLocation.startLineOffset(),
                 tokenLocation.endLine(),
                 tokenLocation.endLineOffset(),
-                token.getValue()
+                image
+        );
+        cache.recordCpdToken(
+                getContext().getFile().getAbsolutePath(),
+                tokenLocation.startLine(),
+                tokenLocation.startLineOffset(),
+                tokenLocation.endLine(),
+                tokenLocation.endLineOffset(),
+                image
         );
     }
 
     @Override
     public void visitFile(@Nullable AstNode astNode) {
-        newCpdTokens = context.newCpdTokens();
-        InputFile inputFile = context.fileSystem().inputFile(context.fileSystem().predicates().is(getContext().getFile().getAbsoluteFile()));
-        newCpdTokens.onFile(inputFile);
+        // files may be scanned by several threads, the sensor context is shared between them
+        synchronized (context) {
+            newCpdTokens = context.newCpdTokens();
+            InputFile inputFile = context.fileSystem().inputFile(context.fileSystem().predicates().is(getContext().getFile().getAbsoluteFile()));
+            newCpdTokens.onFile(inputFile);
+        }
     }
 
     @Override
     public void leaveFile(@Nullable AstNode astNode) {
-        newCpdTokens.save();
+        synchronized (context) {
+            newCpdTokens.save();
+        }
     }
 
 }
@@ -39,10 +39,16 @@ import javax.annotation.Nullable;
 public class ErlangHighlighter extends SquidAstVisitor<LexerlessGrammar> implements AstAndTokenVisitor {
 
     private final SensorContext context;
+    private final ErlangAnalysisCache cache;
     private NewHighlighting newHighlighting;
 
     ErlangHighlighter(SensorContext context) {
+        this(context, new ErlangAnalysisCache(null, ""));
+    }
+
+    ErlangHighlighter(SensorContext context, ErlangAnalysisCache cache) {
         this.context = context;
+        this.cache = cache;
     }
 
     @Override
@@ -69,25 +75,35 @@ public class ErlangHighlighter extends SquidAstVisitor<LexerlessGrammar> impleme
 
     @Override
     public void visitFile(@Nullable AstNode astNode) {
-        newHighlighting = context.newHighlighting();
-        InputFile inputFile = context.fileSystem().inputFile(context.fileSystem().predicates().is(getContext().getFile().getAbsoluteFile()));
-        newHighlighting.onFile(inputFile);
+        // files may be scanned by several threads, the sensor context is shared between them
+        synchronized (context) {
+            newHighlighting = context.newHighlighting();
+            InputFile inputFile = context.fileSystem().inputFile(context.fileSystem().predicates().is(getContext().getFile().getAbsoluteFile()));
+            newHighlighting.onFile(inputFile);
+        }
     }
 
     @Override
     public void leaveFile(@Nullable AstNode ast){
-        newHighlighting.save();
+        synchronized (context) {
+            newHighlighting.save();
+        }
     }
 
     private void highlight(AstNode astNode, TypeOfText typeOfText) {
         TokenLocation firstLocation = new TokenLocation(astNode.getToken());
         TokenLocation lastLocation = new TokenLocation(astNode.getLastToken());
-        newHighlighting.highlight(firstLocation.startLine(), firstLocation.startLineOffset(), lastLocation.endLine(), lastLocation.endLineOffset(), typeOfText);
+        highlight(firstLocation.startLine(), firstLocation.startLineOffset(), lastLocation.endLine(), lastLocation.endLineOffset(), typeOfText);
     }
 
     private void highlight(Token token, TypeOfText typeOfText) {
         TokenLocation tokenLocation = new TokenLocation(token);
-        newHighlighting.highlight(tokenLocation.startLine(), tokenLocation.startLineOffset(), tokenLocation.endLine(), tokenLocation.endLineOffset(), typeOfText);
+        highlight(tokenLocation.startLine(), tokenLocation.startLineOffset(), tokenLocation.endLine(), tokenLocation.endLineOffset(), typeOfText);
+    }
+
+    private void highlight(int startLine, int startLineOffset, int endLine, int endLineOffset, TypeOfText typeOfText) {
+        newHighlighting.highlight(startLine, startLineOffset, endLine, endLineOffset, typeOfText);
+        cache.recordHighlighting(getContext().getFile().getAbsolutePath(), startLine, startLineOffset, endLine, endLineOffset, typeOfText);
     }
 
     static class TokenLocation {
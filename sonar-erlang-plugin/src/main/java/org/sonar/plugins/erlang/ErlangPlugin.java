@@ -69,6 +69,84 @@ import org.sonar.plugins.erlang.xref.XrefSensor;
     defaultValue = ErlangPlugin.REBAR_DEFAULT_CONFIG_FILENAME,
     name = "Rebar configfile name",
     description = "Filename of the rebar config file",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.ANALYSIS_THREADS_KEY,
+    defaultValue = ErlangPlugin.ANALYSIS_DEFAULT_THREADS,
+    name = "Analysis threads",
+    description = "Number of threads used to parse and check the Erlang files. 0 means one thread per available processor.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.ANALYSIS_CACHE_KEY,
+    defaultValue = ErlangPlugin.ANALYSIS_DEFAULT_CACHE,
+    name = "Analysis cache",
+    description = "Reuse the results of the previous analysis for files which did not change since then.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.ANALYSIS_CACHE_PATH_KEY,
+    name = "Analysis cache directory",
+    description = "Directory of the analysis cache. When empty, a folder of the scanner work directory is used.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.PARSER_MEMOIZED_RULES_KEY,
+    name = "Memoized grammar rules",
+    description = "Comma-separated list of grammar rules whose results are cached per input position while parsing, "
+      + "e.g. primaryExpression,stringConcatenation,recordAccess,map. Hit rates are logged at debug level.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.PARSER_PROFILE_KEY,
+    defaultValue = "false",
+    name = "Parser profiling",
+    description = "Collect per grammar rule parse statistics. The top rules of slow files are logged, "
+      + "and the statistics are written to " + ErlangPlugin.PARSER_PROFILE_FILENAME + " in the scanner work directory.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.PARSER_PROFILE_SLOW_FILE_KEY,
+    defaultValue = ErlangPlugin.PARSER_PROFILE_DEFAULT_SLOW_FILE,
+    name = "Parser profiling slow file threshold",
+    description = "Parse time, in milliseconds, above which the profile of a file is logged.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.PARSER_TIMEOUT_KEY,
+    defaultValue = "0",
+    name = "Parse timeout",
+    description = "Time, in milliseconds, after which the parsing of a file is abandoned and reported as a parsing error. "
+      + "0 means no limit.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.PARSER_MAX_STEPS_KEY,
+    defaultValue = "0",
+    name = "Parse steps limit",
+    description = "Number of grammar rule invocations after which the parsing of a file is abandoned and reported as a parsing error. "
+      + "0 means no limit.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.PARSER_SPLIT_THRESHOLD_KEY,
+    defaultValue = ErlangPlugin.PARSER_DEFAULT_SPLIT_THRESHOLD,
+    name = "Parallel parsing threshold",
+    description = "Size, in bytes, from which the top level forms of a file are parsed in parallel. 0 means never.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.INCLUDE_PATHS_KEY,
+    defaultValue = ErlangPlugin.INCLUDE_DEFAULT_PATHS,
+    name = "Include paths",
+    description = "Comma-separated list of directories, relative to the project base directory, where the files of -include "
+      + "and -include_lib directives are looked for after the directory of the including file.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.PREPROCESSOR_KEY,
+    defaultValue = "true",
+    name = "Macro expansion",
+    description = "Parse again the files which cannot be parsed once their macros are expanded, using the -define "
+      + "directives of the file and of its included files, and its -ifdef and -ifndef directives.",
+    global = true, project = true),
+
+  @Property(key = ErlangPlugin.BEAM_PATHS_KEY,
+    defaultValue = "",
+    name = "BEAM paths",
+    description = "Comma-separated list of ebin directories, relative to the project base directory. The functions, "
+      + "statements and complexity of the files compiled with debug_info into one of them, and not modified since, "
+      + "are measured on the abstract code of their BEAM file.",
     global = true, project = true)
 })
 public class ErlangPlugin implements Plugin {
@@ -91,6 +169,24 @@ public class ErlangPlugin implements Plugin {
   public static final String FILE_SUFFIXES_DEFVALUE = "erl";
   public static final String REBAR_CONFIG_FILENAME_KEY = "sonar.erlang.rebar.config";
   public static final String REBAR_DEFAULT_CONFIG_FILENAME = "rebar.config";
+  public static final String ANALYSIS_THREADS_KEY = "sonar.erlang.analysis.threads";
+  public static final String ANALYSIS_DEFAULT_THREADS = "0";
+  public static final String ANALYSIS_CACHE_KEY = "sonar.erlang.analysis.cache";
+  public static final String ANALYSIS_DEFAULT_CACHE = "true";
+  public static final String ANALYSIS_CACHE_PATH_KEY = "sonar.erlang.analysis.cache.path";
+  public static final String PARSER_MEMOIZED_RULES_KEY = "sonar.erlang.parser.memoizedRules";
+  public static final String PARSER_PROFILE_KEY = "sonar.erlang.parser.profile";
+  public static final String PARSER_PROFILE_FILENAME = "erlang-parse-profile.json";
+  public static final String PARSER_PROFILE_SLOW_FILE_KEY = "sonar.erlang.parser.profile.slowFileMillis";
+  public static final String PARSER_PROFILE_DEFAULT_SLOW_FILE = "1000";
+  public static final String PARSER_TIMEOUT_KEY = "sonar.erlang.parser.timeoutMillis";
+  public static final String PARSER_MAX_STEPS_KEY = "sonar.erlang.parser.maxSteps";
+  public static final String PARSER_SPLIT_THRESHOLD_KEY = "sonar.erlang.parser.splitThreshold";
+  public static final String PARSER_DEFAULT_SPLIT_THRESHOLD = "262144";
+  public static final String INCLUDE_PATHS_KEY = "sonar.erlang.includePaths";
+  public static final String INCLUDE_DEFAULT_PATHS = "include";
+  public static final String PREPROCESSOR_KEY = "sonar.erlang.preprocessor";
+  public static final String BEAM_PATHS_KEY = "sonar.erlang.beam.paths";
 
   @Override
   public void define(Context context) {
@@ -19,7 +19,6 @@
  */
 package org.sonar.plugins.erlang;
 
-import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.fs.FilePredicates;
@@ -31,19 +30,28 @@ import org.sonar.api.batch.rule.CheckFactory;
 import org.sonar.api.batch.rule.Checks;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
+import org.sonar.api.batch.sensor.cpd.NewCpdTokens;
+import org.sonar.api.batch.sensor.highlighting.NewHighlighting;
 import org.sonar.api.batch.sensor.issue.NewIssue;
 import org.sonar.api.batch.sensor.issue.NewIssueLocation;
 import org.sonar.api.batch.sensor.measure.NewMeasure;
-import org.sonar.squidbridge.AstScanner;
 
 import org.sonar.squidbridge.SquidAstVisitor;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.ce.measure.RangeDistributionBuilder;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.erlang.ErlangAstScanner;
+import org.sonar.erlang.ErlangConfiguration;
+import org.sonar.erlang.ErlangParallelAstScanner;
 import org.sonar.erlang.api.ErlangMetric;
 import org.sonar.erlang.checks.CheckList;
+import org.sonar.erlang.metrics.CallGraph;
+import org.sonar.erlang.parser.ParseProfile;
+import org.sonar.erlang.preprocessor.Header;
+import org.sonar.erlang.preprocessor.Include;
+import org.sonar.plugins.erlang.beam.BeamFunction;
+import org.sonar.plugins.erlang.beam.BeamIndex;
+import org.sonar.plugins.erlang.beam.BeamModule;
 import org.sonar.plugins.erlang.core.Erlang;
 
 import org.sonar.squidbridge.api.CheckMessage;
@@ -59,10 +67,20 @@ import org.sonar.squidbridge.indexer.QueryByParent;
 import org.sonar.squidbridge.indexer.QueryByType;
 import org.sonar.sslr.parser.LexerlessGrammar;
 
+import javax.annotation.Nullable;
+
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ErlangSquidSensor implements Sensor {
 
@@ -71,15 +89,14 @@ public class ErlangSquidSensor implements Sensor {
   private static final Number[] FUNCTIONS_DISTRIB_BOTTOM_LIMITS = {1, 2, 4, 6, 8, 10, 12, 20, 30};
   private static final Number[] FILES_DISTRIB_BOTTOM_LIMITS = {0, 5, 10, 20, 30, 60, 90};
 
-  private final Checks<Object> checks;
+  private final CheckFactory checkFactory;
+  private final List<Checks<Object>> checks = new ArrayList<>();
   private final MetricFinder metricFinder;
 
-  private AstScanner scanner;
+  private ErlangParallelAstScanner scanner;
 
   public ErlangSquidSensor(CheckFactory checkFactory, MetricFinder metricFinder) {
-    this.checks = checkFactory
-            .create(CheckList.REPOSITORY_KEY)
-            .addAnnotatedChecks((Iterable<?>) CheckList.getChecks());
+    this.checkFactory = checkFactory;
     this.metricFinder = metricFinder;
   }
 
@@ -93,124 +110,315 @@ public class ErlangSquidSensor implements Sensor {
   @Override
   public void execute(SensorContext context) {
     FileSystem fileSystem = context.fileSystem();
-    List<SquidAstVisitor<LexerlessGrammar>> visitors = new ArrayList<SquidAstVisitor<LexerlessGrammar>>((Collection) checks.all());
-    visitors.add(new ErlangHighlighter(context));
-    visitors.add(new ErlangCpdVisitor(context));
-    this.scanner = ErlangAstScanner.create(fileSystem.encoding(), visitors.toArray(new SquidAstVisitor[visitors.size()]));
+    int threads = context.settings().getInt(ErlangPlugin.ANALYSIS_THREADS_KEY);
+    checks.clear();
+    ErlangConfiguration conf = configuration(context);
 
     FilePredicates p = fileSystem.predicates();
-    Iterable<java.io.File> inputFiles = fileSystem.files(p.and(p.hasType(InputFile.Type.MAIN), p.hasLanguage(Erlang.KEY)));
-    scanner.scanFiles(Lists.newArrayList(inputFiles));
+    List<InputFile> inputFiles = new ArrayList<>();
+    List<java.io.File> files = new ArrayList<>();
+    for (InputFile inputFile : fileSystem.inputFiles(p.and(p.hasType(InputFile.Type.MAIN), p.hasLanguage(Erlang.KEY)))) {
+      inputFiles.add(inputFile);
+      files.add(new java.io.File(inputFile.absolutePath()));
+    }
+    if (hasOnlyLexicalChecks()) {
+      LOG.info("Every active rule is lexical, the files are only lexed: the function metrics only come from BEAM files");
+      conf.setLexicalOnly(true);
+    }
+    BeamIndex beamIndex = new BeamIndex(paths(context, ErlangPlugin.BEAM_PATHS_KEY));
+
+    ErlangAnalysisCache cache = ErlangAnalysisCache.create(context, conf);
+    this.scanner = new ErlangParallelAstScanner(conf, threads, () -> createVisitors(context, cache));
+    List<java.io.File> filesToScan = new ArrayList<>();
+    CallGraph knownCalls = new CallGraph();
+    int unchanged = 0;
+    for (int i = 0; i < inputFiles.size(); i++) {
+      ErlangAnalysisCache.Entry entry = cache.get(inputFiles.get(i), beamIndex.locate(files.get(i)));
+      if (entry == null) {
+        filesToScan.add(files.get(i));
+      } else {
+        replay(context, inputFiles.get(i), entry);
+        entry.restoreCalls(knownCalls);
+        unchanged++;
+      }
+    }
+    if (cache.isEnabled()) {
+      LOG.info("{} unchanged file(s) restored from the analysis cache, {} file(s) to analyse", unchanged, filesToScan.size());
+    }
+    Map<String, BeamModule> beams = beamIndex.isEmpty() ? null : beams(beamIndex, filesToScan);
+    scanner.setKnownCalls(unchanged > 0 ? knownCalls : null);
+    scanner.scanFiles(filesToScan);
+
+    save(context, conf, cache, beamIndex, beams, scanner.getIndex().search(new QueryByType(SourceFile.class)));
+    cache.cleanUp();
+    if (conf.getParseProfile() != null) {
+      writeParseProfile(context, conf.getParseProfile());
+    }
+  }
+
+  /**
+   * The configuration of the analysis from the settings, before the {@link ErlangConfiguration#isLexicalOnly()
+   * lexical only analysis} is decided.
+   */
+  static ErlangConfiguration configuration(SensorContext context) {
+    ErlangConfiguration conf = new ErlangConfiguration(context.fileSystem().encoding())
+      .setMemoizedRules(Arrays.asList(context.settings().getStringArray(ErlangPlugin.PARSER_MEMOIZED_RULES_KEY)))
+      .setParseBudget(context.settings().getLong(ErlangPlugin.PARSER_TIMEOUT_KEY),
+        context.settings().getLong(ErlangPlugin.PARSER_MAX_STEPS_KEY))
+      .setSplitThreshold(context.settings().getLong(ErlangPlugin.PARSER_SPLIT_THRESHOLD_KEY))
+      .setIncludePaths(paths(context, ErlangPlugin.INCLUDE_PATHS_KEY))
+      .setPreprocessorEnabled(context.settings().getBoolean(ErlangPlugin.PREPROCESSOR_KEY));
+    if (context.settings().getBoolean(ErlangPlugin.PARSER_PROFILE_KEY)) {
+      conf.setParseProfile(new ParseProfile(context.settings().getLong(ErlangPlugin.PARSER_PROFILE_SLOW_FILE_KEY),
+        ParseProfile.DEFAULT_TOP_RULES));
+    }
+    return conf;
+  }
+
+  private static List<java.io.File> paths(SensorContext context, String key) {
+    List<java.io.File> paths = new ArrayList<>();
+    for (String path : context.settings().getStringArray(key)) {
+      java.io.File file = new java.io.File(path.trim());
+      paths.add(file.isAbsolute() ? file : new java.io.File(context.fileSystem().baseDir(), path.trim()));
+    }
+    return paths;
+  }
 
-    save(context, scanner.getIndex().search(new QueryByType(SourceFile.class)));
+  /**
+   * The modules of the files which have an up to date BEAM file, by absolute path.
+   */
+  private static Map<String, BeamModule> beams(BeamIndex index, List<java.io.File> files) {
+    Map<String, BeamModule> beams = new HashMap<>();
+    for (java.io.File file : files) {
+      BeamModule beam = index.find(file);
+      if (beam != null) {
+        beams.put(file.getAbsolutePath(), beam);
+      }
+    }
+    return beams;
   }
 
-  private void save(SensorContext context, Collection<SourceCode> squidSourceFiles) {
+  /**
+   * Whether every active rule can run on a lexical only analysis. Without any active rule, the files are parsed
+   * for their metrics.
+   */
+  private boolean hasOnlyLexicalChecks() {
+    Collection<Object> activeChecks = checkFactory
+      .create(CheckList.REPOSITORY_KEY)
+      .addAnnotatedChecks((Iterable<?>) CheckList.getChecks())
+      .all();
+    if (activeChecks.isEmpty()) {
+      return false;
+    }
+    for (Object check : activeChecks) {
+      if (!CheckList.getLexicalChecks().contains(check.getClass())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeParseProfile(SensorContext context, ParseProfile profile) {
+    java.io.File workDir = context.fileSystem().workDir();
+    if (workDir == null) {
+      return;
+    }
+    Path path = workDir.toPath().resolve(ErlangPlugin.PARSER_PROFILE_FILENAME);
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      profile.writeJson(writer);
+      LOG.info("Parse profile of {} file(s) written to {}", profile.getFiles(), path);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the parse profile to {}", path, e);
+    }
+  }
+
+  /**
+   * Every scanner thread needs its own check instances, as checks keep per file state.
+   */
+  private List<SquidAstVisitor<LexerlessGrammar>> createVisitors(SensorContext context, ErlangAnalysisCache cache) {
+    Checks<Object> workerChecks = checkFactory
+            .create(CheckList.REPOSITORY_KEY)
+            .addAnnotatedChecks((Iterable<?>) CheckList.getChecks());
+    checks.add(workerChecks);
+    List<SquidAstVisitor<LexerlessGrammar>> visitors = new ArrayList<SquidAstVisitor<LexerlessGrammar>>((Collection) workerChecks.all());
+    visitors.add(new ErlangHighlighter(context, cache));
+    visitors.add(new ErlangCpdVisitor(context, cache));
+    visitors.add(new ParseFailureVisitor(cache));
+    return visitors;
+  }
+
+  /**
+   * @param beams the modules of the files which have an up to date BEAM file, null when no BEAM path is set
+   */
+  private void save(SensorContext context, ErlangConfiguration conf, ErlangAnalysisCache cache, BeamIndex beamIndex,
+    @Nullable Map<String, BeamModule> beams, Collection<SourceCode> squidSourceFiles) {
     FileSystem fileSystem = context.fileSystem();
+    int fromBeam = 0;
     for (SourceCode squidSourceFile : squidSourceFiles) {
       SourceFile squidFile = (SourceFile) squidSourceFile;
 
       InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().hasAbsolutePath(squidFile.getKey()));
 
       if (inputFile != null) {
-        saveFilesComplexityDistribution(context, inputFile, squidFile);
-        saveFunctionsComplexityDistribution(context, inputFile, squidFile);
-        saveMeasures(context, inputFile, squidFile);
-        saveViolations(context, inputFile, squidFile);
+        ErlangAnalysisCache.Entry entry = cache.pending(squidFile.getKey());
+        saveFilesComplexityDistribution(entry, squidFile);
+        saveFunctionsComplexityDistribution(entry, squidFile);
+        saveMeasures(entry, squidFile);
+        BeamModule beam = beams == null ? null : beams.get(squidFile.getKey());
+        if (beam != null) {
+          saveMeasures(entry, beam);
+          fromBeam++;
+        }
+        saveViolations(entry, squidFile);
+        saveEntry(context, inputFile, entry);
+        if (cache.isEnabled()) {
+          saveDependencies(conf, cache, beamIndex, entry, squidFile);
+        }
+        cache.put(inputFile, entry);
       } else {
         LOG.warn("Cannot save analysis information for file {}. Unable to retrieve the associated sonar resource.", squidFile.getKey());
       }
     }
+    if (beams != null) {
+      LOG.info("Function metrics of {} file(s) read from the abstract code of their BEAM file", fromBeam);
+    }
   }
 
-  private void saveMeasures(SensorContext context, InputFile sonarFile, SourceFile squidFile) {
-    NewMeasure<Serializable> m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.NCLOC_KEY))
-            .on(sonarFile)
-            .withValue(squidFile.getInt(ErlangMetric.LINES_OF_CODE))
-            .save();
-
-    m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.FUNCTIONS_KEY))
-            .on(sonarFile)
-            .withValue(squidFile.getInt(ErlangMetric.FUNCTIONS))
-            .save();
-
-    m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.STATEMENTS_KEY))
-            .on(sonarFile)
-            .withValue(squidFile.getInt(ErlangMetric.STATEMENTS))
-            .save();
-
-    m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.COMPLEXITY_KEY))
-            .on(sonarFile)
-            .withValue(squidFile.getInt(ErlangMetric.COMPLEXITY))
-            .save();
-
-    m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.COMMENT_LINES_KEY))
-            .on(sonarFile)
-            .withValue(squidFile.getInt(ErlangMetric.COMMENT_LINES))
-            .save();
-
-    m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.PUBLIC_API_KEY))
-            .on(sonarFile)
-            .withValue(squidFile.getInt(ErlangMetric.PUBLIC_API))
-            .save();
+  /**
+   * The cache entry depends on the headers of the file and on its BEAM file, and keeps the calls of its functions.
+   */
+  @SuppressWarnings("unchecked")
+  private static void saveDependencies(ErlangConfiguration conf, ErlangAnalysisCache cache, BeamIndex beamIndex,
+    ErlangAnalysisCache.Entry entry, SourceFile squidFile) {
+    java.io.File file = new java.io.File(squidFile.getKey());
+    List<Include> includes = (List<Include>) squidFile.getData(ErlangMetric.INCLUDED_FILES);
+    if (includes != null) {
+      for (Header header : conf.getHeaderCache().headers(file, includes)) {
+        cache.dependOn(squidFile.getKey(), header.getFile());
+      }
+    }
+    java.io.File beam = beamIndex.locate(file);
+    if (beam != null) {
+      entry.beam = beam.getAbsolutePath();
+      cache.dependOn(squidFile.getKey(), beam);
+    }
+    CallGraph.Part calls = (CallGraph.Part) squidFile.getData(ErlangMetric.MAX_DEPTH_OF_CALLING);
+    if (calls != null) {
+      entry.recordCalls(calls);
+    }
+  }
+
+  private void saveMeasures(ErlangAnalysisCache.Entry entry, SourceFile squidFile) {
+    entry.measures.put(CoreMetrics.NCLOC_KEY, squidFile.getInt(ErlangMetric.LINES_OF_CODE));
+    entry.measures.put(CoreMetrics.FUNCTIONS_KEY, squidFile.getInt(ErlangMetric.FUNCTIONS));
+    entry.measures.put(CoreMetrics.STATEMENTS_KEY, squidFile.getInt(ErlangMetric.STATEMENTS));
+    entry.measures.put(CoreMetrics.COMPLEXITY_KEY, squidFile.getInt(ErlangMetric.COMPLEXITY));
+    entry.measures.put(CoreMetrics.COMMENT_LINES_KEY, squidFile.getInt(ErlangMetric.COMMENT_LINES));
+    entry.measures.put(CoreMetrics.PUBLIC_API_KEY, squidFile.getInt(ErlangMetric.PUBLIC_API));
 
     int publicUndocApi = squidFile.getInt(ErlangMetric.PUBLIC_API) - squidFile.getInt(ErlangMetric.PUBLIC_DOC_API);
-    m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.PUBLIC_UNDOCUMENTED_API_KEY))
-            .on(sonarFile)
-            .withValue(publicUndocApi)
-            .save();
+    entry.measures.put(CoreMetrics.PUBLIC_UNDOCUMENTED_API_KEY, publicUndocApi);
+  }
+
+  /**
+   * The abstract code is the one of the preprocessed module, so the functions and branches coming from
+   * macros are measured too.
+   */
+  private static void saveMeasures(ErlangAnalysisCache.Entry entry, BeamModule beam) {
+    entry.measures.put(CoreMetrics.FUNCTIONS_KEY, beam.getFunctions().size());
+    entry.measures.put(CoreMetrics.STATEMENTS_KEY, beam.getStatements());
+    entry.measures.put(CoreMetrics.COMPLEXITY_KEY, beam.getComplexity());
+
+    RangeDistributionBuilder functionsDistribution = new RangeDistributionBuilder(FUNCTIONS_DISTRIB_BOTTOM_LIMITS);
+    for (BeamFunction function : beam.getFunctions()) {
+      functionsDistribution.add(function.getComplexity());
+    }
+    entry.measures.put(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY, functionsDistribution.build());
+    RangeDistributionBuilder filesDistribution = new RangeDistributionBuilder(FILES_DISTRIB_BOTTOM_LIMITS);
+    filesDistribution.add(beam.getComplexity());
+    entry.measures.put(CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION_KEY, filesDistribution.build());
   }
 
-  private void saveFunctionsComplexityDistribution(SensorContext context, InputFile sonarFile, SourceFile squidFile) {
+  private void saveFunctionsComplexityDistribution(ErlangAnalysisCache.Entry entry, SourceFile squidFile) {
     Collection<SourceCode> squidFunctionsInFile = scanner.getIndex().search(
       new QueryByParent(squidFile), new QueryByType(SourceFunction.class));
     RangeDistributionBuilder complexityDistribution = new RangeDistributionBuilder(FUNCTIONS_DISTRIB_BOTTOM_LIMITS);
     for (SourceCode squidFunction : squidFunctionsInFile) {
       complexityDistribution.add(squidFunction.getDouble(ErlangMetric.COMPLEXITY));
     }
-    NewMeasure<Serializable> m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY))
-            .on(sonarFile)
-            .withValue(complexityDistribution.build())
-            .save();
+    entry.measures.put(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY, complexityDistribution.build());
   }
 
-  private void saveFilesComplexityDistribution(SensorContext context, InputFile sonarFile, SourceFile squidFile) {
+  private void saveFilesComplexityDistribution(ErlangAnalysisCache.Entry entry, SourceFile squidFile) {
     RangeDistributionBuilder complexityDistribution = new RangeDistributionBuilder(FILES_DISTRIB_BOTTOM_LIMITS);
     complexityDistribution.add(squidFile.getDouble(ErlangMetric.COMPLEXITY));
-    NewMeasure<Serializable> m = context.newMeasure();
-    m.forMetric(metricFinder.findByKey(CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION_KEY))
-            .on(sonarFile)
-            .withValue(complexityDistribution.build())
-            .save();
+    entry.measures.put(CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION_KEY, complexityDistribution.build());
   }
 
-  private void saveViolations(SensorContext context, InputFile sonarFile, SourceFile squidFile) {
+  private void saveViolations(ErlangAnalysisCache.Entry entry, SourceFile squidFile) {
     Collection<CheckMessage> messages = squidFile.getCheckMessages();
     if (messages != null) {
       for (CheckMessage message : messages) {
-        RuleKey ruleKey = checks.ruleKey(message.getCheck());
-        TextRange range = sonarFile.selectLine(message.getLine());
-        NewIssue issue = context
-                .newIssue()
-                .forRule(ruleKey);
-
-        NewIssueLocation location = issue.newLocation()
-                .on(sonarFile)
-                .at(range)
-                .message(message.formatDefaultMessage());
-
-        issue.at(location);
-        issue.save();
+        RuleKey ruleKey = ruleKey(message.getCheck());
+        entry.issues.add(new ErlangAnalysisCache.Issue(String.valueOf(ruleKey), message.getLine(), message.formatDefaultMessage()));
+      }
+    }
+  }
+
+  private void saveEntry(SensorContext context, InputFile sonarFile, ErlangAnalysisCache.Entry entry) {
+    for (Map.Entry<String, Serializable> measure : entry.measures.entrySet()) {
+      NewMeasure<Serializable> m = context.newMeasure();
+      m.forMetric(metricFinder.findByKey(measure.getKey()))
+              .on(sonarFile)
+              .withValue(measure.getValue())
+              .save();
+    }
+
+    for (ErlangAnalysisCache.Issue cachedIssue : entry.issues) {
+      TextRange range = sonarFile.selectLine(cachedIssue.line);
+      NewIssue issue = context
+              .newIssue()
+              .forRule(RuleKey.parse(cachedIssue.ruleKey));
+
+      NewIssueLocation location = issue.newLocation()
+              .on(sonarFile)
+              .at(range)
+              .message(cachedIssue.message);
+
+      issue.at(location);
+      issue.save();
+    }
+  }
+
+  /**
+   * Saves the result of a previous analysis of an unchanged file, including what the
+   * highlighter and the CPD visitor would have saved.
+   */
+  private void replay(SensorContext context, InputFile sonarFile, ErlangAnalysisCache.Entry entry) {
+    saveEntry(context, sonarFile, entry);
+
+    NewHighlighting highlighting = context.newHighlighting().onFile(sonarFile);
+    for (ErlangAnalysisCache.Highlighting h : entry.highlightings) {
+      highlighting.highlight(h.startLine, h.startLineOffset, h.endLine, h.endLineOffset, h.type);
+    }
+    highlighting.save();
+
+    NewCpdTokens cpdTokens = context.newCpdTokens().onFile(sonarFile);
+    for (ErlangAnalysisCache.CpdToken token : entry.cpdTokens) {
+      cpdTokens.addToken(token.startLine, token.startLineOffset, token.endLine, token.endLineOffset, token.image);
+    }
+    cpdTokens.save();
+  }
+
+  @Nullable
+  private RuleKey ruleKey(Object check) {
+    for (Checks<Object> workerChecks : checks) {
+      RuleKey ruleKey = workerChecks.ruleKey(check);
+      if (ruleKey != null) {
+        return ruleKey;
       }
     }
+    return null;
   }
 
   @Override
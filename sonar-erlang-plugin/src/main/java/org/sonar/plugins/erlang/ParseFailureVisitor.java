@@ -0,0 +1,50 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang;
+
+import com.sonar.sslr.api.RecognitionException;
+import org.sonar.squidbridge.AstScannerExceptionHandler;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+/**
+ * Keeps the files which failed to parse out of the {@link ErlangAnalysisCache}: their headers are only known
+ * from the parsed tree, so their entry could not be invalidated by a change of a header, and a parse aborted by
+ * the parse budget, which may be a time limit, may succeed at the next analysis.
+ */
+class ParseFailureVisitor extends SquidAstVisitor<LexerlessGrammar> implements AstScannerExceptionHandler {
+
+  private final ErlangAnalysisCache cache;
+
+  ParseFailureVisitor(ErlangAnalysisCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public void processRecognitionException(RecognitionException e) {
+    cache.discard(getContext().getFile().getAbsolutePath());
+  }
+
+  @Override
+  public void processException(Exception e) {
+    // the other failures are not caused by the parse
+  }
+
+}
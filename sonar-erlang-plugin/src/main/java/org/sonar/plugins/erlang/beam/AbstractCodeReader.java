@@ -0,0 +1,387 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang.beam;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+
+import javax.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the abstract code of a BEAM file, <code>{raw_abstract_v1, Forms}</code> from an Abst chunk or
+ * <code>{debug_info_v1, erl_abstract_code, {Forms, Options}}</code> from a Dbgi chunk, straight from the
+ * external term format. Only the atoms and integers it needs are decoded; no OtpErlangObject is built.
+ * <p/>
+ * The forms are the ones of the preprocessed module, so the macros are expanded.
+ */
+class AbstractCodeReader {
+
+  private static final int SMALL_ATOM_TAG = 115;
+  private static final int ATOM_UTF8_TAG = 118;
+  private static final int SMALL_ATOM_UTF8_TAG = 119;
+  private static final int MAP_TAG = 116;
+
+  private final OtpInputStream in;
+  private final BeamModule module = new BeamModule();
+  private BeamFunction function;
+
+  private AbstractCodeReader(byte[] term) {
+    this.in = new OtpInputStream(term);
+  }
+
+  @Nullable
+  static BeamModule read(byte[] buf, int offset, int length) throws OtpErlangDecodeException {
+    return new AbstractCodeReader(uncompress(buf, offset, length)).module();
+  }
+
+  private static byte[] uncompress(byte[] buf, int offset, int length) throws OtpErlangDecodeException {
+    if (length < 6 || (buf[offset] & 0xff) != OtpExternal.versionTag || buf[offset + 1] != OtpExternal.compressedTag) {
+      byte[] term = new byte[length];
+      System.arraycopy(buf, offset, term, 0, length);
+      return term;
+    }
+    int size = ((buf[offset + 2] & 0xff) << 24) | ((buf[offset + 3] & 0xff) << 16)
+      | ((buf[offset + 4] & 0xff) << 8) | (buf[offset + 5] & 0xff);
+    byte[] term = new byte[size];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(buf, offset + 6, length - 6);
+      int n = 0;
+      while (n < size && !inflater.finished()) {
+        int inflated = inflater.inflate(term, n, size - n);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        n += inflated;
+      }
+      if (n != size) {
+        throw new OtpErlangDecodeException("Decompression gave " + n + " bytes, not " + size);
+      }
+    } catch (DataFormatException e) {
+      throw new OtpErlangDecodeException("Cannot decompress the abstract code: " + e.getMessage());
+    } finally {
+      inflater.end();
+    }
+    return term;
+  }
+
+  @Nullable
+  private BeamModule module() throws OtpErlangDecodeException {
+    int arity = in.read_tuple_head();
+    String version = atom();
+    if ("raw_abstract_v1".equals(version) && arity == 2) {
+      forms();
+      return module;
+    }
+    if ("debug_info_v1".equals(version) && arity == 3 && "erl_abstract_code".equals(atom())
+      && in.read_tuple_head() == 2 && !isAtom()) {
+      forms();
+      return module;
+    }
+    // Compiled without debug_info, or by another compiler than erl_compile
+    return null;
+  }
+
+  private void forms() throws OtpErlangDecodeException {
+    int n = listHead();
+    for (int i = 0; i < n; i++) {
+      form();
+    }
+    listTail(n);
+  }
+
+  private void form() throws OtpErlangDecodeException {
+    int arity = in.read_tuple_head();
+    String kind = atom();
+    if ("attribute".equals(kind) && arity == 4) {
+      skip();
+      attribute(atom());
+    } else if ("function".equals(kind) && arity == 5) {
+      int line = line();
+      String name = atom();
+      function = new BeamFunction(name, (int) in.read_long(), line);
+      module.functions.add(function);
+      int n = listHead();
+      for (int i = 0; i < n; i++) {
+        function.addClause();
+        clause();
+      }
+      listTail(n);
+    } else {
+      skip(arity - 1);
+    }
+  }
+
+  private void attribute(String name) throws OtpErlangDecodeException {
+    if ("module".equals(name) && isAtom()) {
+      module.name = atom();
+    } else if ("export".equals(name)) {
+      int n = listHead();
+      for (int i = 0; i < n; i++) {
+        in.read_tuple_head();
+        module.exports.add(atom() + "/" + in.read_long());
+      }
+      listTail(n);
+    } else if ("record".equals(name)) {
+      in.read_tuple_head();
+      module.records.add(atom());
+      skip();
+    } else if ("file".equals(name) && module.source == null) {
+      in.read_tuple_head();
+      module.source = in.read_string();
+      skip();
+    } else {
+      skip();
+    }
+  }
+
+  /**
+   * Line of an annotation: a line, a {Line, Column} location, or a list of properties with a location.
+   */
+  private int line() throws OtpErlangDecodeException {
+    int tag = in.peek1skip_version();
+    if (tag == OtpExternal.smallIntTag || tag == OtpExternal.intTag) {
+      return (int) in.read_long();
+    }
+    if (tag == OtpExternal.smallTupleTag) {
+      int arity = in.read_tuple_head();
+      int line = line();
+      skip(arity - 1);
+      return line;
+    }
+    if (tag == OtpExternal.listTag) {
+      int line = 0;
+      int n = listHead();
+      for (int i = 0; i < n; i++) {
+        int arity = in.read_tuple_head();
+        if (arity == 2 && "location".equals(atom())) {
+          line = line();
+        } else {
+          skip(arity - (arity == 2 ? 1 : 0));
+        }
+      }
+      listTail(n);
+      return line;
+    }
+    skip();
+    return 0;
+  }
+
+  /**
+   * <code>{clause, Anno, Patterns, Guards, Body}</code>, the tag already peeked.
+   */
+  private void clause() throws OtpErlangDecodeException {
+    int arity = in.read_tuple_head();
+    atom();
+    skip(3);
+    body();
+    skip(arity - 5);
+  }
+
+  private void branches() throws OtpErlangDecodeException {
+    int n = listHead();
+    for (int i = 0; i < n; i++) {
+      function.addBranch();
+      clause();
+    }
+    listTail(n);
+  }
+
+  private void body() throws OtpErlangDecodeException {
+    int n = listHead();
+    for (int i = 0; i < n; i++) {
+      function.addStatement();
+      expression();
+    }
+    listTail(n);
+  }
+
+  private void expression() throws OtpErlangDecodeException {
+    int tag = in.peek1skip_version();
+    if (tag == OtpExternal.listTag) {
+      int n = listHead();
+      for (int i = 0; i < n; i++) {
+        expression();
+      }
+      listTail(n);
+    } else if (tag == OtpExternal.smallTupleTag || tag == OtpExternal.largeTupleTag) {
+      int arity = in.read_tuple_head();
+      if (arity > 0 && isAtom()) {
+        expression(atom(), arity);
+      } else {
+        for (int i = 0; i < arity; i++) {
+          expression();
+        }
+      }
+    } else {
+      skip();
+    }
+  }
+
+  private void expression(String kind, int arity) throws OtpErlangDecodeException {
+    if ("case".equals(kind) && arity == 4) {
+      skip();
+      expression();
+      branches();
+    } else if ("if".equals(kind) && arity == 3) {
+      skip();
+      branches();
+    } else if ("receive".equals(kind) && (arity == 3 || arity == 5)) {
+      skip();
+      branches();
+      if (arity == 5) {
+        expression();
+        body();
+      }
+    } else if ("try".equals(kind) && arity == 6) {
+      skip();
+      body();
+      branches();
+      branches();
+      body();
+    } else if ("block".equals(kind) && arity == 3) {
+      skip();
+      body();
+    } else if ("clause".equals(kind) && arity == 5) {
+      // Clause of a fun, which does not count for the complexity
+      skip(3);
+      body();
+    } else {
+      for (int i = 1; i < arity; i++) {
+        expression();
+      }
+    }
+  }
+
+  private boolean isAtom() throws OtpErlangDecodeException {
+    int tag = in.peek1skip_version();
+    return tag == OtpExternal.atomTag || tag == SMALL_ATOM_TAG || tag == ATOM_UTF8_TAG || tag == SMALL_ATOM_UTF8_TAG;
+  }
+
+  private String atom() throws OtpErlangDecodeException {
+    int tag = in.read1skip_version();
+    int length;
+    if (tag == OtpExternal.atomTag || tag == ATOM_UTF8_TAG) {
+      length = in.read2BE();
+    } else if (tag == SMALL_ATOM_TAG || tag == SMALL_ATOM_UTF8_TAG) {
+      length = in.read1();
+    } else {
+      throw new OtpErlangDecodeException("Wrong tag encountered, expected an atom, got " + tag);
+    }
+    byte[] bytes = new byte[length];
+    in.readN(bytes);
+    return new String(bytes, tag == ATOM_UTF8_TAG || tag == SMALL_ATOM_UTF8_TAG
+      ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Number of elements of a list, whose tail follows them unless the list is empty.
+   */
+  private int listHead() throws OtpErlangDecodeException {
+    int tag = in.read1skip_version();
+    if (tag == OtpExternal.nilTag) {
+      return 0;
+    }
+    if (tag == OtpExternal.listTag) {
+      return in.read4BE();
+    }
+    throw new OtpErlangDecodeException("Wrong tag encountered, expected a list, got " + tag);
+  }
+
+  private void listTail(int n) throws OtpErlangDecodeException {
+    if (n > 0) {
+      skip();
+    }
+  }
+
+  private void skip(int terms) throws OtpErlangDecodeException {
+    for (int i = 0; i < terms; i++) {
+      skip();
+    }
+  }
+
+  private void skip() throws OtpErlangDecodeException {
+    int tag = in.read1skip_version();
+    switch (tag) {
+      case OtpExternal.smallIntTag:
+        skipBytes(1);
+        break;
+      case OtpExternal.intTag:
+        skipBytes(4);
+        break;
+      case OtpExternal.floatTag:
+        skipBytes(31);
+        break;
+      case OtpExternal.newFloatTag:
+        skipBytes(8);
+        break;
+      case OtpExternal.atomTag:
+      case ATOM_UTF8_TAG:
+      case OtpExternal.stringTag:
+        skipBytes(in.read2BE());
+        break;
+      case SMALL_ATOM_TAG:
+      case SMALL_ATOM_UTF8_TAG:
+        skipBytes(in.read1());
+        break;
+      case OtpExternal.smallTupleTag:
+        skip(in.read1());
+        break;
+      case OtpExternal.largeTupleTag:
+        skip(in.read4BE());
+        break;
+      case OtpExternal.nilTag:
+        break;
+      case OtpExternal.listTag:
+        skip(in.read4BE() + 1);
+        break;
+      case MAP_TAG:
+        skip(2 * in.read4BE());
+        break;
+      case OtpExternal.binTag:
+        skipBytes(in.read4BE());
+        break;
+      case OtpExternal.bitBinTag:
+        skipBytes(in.read4BE() + 1);
+        break;
+      case OtpExternal.smallBigTag:
+        skipBytes(in.read1() + 1);
+        break;
+      case OtpExternal.largeBigTag:
+        skipBytes(in.read4BE() + 1);
+        break;
+      default:
+        in.setPos(in.getPos() - 1);
+        in.read_any();
+        break;
+    }
+  }
+
+  private void skipBytes(int n) throws OtpErlangDecodeException {
+    if (in.skip(n) != n) {
+      throw new OtpErlangDecodeException("Cannot read from input stream");
+    }
+  }
+}
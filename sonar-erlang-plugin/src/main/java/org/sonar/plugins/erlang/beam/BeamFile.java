@@ -0,0 +1,79 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang.beam;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads the abstract code chunk of a BEAM file.
+ * <p/>
+ * A BEAM file is an IFF container: "FOR1", the size, "BEAM", then chunks made of a four character id, a
+ * big endian size and the data, padded to four bytes. The abstract code is in the Dbgi chunk since OTP 20,
+ * and in the Abst chunk before.
+ */
+public final class BeamFile {
+
+  private static final String[] ABSTRACT_CODE_CHUNKS = {"Dbgi", "Abst"};
+
+  private BeamFile() {
+  }
+
+  /**
+   * @return the module, or null when the file was compiled without debug_info
+   */
+  @Nullable
+  public static BeamModule read(File file) throws IOException {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    if (bytes.length < 12 || !"FOR1".equals(id(bytes, 0)) || !"BEAM".equals(id(bytes, 8))) {
+      throw new IOException("Not a BEAM file: " + file);
+    }
+    for (String chunk : ABSTRACT_CODE_CHUNKS) {
+      int offset = 12;
+      while (offset + 8 <= bytes.length) {
+        int size = int4(bytes, offset + 4);
+        if (chunk.equals(id(bytes, offset)) && size > 0 && offset + 8 + size <= bytes.length) {
+          try {
+            return AbstractCodeReader.read(bytes, offset + 8, size);
+          } catch (OtpErlangDecodeException e) {
+            throw new IOException("Cannot decode the " + chunk + " chunk of " + file + ": " + e.getMessage(), e);
+          }
+        }
+        offset += 8 + ((size + 3) & ~3);
+      }
+    }
+    return null;
+  }
+
+  private static String id(byte[] bytes, int offset) {
+    return new String(bytes, offset, 4, StandardCharsets.ISO_8859_1);
+  }
+
+  private static int int4(byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+      | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+  }
+}
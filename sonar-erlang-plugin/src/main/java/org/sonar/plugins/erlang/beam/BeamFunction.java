@@ -0,0 +1,90 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang.beam;
+
+/**
+ * A function of the abstract code of a BEAM file, with the metrics the source scanner computes for its
+ * functionDeclaration.
+ */
+public final class BeamFunction {
+
+  private final String name;
+  private final int arity;
+  private final int line;
+  private int clauses;
+  private int complexity;
+  private int statements;
+
+  BeamFunction(String name, int arity, int line) {
+    this.name = name;
+    this.arity = arity;
+    this.line = line;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getArity() {
+    return arity;
+  }
+
+  public String getKey() {
+    return name + "/" + arity;
+  }
+
+  public int getLine() {
+    return line;
+  }
+
+  public int getClauses() {
+    return clauses;
+  }
+
+  /**
+   * One for each clause of the function, plus one for each clause of its if, case, receive and try
+   * expressions.
+   */
+  public int getComplexity() {
+    return complexity;
+  }
+
+  public int getStatements() {
+    return statements;
+  }
+
+  void addClause() {
+    clauses++;
+    complexity++;
+  }
+
+  void addBranch() {
+    complexity++;
+  }
+
+  void addStatement() {
+    statements++;
+  }
+
+  @Override
+  public String toString() {
+    return getKey();
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang.beam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Finds the BEAM file of a source file in the ebin directories of the project.
+ */
+public class BeamIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BeamIndex.class);
+
+  private final List<File> directories;
+
+  public BeamIndex(List<File> directories) {
+    this.directories = directories;
+  }
+
+  public boolean isEmpty() {
+    return directories.isEmpty();
+  }
+
+  /**
+   * @return the module compiled from the source file, or null when there is no BEAM file with abstract code for it,
+   * or when the source file has been modified since it was compiled
+   */
+  @Nullable
+  public BeamModule find(File source) {
+    String name = source.getName();
+    for (File directory : directories) {
+      File beam = beam(directory, source);
+      if (beam == null) {
+        continue;
+      }
+      try {
+        BeamModule module = BeamFile.read(beam);
+        if (module != null && (module.getSource() == null || fileName(module.getSource()).equals(name))) {
+          return module;
+        }
+      } catch (IOException e) {
+        LOG.debug("Cannot read the abstract code of {}", beam, e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The first BEAM file which {@link #find(File)} reads for the source file, without reading it.
+   */
+  @Nullable
+  public File locate(File source) {
+    for (File directory : directories) {
+      File beam = beam(directory, source);
+      if (beam != null) {
+        return beam;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static File beam(File directory, File source) {
+    String name = source.getName();
+    String moduleName = name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : name;
+    File beam = new File(directory, moduleName + ".beam");
+    return !beam.isFile() || beam.lastModified() < source.lastModified() ? null : beam;
+  }
+
+  /**
+   * The path is the one given to the compiler, maybe on another system.
+   */
+  private static String fileName(String path) {
+    return path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang.beam;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The structural metrics of a module, read from the abstract code of its BEAM file.
+ */
+public final class BeamModule {
+
+  @Nullable
+  String name;
+  @Nullable
+  String source;
+  final List<BeamFunction> functions = new ArrayList<>();
+  final Set<String> exports = new LinkedHashSet<>();
+  final List<String> records = new ArrayList<>();
+
+  BeamModule() {
+  }
+
+  @Nullable
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Path of the compiled file, as given to the compiler.
+   */
+  @Nullable
+  public String getSource() {
+    return source;
+  }
+
+  public List<BeamFunction> getFunctions() {
+    return Collections.unmodifiableList(functions);
+  }
+
+  /**
+   * Exported functions, as name/arity.
+   */
+  public Set<String> getExports() {
+    return Collections.unmodifiableSet(exports);
+  }
+
+  public List<String> getRecords() {
+    return Collections.unmodifiableList(records);
+  }
+
+  public int getClauses() {
+    int clauses = 0;
+    for (BeamFunction function : functions) {
+      clauses += function.getClauses();
+    }
+    return clauses;
+  }
+
+  public int getComplexity() {
+    int complexity = 0;
+    for (BeamFunction function : functions) {
+      complexity += function.getComplexity();
+    }
+    return complexity;
+  }
+
+  public int getStatements() {
+    int statements = 0;
+    for (BeamFunction function : functions) {
+      statements += function.getStatements();
+    }
+    return statements;
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(name);
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.rule.CheckFactory;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.erlang.ErlangAstScanner;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.erlang.checks.CheckList;
+import org.sonar.erlang.metrics.CallGraph;
+import org.sonar.plugins.erlang.core.Erlang;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.indexer.QueryByType;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ErlangAnalysisCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File baseDir;
+  private File workDir;
+  private MetricFinder metricFinder;
+
+  @Before
+  public void setup() throws IOException {
+    baseDir = temp.newFolder("base");
+    workDir = temp.newFolder("work");
+    Files.copy(Paths.get("src/test/resources/cpd/person.erl"), baseDir.toPath().resolve("person.erl"));
+
+    metricFinder = mock(MetricFinder.class);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.NCLOC_KEY)).thenReturn(CoreMetrics.NCLOC);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.FUNCTIONS_KEY)).thenReturn(CoreMetrics.FUNCTIONS);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.STATEMENTS_KEY)).thenReturn(CoreMetrics.STATEMENTS);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.COMPLEXITY_KEY)).thenReturn(CoreMetrics.COMPLEXITY);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.COMMENT_LINES_KEY)).thenReturn(CoreMetrics.COMMENT_LINES);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.PUBLIC_API_KEY)).thenReturn(CoreMetrics.PUBLIC_API);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.PUBLIC_UNDOCUMENTED_API_KEY))
+            .thenReturn(CoreMetrics.PUBLIC_UNDOCUMENTED_API);
+    when(metricFinder.<String>findByKey(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY))
+            .thenReturn(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION);
+    when(metricFinder.<String>findByKey(CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION_KEY))
+            .thenReturn(CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION);
+  }
+
+  @Test
+  public void unchanged_file_is_restored_from_cache() throws IOException {
+    SensorContextTester first = analyse(activeRules("MethodHasSpecs"));
+    assertThat(first.allIssues()).hasSize(2);
+
+    SensorContextTester second = context(activeRules("MethodHasSpecs"));
+    assertThat(cache(second).get(inputFile(second), null)).isNotNull();
+    new ErlangSquidSensor(new CheckFactory(second.activeRules()), metricFinder).execute(second);
+
+    assertThat(second.measure("test:person.erl", CoreMetrics.NCLOC_KEY).value()).isEqualTo(14);
+    assertThat(second.measure("test:person.erl", CoreMetrics.COMPLEXITY_KEY).value()).isEqualTo(6);
+    assertThat(second.measure("test:person.erl", CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY).value())
+            .isEqualTo(first.measure("test:person.erl", CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY).value());
+    assertThat(second.allIssues()).hasSize(2);
+    assertThat(second.highlightingTypeAt("test:person.erl", 11, 1)).containsOnly(TypeOfText.COMMENT);
+    assertThat(second.cpdTokens("test:person.erl")).hasSize(first.cpdTokens("test:person.erl").size());
+  }
+
+  @Test
+  public void changed_rules_invalidate_cache() throws IOException {
+    analyse(activeRules("MethodHasSpecs"));
+
+    SensorContextTester context = context(activeRules("MethodHasSpecs", "LineLength"));
+    assertThat(cache(context).get(inputFile(context), null)).isNull();
+  }
+
+  @Test
+  public void changed_file_invalidates_cache() throws IOException {
+    analyse(activeRules("MethodHasSpecs"));
+
+    Files.write(baseDir.toPath().resolve("person.erl"), "\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+    SensorContextTester context = context(activeRules("MethodHasSpecs"));
+    assertThat(cache(context).get(inputFile(context), null)).isNull();
+  }
+
+  @Test
+  public void lexical_rules_without_beam_files() throws IOException {
+    SensorContextTester context = analyse(activeRules("LineLength"));
+    assertThat(context.measure("test:person.erl", CoreMetrics.NCLOC_KEY).value()).isEqualTo(14);
+    assertThat(context.measure("test:person.erl", CoreMetrics.FUNCTIONS_KEY).value()).isEqualTo(0);
+
+    context = analyse(activeRules("LineLength", "MethodHasSpecs"));
+    assertThat(context.measure("test:person.erl", CoreMetrics.FUNCTIONS_KEY).value()).isEqualTo(2);
+  }
+
+  @Test
+  public void disabled_cache() throws IOException {
+    SensorContextTester context = context(activeRules("MethodHasSpecs"));
+    context.settings().setProperty(ErlangPlugin.ANALYSIS_CACHE_KEY, false);
+    assertThat(cache(context).isEnabled()).isFalse();
+  }
+
+  @Test
+  public void changed_header_invalidates_cache() throws IOException {
+    Files.write(baseDir.toPath().resolve("person.hrl"), "-define(AGE, 1).\n".getBytes(UTF_8));
+    Files.write(baseDir.toPath().resolve("person.erl"), "-include(\"person.hrl\").\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+    analyse(activeRules("MethodHasSpecs"));
+    SensorContextTester context = context(activeRules("MethodHasSpecs"));
+    assertThat(cache(context).get(inputFile(context), null)).isNotNull();
+
+    Files.write(baseDir.toPath().resolve("person.hrl"), "-define(AGE, 2).\n".getBytes(UTF_8));
+    assertThat(cache(context).get(inputFile(context), null)).isNull();
+  }
+
+  @Test
+  public void header_is_hashed_once_per_analysis() throws IOException {
+    Files.write(baseDir.toPath().resolve("person.hrl"), "-define(AGE, 1).\n".getBytes(UTF_8));
+    Files.write(baseDir.toPath().resolve("person.erl"), "-include(\"person.hrl\").\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+    analyse(activeRules("MethodHasSpecs"));
+    SensorContextTester context = context(activeRules("MethodHasSpecs"));
+    ErlangAnalysisCache cache = cache(context);
+    assertThat(cache.get(inputFile(context), null)).isNotNull();
+
+    Files.write(baseDir.toPath().resolve("person.hrl"), "-define(AGE, 2).\n".getBytes(UTF_8));
+    assertThat(cache.get(inputFile(context), null)).isNotNull();
+  }
+
+  @Test
+  public void changed_parser_settings_invalidate_cache() throws IOException {
+    analyse(activeRules("MethodHasSpecs"));
+
+    SensorContextTester context = context(activeRules("MethodHasSpecs"));
+    context.settings().setProperty(ErlangPlugin.PREPROCESSOR_KEY, true);
+    assertThat(cache(context).get(inputFile(context), null)).isNull();
+    context.settings().setProperty(ErlangPlugin.PREPROCESSOR_KEY, false);
+    context.settings().setProperty(ErlangPlugin.PARSER_MAX_STEPS_KEY, 1000000);
+    assertThat(cache(context).get(inputFile(context), null)).isNull();
+  }
+
+  @Test
+  public void aborted_parse_is_not_cached() throws IOException {
+    SensorContextTester first = context(activeRules("MethodHasSpecs"));
+    first.settings().setProperty(ErlangPlugin.PARSER_MAX_STEPS_KEY, 10);
+    new ErlangSquidSensor(new CheckFactory(first.activeRules()), metricFinder).execute(first);
+
+    SensorContextTester context = context(activeRules("MethodHasSpecs"));
+    context.settings().setProperty(ErlangPlugin.PARSER_MAX_STEPS_KEY, 10);
+    assertThat(cache(context).get(inputFile(context), null)).isNull();
+  }
+
+  @Test
+  public void failed_parse_is_not_cached() throws IOException {
+    Files.write(baseDir.toPath().resolve("person.erl"), "-include(\"person.hrl\").\nbroken(.\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+    analyse(activeRules("MethodHasSpecs"));
+
+    SensorContextTester context = context(activeRules("MethodHasSpecs"));
+    assertThat(cache(context).get(inputFile(context), null)).isNull();
+  }
+
+  @Test
+  public void calls_are_restored_from_cache() {
+    AstScanner<LexerlessGrammar> scanner = ErlangAstScanner.create(UTF_8);
+    scanner.scanFiles(Collections.singletonList(baseDir.toPath().resolve("person.erl").toFile()));
+    SourceCode file = scanner.getIndex().search(new QueryByType(SourceFile.class)).iterator().next();
+    CallGraph.Part part = (CallGraph.Part) file.getData(ErlangMetric.MAX_DEPTH_OF_CALLING);
+    assertThat(part.callCount()).isGreaterThan(0);
+
+    ErlangAnalysisCache.Entry entry = new ErlangAnalysisCache.Entry();
+    entry.recordCalls(part);
+    CallGraph graph = new CallGraph();
+    entry.restoreCalls(graph);
+
+    assertThat(graph.callCount()).isEqualTo(part.callCount());
+    for (int call = 0; call < part.callCount(); call++) {
+      assertThat(graph.function(graph.caller(call))).isEqualTo(part.caller(call));
+      assertThat(graph.function(graph.callee(call))).isEqualTo(part.callee(call));
+    }
+    for (int function = 0; function < part.functionCount(); function++) {
+      assertThat(graph.isDeclared(graph.function(part.function(function)))).isTrue();
+    }
+  }
+
+  private static ErlangAnalysisCache cache(SensorContextTester context) {
+    return ErlangAnalysisCache.create(context, ErlangSquidSensor.configuration(context));
+  }
+
+  private SensorContextTester analyse(ActiveRules activeRules) throws IOException {
+    SensorContextTester context = context(activeRules);
+    new ErlangSquidSensor(new CheckFactory(activeRules), metricFinder).execute(context);
+    return context;
+  }
+
+  private SensorContextTester context(ActiveRules activeRules) throws IOException {
+    SensorContextTester context = SensorContextTester.create(baseDir);
+    context.fileSystem().setWorkDir(workDir.toPath());
+    context.settings().setProperty(ErlangPlugin.ANALYSIS_CACHE_KEY, true);
+    context.setActiveRules(activeRules);
+    DefaultInputFile file = new TestInputFileBuilder("test", "person.erl")
+            .setLanguage(Erlang.KEY)
+            .setType(InputFile.Type.MAIN)
+            .setModuleBaseDir(baseDir.toPath())
+            .setCharset(UTF_8)
+            .initMetadata(new String(Files.readAllBytes(baseDir.toPath().resolve("person.erl")), UTF_8))
+            .build();
+    context.fileSystem().add(file);
+    return context;
+  }
+
+  private static InputFile inputFile(SensorContextTester context) {
+    return context.fileSystem().inputFile(context.fileSystem().predicates().hasRelativePath("person.erl"));
+  }
+
+  private static ActiveRules activeRules(String... keys) {
+    ActiveRulesBuilder builder = new ActiveRulesBuilder();
+    for (String key : keys) {
+      builder.create(RuleKey.of(CheckList.REPOSITORY_KEY, key)).activate();
+    }
+    return builder.build();
+  }
+
+}
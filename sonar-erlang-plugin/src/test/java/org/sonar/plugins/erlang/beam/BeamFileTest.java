@@ -0,0 +1,107 @@
+/*
+ * SonarQube Erlang Plugin
+ * Copyright (C) 2012-2018 Tamas Kende; Denes Hegedus (Cursor Insight Ltd.)
+ * kende.tamas@gmail.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.erlang.beam;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.erlang.ErlangAstScanner;
+import org.sonar.erlang.api.ErlangMetric;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.indexer.QueryByType;
+import org.sonar.sslr.parser.LexerlessGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BeamFileTest {
+
+  private static final File ERLCOUNT = new File("src/test/resources/org/sonar/plugins/erlang/erlcount");
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void abstract_code() throws IOException {
+    BeamModule module = BeamFile.read(beam("erlcount_lib"));
+
+    assertThat(module.getName()).isEqualTo("erlcount_lib");
+    assertThat(module.getSource()).endsWith("/erlcount/src/erlcount_lib.erl");
+    assertThat(ImmutableList.copyOf(module.getExports())).containsExactly("find_erl/1", "regex_count/2");
+    assertThat(module.getRecords()).containsExactly("file_info", "file_descriptor");
+    assertThat(module.getFunctions()).hasSize(8);
+    assertThat(module.getClauses()).isEqualTo(8);
+
+    BeamFunction function = module.getFunctions().get(2);
+    assertThat(function.getKey()).isEqualTo("find_erl/2");
+    assertThat(function.getLine()).isEqualTo(17);
+  }
+
+  @Test
+  public void same_metrics_as_the_source() throws IOException {
+    for (String name : new String[] {"erlcount", "erlcount_counter", "erlcount_dispatch", "erlcount_lib", "erlcount_sup",
+      "refactorerl_issues"}) {
+      BeamModule module = BeamFile.read(beam(name));
+      SourceFile source = scan(new File(ERLCOUNT, "src/" + name + ".erl"));
+
+      assertThat(module.getFunctions().size()).as(name).isEqualTo(source.getInt(ErlangMetric.FUNCTIONS));
+      assertThat(module.getComplexity()).as(name).isEqualTo(source.getInt(ErlangMetric.COMPLEXITY));
+      assertThat(module.getStatements()).as(name).isEqualTo(source.getInt(ErlangMetric.STATEMENTS));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void not_a_beam_file() throws IOException {
+    BeamFile.read(new File(ERLCOUNT, "ebin/erlcount.app"));
+  }
+
+  @Test
+  public void index() throws IOException {
+    File source = temp.newFile("erlcount_lib.erl");
+    File ebin = temp.newFolder("ebin");
+    File beam = new File(ebin, "erlcount_lib.beam");
+    Files.copy(beam("erlcount_lib").toPath(), beam.toPath());
+    BeamIndex index = new BeamIndex(Collections.singletonList(ebin));
+
+    beam.setLastModified(source.lastModified() + 1000);
+    assertThat(index.find(source).getName()).isEqualTo("erlcount_lib");
+    assertThat(index.find(temp.newFile("erlcount.erl"))).isNull();
+
+    beam.setLastModified(source.lastModified() - 1000);
+    assertThat(index.find(source)).isNull();
+  }
+
+  private static File beam(String module) {
+    return new File(ERLCOUNT, "ebin/" + module + ".beam");
+  }
+
+  private static SourceFile scan(File file) {
+    AstScanner<LexerlessGrammar> scanner = ErlangAstScanner.create(StandardCharsets.UTF_8);
+    scanner.scanFile(file);
+    return (SourceFile) scanner.getIndex().search(new QueryByType(SourceFile.class)).iterator().next();
+  }
+}
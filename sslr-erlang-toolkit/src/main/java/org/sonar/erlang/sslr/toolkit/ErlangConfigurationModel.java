@@ -32,9 +32,7 @@ import org.sonar.colorizer.StringTokenizer;
 import org.sonar.colorizer.Tokenizer;
 import org.sonar.erlang.ErlangConfiguration;
 import org.sonar.erlang.api.ErlangKeyword;
-import org.sonar.erlang.parser.ErlangGrammarImpl;
-import org.sonar.sslr.parser.LexerlessGrammar;
-import org.sonar.sslr.parser.ParserAdapter;
+import org.sonar.erlang.parser.ErlangParser;
 import org.sonar.sslr.toolkit.AbstractConfigurationModel;
 import org.sonar.sslr.toolkit.ConfigurationProperty;
 import org.sonar.sslr.toolkit.Validators;
@@ -61,7 +59,7 @@ public class ErlangConfigurationModel extends AbstractConfigurationModel {
 
   @Override
   public Parser doGetParser() {
-    return new ParserAdapter<LexerlessGrammar>(getCharset(), ErlangGrammarImpl.createGrammar());
+    return ErlangParser.create(getConfiguration());
   }
 
   @Override